@@ -1,220 +1,379 @@
 package com.springyweb.alfresco.tests.cmis;
 
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
 
+import java.io.IOException;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
-import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TimeZone;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 import org.alfresco.cmis.client.AlfrescoDocument;
-import org.alfresco.util.ISO8601DateFormat;
 import org.apache.chemistry.opencmis.client.api.CmisObject;
 import org.apache.chemistry.opencmis.client.api.Document;
 import org.apache.chemistry.opencmis.client.api.Folder;
 import org.apache.chemistry.opencmis.client.api.ItemIterable;
 import org.apache.chemistry.opencmis.client.api.QueryResult;
-import org.apache.chemistry.opencmis.client.api.Repository;
 import org.apache.chemistry.opencmis.client.api.Session;
-import org.apache.chemistry.opencmis.client.runtime.SessionFactoryImpl;
 import org.apache.chemistry.opencmis.commons.PropertyIds;
-import org.apache.chemistry.opencmis.commons.SessionParameter;
 import org.apache.chemistry.opencmis.commons.data.ContentStream;
 import org.apache.chemistry.opencmis.commons.enums.BaseTypeId;
-import org.apache.chemistry.opencmis.commons.enums.BindingType;
-import org.apache.chemistry.opencmis.commons.enums.UnfileObject;
 import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
 import org.apache.chemistry.opencmis.commons.exceptions.CmisRuntimeException;
 import org.apache.chemistry.opencmis.commons.impl.dataobjects.ContentStreamImpl;
-import org.apache.commons.lang3.StringUtils;
 import org.junit.After;
+import org.junit.AfterClass;
 import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.springyweb.alfresco.tests.cmis.cache.PathCache;
+import com.springyweb.alfresco.tests.cmis.cache.QueryResultCache;
+import com.springyweb.alfresco.tests.cmis.corpus.CorpusDefinition;
+import com.springyweb.alfresco.tests.cmis.corpus.SharedCorpus;
+import com.springyweb.alfresco.tests.cmis.corpus.SharedCorpus.CorpusFolder;
+import com.springyweb.alfresco.tests.cmis.delete.TreeDeleter;
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+import com.springyweb.alfresco.tests.cmis.jfr.CmisProfiler;
+import com.springyweb.alfresco.tests.cmis.jfr.QueryDescription;
+import com.springyweb.alfresco.tests.cmis.query.LiteralEncoder;
+import com.springyweb.alfresco.tests.cmis.replay.HttpCapture;
+import com.springyweb.alfresco.tests.cmis.report.EventLog;
+import com.springyweb.alfresco.tests.cmis.routing.ClusterSession;
 
 public class CMISTest {
-  private static final String CMIS_ENDPOINT_TEST_SERVER = "http://localhost:8080/alfresco/s/api/cmis";
-  private static final String USERNAME = "admin";
-  private static final String PASSWORD = "admin";
+  private static final String CMIS_ENDPOINT_TEST_SERVER = CmisSessions.endpoint();
+  private static final String USERNAME = CmisSessions.DEFAULT_USERNAME;
+  private static final String PASSWORD = CmisSessions.DEFAULT_PASSWORD;
 
-  private static final String TEST_FOLDER_NAME = "test_folder";
-  private static final String TEST_CMIS_DOCUMENT_TYPE = "swct:document";
-  private static final String TEST_CMIS_FOLDER_TYPE = "swct:folder";
-
-  private static final String ASPECT_TITLED = "cm:titled";
-  private static final String PROPERTY_DESCRIPTION = "cm:description";
-
-  private static final String TEST_CMIS_PROPERY_SINGLE_INT = "swct:propSingleInt";
-  private static final String TEST_CMIS_PROPERY_SINGLE_DOUBLE = "swct:propSingleDouble";
-  private static final String TEST_CMIS_PROPERY_SINGLE_BOOLEAN = "swct:propSingleBoolean";
-  private static final String TEST_CMIS_PROPERY_SINGLE_DATE_TIME = "swct:propSingleDateTime";
-  private static final String TEST_CMIS_PROPERY_SINGLE_STRING = "swct:propSingleString";
-
-  private static final String TEST_CMIS_PROPERY_MULTIPLE_STRING = "swct:propMultipleString";
-  private static final String TEST_CMIS_PROPERY_MULTIPLE_INT = "swct:propMultipleInt";
-  private static final String TEST_CMIS_PROPERY_MULTIPLE_DOUBLE = "swct:propMultipleDouble";
-  private static final String TEST_CMIS_PROPERY_MULTIPLE_BOOLEAN = "swct:propMultipleBoolean";
-  private static final String TEST_CMIS_PROPERY_MULTIPLE_DATE_TIME = "swct:propMultipleDateTime";
+  // Run the suite with -Dcmis.queryCache=true to answer repeated queries from a client side cache for the whole run
+  private static final boolean QUERY_CACHE_ENABLED = Boolean.getBoolean("cmis.queryCache");
+  private static final int QUERY_CACHE_MAX_ENTRIES = Integer.getInteger("cmis.queryCache.maxEntries", 256);
+  private static final long QUERY_CACHE_TTL_SECONDS = Long.getLong("cmis.queryCache.ttlSeconds", 300);
 
-  // Note the replaceable parameters here are (in order) folder id,property,predicate,value
-  // e.g SELECT * from swct:document where in_folder('workspace://SpacesStore/c22f856c-6cec-4e16-9c1c-60df621bba16') and swct:propSingleString = 'b'
-  private static final String PREDICATE_QUERY_TEMPLATE_STRING = "SELECT * from "
-    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s %s '%s'";
+  // Run the suite with -Dcmis.pathCache=true to resolve each folder path once for the whole run
+  private static final boolean PATH_CACHE_ENABLED = Boolean.getBoolean("cmis.pathCache");
+  private static final int PATH_CACHE_MAX_ENTRIES = Integer.getInteger("cmis.pathCache.maxEntries", 1024);
+  private static final long PATH_CACHE_TTL_SECONDS = Long.getLong("cmis.pathCache.ttlSeconds", 300);
+  private static final long PATH_CACHE_NEGATIVE_TTL_SECONDS = Long.getLong("cmis.pathCache.negativeTtlSeconds", 30);
 
-  private static final String PREDICATE_QUERY_TEMPLATE_BOOLEAN = "SELECT * from "
-    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s %s %b";
-
-  private static final String PREDICATE_QUERY_TEMPLATE_INTEGER = "SELECT * from "
-    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s %s %d";
+  private static final String TEST_FOLDER_NAME = "test_folder";
 
-  // Note: We only use 1 decimal place e.g 1.0 not 1 or 1.0000
-  private static final String PREDICATE_QUERY_TEMPLATE_DECIMAL = "SELECT * from "
-    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s %s %.2g%n";
+  // The tests that only query share a corpus, built by the first of them and reused by later runs. Run with -Dcmis.corpus.rebuild=true to
+  // build it again.
+  private static final String CORPUS_NAME = "cmis_test_corpus";
+  private static final long CORPUS_BASE_MILLIS = 1325376000000L; // 2012-01-01T00:00:00.000Z
+  private static final List<Object> IN_STRINGS = Arrays.<Object>asList("foo", "bar", "baz");
+  private static final List<Object> IN_INTEGERS = Arrays.<Object>asList(1, 2, 3);
+  private static final List<Object> IN_DOUBLES = Arrays.<Object>asList(1.0, 2.1, 3.2);
+  private static final List<Object> QUANTIFIED_STRINGS = Arrays.<Object>asList("foo", "bar", "baz");
+  private static final List<Object> QUANTIFIED_INTEGERS = Arrays.<Object>asList(1, 2, 3);
+  private static final List<Object> QUANTIFIED_BOOLEANS = Arrays.<Object>asList(true, false);
+  private static final List<Object> QUANTIFIED_DOUBLES = Arrays.<Object>asList(1.2, 3.1);
+  private static final List<Object> QUANTIFIED_DATE_TIMES = Arrays.<Object>asList(dateTime(0), dateTime(1));
+  private static final List<Object> QUANTIFIED_IN_DOUBLES = Arrays.<Object>asList(1.1, 2.3, 3.1);
+  private static final List<Object> QUANTIFIED_IN_BOOLEANS = Arrays.<Object>asList(true);
+  private static final List<Object> QUANTIFIED_IN_DATE_TIMES = Arrays.<Object>asList(dateTime(0), yearsAfterBase(1));
+  private static final CorpusDefinition CORPUS = corpus();
+  // Records or replays the HTTP traffic of the whole run when -Dcmis.record or -Dcmis.replay is set
+  private static HttpCapture capture;
+  // Flight records the run when -Dcmis.profile is set
+  private static CmisProfiler profiler;
+  // Logs every CMIS call when -Dcmis.events is set
+  private static EventLog eventLog;
+  private static PathCache pathCache;
+  private static QueryResultCache queryCache;
+
+  @Rule
+  public final TestRule events = EventLog.watcher();
 
-  private static final String PREDICATE_QUERY_TEMPLATE_DATETIME = "SELECT * from "
-    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s %s TIMESTAMP '%s'";
+  private Folder root = null;
+  private Folder testRootFolder = null;
 
-  private static final String PREDICATE_QUERY_TEMPLATE_UNQUOTED_STRING = "SELECT * from "
-    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s %s %s";
+  private Session session;
 
-  // Note the replaceable parameters here are (in order) folder id,sting1,string2
-  // SELECT * from swct:document where in_folder('workspace://SpacesStore/c22f856c-6cec-4e16-9c1c-60df621bba16') and swct:propSingleBoolean IS NULL
-  private static final String TWO_VAL_PREDICATE_QUERY_TEMPLATE_STRING = "SELECT * from "
-    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s %s";
+  @BeforeClass
+  public static void startCapture() throws IOException {
+    capture = HttpCapture.start(CMIS_ENDPOINT_TEST_SERVER);
+  }
 
-  // Note the replaceable parameters here are (in order) folder id,string1
-  // SELECT * from swct:document where in_folder('workspace://SpacesStore/c22f856c-6cec-4e16-9c1c-60df621bba16') and CONTAINS('foo')
-  private static final String SINGLE_VAL_PREDICATE_QUERY_TEMPLATE_STRING = "SELECT * from "
-    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s";
+  @AfterClass
+  public static void stopCapture() throws IOException {
+    if (capture != null) {
+      capture.close();
+    }
+  }
 
-  // e.g SELECT * from swct:document where in_folder('workspace://SpacesStore/c22f856c-6cec-4e16-9c1c-60df621bba16') and 'foo' = ANY
-  // swct:propSingleBoolean
-  private static final String PREDICATE_QUANTIFIED_QUERY_TEMPLATE_STRING = "SELECT * from "
-    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and '%s' %s %s";
+  @BeforeClass
+  public static void startProfiling() throws IOException, ParseException {
+    profiler = CmisProfiler.start(CMISTest.class.getSimpleName());
+  }
 
-  private static final String PREDICATE_QUANTIFIED_QUERY_TEMPLATE_INTEGER = "SELECT * from "
-    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %d %s %s";
+  @AfterClass
+  public static void stopProfiling() throws IOException {
+    if (profiler != null) {
+      profiler.stop();
+    }
+  }
 
-  private static final String PREDICATE_QUANTIFIED_QUERY_TEMPLATE_BOOLEAN = "SELECT * from "
-    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %b %s %s";
+  @BeforeClass
+  public static void startEventLog() throws IOException {
+    eventLog = EventLog.start(CMISTest.class.getSimpleName());
+  }
 
-  private static final String PREDICATE_QUANTIFIED_QUERY_TEMPLATE_DECIMAL = "SELECT * from "
-    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %.2g%n %s %s";
+  @AfterClass
+  public static void stopEventLog() throws IOException {
+    if (eventLog != null) {
+      eventLog.close();
+    }
+  }
 
-  private static final String PREDICATE_QUANTIFIED_QUERY_TEMPLATE_DATETIME = "SELECT * from "
-    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and TIMESTAMP '%s' %s %s";
+  @BeforeClass
+  public static void createPathCache() {
+    if (PATH_CACHE_ENABLED) {
+      pathCache = new PathCache(PATH_CACHE_MAX_ENTRIES, PATH_CACHE_TTL_SECONDS,
+        PATH_CACHE_NEGATIVE_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+  }
 
-  // e.g SELECT * from swct:document WHERE ANY swct:propSingleBoolean IN (true, false)
-  private static final String PREDICATE_QUANTIFIED_IN_TEMPLATE_STRING = "SELECT * from "
-    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and " + Predicate.ANY + " %s "
-    + Predicate.IN + "%s";
+  @AfterClass
+  public static void printPathCacheStats() {
+    if (pathCache != null) {
+      System.out.println(pathCache);
+    }
+  }
 
-  private Folder root = null;
-  private Folder testRootFolder = null;
+  @BeforeClass
+  public static void createQueryCache() {
+    if (QUERY_CACHE_ENABLED) {
+      queryCache = new QueryResultCache(QUERY_CACHE_MAX_ENTRIES, QUERY_CACHE_TTL_SECONDS,
+        TimeUnit.SECONDS);
+    }
+  }
 
-  private Session session;
+  @AfterClass
+  public static void printQueryCacheStats() {
+    if (queryCache != null) {
+      System.out.println("Query cache " + queryCache.getStats());
+    }
+  }
 
   @Before
   public void setup() {
-    final Map<String, String> parameters = new HashMap<String, String>();
-    parameters.put(SessionParameter.USER, USERNAME);
-    parameters.put(SessionParameter.PASSWORD, PASSWORD);
-    parameters.put(SessionParameter.ATOMPUB_URL, CMIS_ENDPOINT_TEST_SERVER);
-    parameters.put(SessionParameter.BINDING_TYPE,
-        BindingType.ATOMPUB.value());
-
-    // Set the alfresco object factory
-    parameters.put(SessionParameter.OBJECT_FACTORY_CLASS,
-      "org.alfresco.cmis.client.impl.AlfrescoObjectFactoryImpl");
-
-
-    // Create a session with the client-side cache disabled.
-    final SessionFactoryImpl sessionFactory = SessionFactoryImpl.newInstance();
-    final Repository repository = sessionFactory.getRepositories(parameters).get(0);
-
-    session = repository.createSession();
-    session.getDefaultContext().setCacheEnabled(false);
+    // Recording and replaying talk to the single -Dcmis.endpoint, otherwise -Dcmis.endpoints may name a cluster
+    session = capture.isActive() ? CmisSessions.create(capture.getEndpoint(), USERNAME,
+      PASSWORD) : CmisSessions.create(USERNAME, PASSWORD);
 
     root = session.getRootFolder();
-    // Create the test folder. Delete it if it already exists.
-    testRootFolder = getFolderByPath(root.getPath() + TEST_FOLDER_NAME);
-    if (testRootFolder != null) {
-      testRootFolder.deleteTree(true, UnfileObject.DELETE, true);
+    if (queryCache != null) {
+      queryCache.registerFolder(root.getId(), null);
     }
-
-    testRootFolder = createTestCMISFolder(root, TEST_FOLDER_NAME);
-
   }
 
   @After
   public void tearDown() {
     if (testRootFolder != null) {
-      System.out.println("Removing test data");
       try {
-        testRootFolder.deleteTree(true, UnfileObject.DELETE, true);
+        deleteTree(testRootFolder);
       } catch (final Exception e) {
         e.printStackTrace();
       }
     }
+    final ClusterSession cluster = ClusterSession.of(session);
+    if (cluster != null) {
+      System.out.print(cluster.report());
+    }
   }
 
-  @Test
-  public void comparisonPredicatesString() {
+  /**
+   * The documents of the tests that only query, in a folder of the shared corpus named after each test. Values are fixed rather than depending on
+   * when the definition is built, so that the same corpus is found on every run.
+   */
+  private static CorpusDefinition corpus() {
+    final CorpusDefinition corpus = new CorpusDefinition(CORPUS_NAME);
+
+    corpus.document("comparisonPredicatesString", "testb", Collections.singletonMap(
+      TEST_CMIS_PROPERY_SINGLE_STRING, "b"));
+    corpus.document("comparisonPredicatesString", "testBc", Collections.singletonMap(
+      TEST_CMIS_PROPERY_SINGLE_STRING, "Bc"));
+    corpus.document("comparisonPredicatesString", "testc", Collections.singletonMap(
+      TEST_CMIS_PROPERY_SINGLE_STRING, "c"));
+    corpus.document("comparisonPredicatesString", "testCb", Collections.singletonMap(
+      TEST_CMIS_PROPERY_SINGLE_STRING, "Cb"));
+
+    final double[] decimals = { 1.0, 1.1, 1.2, 1.3 };
+    for (int i = 1; i <= 4; i++) {
+      corpus.document("comparisonPredicatesInteger", "test" + i, Collections.singletonMap(
+        TEST_CMIS_PROPERY_SINGLE_INT, i));
+      corpus.document("comparisonPredicatesDecimal", "test" + i, Collections.singletonMap(
+        TEST_CMIS_PROPERY_SINGLE_DOUBLE, decimals[i - 1]));
+    }
 
-    // Create test documents with a single string property
-    final Map<String, Object> props = new HashMap<String, Object>();
+    corpus.document("comparisonPredicatesBoolean", "test1", Collections.singletonMap(
+      TEST_CMIS_PROPERY_SINGLE_BOOLEAN, true));
+    corpus.document("comparisonPredicatesBoolean", "test2", Collections.singletonMap(
+      TEST_CMIS_PROPERY_SINGLE_BOOLEAN, false));
 
-    props.put(TEST_CMIS_PROPERY_SINGLE_STRING, "b");
-    final String id_b = createTestCMISDocument(testRootFolder, "testb", props).getId();
+    // 4 dates 1 millisecond apart
+    for (int i = 0; i < 4; i++) {
+      corpus.document("comparisonPredicatesDateTime", "test" + i, Collections.singletonMap(
+        TEST_CMIS_PROPERY_SINGLE_DATE_TIME, dateTime(i)));
+    }
 
-    props.put(TEST_CMIS_PROPERY_SINGLE_STRING, "Bc");
-    final String id_Bc = createTestCMISDocument(testRootFolder, "testBc", props).getId();
+    // No properties required for ID testing
+    corpus.document("comparisonPredicatesId", "test1", null);
+    corpus.document("comparisonPredicatesId", "test2", null);
 
-    props.put(TEST_CMIS_PROPERY_SINGLE_STRING, "c");
-    final String id_c = createTestCMISDocument(testRootFolder, "testc", props).getId();
+    inDocuments(corpus, "inPredicatesString", IN_STRINGS, TEST_CMIS_PROPERY_SINGLE_STRING);
+    inDocuments(corpus, "inPredicatesInteger", IN_INTEGERS, TEST_CMIS_PROPERY_SINGLE_INT);
+    inDocuments(corpus, "inPredicatesDecimal", IN_DOUBLES, TEST_CMIS_PROPERY_SINGLE_DOUBLE);
+    for (int i = 0; i < 4; i++) {
+      corpus.document("inPredicatesDateTime", "test" + i, Collections.singletonMap(
+        TEST_CMIS_PROPERY_SINGLE_DATE_TIME, dateTime(i)));
+    }
 
-    props.put(TEST_CMIS_PROPERY_SINGLE_STRING, "Cb");
-    final String id_Cb = createTestCMISDocument(testRootFolder, "testCb", props).getId();
+    // The escaped like tests each add a document which the earlier patterns would also match
+    corpus.document("likePredicate", "test", null);
+    corpus.document("likePredicateEscapedPercent", "test", null);
+    corpus.document("likePredicateEscapedPercent", "t%t", null);
+    corpus.document("likePredicateEscapedUnderscore", "test", null);
+    corpus.document("likePredicateEscapedUnderscore", "t%t", null);
+    corpus.document("likePredicateEscapedUnderscore", "t__t", null);
+
+    corpus.document("nullPredicate", "test", null);
+    corpus.document("nullPredicate", "test2", Collections.singletonMap(
+      TEST_CMIS_PROPERY_SINGLE_BOOLEAN, true));
+
+    corpus.document("testQuantifiedComparisonPredicateString", "test", Collections.singletonMap(
+      TEST_CMIS_PROPERY_MULTIPLE_STRING, QUANTIFIED_STRINGS));
+    corpus.document("testQuantifiedComparisonPredicateInteger", "test", Collections.singletonMap(
+      TEST_CMIS_PROPERY_MULTIPLE_INT, QUANTIFIED_INTEGERS));
+    corpus.document("testQuantifiedComparisonPredicateBoolean", "test", Collections.singletonMap(
+      TEST_CMIS_PROPERY_MULTIPLE_BOOLEAN, QUANTIFIED_BOOLEANS));
+    corpus.document("testQuantifiedComparisonPredicateDouble", "test", Collections.singletonMap(
+      TEST_CMIS_PROPERY_MULTIPLE_DOUBLE, QUANTIFIED_DOUBLES));
+    corpus.document("testQuantifiedComparisonPredicateDateTime", "test", Collections.singletonMap(
+      TEST_CMIS_PROPERY_MULTIPLE_DATE_TIME, QUANTIFIED_DATE_TIMES));
+
+    corpus.document("testQuantifiedInPredicateString", "test", Collections.singletonMap(
+      TEST_CMIS_PROPERY_MULTIPLE_STRING, QUANTIFIED_STRINGS));
+    corpus.document("testQuantifiedInPredicateInteger", "test", Collections.singletonMap(
+      TEST_CMIS_PROPERY_MULTIPLE_INT, QUANTIFIED_INTEGERS));
+    corpus.document("testQuantifiedInPredicateDouble", "test", Collections.singletonMap(
+      TEST_CMIS_PROPERY_MULTIPLE_DOUBLE, QUANTIFIED_IN_DOUBLES));
+    corpus.document("testQuantifiedInPredicateBoolean", "test", Collections.singletonMap(
+      TEST_CMIS_PROPERY_MULTIPLE_BOOLEAN, QUANTIFIED_IN_BOOLEANS));
+    corpus.document("testQuantifiedInPredicateDateTime", "test", Collections.singletonMap(
+      TEST_CMIS_PROPERY_MULTIPLE_DATE_TIME, QUANTIFIED_IN_DATE_TIMES));
+
+    corpus.document("testContainsPredicate", "test", null, "test");
+    corpus.document("testContainsPredicate", "tube", null, "tube");
+    corpus.document("testContainsPredicate", "testTube", null, "test tube");
+    corpus.document("testContainsPredicate", "tubeTest", null, "tube test");
+    return corpus;
+  }
+
+  /**
+   * Documents test0, test1... with the tokens in their natural order
+   */
+  private static void inDocuments(final CorpusDefinition corpus, final String folderName,
+    final List<Object> tokens, final String propertyName) {
+    int counter = 0;
+    for (final Object token: new TreeSet<Object>(tokens)) {
+      corpus.document(folderName, "test" + counter++, Collections.singletonMap(propertyName,
+        token));
+    }
+  }
+
+  /**
+   * @return The fixed base date of the corpus plus millis, in UTC
+   */
+  private static GregorianCalendar dateTime(final long millis) {
+    final GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+    calendar.setTimeInMillis(CORPUS_BASE_MILLIS + millis);
+    return calendar;
+  }
+
+  private static GregorianCalendar yearsAfterBase(final int years) {
+    final GregorianCalendar calendar = dateTime(0);
+    calendar.add(Calendar.YEAR, years);
+    return calendar;
+  }
+
+  private CorpusFolder corpusFolder(final String name) {
+    return SharedCorpus.get(session, CORPUS).folder(name);
+  }
+
+  /**
+   * @return A folder of this test's own, for tests that write, created on first use and deleted after the test
+   */
+  private Folder testFolder() {
+    if (testRootFolder == null) {
+      // Delete the test folder if it was left by an earlier run
+      final Folder existing = getFolderByPath(root.getPath() + TEST_FOLDER_NAME);
+      if (existing != null) {
+        deleteTree(existing);
+      }
+      testRootFolder = createTestCMISFolder(root, TEST_FOLDER_NAME);
+    }
+    return testRootFolder;
+  }
+
+  @Test
+  public void comparisonPredicatesString() {
+
+    final CorpusFolder folder = corpusFolder("comparisonPredicatesString");
+    final String id_b = folder.id("testb");
+    final String id_Bc = folder.id("testBc");
+    final String id_c = folder.id("testc");
+    final String id_Cb = folder.id("testCb");
 
     final String expecedId = id_b;
-    assertQueryResult(PREDICATE_QUERY_TEMPLATE_STRING, expecedId, testRootFolder.getId(),
+    assertQueryResult(PREDICATE_QUERY_TEMPLATE_STRING, expecedId, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_STRING,
       Predicate.EQUALS.getSymbol(), "b");
 
     Set<String> expectedIds = toSet(id_Bc, id_c, id_Cb);
 
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_STRING, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_STRING, expectedIds, folder.getId(),
         TEST_CMIS_PROPERY_SINGLE_STRING,
         Predicate.NOT_EQUALS.getSymbol(), "b");
 
     expectedIds = toSet(id_b, id_Bc);
 
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_STRING, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_STRING, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_STRING,
       Predicate.LESS_THAN.getSymbol(), "c");
 
     expectedIds = toSet(id_b, id_Bc, id_c);
 
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_STRING, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_STRING, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_STRING,
       Predicate.LESS_THAN_EQUAL_TO.getSymbol(), "c");
 
     expectedIds = toSet(id_c, id_Bc, id_Cb);
 
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_STRING, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_STRING, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_STRING,
       Predicate.GREATER_THAN.getSymbol(), "b");
 
     expectedIds = toSet(id_b, id_c, id_Bc, id_Cb);
 
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_STRING, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_STRING, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_STRING,
       Predicate.GREATER_THAN_EQUAL_TO.getSymbol(), "b");
   }
@@ -222,44 +381,39 @@ public class CMISTest {
   @Test
   public void comparisonPredicatesInteger() {
 
-    final Map<String, Object> props = new HashMap<String, Object>();
-
-    props.put(TEST_CMIS_PROPERY_SINGLE_INT, 1);
-    final String id_1 = createTestCMISDocument(testRootFolder, "test1", props).getId();
-    props.put(TEST_CMIS_PROPERY_SINGLE_INT, 2);
-    final String id_2 = createTestCMISDocument(testRootFolder, "test2", props).getId();
-    props.put(TEST_CMIS_PROPERY_SINGLE_INT, 3);
-    final String id_3 = createTestCMISDocument(testRootFolder, "test3", props).getId();
-    props.put(TEST_CMIS_PROPERY_SINGLE_INT, 4);
-    final String id_4 = createTestCMISDocument(testRootFolder, "test4", props).getId();
+    final CorpusFolder folder = corpusFolder("comparisonPredicatesInteger");
+    final String id_1 = folder.id("test1");
+    final String id_2 = folder.id("test2");
+    final String id_3 = folder.id("test3");
+    final String id_4 = folder.id("test4");
 
     final String expectedId = id_1;
-    assertQueryResult(PREDICATE_QUERY_TEMPLATE_INTEGER, expectedId, testRootFolder.getId(),
+    assertQueryResult(PREDICATE_QUERY_TEMPLATE_INTEGER, expectedId, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_INT,
       Predicate.EQUALS.getSymbol(), 1);
 
     Set<String> expectedIds = toSet(id_2, id_3, id_4);
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_INTEGER, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_INTEGER, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_INT,
       Predicate.NOT_EQUALS.getSymbol(), 1);
 
     expectedIds = toSet(id_1, id_2);
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_INTEGER, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_INTEGER, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_INT,
       Predicate.LESS_THAN.getSymbol(), 3);
 
     expectedIds = toSet(id_1, id_2, id_3);
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_INTEGER, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_INTEGER, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_INT,
       Predicate.LESS_THAN_EQUAL_TO.getSymbol(), 3);
 
     expectedIds = toSet(id_2, id_3, id_4);
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_INTEGER, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_INTEGER, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_INT,
       Predicate.GREATER_THAN.getSymbol(), 1);
 
     expectedIds = toSet(id_1, id_2, id_3, id_4);
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_INTEGER, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_INTEGER, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_INT,
       Predicate.GREATER_THAN_EQUAL_TO.getSymbol(), 1);
   }
@@ -267,48 +421,41 @@ public class CMISTest {
   @Test
   public void comparisonPredicatesDecimal() {
 
-    final Map<String, Object> props = new HashMap<String, Object>();
-    // Create 4 test docs
-    props.put(TEST_CMIS_PROPERY_SINGLE_DOUBLE, 1.0);
-    final String id_1_0 = createTestCMISDocument(testRootFolder, "test1", props).getId();
-
-    props.put(TEST_CMIS_PROPERY_SINGLE_DOUBLE, 1.1);
-    final String id_1_1 = createTestCMISDocument(testRootFolder, "test2", props).getId();
-
-    props.put(TEST_CMIS_PROPERY_SINGLE_DOUBLE, 1.2);
-    final String id_1_2 = createTestCMISDocument(testRootFolder, "test3", props).getId();
-
-    props.put(TEST_CMIS_PROPERY_SINGLE_DOUBLE, 1.3);
-    final String id_1_3 = createTestCMISDocument(testRootFolder, "test4", props).getId();
+    // 4 test docs with 1.0, 1.1, 1.2 and 1.3
+    final CorpusFolder folder = corpusFolder("comparisonPredicatesDecimal");
+    final String id_1_0 = folder.id("test1");
+    final String id_1_1 = folder.id("test2");
+    final String id_1_2 = folder.id("test3");
+    final String id_1_3 = folder.id("test4");
 
     final String expectedId = id_1_0;
 
-    assertQueryResult(PREDICATE_QUERY_TEMPLATE_DECIMAL, expectedId, testRootFolder.getId(),
+    assertQueryResult(PREDICATE_QUERY_TEMPLATE_DECIMAL, expectedId, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_DOUBLE,
       Predicate.EQUALS.getSymbol(), 1.0);
 
     Set<String> expectedIds = toSet(id_1_1, id_1_2, id_1_3);
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DECIMAL, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DECIMAL, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_DOUBLE,
       Predicate.NOT_EQUALS.getSymbol(), 1.0);
 
     expectedIds = toSet(id_1_0, id_1_1);
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DECIMAL, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DECIMAL, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_DOUBLE,
       Predicate.LESS_THAN.getSymbol(), 1.2);
 
     expectedIds = toSet(id_1_0, id_1_1, id_1_2);
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DECIMAL, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DECIMAL, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_DOUBLE,
       Predicate.LESS_THAN_EQUAL_TO.getSymbol(), 1.2);
 
     expectedIds = toSet(id_1_1, id_1_2, id_1_3);
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DECIMAL, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DECIMAL, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_DOUBLE,
       Predicate.GREATER_THAN.getSymbol(), 1.0);
 
     expectedIds = toSet(id_1_0, id_1_1, id_1_2, id_1_3);
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DECIMAL, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DECIMAL, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_DOUBLE,
       Predicate.GREATER_THAN_EQUAL_TO.getSymbol(), 1.0);
   }
@@ -316,23 +463,18 @@ public class CMISTest {
   @Test
   public void comparisonPredicatesBoolean() {
 
-    final Map<String, Object> props = new HashMap<String, Object>();
-    // Create 2 test docs with true and false
-    props.put(TEST_CMIS_PROPERY_SINGLE_BOOLEAN, true);
-    final String id_true = createTestCMISDocument(testRootFolder, "test1", props).getId();
-
-    props.put(TEST_CMIS_PROPERY_SINGLE_BOOLEAN, false);
-    final String id_false = createTestCMISDocument(testRootFolder, "test2", props).getId();
+    // 2 test docs with true and false
+    final CorpusFolder folder = corpusFolder("comparisonPredicatesBoolean");
 
-    String expectedId = id_true;
+    String expectedId = folder.id("test1");
 
-    assertQueryResult(PREDICATE_QUERY_TEMPLATE_BOOLEAN, expectedId, testRootFolder.getId(),
+    assertQueryResult(PREDICATE_QUERY_TEMPLATE_BOOLEAN, expectedId, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_BOOLEAN,
       Predicate.EQUALS.getSymbol(), true);
 
-    expectedId = id_false;
+    expectedId = folder.id("test2");
 
-    assertQueryResult(PREDICATE_QUERY_TEMPLATE_BOOLEAN, expectedId, testRootFolder.getId(),
+    assertQueryResult(PREDICATE_QUERY_TEMPLATE_BOOLEAN, expectedId, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_BOOLEAN,
       Predicate.EQUALS.getSymbol(), false);
   }
@@ -340,166 +482,131 @@ public class CMISTest {
   /**
    * Note: For the datetime tests to work follow the instructions for changing the lucene analyzer (http://wiki.alfresco.com/wiki/CMIS_Query_Language#
    * Configuring_DateTime_resolution)
-   * 
+   *
    */
   @Test
   public void comparisonPredicatesDateTime() {
-    // Create 4 dates 1 Second apart Note: The time portion of the date is
+    // 4 dates 1 millisecond apart Note: The time portion of the date is
     // ignored
-    final Map<String, Object> props = new HashMap<String, Object>();
-    final Date[] dates = new Date[4];
+    final CorpusFolder folder = corpusFolder("comparisonPredicatesDateTime");
+    final String[] dates = new String[4];
     final String[] ids = new String[4];
-    final GregorianCalendar calendar = new GregorianCalendar();
 
     for (int i = 0; i < dates.length; i++) {
-      props.clear();
-      dates[i] = calendar.getTime();
-      // Note: For OpenCmis to work we add the calendar object not the date (see
-      // http://blog.remysaissy.com/2012/04/solving-property-foo-is-datetime.html)
-      props.put(TEST_CMIS_PROPERY_SINGLE_DATE_TIME, calendar);
-      ids[i] = createTestCMISDocument(testRootFolder, "test" + i, props).getId();
-      calendar.add(Calendar.MILLISECOND, 1);
+      dates[i] = dateTimeLiteral(dateTime(i));
+      ids[i] = folder.id("test" + i);
     }
 
     String expectedId = ids[0];
-    assertQueryResult(PREDICATE_QUERY_TEMPLATE_DATETIME, expectedId, testRootFolder.getId(),
+    assertQueryResult(PREDICATE_QUERY_TEMPLATE_DATETIME, expectedId, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_DATE_TIME,
-      Predicate.EQUALS.getSymbol(), ISO8601DateFormat.format(dates[0]));
+      Predicate.EQUALS.getSymbol(), dates[0]);
 
     Set<String> expectedIds = toSet(ids[1], ids[2], ids[3]);
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DATETIME, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DATETIME, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_DATE_TIME,
-      Predicate.NOT_EQUALS.getSymbol(), ISO8601DateFormat.format(dates[0]));
+      Predicate.NOT_EQUALS.getSymbol(), dates[0]);
 
     expectedId = ids[0];
-    assertQueryResult(PREDICATE_QUERY_TEMPLATE_DATETIME, expectedId, testRootFolder.getId(),
+    assertQueryResult(PREDICATE_QUERY_TEMPLATE_DATETIME, expectedId, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_DATE_TIME,
-      Predicate.LESS_THAN.getSymbol(), ISO8601DateFormat.format(dates[1]));
+      Predicate.LESS_THAN.getSymbol(), dates[1]);
 
     expectedIds = toSet(ids[0], ids[1]);
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DATETIME, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DATETIME, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_DATE_TIME,
-      Predicate.LESS_THAN_EQUAL_TO.getSymbol(), ISO8601DateFormat.format(dates[1]));
+      Predicate.LESS_THAN_EQUAL_TO.getSymbol(), dates[1]);
 
     expectedIds = toSet(ids[1], ids[2], ids[3]);
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DATETIME, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DATETIME, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_DATE_TIME,
-      Predicate.GREATER_THAN.getSymbol(), ISO8601DateFormat.format(dates[0]));
+      Predicate.GREATER_THAN.getSymbol(), dates[0]);
 
     expectedIds = toSet(ids[0], ids[1], ids[2], ids[3]);
-    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DATETIME, expectedIds, testRootFolder.getId(),
+    assertQueryResults(PREDICATE_QUERY_TEMPLATE_DATETIME, expectedIds, folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_DATE_TIME,
-      Predicate.GREATER_THAN_EQUAL_TO.getSymbol(), ISO8601DateFormat.format(dates[0]));
+      Predicate.GREATER_THAN_EQUAL_TO.getSymbol(), dates[0]);
   }
 
   @Test
   public void comparisonPredicatesId() {
 
-    final Map<String, Object> props = new HashMap<String, Object>();
-    // Create 3 test docs - no properties required for ID testing
-    final String id1 = createTestCMISDocument(testRootFolder, "test1", props).getId();
-    final String id2 = createTestCMISDocument(testRootFolder, "test2", props).getId();
+    final CorpusFolder folder = corpusFolder("comparisonPredicatesId");
+    final String id1 = folder.id("test1");
+    final String id2 = folder.id("test2");
 
     String expectedId = id1;
-    assertQueryResult(PREDICATE_QUERY_TEMPLATE_STRING, expectedId, testRootFolder.getId(),
+    assertQueryResult(PREDICATE_QUERY_TEMPLATE_STRING, expectedId, folder.getId(),
       PropertyIds.OBJECT_ID,
       Predicate.EQUALS.getSymbol(), id1);
 
     expectedId = id2;
-    assertQueryResult(PREDICATE_QUERY_TEMPLATE_STRING, expectedId, testRootFolder.getId(),
+    assertQueryResult(PREDICATE_QUERY_TEMPLATE_STRING, expectedId, folder.getId(),
       PropertyIds.OBJECT_ID,
       Predicate.NOT_EQUALS.getSymbol(), id1);
   }
 
   @Test
   public void inPredicatesString() {
-    final TreeSet<Object> allTokens = new TreeSet<Object>();
-    allTokens.add("foo");
-    allTokens.add("bar");
-    allTokens.add("baz");
-
-    testInPredicate(allTokens, TEST_CMIS_PROPERY_SINGLE_STRING, true);
+    testInPredicate("inPredicatesString", IN_STRINGS, TEST_CMIS_PROPERY_SINGLE_STRING, true);
   }
 
   @Test
   public void inPredicatesInteger() {
-    final TreeSet<Object> allTokens = new TreeSet<Object>();
-    allTokens.add(1);
-    allTokens.add(2);
-    allTokens.add(3);
-
-    testInPredicate(allTokens, TEST_CMIS_PROPERY_SINGLE_INT, false);
+    testInPredicate("inPredicatesInteger", IN_INTEGERS, TEST_CMIS_PROPERY_SINGLE_INT, false);
   }
 
   @Test
   public void inPredicatesDecimal() {
-    final TreeSet<Object> allTokens = new TreeSet<Object>();
-    allTokens.add(1.0);
-    allTokens.add(2.1);
-    allTokens.add(3.2);
-
-    testInPredicate(allTokens, TEST_CMIS_PROPERY_SINGLE_DOUBLE, false);
+    testInPredicate("inPredicatesDecimal", IN_DOUBLES, TEST_CMIS_PROPERY_SINGLE_DOUBLE, false);
   }
 
   @Test
   public void inPredicatesDateTime() {
-    final Map<String, Object> props = new HashMap<String, Object>();
-    final TreeSet<GregorianCalendar> allCals = new TreeSet<GregorianCalendar>();
-    final TreeSet<GregorianCalendar> searchCals = new TreeSet<GregorianCalendar>();
-    final TreeSet<Object> searchTokens = new TreeSet<Object>();
-
+    // 4 dates 1 millisecond apart, searching for all but the last
+    final CorpusFolder folder = corpusFolder("inPredicatesDateTime");
+    final LiteralEncoder searchTokens = new LiteralEncoder().beginList();
     final Set<String> expectedIds = new HashSet<String>();
 
-    final GregorianCalendar calendar = new GregorianCalendar();
-
-    for (int i = 0; i < 4; i++) {
-      props.clear();
-      allCals.add((GregorianCalendar)calendar.clone());
-      calendar.add(Calendar.MILLISECOND, 1);
-    }
-
-    searchCals.addAll(allCals);
-    searchCals.remove(searchCals.last());
-
-    int counter = 0;
-    for (final GregorianCalendar cal: allCals) {
-      props.put(TEST_CMIS_PROPERY_SINGLE_DATE_TIME, cal);
-      final Document document = createTestCMISDocument(testRootFolder, "test" + counter++, props);
-      if (searchCals.contains(cal)) {
-        expectedIds.add(document.getId());
-        searchTokens.add(ISO8601DateFormat.format(cal.getTime()));
-      }
+    for (int i = 0; i < 3; i++) {
+      expectedIds.add(folder.id("test" + i));
+      searchTokens.timestamp(dateTime(i));
     }
 
-    testInPredicateValues(searchTokens, expectedIds, TEST_CMIS_PROPERY_SINGLE_DATE_TIME, true);
+    testInPredicateValues(folder, searchTokens.endList().toString(), expectedIds,
+      TEST_CMIS_PROPERY_SINGLE_DATE_TIME);
   }
 
   @Test
   public void likePredicate() {
 
     // note: The like predicate only applies to strings
-    final Map<String, Object> props = new HashMap<String, Object>();
-    String expectedId = createTestCMISDocument(testRootFolder, "test", props).getId();
+    final CorpusFolder folder = corpusFolder("likePredicate");
+    final String expectedId = folder.id("test");
 
     // All of these string should find test
     final String[] testVals = { "%test%", "test", "t%t", "t__t" };
 
     for (final String testVal: testVals) {
       assertQueryResult(PREDICATE_QUERY_TEMPLATE_STRING, expectedId,
-        testRootFolder.getId(),
+        folder.getId(),
         PropertyIds.NAME, Predicate.LIKE.getSymbol(), testVal);
     }
+  }
 
-    // Test escaping %
-    expectedId = createTestCMISDocument(testRootFolder, "t%t", props).getId();
-    assertQueryResult(PREDICATE_QUERY_TEMPLATE_STRING, expectedId,
-      testRootFolder.getId(),
+  @Test
+  public void likePredicateEscapedPercent() {
+    final CorpusFolder folder = corpusFolder("likePredicateEscapedPercent");
+    assertQueryResult(PREDICATE_QUERY_TEMPLATE_STRING, folder.id("t%t"),
+      folder.getId(),
       PropertyIds.NAME, Predicate.LIKE.getSymbol(), "t\\%t");
+  }
 
-    // Test escaping _
-    expectedId = createTestCMISDocument(testRootFolder, "t__t", props).getId();
-    assertQueryResult(PREDICATE_QUERY_TEMPLATE_STRING, expectedId,
-      testRootFolder.getId(),
+  @Test
+  public void likePredicateEscapedUnderscore() {
+    final CorpusFolder folder = corpusFolder("likePredicateEscapedUnderscore");
+    assertQueryResult(PREDICATE_QUERY_TEMPLATE_STRING, folder.id("t__t"),
+      folder.getId(),
       PropertyIds.NAME, Predicate.LIKE.getSymbol(), "t\\_\\_t");
   }
 
@@ -511,86 +618,58 @@ public class CMISTest {
   @Test
   public void nullPredicate() {
 
-    final Map<String, Object> props = new HashMap<String, Object>();
-    final String idWithoutPropertySet = createTestCMISDocument(testRootFolder, "test", props)
-      .getId();
-
-    props.put(TEST_CMIS_PROPERY_SINGLE_BOOLEAN, true);
-    final String idWithPropertySet = createTestCMISDocument(testRootFolder, "test2", props)
-      .getId();
+    final CorpusFolder folder = corpusFolder("nullPredicate");
+    final String idWithoutPropertySet = folder.id("test");
+    final String idWithPropertySet = folder.id("test2");
 
     // Test for the item without the property set using IS NULL
     assertQueryResult(TWO_VAL_PREDICATE_QUERY_TEMPLATE_STRING, idWithoutPropertySet,
-      testRootFolder.getId(),
+      folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_BOOLEAN, Predicate.IS_NULL.getSymbol());
 
     // Test for the item with the property set using IS NOT NULL
     assertQueryResult(TWO_VAL_PREDICATE_QUERY_TEMPLATE_STRING, idWithPropertySet,
-      testRootFolder.getId(),
+      folder.getId(),
       TEST_CMIS_PROPERY_SINGLE_BOOLEAN, Predicate.IS_NOT_NULL.getSymbol());
   }
 
   @Test
   public void testQuantifiedComparisonPredicateString() {
-
-    final List<Object> values = Arrays.asList(new Object[] { "foo", "bar", "baz" });
-    final Map<String, Object> props = new HashMap<String, Object>();
-    props.put(TEST_CMIS_PROPERY_MULTIPLE_STRING, values);
-
-    testQuantifiedComparisonPredicate(props, values, PREDICATE_QUANTIFIED_QUERY_TEMPLATE_STRING,
+    testQuantifiedComparisonPredicate("testQuantifiedComparisonPredicateString",
+      QUANTIFIED_STRINGS, PREDICATE_QUANTIFIED_QUERY_TEMPLATE_STRING,
       TEST_CMIS_PROPERY_MULTIPLE_STRING);
   }
 
   @Test
   public void testQuantifiedComparisonPredicateInteger() {
-
-    final List<Object> values = Arrays.asList(new Object[] { 1, 2, 3 });
-    final Map<String, Object> props = new HashMap<String, Object>();
-    props.put(TEST_CMIS_PROPERY_MULTIPLE_INT, values);
-
-    testQuantifiedComparisonPredicate(props, values, PREDICATE_QUANTIFIED_QUERY_TEMPLATE_INTEGER,
+    testQuantifiedComparisonPredicate("testQuantifiedComparisonPredicateInteger",
+      QUANTIFIED_INTEGERS, PREDICATE_QUANTIFIED_QUERY_TEMPLATE_INTEGER,
       TEST_CMIS_PROPERY_MULTIPLE_INT);
   }
 
   @Test
   public void testQuantifiedComparisonPredicateBoolean() {
-
-    final List<Object> values = Arrays.asList(new Object[] { true, false });
-    final Map<String, Object> props = new HashMap<String, Object>();
-    props.put(TEST_CMIS_PROPERY_MULTIPLE_BOOLEAN, values);
-
-    testQuantifiedComparisonPredicate(props, values, PREDICATE_QUANTIFIED_QUERY_TEMPLATE_BOOLEAN,
+    testQuantifiedComparisonPredicate("testQuantifiedComparisonPredicateBoolean",
+      QUANTIFIED_BOOLEANS, PREDICATE_QUANTIFIED_QUERY_TEMPLATE_BOOLEAN,
       TEST_CMIS_PROPERY_MULTIPLE_BOOLEAN);
   }
 
   @Test
   public void testQuantifiedComparisonPredicateDouble() {
-
-    final List<Object> values = Arrays.asList(new Object[] { 1.2, 3.1 });
-    final Map<String, Object> props = new HashMap<String, Object>();
-    props.put(TEST_CMIS_PROPERY_MULTIPLE_DOUBLE, values);
-
-    testQuantifiedComparisonPredicate(props, values, PREDICATE_QUANTIFIED_QUERY_TEMPLATE_DECIMAL,
+    testQuantifiedComparisonPredicate("testQuantifiedComparisonPredicateDouble",
+      QUANTIFIED_DOUBLES, PREDICATE_QUANTIFIED_QUERY_TEMPLATE_DECIMAL,
       TEST_CMIS_PROPERY_MULTIPLE_DOUBLE);
   }
 
   @Test
   public void testQuantifiedComparisonPredicateDateTime() {
 
-    final List<GregorianCalendar> storeValues = new ArrayList<GregorianCalendar>();
     final List<Object> searchValues = new ArrayList<Object>();
+    for (final Object value: QUANTIFIED_DATE_TIMES) {
+      searchValues.add(dateTimeLiteral((GregorianCalendar)value));
+    }
 
-    final GregorianCalendar cal = new GregorianCalendar();
-    storeValues.add((GregorianCalendar)cal.clone());
-    searchValues.add(ISO8601DateFormat.format(cal.getTime()));
-    cal.add(Calendar.MILLISECOND, 1);
-    storeValues.add((GregorianCalendar)cal.clone());
-    searchValues.add(ISO8601DateFormat.format(cal.getTime()));
-
-    final Map<String, Object> props = new HashMap<String, Object>();
-    props.put(TEST_CMIS_PROPERY_MULTIPLE_DATE_TIME, storeValues);
-
-    testQuantifiedComparisonPredicate(props, searchValues,
+    testQuantifiedComparisonPredicate("testQuantifiedComparisonPredicateDateTime", searchValues,
       PREDICATE_QUANTIFIED_QUERY_TEMPLATE_DATETIME,
       TEST_CMIS_PROPERY_MULTIPLE_DATE_TIME);
   }
@@ -598,24 +677,25 @@ public class CMISTest {
   /**
    * The quantified comparison predicate only applies to multi-valued properties: it can not be used for single valued properties. Only the equality
    * operator is supported. The only quantifier supported is ANY (ALL and SOME are not supported).
-   * 
-   * @param props
-   *          - properties to add to the created test document
+   *
+   * @param folderName
+   *          - The corpus folder holding the document "test" with the multi-valued property
    * @param testValues
    *          - a list of values which will all be queried for
    * @param queryTemplate
    *          - The name of the quey template
    * @param propertyName
    *          - The property name being tested
-   * 
+   *
    */
-  private void testQuantifiedComparisonPredicate(final Map<String, Object> props,
+  private void testQuantifiedComparisonPredicate(final String folderName,
     final List<Object> testValues, final String queryTemplate, final String propertyName) {
 
-    final String expectedId = createTestCMISDocument(testRootFolder, "test", props).getId();
+    final CorpusFolder folder = corpusFolder(folderName);
+    final String expectedId = folder.id("test");
     for (final Object value: testValues) {
       assertQueryResult(queryTemplate, expectedId,
-        testRootFolder.getId(),
+        folder.getId(),
         value, Predicate.QUANTIFIED_COMPARISION.getSymbol(), propertyName);
     }
   }
@@ -623,159 +703,115 @@ public class CMISTest {
   @Test
   public void testQuantifiedInPredicateString() {
 
-    final List<Object> propertyValues = new ArrayList<Object>();
-    propertyValues.add("foo");
-    propertyValues.add("bar");
-    propertyValues.add("baz");
-
-    final Map<String, Object> props = new HashMap<String, Object>();
-    props.put(TEST_CMIS_PROPERY_MULTIPLE_STRING, propertyValues);
-
     final Set<Object> searchValues = new HashSet<Object>();
-    searchValues.addAll(propertyValues);
+    searchValues.addAll(QUANTIFIED_STRINGS);
     // Note we add a value that isn't part of the property as the predicate should match if ANY values match not ALL.
     searchValues.add("springy");
 
-    testQuantifiedInPredicate(props, bracketAndDelimit(searchValues, true),
-      TEST_CMIS_PROPERY_MULTIPLE_STRING);
+    testQuantifiedInPredicate("testQuantifiedInPredicateString", bracketAndDelimit(
+      searchValues, true), TEST_CMIS_PROPERY_MULTIPLE_STRING);
   }
 
   @Test
   public void testQuantifiedInPredicateInteger() {
 
-    final List<Object> propertyValues = new ArrayList<Object>();
-    propertyValues.add(1);
-    propertyValues.add(2);
-    propertyValues.add(3);
-
-    final Map<String, Object> props = new HashMap<String, Object>();
-    props.put(TEST_CMIS_PROPERY_MULTIPLE_INT, propertyValues);
-
     final Set<Object> searchValues = new HashSet<Object>();
-    searchValues.addAll(propertyValues);
+    searchValues.addAll(QUANTIFIED_INTEGERS);
     // Note we add a value that isn't part of the property as the predicate should match if ANY values match not ALL.
     searchValues.add(99);
 
-    testQuantifiedInPredicate(props, bracketAndDelimit(searchValues, false),
-      TEST_CMIS_PROPERY_MULTIPLE_INT);
+    testQuantifiedInPredicate("testQuantifiedInPredicateInteger", bracketAndDelimit(
+      searchValues, false), TEST_CMIS_PROPERY_MULTIPLE_INT);
   }
 
   @Test
   public void testQuantifiedInPredicateDouble() {
 
-    final List<Object> propertyValues = new ArrayList<Object>();
-    propertyValues.add(1.1);
-    propertyValues.add(2.3);
-    propertyValues.add(3.1);
-
-    final Map<String, Object> props = new HashMap<String, Object>();
-    props.put(TEST_CMIS_PROPERY_MULTIPLE_DOUBLE, propertyValues);
-
     final Set<Object> searchValues = new HashSet<Object>();
-    searchValues.addAll(propertyValues);
+    searchValues.addAll(QUANTIFIED_IN_DOUBLES);
     // Note we add a value that isn't part of the property as the predicate should match if ANY values match not ALL.
     searchValues.add(99.2);
 
-    testQuantifiedInPredicate(props, bracketAndDelimit(searchValues, false),
-      TEST_CMIS_PROPERY_MULTIPLE_DOUBLE);
+    testQuantifiedInPredicate("testQuantifiedInPredicateDouble", bracketAndDelimit(
+      searchValues, false), TEST_CMIS_PROPERY_MULTIPLE_DOUBLE);
   }
 
   @Test
   public void testQuantifiedInPredicateBoolean() {
 
-    final List<Object> propertyValues = new ArrayList<Object>();
-    propertyValues.add(true);
-
-    final Map<String, Object> props = new HashMap<String, Object>();
-    props.put(TEST_CMIS_PROPERY_MULTIPLE_BOOLEAN, propertyValues);
-
     final Set<Object> searchValues = new HashSet<Object>();
-    searchValues.addAll(propertyValues);
+    searchValues.addAll(QUANTIFIED_IN_BOOLEANS);
     // Note we add a value that isn't part of the property as the predicate should match if ANY values match not ALL.
     searchValues.add(false);
     searchValues.add("FALSE");
 
-    testQuantifiedInPredicate(props, bracketAndDelimit(searchValues, false),
-      TEST_CMIS_PROPERY_MULTIPLE_BOOLEAN);
+    testQuantifiedInPredicate("testQuantifiedInPredicateBoolean", bracketAndDelimit(
+      searchValues, false), TEST_CMIS_PROPERY_MULTIPLE_BOOLEAN);
   }
 
   @Test
   public void testQuantifiedInPredicateDateTime() {
 
-    final List<Object> propertyValues = new ArrayList<Object>();
-    final GregorianCalendar cal = new GregorianCalendar();
-    propertyValues.add(cal.clone());
-    cal.add(Calendar.YEAR, 1);
-    propertyValues.add(cal.clone());
-
-    final Map<String, Object> props = new HashMap<String, Object>();
-    props.put(TEST_CMIS_PROPERY_MULTIPLE_DATE_TIME, propertyValues);
-
-    final Set<Object> searchValues = new HashSet<Object>();
-    for (final Object object: propertyValues) {
-      searchValues.add(ISO8601DateFormat.format(((GregorianCalendar)object).getTime()));
+    final LiteralEncoder searchValues = new LiteralEncoder().beginList();
+    for (final Object object: QUANTIFIED_IN_DATE_TIMES) {
+      searchValues.dateTime(((GregorianCalendar)object).getTimeInMillis());
     }
 
     // Note we add a value that isn't part of the property as the predicate should match if ANY values match not ALL.
-    cal.add(Calendar.YEAR, 50);
-    searchValues.add((ISO8601DateFormat.format(cal.getTime())));
+    searchValues.dateTime(yearsAfterBase(51).getTimeInMillis());
 
-    testQuantifiedInPredicate(props, bracketAndDelimit(searchValues, true),
-      TEST_CMIS_PROPERY_MULTIPLE_DATE_TIME);
+    testQuantifiedInPredicate("testQuantifiedInPredicateDateTime", searchValues.endList()
+      .toString(), TEST_CMIS_PROPERY_MULTIPLE_DATE_TIME);
   }
 
   @Test
   public void testContainsPredicate() {
-    final Map<String, Object> props = new HashMap<String, Object>();
-    final String testDocumentId = createTestCMISDocument(testRootFolder, "test", props, "test")
-      .getId();
-    final String tubeDocumentId = createTestCMISDocument(testRootFolder, "tube", props, "tube")
-      .getId();
-    final String testTubeDocumentId = createTestCMISDocument(testRootFolder, "testTube", props,
-      "test tube").getId();
-    final String tubeTestDocumentId = createTestCMISDocument(testRootFolder, "tubeTest", props,
-      "tube test").getId();
+    final CorpusFolder folder = corpusFolder("testContainsPredicate");
+    final String testDocumentId = folder.id("test");
+    final String tubeDocumentId = folder.id("tube");
+    final String testTubeDocumentId = folder.id("testTube");
+    final String tubeTestDocumentId = folder.id("tubeTest");
 
     // term
     Set<String> expectedIds = toSet(testDocumentId, testTubeDocumentId, tubeTestDocumentId);
     assertQueryResults(SINGLE_VAL_PREDICATE_QUERY_TEMPLATE_STRING, expectedIds,
-      testRootFolder.getId(), buildContains("test"));
+      folder.getId(), buildContains("test"));
 
     // term AND (default)
     expectedIds = toSet(testTubeDocumentId, tubeTestDocumentId);
     assertQueryResults(SINGLE_VAL_PREDICATE_QUERY_TEMPLATE_STRING, expectedIds,
-      testRootFolder.getId(), buildContains("test tube"));
+      folder.getId(), buildContains("test tube"));
 
     // term OR
     expectedIds = toSet(testDocumentId, tubeDocumentId, testTubeDocumentId, tubeTestDocumentId);
     assertQueryResults(SINGLE_VAL_PREDICATE_QUERY_TEMPLATE_STRING, expectedIds,
-      testRootFolder.getId(), buildContains("test OR tube"));
+      folder.getId(), buildContains("test OR tube"));
 
     // negation precedence over OR - Note This does NOT mean find all documents without "test" and then from those find all those with "tube"
     // compare with bracketed negation OR terms below
     expectedIds = toSet(tubeDocumentId, testTubeDocumentId, tubeTestDocumentId);
     assertQueryResults(SINGLE_VAL_PREDICATE_QUERY_TEMPLATE_STRING, expectedIds,
-      testRootFolder.getId(), buildContains("-test OR tube"));
+      folder.getId(), buildContains("-test OR tube"));
 
     // bracketed negation OR terms,
     expectedIds = Collections.emptySet();
     assertQueryResults(SINGLE_VAL_PREDICATE_QUERY_TEMPLATE_STRING, expectedIds,
-      testRootFolder.getId(), buildContains("-(test OR tube)"));
+      folder.getId(), buildContains("-(test OR tube)"));
 
     // Phrase
     expectedIds = toSet(testTubeDocumentId);
     assertQueryResults(SINGLE_VAL_PREDICATE_QUERY_TEMPLATE_STRING, expectedIds,
-      testRootFolder.getId(), buildContainsPhrase("test tube"));
+      folder.getId(), buildContainsPhrase("test tube"));
 
     // negated term
     expectedIds = toSet(tubeDocumentId);
     assertQueryResults(SINGLE_VAL_PREDICATE_QUERY_TEMPLATE_STRING, expectedIds,
-      testRootFolder.getId(), buildContains("-test"));
+      folder.getId(), buildContains("-test"));
 
     // negated phrase
     expectedIds = toSet(testDocumentId, tubeDocumentId, tubeTestDocumentId);
     assertQueryResults(SINGLE_VAL_PREDICATE_QUERY_TEMPLATE_STRING, expectedIds,
-      testRootFolder.getId(), buildContainsNegatedPhrase("test tube"));
+      folder.getId(), buildContainsNegatedPhrase("test tube"));
   }
 
   @Test
@@ -786,18 +822,43 @@ public class CMISTest {
 
     // Create two folders of the same name one beneath the other
     final String testFolderName = "my_test_folder";
-    final Folder testFolder = createTestCMISFolder(testRootFolder, testFolderName);
+    final Folder parent = testFolder();
+    final Folder testFolder = createTestCMISFolder(parent, testFolderName);
     final Folder testSubFolder = createTestCMISFolder(testFolder, testFolderName);
 
 
     // Search IMMEADIATELY within the test root space using in_folder
     final String expectedId = testFolder.getId();
-    assertQueryResult(allFoldersInFolderQuery, expectedId, testRootFolder.getId(), testFolderName);
+    assertQueryResult(allFoldersInFolderQuery, expectedId, parent.getId(), testFolderName);
 
     // Now search again this time limit the search to ANYWHERE beneath the test
     // root space using in_tree
     final Set<String> expectedIds = toSet(testFolder.getId(), testSubFolder.getId());
-    assertQueryResults(allFoldersInTreeQuery, expectedIds, testRootFolder.getId(), testFolderName);
+    assertQueryResults(allFoldersInTreeQuery, expectedIds, parent.getId(), testFolderName);
+  }
+
+  @Test
+  public void searchAllVersions() {
+    assumeTrue(Boolean.TRUE.equals(session.getRepositoryInfo().getCapabilities()
+      .isAllVersionsSearchableSupported()));
+
+    // Old versions are not filed, so the query cannot use in_folder
+    final String marker = "versioned" + System.currentTimeMillis();
+    final Map<String, Object> props = new HashMap<String, Object>();
+    props.put(TEST_CMIS_PROPERY_SINGLE_STRING, marker);
+    final Document document = createTestCMISDocument(testFolder(), "test", props, "version 1");
+    final Document latest = checkInNewVersion(document, "version 2");
+
+    final Set<String> allVersionIds = new HashSet<String>();
+    for (final Document version: latest.getAllVersions()) {
+      allVersionIds.add(version.getId());
+    }
+    assertEquals(2, allVersionIds.size());
+
+    final String query = String.format("SELECT * from %s where %s = '%s'",
+      TEST_CMIS_DOCUMENT_TYPE, TEST_CMIS_PROPERY_SINGLE_STRING, marker);
+    assertQueryResults(query, false, latest.getId());
+    assertQueryResults(query, true, allVersionIds);
   }
 
   /**
@@ -816,7 +877,7 @@ public class CMISTest {
     props.put(PropertyIds.OBJECT_TYPE_ID, typeAndAspect);
     props.put(PROPERTY_DESCRIPTION, description);
 
-    final String expectedId = createTestCMISDocument(testRootFolder, "test", props).getId();
+    final String expectedId = createTestCMISDocument(testFolder(), "test", props).getId();
 
     final String query = "select d.*, t.* from  swct:document as d join cm:titled as t on d.cmis:objectid = t.cmis:objectid where t.cm:description = '%s'";
     assertQueryResults(String.format(query, description), false, expectedId);
@@ -828,7 +889,7 @@ public class CMISTest {
     final String queryTemplate = "select d.*, t.* from  swct:document as d join cm:titled as t on d.cmis:objectid = t.cmis:objectid where t.cm:description = '%s'";
     final String query = String.format(queryTemplate, description);
 
-    final AlfrescoDocument alfDoc = (AlfrescoDocument)createTestCMISDocument(testRootFolder,
+    final AlfrescoDocument alfDoc = (AlfrescoDocument)createTestCMISDocument(testFolder(),
       "test", null);
 
     final Set<String> emptyIdSet = Collections.emptySet();
@@ -838,11 +899,11 @@ public class CMISTest {
     final Map<String, Object> props = new HashMap<String, Object>();
     props.put(PROPERTY_DESCRIPTION, description);
     final String prefixedAspect = aspectPrefix(ASPECT_TITLED);
-    alfDoc.addAspect(prefixedAspect, props);
+    addAspect(alfDoc, prefixedAspect, props);
     assertQueryResults(query, false, alfDoc.getId());
 
     // Now remove the aspect
-    alfDoc.removeAspect(prefixedAspect);
+    removeAspect(alfDoc, prefixedAspect);
     assertQueryResults(query, false, emptyIdSet);
   }
 
@@ -890,20 +951,20 @@ public class CMISTest {
    * predicate is true if any of the values of a multi-valued property match any of those in the IN list. The quantified IN predicate is only
    * supported for multi-valued properties of types with a data type that supports IN, as described above.
    * 
-   * @param props
-   *          - properties to add to the created test document
+   * @param folderName
+   *          - The corpus folder holding the document "test" with the multi-valued property
    * @param predicateValues
    *          - Bracketed, Comma separated list of values to use for the query. The calling function should ensure that this list is not EXACTLY the
    *          same as the values stored in the multi-value property as we are testing for ANY
    * @param propertyName
    *          - The name of the property being tested
    */
-  private void testQuantifiedInPredicate(final Map<String, Object> props,
+  private void testQuantifiedInPredicate(final String folderName,
     final String predicateValues, final String propertyName) {
 
-    final String expectedId = createTestCMISDocument(testRootFolder, "test", props).getId();
-    assertQueryResult(PREDICATE_QUANTIFIED_IN_TEMPLATE_STRING, expectedId,
-        testRootFolder.getId(), propertyName, predicateValues);
+    final CorpusFolder folder = corpusFolder(folderName);
+    assertQueryResult(PREDICATE_QUANTIFIED_IN_TEMPLATE_STRING, folder.id("test"),
+        folder.getId(), propertyName, predicateValues);
   }
 
   /**
@@ -915,40 +976,22 @@ public class CMISTest {
    * @return e.g ('bar','baz')
    */
   private String bracketAndDelimit(final Set<Object> values, final boolean quoteElements) {
-    String separatedValues = "";
-    if (quoteElements) {
-      separatedValues = StringUtils.join(quoteValues(values).toArray(), ",");
-    } else {
-      separatedValues = StringUtils.join(values.toArray(), ",");
-    }
-    final StringBuilder sb = new StringBuilder("(");
-    sb.append(separatedValues);
-    sb.append(")");
-    return sb.toString();
-  }
-
-  /**
-   * 
-   * @param values
-   *          eq {"foo", "bar"}
-   * @return {"'foo'", "'bar'"}
-   */
-  private Set<Object> quoteValues(final Set<Object> values) {
-    final Set<Object> quotedValues = new HashSet<Object>(values.size());
+    final LiteralEncoder encoder = new LiteralEncoder().beginList();
     for (final Object value: values) {
-      quotedValues.add(quote(value));
+      if (quoteElements) {
+        encoder.string(value.toString());
+      } else {
+        encoder.raw(value.toString());
+      }
     }
-    return quotedValues;
+    return encoder.endList().toString();
   }
 
   /**
-   * 
-   * @param s
-   *          e.g baz
-   * @return 'baz'
+   * @return e.g '2012-03-04T05:06:07.089Z', for the date time templates to follow with TIMESTAMP
    */
-  private String quote(final Object o) {
-    return new StringBuilder("'").append(o).append("'").toString();
+  private static String dateTimeLiteral(final Calendar calendar) {
+    return new LiteralEncoder().dateTime(calendar.getTimeInMillis()).toString();
   }
 
   /**
@@ -961,19 +1004,26 @@ public class CMISTest {
   private Folder getFolderByPath(final String path) throws CmisRuntimeException {
     Folder folder = null;
     try {
-      final CmisObject cmisObject = session.getObjectByPath(path);
-      if (cmisObject.getBaseTypeId() != BaseTypeId.CMIS_FOLDER) {
-        throw new CmisRuntimeException("Object with path '" + path
-          + "' is not of type 'cmis:folder'.");
+      final CmisObject cmisObject = pathCache != null ? pathCache
+        .getObjectByPath(session, path) : session.getObjectByPath(path);
+      if (cmisObject != null) {
+        if (cmisObject.getBaseTypeId() != BaseTypeId.CMIS_FOLDER) {
+          throw new CmisRuntimeException("Object with path '" + path
+            + "' is not of type 'cmis:folder'.");
+        }
+        folder = (Folder)cmisObject;
       }
-      folder = (Folder)cmisObject;
     } catch (final CmisObjectNotFoundException ignored) {
     }
     return folder;
   }
 
-  private void testInPredicate(final Set<Object> allTokens, final String propertyName,
-    final boolean quoteElements) {
+  /**
+   * @param folderName
+   *          - The corpus folder holding a document test0, test1... for each of allTokens in their natural order
+   */
+  private void testInPredicate(final String folderName, final List<Object> allTokens,
+    final String propertyName, final boolean quoteElements) {
 
     // Make searchTokens a subset of allTokens by removing the last element
     final TreeSet<Object> searchTokens = new TreeSet<Object>();
@@ -983,34 +1033,33 @@ public class CMISTest {
     // These are the string that will be added to the IN predicate
     final Set<String> expectedIds = new HashSet<String>();
 
-    // Create test documents
-    final Map<String, Object> props = new HashMap<String, Object>();
-
+    final CorpusFolder folder = corpusFolder(folderName);
     int counter = 0;
-    for (final Object object: allTokens) {
-      props.put(propertyName, object);
-      final Document document = createTestCMISDocument(testRootFolder, "test" + counter++, props);
+    for (final Object object: new TreeSet<Object>(allTokens)) {
+      final String id = folder.id("test" + counter++);
       if (searchTokens.contains(object)) {
-        expectedIds.add(document.getId());
+        expectedIds.add(id);
       }
     }
 
-    testInPredicateValues(searchTokens, expectedIds, propertyName, quoteElements);
+    testInPredicateValues(folder, bracketAndDelimit(searchTokens, quoteElements), expectedIds,
+      propertyName);
   }
 
   /**
+   * @param folder
    * @param propertyName
-   * @param quoteElements
    * @param searchTokens
+   *          - The encoded IN list e.g ('bar','baz')
    * @param expectedIds
    */
-  private void testInPredicateValues(final TreeSet<Object> searchTokens,
-    final Set<String> expectedIds, final String propertyName, final boolean quoteElements) {
+  private void testInPredicateValues(final CorpusFolder folder, final String searchTokens,
+    final Set<String> expectedIds, final String propertyName) {
 
     final ItemIterable<QueryResult> predicateQueryResults = getPredicateQueryResults(
-      PREDICATE_QUERY_TEMPLATE_UNQUOTED_STRING, 1, testRootFolder.getId(),
+      PREDICATE_QUERY_TEMPLATE_UNQUOTED_STRING, 1, folder.getId(),
       propertyName,
-      Predicate.IN.getSymbol(), bracketAndDelimit(searchTokens, quoteElements));
+      Predicate.IN.getSymbol(), searchTokens);
 
     // Compare the expected string with the actual strings
     final Set<String> actualIds = new HashSet<String>();
@@ -1047,7 +1096,7 @@ public class CMISTest {
   private void assertQueryResults(final String queryTemplate,
     final Set<String> expectedIds, final Object... values) {
 
-    assertQueryResults(String.format(queryTemplate, values), false, expectedIds);
+    assertQueryResults(QueryDescription.of(queryTemplate, values), false, expectedIds);
   }
 
   private void assertQueryResults(final String query, final boolean searchAllVersions,
@@ -1066,10 +1115,15 @@ public class CMISTest {
   private void assertQueryResults(final String query, final boolean searchAllVersions,
     final Set<String> expectedIds) {
 
+    assertQueryResults(QueryDescription.of(query), searchAllVersions, expectedIds);
+  }
+
+  private void assertQueryResults(final QueryDescription query, final boolean searchAllVersions,
+    final Set<String> expectedIds) {
+
     final Set<String> actualIds = new HashSet<String>();
 
-    final ItemIterable<QueryResult> results = executeQuery(
-      query, false);
+    final ItemIterable<QueryResult> results = executeQuery(query, searchAllVersions);
 
     assertEquals("Wrong result count", expectedIds.size(), results.getTotalNumItems());
     for (final QueryResult result: results) {
@@ -1083,7 +1137,7 @@ public class CMISTest {
     final int expectedResultCount,
     final Object... values) {
 
-    return executeQuery(String.format(queryTemplate, values), false);
+    return executeQuery(QueryDescription.of(queryTemplate, values), false);
   }
 
   /**
@@ -1092,10 +1146,65 @@ public class CMISTest {
    * @param searchAllVersions
    * @return The query results
    */
-  private ItemIterable<QueryResult> executeQuery(final String query, final boolean searchAllVersions) {
-    System.out.println("Executing query " + query + " (Searching all versions: "
-      + searchAllVersions + ")");
-    return session.query(query, searchAllVersions);
+  private ItemIterable<QueryResult> executeQuery(final QueryDescription query,
+    final boolean searchAllVersions) {
+    final ItemIterable<QueryResult> results;
+    if (queryCache != null) {
+      results = queryCache.query(session, query.getQuery(), searchAllVersions);
+    } else {
+      results = session.query(query.getQuery(), searchAllVersions);
+    }
+    return CmisEvents.profile(results, query, session.getDefaultContext().getMaxItemsPerPage());
+  }
+
+  private void addAspect(final AlfrescoDocument document, final String aspect,
+    final Map<String, Object> props) {
+
+    CmisEvents.time(CmisEvents.ADD_ASPECT, new CmisEvents.Call<Void>() {
+      public Void call() {
+        document.addAspect(aspect, props);
+        return null;
+      }
+    });
+    if (queryCache != null) {
+      queryCache.objectChanged(document.getId());
+    }
+  }
+
+  private void removeAspect(final AlfrescoDocument document, final String aspect) {
+    CmisEvents.time(CmisEvents.REMOVE_ASPECT, new CmisEvents.Call<Void>() {
+      public Void call() {
+        document.removeAspect(aspect);
+        return null;
+      }
+    });
+    if (queryCache != null) {
+      queryCache.objectChanged(document.getId());
+    }
+  }
+
+  /**
+   * @throws IllegalStateException
+   *           If some of the tree could not be deleted, listing the ids left behind
+   */
+  private void deleteTree(final Folder folder) {
+    final String path = folder.getPath();
+    final List<String> failed = TreeDeleter.deleteTree(folder);
+    final boolean deleted = failed.isEmpty();
+    if (queryCache != null) {
+      queryCache.treeDeleted(folder.getId());
+    }
+    if (pathCache != null) {
+      if (deleted) {
+        pathCache.deleted(path);
+      } else {
+        // Some of the tree is still there, so it has to be looked up again
+        pathCache.evict(path);
+      }
+    }
+    if (!deleted) {
+      throw new IllegalStateException("Could not delete " + failed + " beneath " + path);
+    }
   }
 
   private Document createTestCMISDocument(final Folder parent, final String name,
@@ -1117,10 +1226,36 @@ public class CMISTest {
     final Map<String, String> props = new HashMap<String, String>();
     props.put(PropertyIds.NAME, name);
     props.put(PropertyIds.OBJECT_TYPE_ID, folderPrefix(TEST_CMIS_FOLDER_TYPE));
-    return parent.createFolder(props);
+    final Folder folder = CmisEvents.time(CmisEvents.CREATE_FOLDER, new CmisEvents.Call<Folder>() {
+      public Folder call() {
+        return parent.createFolder(props);
+      }
+    });
+    if (queryCache != null) {
+      queryCache.folderCreated(parent.getId(), folder.getId());
+    }
+    if (pathCache != null) {
+      pathCache.created(folder.getPath(), folder.getId());
+    }
+    return folder;
   }
 
 
+  /**
+   * Check a document out and back in as a new major version
+   * 
+   * @param content
+   *          - The content of the new version
+   * @return The new version
+   */
+  private Document checkInNewVersion(final Document document, final String content) {
+    final Document version = CmisVersions.checkInNewVersion(session, document, content);
+    if (queryCache != null) {
+      queryCache.objectChanged(document.getId());
+    }
+    return version;
+  }
+
   private Document createTestCMISDocument(final Folder parent, final String name,
     final Map<String, Object> props, final String content) {
 
@@ -1128,47 +1263,26 @@ public class CMISTest {
     if (props != null) {
       properties.putAll(props);
     }
-    ContentStream contentStream = null;
-    if (content != null) {
-      contentStream = new ContentStreamImpl("test", "text/plain", content);
-    }
+    final ContentStream contentStream = content == null ? null : new ContentStreamImpl("test",
+      "text/plain", content);
     properties.put(PropertyIds.NAME, name);
     if (!properties.containsKey(PropertyIds.OBJECT_TYPE_ID)) {
       properties.put(PropertyIds.OBJECT_TYPE_ID, documentPrefix(TEST_CMIS_DOCUMENT_TYPE));
     }
-    return parent.createDocument(properties, contentStream, null);
-  }
-
-  /**
-   * Prefix a Document type for CMIS
-   * 
-   * @param type
-   *          e.g my:type
-   * @return D:my:type
-   */
-  private String documentPrefix(final String documentType) {
-    return "D:" + documentType;
-  }
-
-  /**
-   * Prefix a Folder type for CMIS
-   * 
-   * @param type
-   *          e.g my:type
-   * @return F:my:type
-   */
-  private String folderPrefix(final String folderType) {
-    return "F:" + folderType;
-  }
-
-  /**
-   * Prefix an Aspect type for CMIS
-   * 
-   * @param type
-   *          e.g my:type
-   * @return P:my:type
-   */
-  private String aspectPrefix(final String aspectType) {
-    return "P:" + aspectType;
+    final Document document = CmisEvents.time(CmisEvents.CREATE_DOCUMENT,
+      new CmisEvents.Call<Document>() {
+        public Document call() {
+          return parent.createDocument(properties, contentStream, null);
+        }
+
+        @Override
+        public long bytes(final Document result) {
+          return contentStream == null ? 0 : contentStream.getLength();
+        }
+      });
+    if (queryCache != null) {
+      queryCache.documentCreated(parent.getId(), document.getId());
+    }
+    return document;
   }
-}
\ No newline at end of file
+}
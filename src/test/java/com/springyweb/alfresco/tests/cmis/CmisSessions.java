@@ -0,0 +1,105 @@
+package com.springyweb.alfresco.tests.cmis;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.chemistry.opencmis.client.api.Repository;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.SessionFactoryImpl;
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.enums.BindingType;
+
+import com.springyweb.alfresco.tests.cmis.routing.ClusterSession;
+import com.springyweb.alfresco.tests.cmis.snapshot.SnapshotAtomPubSpi;
+import com.springyweb.alfresco.tests.cmis.snapshot.SnapshotStore;
+
+/**
+ * Creates AtomPub sessions configured the way the tests expect them: Alfresco object factory and the client-side cache disabled.
+ *
+ * With -Dcmis.snapshot=&lt;file&gt; the repository id and type definitions are kept in that file between runs, see {@link SnapshotStore}.
+ */
+public final class CmisSessions {
+
+  public static final String DEFAULT_ENDPOINT = "http://localhost:8080/alfresco/s/api/cmis";
+  public static final String DEFAULT_USERNAME = "admin";
+  public static final String DEFAULT_PASSWORD = "admin";
+
+  private CmisSessions() {
+  }
+
+  /**
+   * @return The endpoint given by -Dcmis.endpoint or the local default
+   */
+  public static String endpoint() {
+    return System.getProperty("cmis.endpoint", DEFAULT_ENDPOINT);
+  }
+
+  /**
+   * @return The comma separated endpoints given by -Dcmis.endpoints, falling back to {@link #endpoint()}
+   */
+  public static String[] endpoints() {
+    return System.getProperty("cmis.endpoints", endpoint()).split("\\s*,\\s*");
+  }
+
+  /**
+   * @return A session for -Dcmis.endpoint, or when -Dcmis.endpoints lists more than one node a {@link ClusterSession} routing between them
+   */
+  public static Session create(final String user, final String password) {
+    if (endpoints().length > 1) {
+      return ClusterSession.connect(user, password).asSession();
+    }
+    return create(endpoint(), user, password);
+  }
+
+  public static Session create(final String atomPubUrl, final String user, final String password) {
+    final Map<String, String> parameters = new HashMap<String, String>();
+    parameters.put(SessionParameter.USER, user);
+    parameters.put(SessionParameter.PASSWORD, password);
+    parameters.put(SessionParameter.ATOMPUB_URL, atomPubUrl);
+    parameters.put(SessionParameter.BINDING_TYPE,
+        BindingType.ATOMPUB.value());
+
+    // Set the alfresco object factory
+    parameters.put(SessionParameter.OBJECT_FACTORY_CLASS,
+      "org.alfresco.cmis.client.impl.AlfrescoObjectFactoryImpl");
+
+    final String snapshot = System.getProperty("cmis.snapshot");
+    String repositoryId = null;
+    if (snapshot != null) {
+      useSnapshot(parameters, snapshot);
+      repositoryId = SnapshotStore.forFile(new File(snapshot)).getRepositoryId();
+    }
+
+    // Create a session with the client-side cache disabled.
+    final SessionFactoryImpl sessionFactory = SessionFactoryImpl.newInstance();
+    final Session session;
+    if (repositoryId != null) {
+      // Skips listing the repositories, only their info is fetched
+      parameters.put(SessionParameter.REPOSITORY_ID, repositoryId);
+      session = sessionFactory.createSession(parameters);
+    } else {
+      final Repository repository = sessionFactory.getRepositories(parameters).get(0);
+      session = repository.createSession();
+    }
+    session.getDefaultContext().setCacheEnabled(false);
+    return session;
+  }
+
+  /**
+   * The AtomPub binding is set up by hand, as a custom binding is the only way to replace its repository service
+   */
+  private static void useSnapshot(final Map<String, String> parameters, final String snapshot) {
+    parameters.put(SessionParameter.BINDING_TYPE, BindingType.CUSTOM.value());
+    parameters.put(SessionParameter.BINDING_SPI_CLASS, SnapshotAtomPubSpi.class.getName());
+    parameters.put(SessionParameter.AUTHENTICATION_PROVIDER_CLASS,
+      "org.apache.chemistry.opencmis.client.bindings.spi.StandardAuthenticationProvider");
+    parameters.put(SessionParameter.AUTH_HTTP_BASIC, "true");
+    parameters.put(SnapshotAtomPubSpi.SNAPSHOT_FILE, snapshot);
+    parameters.put(SnapshotAtomPubSpi.MODEL_VERSION,
+      System.getProperty("cmis.snapshot.modelVersion", ""));
+    parameters.put(SnapshotAtomPubSpi.TTL_MILLIS, String.valueOf(TimeUnit.HOURS.toMillis(Long
+      .getLong("cmis.snapshot.ttlHours", 24))));
+  }
+}
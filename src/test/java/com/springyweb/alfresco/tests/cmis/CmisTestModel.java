@@ -0,0 +1,123 @@
+package com.springyweb.alfresco.tests.cmis;
+
+/**
+ * Names from the custom content model (src/test/resources/model/cmis-test-model.xml) and the query templates built on them. Shared by the tests
+ * and the benchmarks.
+ */
+public final class CmisTestModel {
+
+  public static final String TEST_CMIS_DOCUMENT_TYPE = "swct:document";
+  public static final String TEST_CMIS_FOLDER_TYPE = "swct:folder";
+
+  public static final String ASPECT_TITLED = "cm:titled";
+  public static final String PROPERTY_DESCRIPTION = "cm:description";
+
+  public static final String TEST_CMIS_PROPERY_SINGLE_INT = "swct:propSingleInt";
+  public static final String TEST_CMIS_PROPERY_SINGLE_DOUBLE = "swct:propSingleDouble";
+  public static final String TEST_CMIS_PROPERY_SINGLE_BOOLEAN = "swct:propSingleBoolean";
+  public static final String TEST_CMIS_PROPERY_SINGLE_DATE = "swct:propSingleDate";
+  public static final String TEST_CMIS_PROPERY_SINGLE_DATE_TIME = "swct:propSingleDateTime";
+  public static final String TEST_CMIS_PROPERY_SINGLE_STRING = "swct:propSingleString";
+
+  public static final String TEST_CMIS_PROPERY_MULTIPLE_STRING = "swct:propMultipleString";
+  public static final String TEST_CMIS_PROPERY_MULTIPLE_INT = "swct:propMultipleInt";
+  public static final String TEST_CMIS_PROPERY_MULTIPLE_DOUBLE = "swct:propMultipleDouble";
+  public static final String TEST_CMIS_PROPERY_MULTIPLE_BOOLEAN = "swct:propMultipleBoolean";
+  public static final String TEST_CMIS_PROPERY_MULTIPLE_DATE = "swct:propMultipleDate";
+  public static final String TEST_CMIS_PROPERY_MULTIPLE_DATE_TIME = "swct:propMultipleDateTime";
+
+  // Note the replaceable parameters here are (in order) folder id,property,predicate,value
+  // e.g SELECT * from swct:document where in_folder('workspace://SpacesStore/c22f856c-6cec-4e16-9c1c-60df621bba16') and swct:propSingleString = 'b'
+  public static final String PREDICATE_QUERY_TEMPLATE_STRING = "SELECT * from "
+    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s %s '%s'";
+
+  public static final String PREDICATE_QUERY_TEMPLATE_BOOLEAN = "SELECT * from "
+    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s %s %b";
+
+  public static final String PREDICATE_QUERY_TEMPLATE_INTEGER = "SELECT * from "
+    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s %s %d";
+
+  // Note: We only use 1 decimal place e.g 1.0 not 1 or 1.0000
+  public static final String PREDICATE_QUERY_TEMPLATE_DECIMAL = "SELECT * from "
+    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s %s %.2g%n";
+
+  public static final String PREDICATE_QUERY_TEMPLATE_DATETIME = "SELECT * from "
+    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s %s TIMESTAMP %s";
+
+  // Note the replaceable parameters here are (in order) folder id,property,lower bound,property,upper bound, the bounds as literals
+  // e.g SELECT * from swct:document where in_folder('...') and swct:propSingleDate >= TIMESTAMP '2010-01-01T00:00:00.000Z' and
+  // swct:propSingleDate <= TIMESTAMP '2010-01-31T00:00:00.000Z'
+  public static final String RANGE_QUERY_TEMPLATE = "SELECT * from " + TEST_CMIS_DOCUMENT_TYPE
+    + " where in_folder('%s') and %s >= %s and %s <= %s";
+
+  public static final String PREDICATE_QUERY_TEMPLATE_UNQUOTED_STRING = "SELECT * from "
+    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s %s %s";
+
+  // Note the replaceable parameters here are (in order) folder id,sting1,string2
+  // SELECT * from swct:document where in_folder('workspace://SpacesStore/c22f856c-6cec-4e16-9c1c-60df621bba16') and swct:propSingleBoolean IS NULL
+  public static final String TWO_VAL_PREDICATE_QUERY_TEMPLATE_STRING = "SELECT * from "
+    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s %s";
+
+  // Note the replaceable parameters here are (in order) folder id,string1
+  // SELECT * from swct:document where in_folder('workspace://SpacesStore/c22f856c-6cec-4e16-9c1c-60df621bba16') and CONTAINS('foo')
+  public static final String SINGLE_VAL_PREDICATE_QUERY_TEMPLATE_STRING = "SELECT * from "
+    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %s";
+
+  // e.g SELECT * from swct:document where in_folder('workspace://SpacesStore/c22f856c-6cec-4e16-9c1c-60df621bba16') and 'foo' = ANY
+  // swct:propSingleBoolean
+  public static final String PREDICATE_QUANTIFIED_QUERY_TEMPLATE_STRING = "SELECT * from "
+    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and '%s' %s %s";
+
+  public static final String PREDICATE_QUANTIFIED_QUERY_TEMPLATE_INTEGER = "SELECT * from "
+    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %d %s %s";
+
+  public static final String PREDICATE_QUANTIFIED_QUERY_TEMPLATE_BOOLEAN = "SELECT * from "
+    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %b %s %s";
+
+  public static final String PREDICATE_QUANTIFIED_QUERY_TEMPLATE_DECIMAL = "SELECT * from "
+    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and %.2g%n %s %s";
+
+  public static final String PREDICATE_QUANTIFIED_QUERY_TEMPLATE_DATETIME = "SELECT * from "
+    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and TIMESTAMP %s %s %s";
+
+  // e.g SELECT * from swct:document WHERE ANY swct:propSingleBoolean IN (true, false)
+  public static final String PREDICATE_QUANTIFIED_IN_TEMPLATE_STRING = "SELECT * from "
+    + TEST_CMIS_DOCUMENT_TYPE + " where in_folder('%s') and " + Predicate.ANY + " %s "
+    + Predicate.IN + "%s";
+
+  private CmisTestModel() {
+  }
+
+  /**
+   * Prefix a Document type for CMIS
+   * 
+   * @param type
+   *          e.g my:type
+   * @return D:my:type
+   */
+  public static String documentPrefix(final String documentType) {
+    return "D:" + documentType;
+  }
+
+  /**
+   * Prefix a Folder type for CMIS
+   * 
+   * @param type
+   *          e.g my:type
+   * @return F:my:type
+   */
+  public static String folderPrefix(final String folderType) {
+    return "F:" + folderType;
+  }
+
+  /**
+   * Prefix an Aspect type for CMIS
+   * 
+   * @param type
+   *          e.g my:type
+   * @return P:my:type
+   */
+  public static String aspectPrefix(final String aspectType) {
+    return "P:" + aspectType;
+  }
+}
@@ -0,0 +1,49 @@
+package com.springyweb.alfresco.tests.cmis;
+
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.ObjectId;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ContentStreamImpl;
+
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+
+/**
+ * Versioning steps shared by the tests and the benchmarks, recorded as {@link CmisEvents}.
+ */
+public final class CmisVersions {
+
+  private CmisVersions() {
+  }
+
+  /**
+   * Check a document out and back in as a new major version with new content
+   *
+   * @param content
+   *          - The content of the new version
+   * @return The new version
+   */
+  public static Document checkInNewVersion(final Session session, final Document document,
+    final String content) {
+    final Document workingCopy = CmisEvents.time(CmisEvents.CHECK_OUT,
+      new CmisEvents.Call<Document>() {
+        public Document call() {
+          return (Document)session.getObject(document.checkOut());
+        }
+      });
+
+    final ContentStream contentStream = new ContentStreamImpl(document.getName(), "text/plain",
+      content);
+    final ObjectId version = CmisEvents.time(CmisEvents.CHECK_IN, new CmisEvents.Call<ObjectId>() {
+      public ObjectId call() {
+        return workingCopy.checkIn(true, null, contentStream, null);
+      }
+
+      @Override
+      public long bytes(final ObjectId result) {
+        return contentStream.getLength();
+      }
+    });
+    return (Document)session.getObject(version);
+  }
+}
@@ -0,0 +1,51 @@
+package com.springyweb.alfresco.tests.cmis;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+
+/**
+ * Stand-ins for the OpenCMIS interfaces, for the tests that run without a repository
+ */
+public final class Stubs {
+
+  private Stubs() {
+  }
+
+  /**
+   * @return An implementation of type that answers every call through handler
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T stub(final Class<T> type, final InvocationHandler handler) {
+    return (T)Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] { type },
+      handler);
+  }
+
+  /**
+   * @return An implementation of type that supports no calls, for an object that is only passed around
+   */
+  public static <T> T stub(final Class<T> type) {
+    return stub(type, new InvocationHandler() {
+      public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        throw new UnsupportedOperationException(method.getName());
+      }
+    });
+  }
+
+  /**
+   * @return A query result whose cmis:objectId is id and whose other properties are all value, e.g the key a query is ordered by
+   */
+  public static QueryResult queryResult(final String id, final Object value) {
+    return stub(QueryResult.class, new InvocationHandler() {
+      public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        if (method.getName().equals("getPropertyValueById")) {
+          return args[0].equals(PropertyIds.OBJECT_ID) ? id : value;
+        }
+        throw new UnsupportedOperationException(method.getName());
+      }
+    });
+  }
+}
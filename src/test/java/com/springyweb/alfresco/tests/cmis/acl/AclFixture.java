@@ -0,0 +1,226 @@
+package com.springyweb.alfresco.tests.cmis.acl;
+
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_DOCUMENT_TYPE;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_FOLDER_TYPE;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_BOOLEAN;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_INT;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.documentPrefix;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.folderPrefix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Policy;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.BasicPermissions;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.Ace;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.AccessControlEntryImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.AccessControlPrincipalDataImpl;
+
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+
+/**
+ * Users, groups and documents whose visibility each user's queries must filter by permission:
+ * <ul>
+ * <li>groups groups, and users users where user i is a member of groups 0 to i modulo groups, so each sees a different share of the
+ * documents</li>
+ * <li>a root folder that does not inherit permissions, beneath which a chain of depth folders ends in the folder holding the documents</li>
+ * <li>the first folder of the chain has an ACL of aclSize ACEs, inherited by everything below it</li>
+ * <li>document j has an ACL of aclSize ACEs, one letting group j modulo groups read it</li>
+ * </ul>
+ * Every other ACE is for one of aclSize groups without members, so it adds to what the repository evaluates but not to what anyone can see.
+ * Document j has swct:propSingleInt j, swct:propSingleString {@link #stringValue(int)} and swct:propSingleBoolean true when j is even.
+ */
+public class AclFixture {
+
+  public static final String PASSWORD = "cmis-tests";
+
+  private final String prefix;
+  private final int users;
+  private final int groups;
+  private final int aclSize;
+  private final int depth;
+  private final int documents;
+
+  private final List<String> userNames = new ArrayList<String>();
+  private final List<String> groupAuthorities = new ArrayList<String>();
+  private final List<String> fillerAuthorities = new ArrayList<String>();
+  private final Map<String, Integer> documentIndexes = new HashMap<String, Integer>();
+  private String rootFolderId;
+  private String folderId;
+
+  /**
+   * @param prefix
+   *          - Starts every user, group and folder name, so that runs do not collide
+   * @param depth
+   *          - The folders between the root and the documents, at least 1
+   */
+  public AclFixture(final String prefix, final int users, final int groups, final int aclSize,
+    final int depth, final int documents) {
+    if (users < 1 || groups < 1 || aclSize < 1 || depth < 1) {
+      throw new IllegalArgumentException("Needs at least one user, group, ACE and folder");
+    }
+    this.prefix = prefix;
+    this.users = users;
+    this.groups = groups;
+    this.aclSize = aclSize;
+    this.depth = depth;
+    this.documents = documents;
+  }
+
+  /**
+   * Create the authorities, and the folders and documents beneath parent
+   */
+  public void create(final Session session, final Folder parent, final Authorities authorities) {
+    for (int g = 0; g < groups; g++) {
+      groupAuthorities.add(authorities.createGroup(prefix + "g" + g));
+    }
+    for (int f = 0; f < aclSize; f++) {
+      fillerAuthorities.add(authorities.createGroup(prefix + "f" + f));
+    }
+    for (int u = 0; u < users; u++) {
+      final String user = prefix + "u" + u;
+      authorities.createUser(user, PASSWORD);
+      for (int g = 0; g <= u % groups; g++) {
+        authorities.addMember(groupAuthorities.get(g), user);
+      }
+      userNames.add(user);
+    }
+
+    final OperationContext context = session.getDefaultContext();
+    final Folder root = createFolder(parent, prefix, Collections.<Ace> emptyList(), context);
+    rootFolderId = root.getId();
+    authorities.setInheritPermissions(rootFolderId, false);
+    Folder folder = root;
+    for (int level = 1; level <= depth; level++) {
+      folder = createFolder(folder, "level" + level, level == 1 ? fillers(aclSize)
+        : Collections.<Ace> emptyList(), context);
+    }
+    final Folder leaf = folder;
+    folderId = leaf.getId();
+
+    final Map<String, Object> props = new HashMap<String, Object>();
+    props.put(PropertyIds.OBJECT_TYPE_ID, documentPrefix(TEST_CMIS_DOCUMENT_TYPE));
+    for (int j = 0; j < documents; j++) {
+      props.put(PropertyIds.NAME, "doc" + j);
+      props.put(TEST_CMIS_PROPERY_SINGLE_INT, j);
+      props.put(TEST_CMIS_PROPERY_SINGLE_STRING, stringValue(j));
+      props.put(TEST_CMIS_PROPERY_SINGLE_BOOLEAN, j % 2 == 0);
+      final List<Ace> aces = fillers(aclSize - 1);
+      aces.add(read(groupAuthorities.get(j % groups)));
+      final Document document = CmisEvents.time(CmisEvents.CREATE_DOCUMENT,
+        new CmisEvents.Call<Document>() {
+          public Document call() {
+            return leaf.createDocument(props, null, null, Collections.<Policy> emptyList(),
+              aces, Collections.<Ace> emptyList(), context);
+          }
+        });
+      documentIndexes.put(document.getId(), j);
+    }
+  }
+
+  /**
+   * Delete the users and groups. The folders are left to the caller's tree delete.
+   */
+  public void delete(final Authorities authorities) {
+    for (final String user: userNames) {
+      authorities.deleteUser(user);
+    }
+    for (final String group: groupAuthorities) {
+      authorities.deleteGroup(group);
+    }
+    for (final String group: fillerAuthorities) {
+      authorities.deleteGroup(group);
+    }
+    userNames.clear();
+    groupAuthorities.clear();
+    fillerAuthorities.clear();
+  }
+
+  public List<String> getUserNames() {
+    return Collections.unmodifiableList(userNames);
+  }
+
+  /**
+   * @return The number of groups the user is a member of
+   */
+  public int getGroupCount(final String user) {
+    return userIndex(user) % groups + 1;
+  }
+
+  /**
+   * @return Whether the fixture lets the user read the document, false for objects not in the fixture
+   */
+  public boolean isReadable(final String user, final String documentId) {
+    final Integer j = documentIndexes.get(documentId);
+    return j != null && j % groups < getGroupCount(user);
+  }
+
+  public String getRootFolderId() {
+    return rootFolderId;
+  }
+
+  /**
+   * @return The folder holding the documents
+   */
+  public String getFolderId() {
+    return folderId;
+  }
+
+  public int getAclSize() {
+    return aclSize;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * @return e.g a0, b1, ... z25, a26
+   */
+  public static String stringValue(final int j) {
+    return (char)('a' + j % 26) + Integer.toString(j);
+  }
+
+  private int userIndex(final String user) {
+    final int index = userNames.indexOf(user);
+    if (index < 0) {
+      throw new IllegalArgumentException("Not a fixture user: " + user);
+    }
+    return index;
+  }
+
+  private List<Ace> fillers(final int count) {
+    final List<Ace> aces = new ArrayList<Ace>();
+    for (int f = 0; f < count; f++) {
+      aces.add(read(fillerAuthorities.get(f)));
+    }
+    return aces;
+  }
+
+  private static Ace read(final String principal) {
+    return new AccessControlEntryImpl(new AccessControlPrincipalDataImpl(principal), Collections
+      .singletonList(BasicPermissions.READ));
+  }
+
+  private static Folder createFolder(final Folder parent, final String name, final List<Ace> aces,
+    final OperationContext context) {
+    final Map<String, Object> props = new HashMap<String, Object>();
+    props.put(PropertyIds.NAME, name);
+    props.put(PropertyIds.OBJECT_TYPE_ID, folderPrefix(TEST_CMIS_FOLDER_TYPE));
+    return CmisEvents.time(CmisEvents.CREATE_FOLDER, new CmisEvents.Call<Folder>() {
+      public Folder call() {
+        return parent.createFolder(props, Collections.<Policy> emptyList(), aces,
+          Collections.<Ace> emptyList(), context);
+      }
+    });
+  }
+}
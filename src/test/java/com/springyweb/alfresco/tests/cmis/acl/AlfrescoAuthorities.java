@@ -0,0 +1,169 @@
+package com.springyweb.alfresco.tests.cmis.acl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.util.Base64;
+
+/**
+ * {@link Authorities} through the Alfresco REST API: the people and groups web scripts, and the Share document library's permissions script
+ * for inheritance, which CMIS has no way to turn off.
+ */
+public class AlfrescoAuthorities implements Authorities {
+
+  private static final String UTF_8 = "UTF-8";
+  private static final String GROUP_PREFIX = "GROUP_";
+  private static final String CMIS_SUFFIX = "/api/cmis";
+
+  private final String serviceUrl;
+  private final String authorization;
+
+  /**
+   * @param serviceUrl
+   *          - e.g http://localhost:8080/alfresco/s
+   * @param user
+   *          - An administrator
+   */
+  public AlfrescoAuthorities(final String serviceUrl, final String user, final String password) {
+    this.serviceUrl = serviceUrl;
+    try {
+      authorization = "Basic "
+        + Base64.getEncoder().encodeToString((user + ":" + password).getBytes(UTF_8));
+    } catch (final UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @param cmisEndpoint
+   *          - e.g http://localhost:8080/alfresco/s/api/cmis
+   */
+  public static AlfrescoAuthorities forEndpoint(final String cmisEndpoint, final String user,
+    final String password) {
+    if (!cmisEndpoint.endsWith(CMIS_SUFFIX)) {
+      throw new IllegalArgumentException("Not an Alfresco web script CMIS endpoint: "
+        + cmisEndpoint);
+    }
+    return new AlfrescoAuthorities(cmisEndpoint.substring(0, cmisEndpoint.length()
+      - CMIS_SUFFIX.length()), user, password);
+  }
+
+  public void createUser(final String userName, final String password) {
+    send("POST", "/api/people", "{" + json("userName", userName) + "," + json("password", password)
+      + "," + json("firstName", userName) + "," + json("lastName", "Test") + ","
+      + json("email", userName + "@example.com") + "}");
+  }
+
+  public String createGroup(final String shortName) {
+    send("POST", "/api/rootgroups/" + encode(shortName), "{" + json("displayName", shortName)
+      + "}");
+    return GROUP_PREFIX + shortName;
+  }
+
+  public void addMember(final String groupAuthority, final String member) {
+    send("POST", "/api/groups/" + encode(shortName(groupAuthority)) + "/children/"
+      + encode(member), "");
+  }
+
+  public void setInheritPermissions(final String objectId, final boolean inherit) {
+    send("POST", "/slingshot/doclib/permissions/" + nodePath(objectId), "{\"permissions\":[],"
+      + "\"isInherited\":" + inherit + "}");
+  }
+
+  public void deleteUser(final String userName) {
+    send("DELETE", "/api/people/" + encode(userName), null);
+  }
+
+  public void deleteGroup(final String groupAuthority) {
+    send("DELETE", "/api/groups/" + encode(shortName(groupAuthority)), null);
+  }
+
+  /**
+   * @param objectId
+   *          - e.g workspace://SpacesStore/c22f856c-6cec-4e16-9c1c-60df621bba16;1.0
+   * @return workspace/SpacesStore/c22f856c-6cec-4e16-9c1c-60df621bba16
+   */
+  static String nodePath(final String objectId) {
+    final int version = objectId.indexOf(';');
+    final String nodeRef = version < 0 ? objectId : objectId.substring(0, version);
+    final int scheme = nodeRef.indexOf("://");
+    if (scheme < 0) {
+      throw new IllegalArgumentException("Not a node reference: " + objectId);
+    }
+    return nodeRef.substring(0, scheme) + "/" + nodeRef.substring(scheme + 3);
+  }
+
+  private static String shortName(final String groupAuthority) {
+    return groupAuthority.startsWith(GROUP_PREFIX) ? groupAuthority.substring(GROUP_PREFIX
+      .length()) : groupAuthority;
+  }
+
+  private void send(final String method, final String path, final String body) {
+    try {
+      final HttpURLConnection connection = (HttpURLConnection)URI.create(serviceUrl + path)
+        .toURL().openConnection();
+      connection.setRequestMethod(method);
+      connection.setRequestProperty("Authorization", authorization);
+      if (body != null) {
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        final OutputStream out = connection.getOutputStream();
+        out.write(body.getBytes(UTF_8));
+        out.close();
+      }
+      final int status = connection.getResponseCode();
+      final String response = read(status >= 400 ? connection.getErrorStream() : connection
+        .getInputStream());
+      if (status >= 400) {
+        throw new IllegalStateException(method + " " + path + " returned " + status + ": "
+          + response);
+      }
+    } catch (final IOException e) {
+      throw new IllegalStateException(method + " " + path, e);
+    }
+  }
+
+  private static String read(final InputStream in) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    if (in != null) {
+      try {
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+      } finally {
+        in.close();
+      }
+    }
+    return out.toString(UTF_8);
+  }
+
+  private static String encode(final String segment) {
+    try {
+      return URLEncoder.encode(segment, UTF_8).replace("+", "%20");
+    } catch (final UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String json(final String name, final String value) {
+    final StringBuilder sb = new StringBuilder("\"").append(name).append("\":\"");
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int)c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+}
@@ -0,0 +1,32 @@
+package com.springyweb.alfresco.tests.cmis.acl;
+
+/**
+ * The user and group administration CMIS leaves out, needed to query as someone other than admin
+ */
+public interface Authorities {
+
+  void createUser(String userName, String password);
+
+  /**
+   * @param shortName
+   *          - e.g editors
+   * @return The group's authority, as used in ACEs, e.g GROUP_editors
+   */
+  String createGroup(String shortName);
+
+  /**
+   * @param member
+   *          - A user name or group authority
+   */
+  void addMember(String groupAuthority, String member);
+
+  /**
+   * @param inherit
+   *          - false to leave the object with only the ACEs applied to it and its descendants
+   */
+  void setInheritPermissions(String objectId, boolean inherit);
+
+  void deleteUser(String userName);
+
+  void deleteGroup(String groupAuthority);
+}
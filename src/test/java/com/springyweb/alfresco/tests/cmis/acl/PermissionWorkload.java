@@ -0,0 +1,228 @@
+package com.springyweb.alfresco.tests.cmis.acl;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+import com.springyweb.alfresco.tests.cmis.jfr.QueryDescription;
+import com.springyweb.alfresco.tests.cmis.perf.BenchmarkRecorder;
+import com.springyweb.alfresco.tests.cmis.perf.LatencyRecorder;
+
+/**
+ * Runs a query as admin and as each user of an {@link AclFixture}, checking by id that each user gets exactly the results of admin's they
+ * may read and timing them all in turn, so that the cost of filtering by permission can be set against result count, group memberships and
+ * ACL size and depth.
+ */
+public class PermissionWorkload {
+
+  public static final String ADMIN = "admin";
+
+  /**
+   * Opens a session as a user
+   */
+  public interface UserSessions {
+    Session open(String user, String password);
+  }
+
+  private final AclFixture fixture;
+  private final Map<String, Session> sessions = new LinkedHashMap<String, Session>();
+  private final BenchmarkRecorder recorder;
+  private final int warmup;
+  private final int iterations;
+
+  /**
+   * @param admin
+   *          - Sees every result, the baseline for the users
+   * @param recorder
+   *          - Records latencies as &lt;name&gt;.&lt;user&gt; and &lt;name&gt;.admin, or null
+   */
+  public PermissionWorkload(final AclFixture fixture, final Session admin,
+    final UserSessions userSessions, final BenchmarkRecorder recorder, final int warmup,
+    final int iterations) {
+    this.fixture = fixture;
+    this.recorder = recorder;
+    this.warmup = warmup;
+    this.iterations = iterations;
+    sessions.put(ADMIN, admin);
+    for (final String user: fixture.getUserNames()) {
+      sessions.put(user, userSessions.open(user, AclFixture.PASSWORD));
+    }
+  }
+
+  public Result run(final String name, final String query) {
+    final Set<String> all = objectIds(sessions.get(ADMIN), query);
+    final List<UserResult> results = new ArrayList<UserResult>();
+    for (final Map.Entry<String, Session> user: sessions.entrySet()) {
+      final boolean admin = user.getKey().equals(ADMIN);
+      final Set<String> expected = new HashSet<String>();
+      for (final String id: all) {
+        if (admin || fixture.isReadable(user.getKey(), id)) {
+          expected.add(id);
+        }
+      }
+      final Set<String> actual = admin ? all : objectIds(user.getValue(), query);
+      final String operation = name + "." + (admin ? ADMIN : "u" + (results.size() - 1));
+      results.add(new UserResult(user.getKey(), admin ? 0 : fixture.getGroupCount(user.getKey()),
+        expected, actual, recorder != null ? recorder.latencies(operation) : new LatencyRecorder(
+          operation)));
+    }
+
+    final List<Session> ordered = new ArrayList<Session>(sessions.values());
+    for (int round = 0; round < warmup + iterations; round++) {
+      for (int i = 0; i < ordered.size(); i++) {
+        final int next = (round + i) % ordered.size();
+        final long start = System.nanoTime();
+        countResults(ordered.get(next), query);
+        if (round >= warmup) {
+          results.get(next).latencies.record(System.nanoTime() - start);
+        }
+      }
+    }
+    return new Result(name, fixture, results);
+  }
+
+  private static Set<String> objectIds(final Session session, final String query) {
+    final Set<String> ids = new HashSet<String>();
+    for (final QueryResult result: CmisEvents.profile(session.query(query, false), QueryDescription
+      .of(query), session.getDefaultContext().getMaxItemsPerPage())) {
+      ids.add((String)result.getPropertyValueById(PropertyIds.OBJECT_ID));
+    }
+    return ids;
+  }
+
+  private static long countResults(final Session session, final String query) {
+    long count = 0;
+    for (@SuppressWarnings("unused")
+    final QueryResult result: CmisEvents.profile(session.query(query, false), QueryDescription
+      .of(query), session.getDefaultContext().getMaxItemsPerPage())) {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * One user's results and latency for a query
+   */
+  public static class UserResult {
+    private final String user;
+    private final int groupCount;
+    private final Set<String> expectedIds;
+    private final Set<String> resultIds;
+    private final LatencyRecorder latencies;
+
+    UserResult(final String user, final int groupCount, final Set<String> expectedIds,
+      final Set<String> resultIds, final LatencyRecorder latencies) {
+      this.user = user;
+      this.groupCount = groupCount;
+      this.expectedIds = expectedIds;
+      this.resultIds = resultIds;
+      this.latencies = latencies;
+    }
+
+    public String getUser() {
+      return user;
+    }
+
+    /**
+     * @return The groups the user is a member of, 0 for admin
+     */
+    public int getGroupCount() {
+      return groupCount;
+    }
+
+    /**
+     * @return The number of admin's results the fixture lets the user read
+     */
+    public int getExpectedCount() {
+      return expectedIds.size();
+    }
+
+    public int getResultCount() {
+      return resultIds.size();
+    }
+
+    /**
+     * @return The ids of admin's results the fixture lets the user read that the user did not get
+     */
+    public Set<String> getMissingIds() {
+      final Set<String> missing = new HashSet<String>(expectedIds);
+      missing.removeAll(resultIds);
+      return missing;
+    }
+
+    /**
+     * @return The ids the user got that the fixture does not let them read, or that admin did not get
+     */
+    public Set<String> getUnexpectedIds() {
+      final Set<String> unexpected = new HashSet<String>(resultIds);
+      unexpected.removeAll(expectedIds);
+      return unexpected;
+    }
+
+    public LatencyRecorder.LatencySnapshot getLatencies() {
+      return latencies.snapshot();
+    }
+  }
+
+  /**
+   * Every user's results for one query, admin's first
+   */
+  public static class Result {
+    private final String name;
+    private final AclFixture fixture;
+    private final List<UserResult> users;
+
+    Result(final String name, final AclFixture fixture, final List<UserResult> users) {
+      this.name = name;
+      this.fixture = fixture;
+      this.users = users;
+    }
+
+    public List<UserResult> getUsers() {
+      return users;
+    }
+
+    /**
+     * @return The users who did not get exactly the objects they may read, compared by id
+     */
+    public List<String> getMismatches() {
+      final List<String> mismatches = new ArrayList<String>();
+      for (final UserResult user: users) {
+        if (!user.resultIds.equals(user.expectedIds)) {
+          mismatches.add(user.user);
+        }
+      }
+      return mismatches;
+    }
+
+    public void print(final PrintStream out) {
+      out.println(String.format("%s: ACL size %d, depth %d", name, fixture.getAclSize(), fixture
+        .getDepth()));
+      out.println(String.format("  %-24s %6s %8s %8s %8s %8s %8s", "user", "groups", "expected",
+        "results", "p50 ms", "p95 ms", "x admin"));
+      final double admin = users.get(0).getLatencies().getPercentileMillis(50);
+      for (final UserResult user: users) {
+        final LatencyRecorder.LatencySnapshot snapshot = user.getLatencies();
+        out.println(String.format("  %-24s %6d %8d %8d %8.2f %8.2f %8.2f", user.user,
+          user.groupCount, user.getExpectedCount(), user.getResultCount(),
+          snapshot.getPercentileMillis(50), snapshot.getPercentileMillis(95),
+          snapshot.getPercentileMillis(50) / admin));
+      }
+      for (final UserResult user: users) {
+        if (!user.resultIds.equals(user.expectedIds)) {
+          out.println(String.format("  %s: results not as the ACLs allow, missing %s, unexpected %s",
+            user.user, user.getMissingIds(), user.getUnexpectedIds()));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,263 @@
+package com.springyweb.alfresco.tests.cmis.acl;
+
+import static com.springyweb.alfresco.tests.cmis.Stubs.stub;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+import org.apache.chemistry.opencmis.commons.BasicPermissions;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.Ace;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.AccessControlEntryImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.AccessControlPrincipalDataImpl;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.cache.ListItemIterable;
+
+/**
+ * Runs against an in-memory stand-in for the repository that enforces ACLs. No repository is required.
+ */
+public class PermissionWorkloadTest {
+
+  private static final String EVERYONE = "GROUP_EVERYONE";
+  private static final Pattern IN_FOLDER = Pattern.compile("in_folder\\('([^']*)'\\)");
+
+  private final StandIn repository = new StandIn();
+
+  /**
+   * Users, groups and a tree of nodes whose ACEs are inherited until a node that does not inherit
+   */
+  private static class StandIn implements Authorities {
+    private final Set<String> users = new HashSet<String>();
+    private final Map<String, Set<String>> members = new HashMap<String, Set<String>>();
+    private final Map<String, Node> nodes = new HashMap<String, Node>();
+    private boolean inheritanceFixed;
+    // Users other than admin get other ids for the objects they may read
+    private boolean wrongIds;
+    private int queries;
+
+    public void createUser(final String userName, final String password) {
+      assertTrue(users.add(userName));
+    }
+
+    public String createGroup(final String shortName) {
+      final String authority = "GROUP_" + shortName;
+      members.put(authority, new HashSet<String>());
+      return authority;
+    }
+
+    public void addMember(final String groupAuthority, final String member) {
+      members.get(groupAuthority).add(member);
+    }
+
+    public void setInheritPermissions(final String objectId, final boolean inherit) {
+      if (!inheritanceFixed) {
+        nodes.get(objectId).inherit = inherit;
+      }
+    }
+
+    public void deleteUser(final String userName) {
+      assertTrue(users.remove(userName));
+    }
+
+    public void deleteGroup(final String groupAuthority) {
+      assertTrue(members.remove(groupAuthority) != null);
+    }
+
+    boolean canRead(final String user, final Node node) {
+      if (user.equals(PermissionWorkload.ADMIN)) {
+        return true;
+      }
+      final Set<String> authorities = new HashSet<String>(Arrays.asList(user, EVERYONE));
+      for (final Map.Entry<String, Set<String>> group: members.entrySet()) {
+        if (group.getValue().contains(user)) {
+          authorities.add(group.getKey());
+        }
+      }
+      for (Node n = node; n != null; n = n.inherit ? n.parent : null) {
+        for (final Ace ace: n.aces) {
+          if (authorities.contains(ace.getPrincipalId())
+            && ace.getPermissions().contains(BasicPermissions.READ)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    Session session(final String user) {
+      return stub(Session.class, new InvocationHandler() {
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+          if (method.getName().equals("getDefaultContext")) {
+            return new OperationContextImpl();
+          }
+          if (method.getName().equals("query")) {
+            queries++;
+            final Matcher folder = IN_FOLDER.matcher((String)args[0]);
+            assertTrue(folder.find());
+            final List<QueryResult> results = new ArrayList<QueryResult>();
+            for (final Node node: nodes.values()) {
+              if (!node.folder && node.parent.id.equals(folder.group(1)) && canRead(user, node)) {
+                results.add(node.result(wrongIds && !user.equals(PermissionWorkload.ADMIN)));
+              }
+            }
+            return new ListItemIterable<QueryResult>(results, 0, results.size());
+          }
+          throw new UnsupportedOperationException(method.getName());
+        }
+      });
+    }
+  }
+
+  private class Node implements InvocationHandler {
+    private final String id;
+    private final Node parent;
+    private final boolean folder;
+    private final List<Ace> aces;
+    private boolean inherit = true;
+
+    Node(final Node parent, final String name, final boolean folder, final List<Ace> aces) {
+      this.parent = parent;
+      this.id = parent == null ? name : parent.id + "/" + name;
+      this.folder = folder;
+      this.aces = aces;
+      repository.nodes.put(id, this);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+      final String name = method.getName();
+      if (name.equals("getId")) {
+        return id;
+      }
+      if (name.equals("createFolder") || name.equals("createDocument")) {
+        final boolean isFolder = name.equals("createFolder");
+        final List<Ace> addAces = (List<Ace>)args[isFolder ? 2 : 4];
+        final Node node = new Node(this, (String)((Map<String, ?>)args[0]).get(PropertyIds.NAME),
+          isFolder, new ArrayList<Ace>(addAces));
+        return isFolder ? node.folder() : stub(Document.class, node);
+      }
+      throw new UnsupportedOperationException(name);
+    }
+
+    Folder folder() {
+      return stub(Folder.class, this);
+    }
+
+    QueryResult result(final boolean wrongId) {
+      return stub(QueryResult.class, new InvocationHandler() {
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+          if (method.getName().equals("getPropertyValueById")) {
+            return wrongId ? id + "-other" : id;
+          }
+          throw new UnsupportedOperationException(method.getName());
+        }
+      });
+    }
+  }
+
+  private Node parent() {
+    // As in a repository, everyone may read what is created beneath the parent unless inheritance is turned off
+    final Ace everyone = new AccessControlEntryImpl(new AccessControlPrincipalDataImpl(EVERYONE),
+      Collections.singletonList(BasicPermissions.READ));
+    return new Node(null, "parent", true, Collections.singletonList(everyone));
+  }
+
+  private PermissionWorkload workload(final AclFixture fixture) {
+    fixture.create(repository.session(PermissionWorkload.ADMIN), parent().folder(), repository);
+    return new PermissionWorkload(fixture, repository.session(PermissionWorkload.ADMIN),
+      new PermissionWorkload.UserSessions() {
+        public Session open(final String user, final String password) {
+          assertEquals(AclFixture.PASSWORD, password);
+          return repository.session(user);
+        }
+      }, null, 1, 3);
+  }
+
+  @Test
+  public void eachUserGetsWhatTheirGroupsMayRead() {
+    final AclFixture fixture = new AclFixture("t_", 3, 3, 4, 2, 9);
+    final PermissionWorkload.Result result = workload(fixture).run("q",
+      "SELECT * from swct:document where in_folder('parent/t_/level1/level2')");
+    assertEquals(Collections.emptyList(), result.getMismatches());
+
+    final List<PermissionWorkload.UserResult> users = result.getUsers();
+    assertEquals(4, users.size());
+    assertEquals(PermissionWorkload.ADMIN, users.get(0).getUser());
+    assertEquals(9, users.get(0).getResultCount());
+    for (int u = 0; u < 3; u++) {
+      assertEquals(u + 1, users.get(u + 1).getGroupCount());
+      assertEquals(3 * (u + 1), users.get(u + 1).getResultCount());
+      assertEquals(3, users.get(u + 1).getLatencies().getCount());
+    }
+    // One query per session to check results, then one per session per round
+    assertEquals(4 + 4 * 4, repository.queries);
+  }
+
+  @Test
+  public void aclsHaveTheirSizeAndAreInheritedFromTheTopOfTheChain() {
+    final AclFixture fixture = new AclFixture("t_", 2, 2, 5, 3, 4);
+    fixture.create(repository.session(PermissionWorkload.ADMIN), parent().folder(), repository);
+    assertFalse(repository.nodes.get(fixture.getRootFolderId()).inherit);
+    assertEquals(5, repository.nodes.get("parent/t_/level1").aces.size());
+    assertEquals(0, repository.nodes.get("parent/t_/level1/level2").aces.size());
+    assertEquals("parent/t_/level1/level2/level3", fixture.getFolderId());
+    for (int j = 0; j < 4; j++) {
+      assertEquals(5, repository.nodes.get(fixture.getFolderId() + "/doc" + j).aces.size());
+    }
+    // 2 groups and 5 without members
+    assertEquals(7, repository.members.size());
+
+    fixture.delete(repository);
+    assertTrue(repository.users.isEmpty());
+    assertTrue(repository.members.isEmpty());
+  }
+
+  @Test
+  public void inheritedAccessIsReported() {
+    repository.inheritanceFixed = true;
+    final AclFixture fixture = new AclFixture("t_", 2, 3, 1, 1, 4);
+    final PermissionWorkload.Result result = workload(fixture).run("q",
+      "SELECT * from swct:document where in_folder('parent/t_/level1')");
+    assertEquals(fixture.getUserNames(), result.getMismatches());
+  }
+
+  @Test
+  public void resultsAreComparedById() {
+    repository.wrongIds = true;
+    final AclFixture fixture = new AclFixture("t_", 2, 2, 1, 1, 4);
+    final PermissionWorkload.Result result = workload(fixture).run("q",
+      "SELECT * from swct:document where in_folder('parent/t_/level1')");
+    assertEquals(fixture.getUserNames(), result.getMismatches());
+    final PermissionWorkload.UserResult user = result.getUsers().get(1);
+    assertEquals(user.getExpectedCount(), user.getResultCount());
+    assertEquals(user.getExpectedCount(), user.getMissingIds().size());
+    assertEquals(user.getExpectedCount(), user.getUnexpectedIds().size());
+  }
+
+  @Test
+  public void nodePaths() {
+    assertEquals("workspace/SpacesStore/c22f856c", AlfrescoAuthorities
+      .nodePath("workspace://SpacesStore/c22f856c;1.0"));
+    assertEquals("workspace/SpacesStore/c22f856c", AlfrescoAuthorities
+      .nodePath("workspace://SpacesStore/c22f856c"));
+  }
+}
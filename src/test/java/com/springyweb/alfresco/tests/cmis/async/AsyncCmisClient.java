@@ -0,0 +1,258 @@
+package com.springyweb.alfresco.tests.cmis.async;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+
+/**
+ * An asynchronous facade over a session: creates return {@link CompletableFuture}s and queries a {@link Flow.Publisher} of result pages.
+ *
+ * At most maxInFlight requests are sent to the repository at once. Submitting beyond that blocks the caller until a request finishes, and
+ * query pages are only fetched as subscribers request them, so neither fast producers nor slow consumers can pile up unbounded work. Page
+ * fetches are queued rather than blocking, since they are started from {@link Flow.Subscription#request(long)}, which must not block.
+ * Cancelling a future, or a subscription, interrupts the request if it has started; on a virtual thread that aborts the blocking socket read.
+ */
+public class AsyncCmisClient implements Closeable {
+
+  private final Session session;
+  private final ExecutorService executor;
+  private final boolean ownsExecutor;
+  private final Semaphore inFlight;
+  private final int maxInFlight;
+  // Submitted without blocking and waiting for a permit
+  private final Queue<Runnable> queued = new ConcurrentLinkedQueue<Runnable>();
+
+  /**
+   * Run requests on a virtual thread each
+   */
+  public AsyncCmisClient(final Session session, final int maxInFlight) {
+    this(session, Executors.newVirtualThreadPerTaskExecutor(), true, maxInFlight);
+  }
+
+  /**
+   * @param executor
+   *          - Runs the blocking requests. Not shut down by {@link #close()}.
+   */
+  public AsyncCmisClient(final Session session, final ExecutorService executor,
+    final int maxInFlight) {
+    this(session, executor, false, maxInFlight);
+  }
+
+  private AsyncCmisClient(final Session session, final ExecutorService executor,
+    final boolean ownsExecutor, final int maxInFlight) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("maxInFlight must be at least 1");
+    }
+    this.session = session;
+    this.executor = executor;
+    this.ownsExecutor = ownsExecutor;
+    this.maxInFlight = maxInFlight;
+    this.inFlight = new Semaphore(maxInFlight);
+  }
+
+  public Session getSession() {
+    return session;
+  }
+
+  /**
+   * @return The number of requests submitted and not yet finished
+   */
+  public int getInFlight() {
+    return maxInFlight - inFlight.availablePermits();
+  }
+
+  public CompletableFuture<Document> createDocument(final Folder parent,
+    final Map<String, ?> properties, final ContentStream contentStream) {
+    return submit(new Callable<Document>() {
+      public Document call() {
+        return parent.createDocument(properties, contentStream, null);
+      }
+    });
+  }
+
+  public CompletableFuture<Folder> createFolder(final Folder parent,
+    final Map<String, ?> properties) {
+    return submit(new Callable<Folder>() {
+      public Folder call() {
+        return parent.createFolder(properties);
+      }
+    });
+  }
+
+  /**
+   * A cold publisher: each subscriber runs the query for itself, fetching the next page of pageSize results only once it has requested it
+   */
+  public Flow.Publisher<List<QueryResult>> queryPages(final String query,
+    final boolean searchAllVersions, final int pageSize) {
+    return new QueryPagePublisher(this, query, searchAllVersions, pageSize);
+  }
+
+  /**
+   * Read every result of a query, a page at a time
+   */
+  public CompletableFuture<List<QueryResult>> query(final String query,
+    final boolean searchAllVersions, final int pageSize) {
+    final CompletableFuture<List<QueryResult>> results = new CompletableFuture<List<QueryResult>>();
+    queryPages(query, searchAllVersions, pageSize).subscribe(
+      new Flow.Subscriber<List<QueryResult>>() {
+        private final List<QueryResult> all = new ArrayList<QueryResult>();
+
+        public void onSubscribe(final Flow.Subscription subscription) {
+          results.whenComplete(new BiConsumer<List<QueryResult>, Throwable>() {
+            public void accept(final List<QueryResult> value, final Throwable failure) {
+              if (results.isCancelled()) {
+                subscription.cancel();
+              }
+            }
+          });
+          subscription.request(Long.MAX_VALUE);
+        }
+
+        public void onNext(final List<QueryResult> page) {
+          all.addAll(page);
+        }
+
+        public void onError(final Throwable failure) {
+          results.completeExceptionally(failure);
+        }
+
+        public void onComplete() {
+          results.complete(all);
+        }
+      });
+    return results;
+  }
+
+  /**
+   * Run a blocking call once fewer than maxInFlight are running, blocking the caller until then
+   */
+  public <T> CompletableFuture<T> submit(final Callable<T> call) {
+    final CompletableFuture<T> result = new CompletableFuture<T>();
+    try {
+      inFlight.acquire();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      result.completeExceptionally(e);
+      return result;
+    }
+    dispatch(call, result);
+    return result;
+  }
+
+  /**
+   * Run a blocking call once fewer than maxInFlight are running, without blocking the caller: if none is free the call waits in a queue
+   * and is started as a running call finishes
+   */
+  public <T> CompletableFuture<T> submitQueued(final Callable<T> call) {
+    final CompletableFuture<T> result = new CompletableFuture<T>();
+    queued.add(new Runnable() {
+      public void run() {
+        dispatch(call, result);
+      }
+    });
+    startQueued();
+    return result;
+  }
+
+  /**
+   * @return The number of calls submitted with {@link #submitQueued(Callable)} and waiting for a permit
+   */
+  public int getQueued() {
+    return queued.size();
+  }
+
+  /**
+   * Start queued calls while there are permits for them. A call queued after the queue was seen empty is started by its own submitter.
+   */
+  private void startQueued() {
+    while (!queued.isEmpty() && inFlight.tryAcquire()) {
+      final Runnable next = queued.poll();
+      if (next == null) {
+        inFlight.release();
+      } else {
+        next.run();
+      }
+    }
+  }
+
+  private void release() {
+    inFlight.release();
+    startQueued();
+  }
+
+  /**
+   * Run a call on the executor, the caller holding a permit for it
+   */
+  private <T> void dispatch(final Callable<T> call, final CompletableFuture<T> result) {
+    // Whichever of running and cancelling gets here first owns the permit
+    final AtomicBoolean claimed = new AtomicBoolean();
+    final Future<?> task;
+    try {
+      task = executor.submit(new Runnable() {
+        public void run() {
+          if (!claimed.compareAndSet(false, true)) {
+            return;
+          }
+          T value = null;
+          Throwable failure = null;
+          try {
+            value = call.call();
+          } catch (final Throwable t) {
+            failure = t;
+          } finally {
+            // Before completing, so that callbacks submitting more work can have the permit
+            release();
+          }
+          if (failure != null) {
+            result.completeExceptionally(failure);
+          } else {
+            result.complete(value);
+          }
+        }
+      });
+    } catch (final RejectedExecutionException e) {
+      // Queued calls are rejected in turn rather than left waiting
+      release();
+      result.completeExceptionally(e);
+      return;
+    }
+    result.whenComplete(new BiConsumer<T, Throwable>() {
+      public void accept(final T value, final Throwable failure) {
+        if (result.isCancelled()) {
+          if (claimed.compareAndSet(false, true)) {
+            release();
+          }
+          task.cancel(true);
+        }
+      }
+    });
+  }
+
+  /**
+   * Shut down the executor if this client created it
+   */
+  public void close() {
+    if (ownsExecutor) {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,227 @@
+package com.springyweb.alfresco.tests.cmis.async;
+
+import static com.springyweb.alfresco.tests.cmis.Stubs.stub;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.cache.ListItemIterable;
+
+/**
+ * Runs against stub sessions and folders. No repository is required.
+ */
+public class AsyncCmisClientTest {
+
+  private static final int RESULTS = 25;
+
+  private final AtomicInteger pageRequests = new AtomicInteger();
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger peakRunning = new AtomicInteger();
+
+  private AsyncCmisClient client;
+
+  @Before
+  public void setup() {
+    final List<QueryResult> results = new ArrayList<QueryResult>();
+    for (int i = 0; i < RESULTS; i++) {
+      results.add(stub(QueryResult.class));
+    }
+    final Session session = stub(Session.class, new InvocationHandler() {
+      public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        if (method.getName().equals("getDefaultContext")) {
+          return new OperationContextImpl();
+        }
+        assertEquals("query", method.getName());
+        assertEquals(10, ((OperationContext)args[2]).getMaxItemsPerPage());
+        pageRequests.incrementAndGet();
+        return new ListItemIterable<QueryResult>(results, 0, RESULTS);
+      }
+    });
+    client = new AsyncCmisClient(session, 2);
+  }
+
+  @After
+  public void tearDown() {
+    client.close();
+  }
+
+  private static void awaitTrue(final Callable<Boolean> condition) throws Exception {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.call()) {
+      assertTrue("Timed out", System.nanoTime() < deadline);
+      Thread.sleep(5);
+    }
+  }
+
+  /**
+   * Requests pages one at a time when told to
+   */
+  private static class PageSubscriber implements Flow.Subscriber<List<QueryResult>> {
+    final List<Integer> pageSizes = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch completed = new CountDownLatch(1);
+    volatile Flow.Subscription subscription;
+
+    public void onSubscribe(final Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    public void onNext(final List<QueryResult> page) {
+      pageSizes.add(page.size());
+    }
+
+    public void onError(final Throwable failure) {
+      failure.printStackTrace();
+    }
+
+    public void onComplete() {
+      completed.countDown();
+    }
+  }
+
+  @Test
+  public void pagesAreOnlyFetchedWhenRequested() throws Exception {
+    final PageSubscriber subscriber = new PageSubscriber();
+    client.queryPages("select * from cmis:document", false, 10).subscribe(subscriber);
+    Thread.sleep(50);
+    assertEquals(0, pageRequests.get());
+
+    subscriber.subscription.request(1);
+    awaitTrue(new Callable<Boolean>() {
+      public Boolean call() {
+        return subscriber.pageSizes.size() == 1;
+      }
+    });
+    Thread.sleep(50);
+    assertEquals("No page is fetched ahead of demand", 1, pageRequests.get());
+
+    subscriber.subscription.request(5);
+    assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(10, 10, 5), subscriber.pageSizes);
+    assertEquals(3, pageRequests.get());
+  }
+
+  @Test
+  public void queryCollectsEveryPage() throws Exception {
+    final List<QueryResult> results = client.query("select * from cmis:document", false, 10).get(
+      5, TimeUnit.SECONDS);
+    assertEquals(RESULTS, results.size());
+    assertEquals(3, pageRequests.get());
+  }
+
+  @Test
+  public void inFlightRequestsAreBounded() throws Exception {
+    final Folder folder = stub(Folder.class, new InvocationHandler() {
+      public Object invoke(final Object proxy, final Method method, final Object[] args)
+        throws InterruptedException {
+        final int now = running.incrementAndGet();
+        synchronized (peakRunning) {
+          peakRunning.set(Math.max(peakRunning.get(), now));
+        }
+        Thread.sleep(20);
+        running.decrementAndGet();
+        return stub(Document.class);
+      }
+    });
+    final List<CompletableFuture<Document>> created = new ArrayList<CompletableFuture<Document>>();
+    for (int i = 0; i < 10; i++) {
+      created.add(client.createDocument(folder, Collections.<String, Object> emptyMap(), null));
+      assertTrue(client.getInFlight() <= 2);
+    }
+    CompletableFuture.allOf(created.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+    assertEquals(2, peakRunning.get());
+    assertEquals(0, client.getInFlight());
+  }
+
+  @Test
+  public void cancellingInterruptsTheRequestAndFreesItsPermit() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    final CompletableFuture<Object> slow = client.submit(new Callable<Object>() {
+      public Object call() {
+        started.countDown();
+        try {
+          Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+        } catch (final InterruptedException e) {
+          interrupted.countDown();
+        }
+        return null;
+      }
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    assertEquals(1, client.getInFlight());
+
+    slow.cancel(true);
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    awaitTrue(new Callable<Boolean>() {
+      public Boolean call() {
+        return client.getInFlight() == 0;
+      }
+    });
+  }
+
+  @Test
+  public void cancelledSubscriptionStopsFetching() throws Exception {
+    final PageSubscriber subscriber = new PageSubscriber() {
+      @Override
+      public void onNext(final List<QueryResult> page) {
+        super.onNext(page);
+        if (page.size() == 10) {
+          subscription.cancel();
+        }
+      }
+    };
+    client.queryPages("select * from cmis:document", false, 10).subscribe(subscriber);
+    subscriber.subscription.request(Long.MAX_VALUE);
+    Thread.sleep(100);
+    assertEquals(1, pageRequests.get());
+    assertFalse(subscriber.completed.await(0, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void requestingPagesDoesNotBlockWhenEveryPermitIsHeld() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<CompletableFuture<Object>> held = new ArrayList<CompletableFuture<Object>>();
+    for (int i = 0; i < 2; i++) {
+      held.add(client.submit(new Callable<Object>() {
+        public Object call() throws InterruptedException {
+          release.await();
+          return null;
+        }
+      }));
+    }
+    final PageSubscriber subscriber = new PageSubscriber();
+    client.queryPages("select * from cmis:document", false, 10).subscribe(subscriber);
+    subscriber.subscription.request(Long.MAX_VALUE);
+    assertEquals(1, client.getQueued());
+    assertEquals(0, pageRequests.get());
+
+    release.countDown();
+    assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(10, 10, 5), subscriber.pageSizes);
+    assertEquals(0, client.getQueued());
+    assertEquals(0, client.getInFlight());
+  }
+}
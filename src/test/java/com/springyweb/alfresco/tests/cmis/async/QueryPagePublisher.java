@@ -0,0 +1,171 @@
+package com.springyweb.alfresco.tests.cmis.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.function.BiConsumer;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+
+/**
+ * Publishes the results of a query a page at a time. Each page is a separate request for skipCount, maxItems results made through the
+ * client's in-flight limit, and is only made once the subscriber has requested it, with at most one page in flight per subscription. Pages
+ * wait in the client's queue for a permit, so request never blocks.
+ */
+class QueryPagePublisher implements Flow.Publisher<List<QueryResult>> {
+
+  private final AsyncCmisClient client;
+  private final String query;
+  private final boolean searchAllVersions;
+  private final int pageSize;
+
+  QueryPagePublisher(final AsyncCmisClient client, final String query,
+    final boolean searchAllVersions, final int pageSize) {
+    if (pageSize < 1) {
+      throw new IllegalArgumentException("pageSize must be at least 1");
+    }
+    this.client = client;
+    this.query = query;
+    this.searchAllVersions = searchAllVersions;
+    this.pageSize = pageSize;
+  }
+
+  public void subscribe(final Flow.Subscriber<? super List<QueryResult>> subscriber) {
+    final PageSubscription subscription = new PageSubscription(subscriber);
+    subscriber.onSubscribe(subscription);
+  }
+
+  private static class Page {
+    private final List<QueryResult> results;
+    private final boolean hasMoreItems;
+
+    private Page(final List<QueryResult> results, final boolean hasMoreItems) {
+      this.results = results;
+      this.hasMoreItems = hasMoreItems;
+    }
+  }
+
+  private class PageSubscription implements Flow.Subscription {
+
+    private final Flow.Subscriber<? super List<QueryResult>> subscriber;
+    private final OperationContext context;
+
+    // Guarded by this
+    private long demand;
+    private boolean fetching;
+    private boolean done;
+    private long skipCount;
+    private CompletableFuture<Page> current;
+
+    private PageSubscription(final Flow.Subscriber<? super List<QueryResult>> subscriber) {
+      this.subscriber = subscriber;
+      context = new OperationContextImpl(client.getSession().getDefaultContext());
+      context.setMaxItemsPerPage(pageSize);
+    }
+
+    public void request(final long n) {
+      synchronized (this) {
+        if (done) {
+          return;
+        }
+        if (n <= 0) {
+          done = true;
+        } else {
+          demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+        }
+      }
+      if (n <= 0) {
+        subscriber.onError(new IllegalArgumentException("Requested " + n + " pages"));
+        return;
+      }
+      fetchIfRequested();
+    }
+
+    public void cancel() {
+      final CompletableFuture<Page> fetch;
+      synchronized (this) {
+        done = true;
+        fetch = current;
+      }
+      if (fetch != null) {
+        fetch.cancel(true);
+      }
+    }
+
+    private void fetchIfRequested() {
+      final long skip;
+      synchronized (this) {
+        if (done || fetching || demand == 0) {
+          return;
+        }
+        fetching = true;
+        skip = skipCount;
+      }
+      final CompletableFuture<Page> fetch = client.submitQueued(new Callable<Page>() {
+        public Page call() {
+          final ItemIterable<QueryResult> page = client.getSession()
+            .query(query, searchAllVersions, context).skipTo(skip).getPage(pageSize);
+          final List<QueryResult> results = new ArrayList<QueryResult>(pageSize);
+          for (final QueryResult result: page) {
+            results.add(result);
+          }
+          return new Page(results, page.getHasMoreItems());
+        }
+      });
+      synchronized (this) {
+        current = fetch;
+      }
+      fetch.whenComplete(new BiConsumer<Page, Throwable>() {
+        public void accept(final Page page, final Throwable failure) {
+          fetched(page, failure);
+        }
+      });
+    }
+
+    private void fetched(final Page page, final Throwable failure) {
+      synchronized (this) {
+        current = null;
+        if (done) {
+          return;
+        }
+        if (failure != null) {
+          done = true;
+        }
+      }
+      if (failure != null) {
+        subscriber.onError(failure instanceof CompletionException && failure.getCause() != null
+          ? failure.getCause() : failure);
+        return;
+      }
+      final boolean last = !page.hasMoreItems || page.results.isEmpty();
+      if (!page.results.isEmpty()) {
+        synchronized (this) {
+          demand--;
+          skipCount += page.results.size();
+        }
+        subscriber.onNext(page.results);
+      }
+      synchronized (this) {
+        // Not before onNext, so that pages requested from within onNext are not delivered concurrently with it
+        fetching = false;
+        if (last) {
+          if (done) {
+            return;
+          }
+          done = true;
+        }
+      }
+      if (last) {
+        subscriber.onComplete();
+      } else {
+        fetchIfRequested();
+      }
+    }
+  }
+}
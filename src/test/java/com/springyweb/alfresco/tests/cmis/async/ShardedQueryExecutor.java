@@ -0,0 +1,270 @@
+package com.springyweb.alfresco.tests.cmis.async;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+import com.springyweb.alfresco.tests.cmis.jfr.QueryDescription;
+
+/**
+ * Runs the same sorted query over several shards, typically one in_folder query per folder, and merges the results into one sorted stream.
+ *
+ * Each shard's results are read on a thread of their own into a buffer of two pages, so the shards' pages are fetched at the same time and a
+ * shard that runs ahead waits for the merge rather than reading its whole result set into memory. The merge takes the smallest key among the
+ * shards' next results, ties going to the earlier shard. Keys are compared as the repository orders them for strings, numbers, booleans and
+ * dates, with objects missing the key first; a repository that collates strings differently to Java will merge them out of its order, which
+ * {@link #difference(List, List, String)} against the unsharded query shows.
+ */
+public class ShardedQueryExecutor implements Closeable {
+
+  private static final Object END = new Object();
+
+  private final Session session;
+  private final ExecutorService executor;
+  private final boolean ownsExecutor;
+  private final int pageSize;
+
+  /**
+   * Read each shard on a virtual thread of its own
+   */
+  public ShardedQueryExecutor(final Session session, final int pageSize) {
+    this(session, Executors.newVirtualThreadPerTaskExecutor(), true, pageSize);
+  }
+
+  /**
+   * @param executor
+   *          - Reads the shards, needing a thread per shard of a merge. Not shut down by {@link #close()}.
+   */
+  public ShardedQueryExecutor(final Session session, final ExecutorService executor,
+    final int pageSize) {
+    this(session, executor, false, pageSize);
+  }
+
+  private ShardedQueryExecutor(final Session session, final ExecutorService executor,
+    final boolean ownsExecutor, final int pageSize) {
+    if (pageSize < 1) {
+      throw new IllegalArgumentException("Page size " + pageSize);
+    }
+    this.session = session;
+    this.executor = executor;
+    this.ownsExecutor = ownsExecutor;
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * @param queries
+   *          - One per shard, each ordered by the key
+   * @param key
+   *          - The property the queries are ordered by, e.g swct:propSingleInt
+   * @param descending
+   *          - Whether the queries are ORDER BY ... DESC
+   * @return The merged results, to be read once. Close it to stop reading the shards early.
+   */
+  public Merge query(final List<String> queries, final String key, final boolean descending) {
+    return new Merge(queries, key, descending);
+  }
+
+  public void close() {
+    if (ownsExecutor) {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * @return Where two result lists differ in their ids or their order of keys, or null if they do not. Results with the same key may be in
+   *         either order.
+   */
+  public static String difference(final List<QueryResult> merged,
+    final List<QueryResult> unsharded, final String key) {
+    if (merged.size() != unsharded.size()) {
+      return merged.size() + " results, not " + unsharded.size();
+    }
+    final Map<String, Integer> ids = new LinkedHashMap<String, Integer>();
+    for (int i = 0; i < merged.size(); i++) {
+      final Object mergedKey = merged.get(i).getPropertyValueById(key);
+      final Object unshardedKey = unsharded.get(i).getPropertyValueById(key);
+      if (compareKeys(mergedKey, unshardedKey) != 0) {
+        return "Result " + i + " has " + key + " " + mergedKey + ", not " + unshardedKey;
+      }
+      count(ids, (String)merged.get(i).getPropertyValueById(PropertyIds.OBJECT_ID), 1);
+      count(ids, (String)unsharded.get(i).getPropertyValueById(PropertyIds.OBJECT_ID), -1);
+    }
+    for (final Map.Entry<String, Integer> id: ids.entrySet()) {
+      if (id.getValue() != 0) {
+        return id.getKey() + (id.getValue() > 0 ? " is only" : " is missing") + " in the merge";
+      }
+    }
+    return null;
+  }
+
+  private static void count(final Map<String, Integer> counts, final String id, final int delta) {
+    final Integer previous = counts.get(id);
+    counts.put(id, previous == null ? delta : previous + delta);
+  }
+
+  /**
+   * Null first, then by the values' natural order, numbers of different types by value
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  static int compareKeys(final Object a, final Object b) {
+    if (a == null || b == null) {
+      return a == null ? (b == null ? 0 : -1) : 1;
+    }
+    if (a instanceof Number && b instanceof Number && a.getClass() != b.getClass()) {
+      return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+    }
+    if (a instanceof Calendar && b instanceof Calendar) {
+      return ((Calendar)a).compareTo((Calendar)b);
+    }
+    if (a instanceof Comparable && a.getClass() == b.getClass()) {
+      return ((Comparable)a).compareTo(b);
+    }
+    throw new IllegalArgumentException("Cannot order " + a + " and " + b);
+  }
+
+  /**
+   * The merged results of one query over the shards
+   */
+  public class Merge implements Iterable<QueryResult>, Closeable {
+    private final List<BlockingQueue<Object>> buffers = new ArrayList<BlockingQueue<Object>>();
+    private final List<Future<?>> readers = new ArrayList<Future<?>>();
+    private final String key;
+    private final boolean descending;
+    private boolean iterated;
+
+    Merge(final List<String> queries, final String key, final boolean descending) {
+      this.key = key;
+      this.descending = descending;
+      for (final String query: queries) {
+        final BlockingQueue<Object> buffer = new ArrayBlockingQueue<Object>(2 * pageSize);
+        buffers.add(buffer);
+        readers.add(executor.submit(new Runnable() {
+          public void run() {
+            read(query, buffer);
+          }
+        }));
+      }
+    }
+
+    private void read(final String query, final BlockingQueue<Object> buffer) {
+      try {
+        try {
+          final OperationContext context = session.createOperationContext();
+          context.setMaxItemsPerPage(pageSize);
+          context.setCacheEnabled(false);
+          for (final QueryResult result: CmisEvents.profile(session.query(query, false, context),
+            QueryDescription.of(query), pageSize)) {
+            buffer.put(result);
+          }
+        } catch (final RuntimeException e) {
+          buffer.put(e);
+        }
+        buffer.put(END);
+      } catch (final InterruptedException closed) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    public Iterator<QueryResult> iterator() {
+      if (iterated) {
+        throw new IllegalStateException("Merged results can only be read once");
+      }
+      iterated = true;
+      return new MergeIterator();
+    }
+
+    /**
+     * Stop reading the shards
+     */
+    public void close() {
+      for (final Future<?> reader: readers) {
+        reader.cancel(true);
+      }
+    }
+
+    private class Head {
+      private final int shard;
+      private final QueryResult result;
+      private final Object key;
+
+      Head(final int shard, final QueryResult result) {
+        this.shard = shard;
+        this.result = result;
+        this.key = result.getPropertyValueById(Merge.this.key);
+      }
+    }
+
+    private class MergeIterator implements Iterator<QueryResult> {
+      private final PriorityQueue<Head> heads = new PriorityQueue<Head>(Math.max(buffers.size(), 1),
+        new Comparator<Head>() {
+          public int compare(final Head a, final Head b) {
+            final int byKey = compareKeys(a.key, b.key);
+            if (byKey != 0) {
+              return descending ? -byKey : byKey;
+            }
+            return a.shard - b.shard;
+          }
+        });
+
+      MergeIterator() {
+        for (int shard = 0; shard < buffers.size(); shard++) {
+          advance(shard);
+        }
+      }
+
+      private void advance(final int shard) {
+        final Object next;
+        try {
+          next = buffers.get(shard).take();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          close();
+          throw new IllegalStateException("Interrupted reading shard " + shard, e);
+        }
+        if (next instanceof RuntimeException) {
+          close();
+          throw (RuntimeException)next;
+        }
+        if (next != END) {
+          heads.add(new Head(shard, (QueryResult)next));
+        }
+      }
+
+      public boolean hasNext() {
+        return !heads.isEmpty();
+      }
+
+      public QueryResult next() {
+        final Head head = heads.poll();
+        if (head == null) {
+          throw new NoSuchElementException();
+        }
+        advance(head.shard);
+        return head.result;
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    }
+  }
+}
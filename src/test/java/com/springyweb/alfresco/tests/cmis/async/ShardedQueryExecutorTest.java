@@ -0,0 +1,173 @@
+package com.springyweb.alfresco.tests.cmis.async;
+
+import static com.springyweb.alfresco.tests.cmis.Stubs.queryResult;
+import static com.springyweb.alfresco.tests.cmis.Stubs.stub;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisRuntimeException;
+import org.junit.After;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.cache.ListItemIterable;
+
+/**
+ * Runs against a stub session whose shards are folders of integers. No repository is required.
+ */
+public class ShardedQueryExecutorTest {
+
+  private static final String KEY = "swct:propSingleInt";
+  private static final Pattern SHARD = Pattern.compile("in_folder\\('s(\\d+)'\\)");
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final List<List<QueryResult>> shards = new ArrayList<List<QueryResult>>();
+  private final ShardedQueryExecutor sharded = new ShardedQueryExecutor(stub(Session.class,
+    new InvocationHandler() {
+      public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        if (method.getName().equals("createOperationContext")) {
+          return new OperationContextImpl();
+        }
+        assertEquals("query", method.getName());
+        final Matcher shard = SHARD.matcher((String)args[0]);
+        assertTrue(shard.find());
+        final List<QueryResult> results = shards.get(Integer.parseInt(shard.group(1)));
+        if (results == null) {
+          throw new CmisRuntimeException("Shard unavailable");
+        }
+        return new ListItemIterable<QueryResult>(results, 0, results.size());
+      }
+    }), executor, 3);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Shard s holds the multiples of s + 1 below limit, so keys repeat across shards
+   */
+  private List<QueryResult> shards(final int count, final int limit, final boolean descending) {
+    final List<QueryResult> all = new ArrayList<QueryResult>();
+    for (int s = 0; s < count; s++) {
+      final List<QueryResult> shard = new ArrayList<QueryResult>();
+      for (int i = 0; i < limit; i += s + 1) {
+        shard.add(queryResult("s" + s + "/" + i, BigInteger.valueOf(i)));
+      }
+      sort(shard, descending);
+      shards.add(shard);
+      all.addAll(shard);
+    }
+    sort(all, descending);
+    return all;
+  }
+
+  private static void sort(final List<QueryResult> results, final boolean descending) {
+    Collections.sort(results, new Comparator<QueryResult>() {
+      public int compare(final QueryResult a, final QueryResult b) {
+        final int byKey = ((BigInteger)a.getPropertyValueById(KEY)).compareTo((BigInteger)b
+          .getPropertyValueById(KEY));
+        return descending ? -byKey : byKey;
+      }
+    });
+  }
+
+  private static List<String> queries(final int count) {
+    final List<String> queries = new ArrayList<String>();
+    for (int s = 0; s < count; s++) {
+      queries.add("SELECT * from swct:document where in_folder('s" + s + "') ORDER BY " + KEY);
+    }
+    return queries;
+  }
+
+  private static List<QueryResult> read(final Iterable<QueryResult> results) {
+    final List<QueryResult> list = new ArrayList<QueryResult>();
+    for (final QueryResult result: results) {
+      list.add(result);
+    }
+    return list;
+  }
+
+  @Test
+  public void mergeMatchesTheUnshardedResults() {
+    final List<QueryResult> unsharded = shards(4, 50, false);
+    final List<QueryResult> merged = read(sharded.query(queries(4), KEY, false));
+    assertNull(ShardedQueryExecutor.difference(merged, unsharded, KEY));
+  }
+
+  @Test
+  public void descending() {
+    final List<QueryResult> unsharded = shards(3, 20, true);
+    final List<QueryResult> merged = read(sharded.query(queries(3), KEY, true));
+    assertNull(ShardedQueryExecutor.difference(merged, unsharded, KEY));
+    assertEquals(BigInteger.valueOf(19), merged.get(0).getPropertyValueById(KEY));
+  }
+
+  @Test
+  public void emptyShards() {
+    shards.add(Collections.<QueryResult> emptyList());
+    shards.add(Arrays.asList(queryResult("a", BigInteger.ONE)));
+    shards.add(Collections.<QueryResult> emptyList());
+    assertEquals(1, read(sharded.query(queries(3), KEY, false)).size());
+  }
+
+  @Test
+  public void closingStopsTheShardReaders() throws InterruptedException {
+    shards(2, 1000, false);
+    final ShardedQueryExecutor.Merge merge = sharded.query(queries(2), KEY, false);
+    final Iterator<QueryResult> results = merge.iterator();
+    results.next();
+    merge.close();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void shardFailuresAreThrown() {
+    shards(1, 10, false);
+    shards.add(null);
+    try {
+      read(sharded.query(queries(2), KEY, false));
+      fail();
+    } catch (final CmisRuntimeException expected) {
+      assertEquals("Shard unavailable", expected.getMessage());
+    }
+  }
+
+  @Test
+  public void differences() {
+    final List<QueryResult> a = Arrays.asList(queryResult("x", 1L), queryResult("y", 1L),
+      queryResult("z", 2L));
+    assertNull(ShardedQueryExecutor.difference(a, Arrays.asList(a.get(1), a.get(0), a.get(2)), KEY));
+    assertEquals("Result 1 has swct:propSingleInt 1, not 2", ShardedQueryExecutor.difference(a,
+      Arrays.asList(a.get(0), a.get(2), a.get(1)), KEY));
+    assertEquals("z is only in the merge", ShardedQueryExecutor.difference(a, Arrays.asList(a
+      .get(0), a.get(1), queryResult("w", 2L)), KEY));
+  }
+
+  @Test
+  public void keysCompareAcrossNumberTypes() {
+    assertEquals(0, ShardedQueryExecutor.compareKeys(BigInteger.TEN, 10L));
+    assertTrue(ShardedQueryExecutor.compareKeys(null, "a") < 0);
+    assertTrue(ShardedQueryExecutor.compareKeys("b", "a") > 0);
+  }
+}
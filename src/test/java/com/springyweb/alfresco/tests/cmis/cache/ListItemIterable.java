@@ -0,0 +1,71 @@
+package com.springyweb.alfresco.tests.cmis.cache;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+
+/**
+ * An {@link ItemIterable} over an already materialised list of items. Used to hand cached query results back to callers that expect the lazy
+ * OpenCMIS paging interface.
+ *
+ * @param <T>
+ *          The item type
+ */
+public class ListItemIterable<T> implements ItemIterable<T> {
+
+  private final List<T> items;
+  private final long offset;
+  private final long totalNumItems;
+
+  /**
+   * @param items
+   *          - The items in this page
+   * @param offset
+   *          - The position of the first item within the full result set
+   * @param totalNumItems
+   *          - The size of the full result set as reported by the repository (-1 if unknown)
+   */
+  public ListItemIterable(final List<T> items, final long offset, final long totalNumItems) {
+    this.items = Collections.unmodifiableList(items);
+    this.offset = offset;
+    this.totalNumItems = totalNumItems;
+  }
+
+  /**
+   * @param position
+   *          - The position within the full result set, as for a live result, so a position before this page's offset is its first item
+   */
+  public ItemIterable<T> skipTo(final long position) {
+    final int from = (int)Math.min(Math.max(position - offset, 0), items.size());
+    return new ListItemIterable<T>(items.subList(from, items.size()), offset + from, totalNumItems);
+  }
+
+  public ItemIterable<T> getPage() {
+    return this;
+  }
+
+  public ItemIterable<T> getPage(final int maxNumItems) {
+    if (maxNumItems < 0 || maxNumItems >= items.size()) {
+      return this;
+    }
+    return new ListItemIterable<T>(items.subList(0, maxNumItems), offset, totalNumItems);
+  }
+
+  public Iterator<T> iterator() {
+    return items.iterator();
+  }
+
+  public long getPageNumItems() {
+    return items.size();
+  }
+
+  public boolean getHasMoreItems() {
+    return totalNumItems >= 0 && offset + items.size() < totalNumItems;
+  }
+
+  public long getTotalNumItems() {
+    return totalNumItems;
+  }
+}
@@ -0,0 +1,43 @@
+package com.springyweb.alfresco.tests.cmis.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.junit.Test;
+
+public class ListItemIterableTest {
+
+  private static ItemIterable<Integer> items(final int count) {
+    final List<Integer> items = new ArrayList<Integer>();
+    for (int i = 0; i < count; i++) {
+      items.add(i);
+    }
+    return new ListItemIterable<Integer>(items, 0, count);
+  }
+
+  private static int first(final ItemIterable<Integer> items) {
+    return items.iterator().next();
+  }
+
+  @Test
+  public void skipToIsAnAbsolutePosition() {
+    final ItemIterable<Integer> items = items(50);
+    assertEquals(20, first(items.skipTo(10).skipTo(20)));
+    assertEquals(30, items.skipTo(10).skipTo(20).getPageNumItems());
+    assertEquals(15, first(items.skipTo(10).getPage(10).skipTo(15)));
+  }
+
+  @Test
+  public void skipToIsClampedToTheItems() {
+    final ItemIterable<Integer> items = items(50).skipTo(10);
+    assertEquals(10, first(items.skipTo(5)));
+    assertEquals(0, items.skipTo(60).getPageNumItems());
+    assertFalse(items.skipTo(60).getHasMoreItems());
+    assertTrue(items.getPage(10).getHasMoreItems());
+  }
+}
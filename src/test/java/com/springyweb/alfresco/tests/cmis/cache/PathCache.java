@@ -0,0 +1,293 @@
+package com.springyweb.alfresco.tests.cmis.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+
+/**
+ * A client side cache of path to object id resolutions.
+ *
+ * The repository resolves a path one segment at a time, so getObjectByPath gets slower the deeper the object is, and a path that does not exist
+ * costs a round trip ending in a {@link CmisObjectNotFoundException}. Once a path has been resolved this cache fetches the object by id instead,
+ * and remembers paths that do not exist for negativeTtl. Entries are evicted once the cache holds more than maxEntries paths or an entry is
+ * older than its TTL.
+ *
+ * Like {@link QueryResultCache} the cache does not see changes made by other clients; an id that no longer exists is dropped and the path
+ * resolved again. Folders created, deleted or moved by this client must be reported through {@link #created(String, String)},
+ * {@link #deleted(String)} and {@link #moved(String, String)}.
+ */
+public class PathCache {
+
+  // Marks a path known not to exist
+  private static final String NOT_FOUND = new String("(not found)");
+
+  private final long ttlNanos;
+  private final long negativeTtlNanos;
+  private final Map<String, Entry> entries;
+
+  // Bumped on every write so that a lookup which was in flight during a write is not cached
+  private long generation;
+
+  private long hits;
+  private long negativeHits;
+  private long misses;
+  private long staleIds;
+  private long evictions;
+
+  /**
+   * @param maxEntries
+   *          - The maximum number of cached paths
+   * @param ttl
+   *          - How long a resolved path may be used for
+   * @param negativeTtl
+   *          - How long a path may be reported missing for without asking the repository again
+   * @param unit
+   *          - The unit of ttl and negativeTtl
+   */
+  public PathCache(final int maxEntries, final long ttl, final long negativeTtl,
+    final TimeUnit unit) {
+    this.ttlNanos = unit.toNanos(ttl);
+    this.negativeTtlNanos = unit.toNanos(negativeTtl);
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+        if (size() > maxEntries) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * @return The object at path, fetched by id if the path has been resolved before, or null if there is none
+   */
+  public CmisObject getObjectByPath(final Session session, final String path) {
+    final String key = normalize(path);
+    final String id = lookup(key);
+    if (id == NOT_FOUND) {
+      return null;
+    }
+    if (id != null) {
+      final CmisObject object = CmisEvents.time(CmisEvents.GET_OBJECT,
+        new CmisEvents.Call<CmisObject>() {
+          public CmisObject call() {
+            try {
+              return session.getObject(id);
+            } catch (final CmisObjectNotFoundException e) {
+              return null;
+            }
+          }
+
+          @Override
+          public long resultCount(final CmisObject result) {
+            return result == null ? 0 : 1;
+          }
+        });
+      if (object != null) {
+        return object;
+      }
+      // Deleted by another client, the path may have been reused
+      synchronized (this) {
+        staleIds++;
+        entries.remove(key);
+      }
+    }
+    return resolve(session, key);
+  }
+
+  /**
+   * @return The id of the object at path, without a round trip if the path has been resolved before, or null if there is none. The id may be
+   *         stale if another client has since deleted the object.
+   */
+  public String getObjectId(final Session session, final String path) {
+    final String key = normalize(path);
+    final String id = lookup(key);
+    if (id != null) {
+      return id == NOT_FOUND ? null : id;
+    }
+    final CmisObject object = resolve(session, key);
+    return object == null ? null : object.getId();
+  }
+
+  /**
+   * Record an object created by this client, replacing any record of the path not existing
+   */
+  public synchronized void created(final String path, final String objectId) {
+    generation++;
+    entries.put(normalize(path), new Entry(objectId, System.nanoTime()));
+  }
+
+  /**
+   * Record the deletion of an object, and of everything beneath it if it is a folder
+   */
+  public synchronized void deleted(final String path) {
+    generation++;
+    final String key = normalize(path);
+    removeDescendants(key);
+    entries.put(key, new Entry(NOT_FOUND, System.nanoTime()));
+  }
+
+  /**
+   * Forget a path and everything beneath it, e.g after a tree delete that left some of the tree behind, so that they are looked up again
+   */
+  public synchronized void evict(final String path) {
+    generation++;
+    final String key = normalize(path);
+    removeDescendants(key);
+    entries.remove(key);
+  }
+
+  /**
+   * Record a move or rename. Ids do not change, so the paths beneath the object are kept under its new path.
+   */
+  public synchronized void moved(final String fromPath, final String toPath) {
+    generation++;
+    final String from = normalize(fromPath);
+    final String to = normalize(toPath);
+    final Map<String, Entry> movedEntries = new LinkedHashMap<String, Entry>();
+    for (final Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it
+      .hasNext();) {
+      final Map.Entry<String, Entry> entry = it.next();
+      if (entry.getKey().equals(from) || isDescendant(entry.getKey(), from)) {
+        it.remove();
+        if (entry.getValue().id != NOT_FOUND) {
+          movedEntries.put(to + entry.getKey().substring(from.length()), entry.getValue());
+        }
+      }
+    }
+    removeDescendants(to);
+    entries.putAll(movedEntries);
+    entries.put(from, new Entry(NOT_FOUND, System.nanoTime()));
+  }
+
+  public synchronized void clear() {
+    generation++;
+    entries.clear();
+  }
+
+  /**
+   * @return The number of lookups answered from the cache, including those answered as not found
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return The number of lookups answered as not found without asking the repository
+   */
+  public synchronized long getNegativeHits() {
+    return negativeHits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return The number of cached ids found to no longer exist
+   */
+  public synchronized long getStaleIds() {
+    return staleIds;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "Path cache: entries=" + entries.size() + " hits=" + hits + " negativeHits="
+      + negativeHits + " misses=" + misses + " staleIds=" + staleIds + " evictions=" + evictions;
+  }
+
+  /**
+   * @param path
+   *          e.g /a//b/
+   * @return /a/b
+   */
+  static String normalize(final String path) {
+    final StringBuilder sb = new StringBuilder(path.length() + 1);
+    for (final String segment: path.split("/")) {
+      if (segment.length() > 0) {
+        sb.append('/').append(segment);
+      }
+    }
+    return sb.length() == 0 ? "/" : sb.toString();
+  }
+
+  private static boolean isDescendant(final String path, final String folder) {
+    return path.startsWith(folder.equals("/") ? "/" : folder + "/") && !path.equals(folder);
+  }
+
+  private void removeDescendants(final String folder) {
+    for (final Iterator<String> it = entries.keySet().iterator(); it.hasNext();) {
+      if (isDescendant(it.next(), folder)) {
+        it.remove();
+      }
+    }
+  }
+
+  private synchronized String lookup(final String key) {
+    final Entry entry = entries.get(key);
+    if (entry != null) {
+      final long age = System.nanoTime() - entry.createdNanos;
+      if (age < (entry.id == NOT_FOUND ? negativeTtlNanos : ttlNanos)) {
+        hits++;
+        if (entry.id == NOT_FOUND) {
+          negativeHits++;
+        }
+        return entry.id;
+      }
+      entries.remove(key);
+      evictions++;
+    }
+    misses++;
+    return null;
+  }
+
+  private CmisObject resolve(final Session session, final String key) {
+    final long loadGeneration;
+    synchronized (this) {
+      loadGeneration = generation;
+    }
+    final CmisObject object = CmisEvents.time(CmisEvents.GET_OBJECT_BY_PATH,
+      new CmisEvents.Call<CmisObject>() {
+        public CmisObject call() {
+          try {
+            return session.getObjectByPath(key);
+          } catch (final CmisObjectNotFoundException e) {
+            return null;
+          }
+        }
+
+        @Override
+        public long resultCount(final CmisObject result) {
+          return result == null ? 0 : 1;
+        }
+      });
+    synchronized (this) {
+      if (generation == loadGeneration) {
+        entries.put(key, new Entry(object == null ? NOT_FOUND : object.getId(), System
+          .nanoTime()));
+      }
+    }
+    return object;
+  }
+
+  private static class Entry {
+    private final String id;
+    private final long createdNanos;
+
+    Entry(final String id, final long createdNanos) {
+      this.id = id;
+      this.createdNanos = createdNanos;
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package com.springyweb.alfresco.tests.cmis.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Exercises the cache against a stub session holding a map of paths to ids, counting path and id lookups. No repository is required.
+ */
+public class PathCacheTest {
+
+  private final Map<String, String> repository = new HashMap<String, String>();
+  private PathCache cache;
+  private Session session;
+  private int pathLookups;
+  private int idLookups;
+
+  @Before
+  public void setup() {
+    cache = new PathCache(10, 1, 1, TimeUnit.HOURS);
+    repository.put("/a", "id-a");
+    repository.put("/a/b", "id-b");
+    session = (Session)Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] { Session.class }, new InvocationHandler() {
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+          if (method.getName().equals("getObjectByPath")) {
+            pathLookups++;
+            final String id = repository.get(args[0]);
+            if (id == null) {
+              throw new CmisObjectNotFoundException(String.valueOf(args[0]));
+            }
+            return object(id);
+          }
+          if (method.getName().equals("getObject") && args[0] instanceof String) {
+            idLookups++;
+            if (!repository.containsValue(args[0])) {
+              throw new CmisObjectNotFoundException(String.valueOf(args[0]));
+            }
+            return object((String)args[0]);
+          }
+          throw new UnsupportedOperationException(method.getName());
+        }
+      });
+  }
+
+  private static CmisObject object(final String id) {
+    return (CmisObject)Proxy.newProxyInstance(PathCacheTest.class.getClassLoader(),
+      new Class<?>[] { CmisObject.class }, new InvocationHandler() {
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+          if (method.getName().equals("getId")) {
+            return id;
+          }
+          throw new UnsupportedOperationException(method.getName());
+        }
+      });
+  }
+
+  @Test
+  public void resolvedPathsAreFetchedById() {
+    assertEquals("id-b", cache.getObjectByPath(session, "/a/b").getId());
+    assertEquals("id-b", cache.getObjectByPath(session, "/a//b/").getId());
+    assertEquals("id-b", cache.getObjectId(session, "/a/b"));
+    assertEquals(1, pathLookups);
+    assertEquals(1, idLookups);
+    assertEquals(2, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void missingPathsAreRemembered() {
+    assertNull(cache.getObjectByPath(session, "/c"));
+    assertNull(cache.getObjectByPath(session, "/c"));
+    assertNull(cache.getObjectId(session, "/c"));
+    assertEquals(1, pathLookups);
+    assertEquals(2, cache.getNegativeHits());
+  }
+
+  @Test
+  public void negativeEntriesExpireSooner() {
+    cache = new PathCache(10, 1, 0, TimeUnit.HOURS);
+    cache.getObjectByPath(session, "/c");
+    cache.getObjectByPath(session, "/a");
+    cache.getObjectByPath(session, "/c");
+    cache.getObjectByPath(session, "/a");
+    assertEquals(3, pathLookups);
+  }
+
+  @Test
+  public void createReplacesNotFound() {
+    assertNull(cache.getObjectId(session, "/c"));
+    repository.put("/c", "id-c");
+    cache.created("/c", "id-c");
+    assertEquals("id-c", cache.getObjectByPath(session, "/c").getId());
+    assertEquals(1, pathLookups);
+  }
+
+  @Test
+  public void deleteRemovesTheSubtree() {
+    cache.getObjectId(session, "/a");
+    cache.getObjectId(session, "/a/b");
+    repository.clear();
+    cache.deleted("/a");
+    assertNull(cache.getObjectId(session, "/a"));
+    assertEquals(2, pathLookups);
+    assertNull(cache.getObjectId(session, "/a/b"));
+    assertEquals(3, pathLookups);
+  }
+
+  @Test
+  public void evictForgetsTheSubtree() {
+    cache.getObjectId(session, "/a");
+    cache.getObjectId(session, "/a/b");
+    repository.remove("/a/b");
+    cache.evict("/a");
+    assertEquals("id-a", cache.getObjectId(session, "/a"));
+    assertNull(cache.getObjectId(session, "/a/b"));
+    assertEquals(4, pathLookups);
+  }
+
+  @Test
+  public void moveKeepsIdsUnderTheNewPath() {
+    cache.getObjectId(session, "/a");
+    cache.getObjectId(session, "/a/b");
+    repository.clear();
+    repository.put("/x", "id-a");
+    repository.put("/x/b", "id-b");
+    cache.moved("/a", "/x");
+    assertEquals("id-b", cache.getObjectId(session, "/x/b"));
+    assertEquals("id-a", cache.getObjectId(session, "/x"));
+    assertNull(cache.getObjectId(session, "/a"));
+    assertEquals(2, pathLookups);
+  }
+
+  @Test
+  public void staleIdsAreResolvedAgain() {
+    cache.getObjectId(session, "/a");
+    // Replaced by another client
+    repository.put("/a", "id-a2");
+    assertEquals("id-a2", cache.getObjectByPath(session, "/a").getId());
+    assertEquals(1, cache.getStaleIds());
+    assertEquals(2, pathLookups);
+    assertEquals("id-a2", cache.getObjectByPath(session, "/a").getId());
+    assertEquals(2, pathLookups);
+  }
+
+  @Test
+  public void normalizesPaths() {
+    assertEquals("/", PathCache.normalize("/"));
+    assertEquals("/", PathCache.normalize(""));
+    assertEquals("/a/b", PathCache.normalize("a//b/"));
+  }
+}
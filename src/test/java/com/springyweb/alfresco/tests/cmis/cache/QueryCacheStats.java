@@ -0,0 +1,68 @@
+package com.springyweb.alfresco.tests.cmis.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable snapshot of the {@link QueryResultCache} counters.
+ */
+public class QueryCacheStats {
+
+  private final long hits;
+  private final long misses;
+  private final long evictions;
+  private final long invalidations;
+  private final long savedNanos;
+
+  QueryCacheStats(final long hits, final long misses, final long evictions,
+    final long invalidations, final long savedNanos) {
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+    this.invalidations = invalidations;
+    this.savedNanos = savedNanos;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return The number of entries dropped because of the size or TTL limits
+   */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * @return The number of entries dropped because of a write made through the cache
+   */
+  public long getInvalidations() {
+    return invalidations;
+  }
+
+  /**
+   * @return hits / (hits + misses), or 0 if the cache has not been used
+   */
+  public double getHitRate() {
+    final long requests = hits + misses;
+    return requests == 0 ? 0 : (double)hits / requests;
+  }
+
+  /**
+   * @return The sum of the original round trip times of every query answered from the cache
+   */
+  public long getLatencySaved(final TimeUnit unit) {
+    return unit.convert(savedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("hits=%d misses=%d hitRate=%.2f evictions=%d invalidations=%d saved=%dms",
+      hits, misses, getHitRate(), evictions, invalidations,
+      getLatencySaved(TimeUnit.MILLISECONDS));
+  }
+}
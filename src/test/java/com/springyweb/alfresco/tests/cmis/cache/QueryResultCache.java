@@ -0,0 +1,366 @@
+package com.springyweb.alfresco.tests.cmis.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+
+/**
+ * A client side cache of materialised query results.
+ *
+ * Entries are keyed by the normalised query text, the searchAllVersions flag and the paging parameters, and are evicted once the cache holds more
+ * than maxEntries results or an entry is older than the TTL.
+ *
+ * The cache does not see writes made by other clients. Writes made by this client must be reported through {@link #folderCreated(String, String)},
+ * {@link #documentCreated(String, String)}, {@link #objectChanged(String)} and {@link #treeDeleted(String)} so that every entry whose
+ * in_folder/in_tree scope covers the written folder is dropped. Queries without a folder scope are dropped on every write.
+ */
+public class QueryResultCache {
+
+  // e.g in_folder('workspace://SpacesStore/c22f...') or in_tree(d, 'workspace://SpacesStore/c22f...')
+  private static final Pattern FOLDER_SCOPE = Pattern.compile(
+    "(?i)\\b(in_folder|in_tree)\\s*\\(\\s*(?:[\\w:]+\\s*,\\s*)?'([^']*)'\\s*\\)");
+
+  private final long ttlNanos;
+  private final Map<Key, CachedResult> entries;
+
+  // Folder and document parents learned from the writes made through this cache. A null value marks the repository root.
+  private final Map<String, String> knownParents = new HashMap<String, String>();
+
+  // Bumped on every write so that a query which was in flight during a write is not cached
+  private long generation;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long invalidations;
+  private long savedNanos;
+
+  /**
+   * @param maxEntries
+   *          - The maximum number of cached query results
+   * @param ttl
+   *          - How long an entry may be served for
+   * @param unit
+   *          - The unit of ttl
+   */
+  public QueryResultCache(final int maxEntries, final long ttl, final TimeUnit unit) {
+    this.ttlNanos = unit.toNanos(ttl);
+    this.entries = new LinkedHashMap<Key, CachedResult>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Key, CachedResult> eldest) {
+        if (size() > maxEntries) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Execute a query reading all results, answering from the cache where possible
+   */
+  public ItemIterable<QueryResult> query(final Session session, final String query,
+    final boolean searchAllVersions) {
+
+    return query(session, query, searchAllVersions, 0, -1);
+  }
+
+  /**
+   *
+   * @param session
+   * @param query
+   * @param searchAllVersions
+   * @param skipCount
+   *          - The number of results to skip
+   * @param maxItems
+   *          - The maximum number of results to return, or -1 for all of them
+   * @return The (materialised) query results
+   */
+  public ItemIterable<QueryResult> query(final Session session, final String query,
+    final boolean searchAllVersions, final long skipCount, final int maxItems) {
+
+    final Key key = new Key(normalize(query), searchAllVersions, skipCount, maxItems);
+    final long loadGeneration;
+    synchronized (this) {
+      final CachedResult cached = lookup(key);
+      if (cached != null) {
+        hits++;
+        savedNanos += cached.loadNanos;
+        return cached.toItemIterable();
+      }
+      misses++;
+      loadGeneration = generation;
+    }
+
+    final long start = System.nanoTime();
+    ItemIterable<QueryResult> results = session.query(query, searchAllVersions);
+    if (skipCount > 0) {
+      results = results.skipTo(skipCount);
+    }
+    if (maxItems >= 0) {
+      results = results.getPage(maxItems);
+    }
+    final List<QueryResult> items = new ArrayList<QueryResult>();
+    for (final QueryResult result: results) {
+      items.add(result);
+    }
+    final long end = System.nanoTime();
+
+    final CachedResult entry = new CachedResult(items, skipCount, results.getTotalNumItems(),
+      scopesOf(query), end - start, end);
+    synchronized (this) {
+      if (generation == loadGeneration) {
+        entries.put(key, entry);
+      }
+    }
+    return entry.toItemIterable();
+  }
+
+  /**
+   * Record a folder whose parent is known without the folder having been created through this cache, e.g. the repository root.
+   *
+   * @param folderId
+   * @param parentId
+   *          - The parent folder id or null if folderId is the root folder
+   */
+  public synchronized void registerFolder(final String folderId, final String parentId) {
+    knownParents.put(folderId, parentId);
+  }
+
+  public synchronized void folderCreated(final String parentId, final String folderId) {
+    knownParents.put(folderId, parentId);
+    invalidate(parentId, Collections.<String> emptySet());
+  }
+
+  public synchronized void documentCreated(final String parentId, final String documentId) {
+    knownParents.put(documentId, parentId);
+    invalidate(parentId, Collections.<String> emptySet());
+  }
+
+  /**
+   * Report a change to an existing object's properties or aspects.
+   */
+  public synchronized void objectChanged(final String objectId) {
+    if (knownParents.containsKey(objectId)) {
+      invalidate(knownParents.get(objectId), Collections.<String> emptySet());
+    } else {
+      invalidateAll();
+    }
+  }
+
+  public synchronized void treeDeleted(final String folderId) {
+    final Set<String> removed = descendantsOf(folderId);
+    removed.add(folderId);
+    if (knownParents.get(folderId) != null) {
+      invalidate(knownParents.get(folderId), removed);
+    } else {
+      invalidateAll();
+    }
+    knownParents.keySet().removeAll(removed);
+  }
+
+  public synchronized void clear() {
+    generation++;
+    entries.clear();
+  }
+
+  public synchronized QueryCacheStats getStats() {
+    return new QueryCacheStats(hits, misses, evictions, invalidations, savedNanos);
+  }
+
+  /**
+   * Collapse whitespace outside of string literals so that queries that only differ in layout share an entry
+   *
+   * @param query
+   *          e.g SELECT * from swct:document where in_folder('a') and swct:propSingleString = 'b  c'%n
+   * @return SELECT * from swct:document where in_folder('a') and swct:propSingleString = 'b  c'
+   */
+  static String normalize(final String query) {
+    final StringBuilder sb = new StringBuilder(query.length());
+    boolean inLiteral = false;
+    boolean pendingSpace = false;
+    for (int i = 0; i < query.length(); i++) {
+      final char c = query.charAt(i);
+      if (inLiteral) {
+        sb.append(c);
+        if (c == '\\' && i + 1 < query.length()) {
+          sb.append(query.charAt(++i));
+        } else if (c == '\'') {
+          inLiteral = false;
+        }
+      } else if (Character.isWhitespace(c)) {
+        pendingSpace = sb.length() > 0;
+      } else {
+        if (pendingSpace) {
+          sb.append(' ');
+          pendingSpace = false;
+        }
+        sb.append(c);
+        inLiteral = c == '\'';
+      }
+    }
+    return sb.toString();
+  }
+
+  private static List<Scope> scopesOf(final String query) {
+    final List<Scope> scopes = new ArrayList<Scope>();
+    final Matcher matcher = FOLDER_SCOPE.matcher(query);
+    while (matcher.find()) {
+      scopes.add(new Scope(matcher.group(1).equalsIgnoreCase("in_tree"), matcher.group(2)));
+    }
+    return scopes;
+  }
+
+  private CachedResult lookup(final Key key) {
+    final CachedResult entry = entries.get(key);
+    if (entry != null && System.nanoTime() - entry.createdNanos > ttlNanos) {
+      entries.remove(key);
+      evictions++;
+      return null;
+    }
+    return entry;
+  }
+
+  private Set<String> descendantsOf(final String folderId) {
+    final Set<String> descendants = new HashSet<String>();
+    boolean added = true;
+    while (added) {
+      added = false;
+      for (final Map.Entry<String, String> link: knownParents.entrySet()) {
+        final String parentId = link.getValue();
+        if (parentId != null && (parentId.equals(folderId) || descendants.contains(parentId))) {
+          added |= descendants.add(link.getKey());
+        }
+      }
+    }
+    return descendants;
+  }
+
+  /**
+   * Drop every entry that may include the children of folderId or any of the removed objects
+   */
+  private void invalidate(final String folderId, final Set<String> removed) {
+    generation++;
+
+    // Walk up through the known parents. If we reach the root we know every in_tree scope that can see folderId.
+    final Set<String> ancestry = new HashSet<String>();
+    boolean reachedRoot = false;
+    String current = folderId;
+    while (current != null && ancestry.add(current) && knownParents.containsKey(current)) {
+      current = knownParents.get(current);
+      reachedRoot = current == null;
+    }
+
+    for (final Iterator<CachedResult> it = entries.values().iterator(); it.hasNext();) {
+      if (it.next().isAffectedBy(folderId, ancestry, reachedRoot, removed)) {
+        it.remove();
+        invalidations++;
+      }
+    }
+  }
+
+  private void invalidateAll() {
+    generation++;
+    invalidations += entries.size();
+    entries.clear();
+  }
+
+  private static class Scope {
+    private final boolean tree;
+    private final String folderId;
+
+    Scope(final boolean tree, final String folderId) {
+      this.tree = tree;
+      this.folderId = folderId;
+    }
+  }
+
+  private static class CachedResult {
+    private final List<QueryResult> items;
+    private final long offset;
+    private final long totalNumItems;
+    private final List<Scope> scopes;
+    private final long loadNanos;
+    private final long createdNanos;
+
+    CachedResult(final List<QueryResult> items, final long offset, final long totalNumItems,
+      final List<Scope> scopes, final long loadNanos, final long createdNanos) {
+      this.items = items;
+      this.offset = offset;
+      this.totalNumItems = totalNumItems;
+      this.scopes = scopes;
+      this.loadNanos = loadNanos;
+      this.createdNanos = createdNanos;
+    }
+
+    ItemIterable<QueryResult> toItemIterable() {
+      return new ListItemIterable<QueryResult>(items, offset, totalNumItems);
+    }
+
+    boolean isAffectedBy(final String folderId, final Set<String> ancestry,
+      final boolean reachedRoot, final Set<String> removed) {
+
+      if (scopes.isEmpty()) {
+        return true;
+      }
+      for (final Scope scope: scopes) {
+        if (removed.contains(scope.folderId) || scope.folderId.equals(folderId)) {
+          return true;
+        }
+        if (scope.tree && (!reachedRoot || ancestry.contains(scope.folderId))) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static class Key {
+    private final String query;
+    private final boolean searchAllVersions;
+    private final long skipCount;
+    private final int maxItems;
+
+    Key(final String query, final boolean searchAllVersions, final long skipCount,
+      final int maxItems) {
+      this.query = query;
+      this.searchAllVersions = searchAllVersions;
+      this.skipCount = skipCount;
+      this.maxItems = maxItems;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key)o;
+      return query.equals(other.query) && searchAllVersions == other.searchAllVersions
+        && skipCount == other.skipCount && maxItems == other.maxItems;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = query.hashCode();
+      result = 31 * result + (searchAllVersions ? 1 : 0);
+      result = 31 * result + (int)(skipCount ^ (skipCount >>> 32));
+      return 31 * result + maxItems;
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package com.springyweb.alfresco.tests.cmis.cache;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Exercises the cache against a stub session which counts round trips. No repository is required.
+ */
+public class QueryResultCacheTest {
+
+  private static final String ROOT = "root";
+  private static final String FOLDER_A = "a";
+  private static final String FOLDER_B = "b";
+  private static final String FOLDER_C = "c";
+
+  private static final String IN_FOLDER_A = "SELECT * from swct:document where in_folder('a')";
+  private static final String IN_FOLDER_B = "SELECT * from swct:document where in_folder('b')";
+  private static final String IN_TREE_A = "SELECT * FROM cmis:folder WHERE in_tree('a')";
+  private static final String UNSCOPED = "select d.* from swct:document as d";
+
+  private QueryResultCache cache;
+  private Session session;
+  private int roundTrips;
+
+  @Before
+  public void setup() {
+    cache = new QueryResultCache(10, 1, TimeUnit.HOURS);
+    session = (Session)Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] { Session.class }, new InvocationHandler() {
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+          if (!method.getName().equals("query")) {
+            throw new UnsupportedOperationException(method.getName());
+          }
+          roundTrips++;
+          return new ListItemIterable<QueryResult>(new ArrayList<QueryResult>(), 0, 0);
+        }
+      });
+
+    // root <- a <- b, root <- c
+    cache.registerFolder(ROOT, null);
+    cache.folderCreated(ROOT, FOLDER_A);
+    cache.folderCreated(FOLDER_A, FOLDER_B);
+    cache.folderCreated(ROOT, FOLDER_C);
+  }
+
+  @Test
+  public void repeatedQueriesAreServedFromCache() {
+    cache.query(session, IN_FOLDER_A, false);
+    cache.query(session, "SELECT *  from swct:document\twhere in_folder('a')\n", false);
+    assertEquals(1, roundTrips);
+
+    // searchAllVersions and paging are part of the key
+    cache.query(session, IN_FOLDER_A, true);
+    cache.query(session, IN_FOLDER_A, false, 10, 5);
+    assertEquals(3, roundTrips);
+
+    assertEquals(1, cache.getStats().getHits());
+    assertEquals(3, cache.getStats().getMisses());
+  }
+
+  @Test
+  public void literalWhitespaceIsSignificant() {
+    cache.query(session, IN_FOLDER_A + " and cmis:name = 'a b'", false);
+    cache.query(session, IN_FOLDER_A + " and cmis:name = 'a  b'", false);
+    assertEquals(2, roundTrips);
+  }
+
+  @Test
+  public void createInvalidatesOnlyCoveringScopes() {
+    cache.query(session, IN_FOLDER_A, false);
+    cache.query(session, IN_FOLDER_B, false);
+    cache.query(session, IN_TREE_A, false);
+    cache.query(session, UNSCOPED, false);
+
+    cache.documentCreated(FOLDER_B, "doc");
+
+    cache.query(session, IN_FOLDER_A, false);
+    assertEquals("in_folder of the parent's parent is unaffected", 4, roundTrips);
+    cache.query(session, IN_FOLDER_B, false);
+    cache.query(session, IN_TREE_A, false);
+    cache.query(session, UNSCOPED, false);
+    assertEquals(7, roundTrips);
+    assertEquals(3, cache.getStats().getInvalidations());
+  }
+
+  @Test
+  public void unrelatedTreeIsUnaffected() {
+    cache.query(session, IN_TREE_A, false);
+    cache.documentCreated(FOLDER_C, "doc");
+    cache.query(session, IN_TREE_A, false);
+    assertEquals(1, roundTrips);
+  }
+
+  @Test
+  public void aspectChangeInvalidatesDocumentParent() {
+    cache.documentCreated(FOLDER_B, "doc");
+    cache.query(session, IN_FOLDER_A, false);
+    cache.query(session, IN_FOLDER_B, false);
+
+    cache.objectChanged("doc");
+    cache.query(session, IN_FOLDER_A, false);
+    cache.query(session, IN_FOLDER_B, false);
+    assertEquals(3, roundTrips);
+
+    // An object we know nothing about could be anywhere
+    cache.objectChanged("unknown");
+    cache.query(session, IN_FOLDER_A, false);
+    assertEquals(4, roundTrips);
+  }
+
+  @Test
+  public void deleteTreeInvalidatesSubtreeAndParent() {
+    cache.query(session, IN_FOLDER_B, false);
+    cache.query(session, "SELECT * FROM cmis:folder WHERE in_folder('root')", false);
+    cache.query(session, "SELECT * FROM cmis:folder WHERE in_folder('c')", false);
+
+    cache.treeDeleted(FOLDER_A);
+
+    cache.query(session, IN_FOLDER_B, false);
+    cache.query(session, "SELECT * FROM cmis:folder WHERE in_folder('root')", false);
+    cache.query(session, "SELECT * FROM cmis:folder WHERE in_folder('c')", false);
+    assertEquals(5, roundTrips);
+  }
+
+  @Test
+  public void sizeAndTtlEviction() {
+    final QueryResultCache small = new QueryResultCache(1, 1, TimeUnit.HOURS);
+    small.query(session, IN_FOLDER_A, false);
+    small.query(session, IN_FOLDER_B, false);
+    small.query(session, IN_FOLDER_A, false);
+    assertEquals(3, roundTrips);
+
+    final QueryResultCache expired = new QueryResultCache(10, 0, TimeUnit.NANOSECONDS);
+    expired.query(session, IN_FOLDER_A, false);
+    expired.query(session, IN_FOLDER_A, false);
+    assertEquals(5, roundTrips);
+    assertEquals(1, expired.getStats().getEvictions());
+  }
+}
@@ -0,0 +1,406 @@
+package com.springyweb.alfresco.tests.cmis.changes;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.chemistry.opencmis.client.api.ChangeEvent;
+import org.apache.chemistry.opencmis.client.api.ChangeEvents;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Property;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.RepositoryInfo;
+import org.apache.chemistry.opencmis.commons.enums.CapabilityChanges;
+import org.apache.chemistry.opencmis.commons.enums.ChangeType;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+
+import com.springyweb.alfresco.tests.cmis.Predicate;
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+import com.springyweb.alfresco.tests.cmis.perf.LatencyRecorder;
+
+/**
+ * A local copy of the objects of some types and their properties, kept up to date from the repository's change log rather than by querying.
+ *
+ * The log is read from its latest token when the mirror is created, so only objects created or changed afterwards are mirrored, along with the
+ * object of the change at that token when the repository reads from it inclusively, as Alfresco does. Each created or updated object's
+ * properties are taken from the change event when the repository sends them (changes capability properties or all) and
+ * fetched by id otherwise, as Alfresco only sends ids. Alfresco writes the change log through auditing, which must be enabled with
+ * audit.enabled=true and audit.cmischangelog.enabled=true.
+ *
+ * Tests can wait for a write to reach the mirror with {@link #await(String, String, Object, long)} instead of querying for it, and work out
+ * the ids a query should return with {@link #matching(String, Predicate, Object...)}. Lag is the time from the repository's change time to
+ * the change being applied, so it includes any difference between the repository's clock and this one.
+ */
+public class ChangeLogMirror implements Closeable {
+
+  private static final int PAGE_SIZE = 1000;
+
+  private final Session session;
+  private final Set<String> typeIds;
+  private final String propertyPrefix;
+  private final boolean eventProperties;
+  private final OperationContext context;
+  private final LatencyRecorder lag = new LatencyRecorder("changeLog.lag");
+  private final long startNanos = System.nanoTime();
+
+  /** Mirrored properties, each as a list of values, by object id. Guarded by this. */
+  private final Map<String, Map<String, List<?>>> objects = new HashMap<String, Map<String, List<?>>>();
+  private final Object pollLock = new Object();
+  private String token;
+  private String lastChange;
+  private long events;
+  private long fetches;
+  private volatile RuntimeException failure;
+  private volatile Thread poller;
+
+  /**
+   * @param typeIds
+   *          - The object type ids to mirror, e.g D:swct:document
+   * @param propertyPrefix
+   *          - Mirror the properties whose ids start with this, e.g swct:
+   */
+  public ChangeLogMirror(final Session session, final Set<String> typeIds,
+    final String propertyPrefix) {
+    this.session = session;
+    this.typeIds = new TreeSet<String>(typeIds);
+    this.propertyPrefix = propertyPrefix;
+    // The session caches the repository info from when it was opened, so ask for the latest token
+    final RepositoryInfo info = session.getBinding().getRepositoryService().getRepositoryInfo(
+      session.getRepositoryInfo().getId(), null);
+    final CapabilityChanges changes = info.getCapabilities().getChangesCapability();
+    if (changes == null || changes == CapabilityChanges.NONE) {
+      throw new IllegalStateException("The repository does not keep a change log");
+    }
+    eventProperties = changes == CapabilityChanges.PROPERTIES || changes == CapabilityChanges.ALL;
+    token = info.getLatestChangeLogToken();
+    context = session.createOperationContext();
+    context.setFilterString("*");
+    context.setIncludeAcls(false);
+    context.setIncludeAllowableActions(false);
+    context.setIncludePolicies(false);
+    context.setRenditionFilterString("cmis:none");
+    context.setCacheEnabled(false);
+  }
+
+  /**
+   * Poll the change log every interval on a thread of its own until closed. A failure stops polling and is thrown from the await methods.
+   */
+  public void start(final long intervalMillis) {
+    poller = Thread.ofVirtual().name("change-log").start(new Runnable() {
+      public void run() {
+        try {
+          while (!Thread.currentThread().isInterrupted()) {
+            poll();
+            Thread.sleep(intervalMillis);
+          }
+        } catch (final InterruptedException closed) {
+          return;
+        } catch (final RuntimeException e) {
+          failure = e;
+          synchronized (ChangeLogMirror.this) {
+            ChangeLogMirror.this.notifyAll();
+          }
+        }
+      }
+    });
+  }
+
+  public void close() {
+    final Thread thread = poller;
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  /**
+   * Read and apply every change since the last poll
+   *
+   * @return The number of change events applied
+   */
+  public long poll() {
+    synchronized (pollLock) {
+      long read = 0;
+      boolean more = true;
+      while (more) {
+        final ChangeEvents changes = CmisEvents.time(CmisEvents.GET_CONTENT_CHANGES,
+          new CmisEvents.Call<ChangeEvents>() {
+            public ChangeEvents call() {
+              return session.getContentChanges(token, eventProperties, PAGE_SIZE, context);
+            }
+
+            @Override
+            public long resultCount(final ChangeEvents result) {
+              return result.getChangeEvents().size();
+            }
+          });
+        final List<ChangeEvent> page = changes.getChangeEvents();
+        for (final ChangeEvent change: page) {
+          // A repository may start the next read with the change at the token, already applied
+          final String key = change.getObjectId() + ' ' + change.getChangeType() + ' '
+            + (change.getChangeTime() == null ? null : change.getChangeTime().getTimeInMillis());
+          if (!key.equals(lastChange)) {
+            apply(change);
+            lastChange = key;
+            read++;
+          }
+        }
+        if (changes.getLatestChangeLogToken() != null) {
+          token = changes.getLatestChangeLogToken();
+        }
+        more = changes.getHasMoreItems() && !page.isEmpty();
+      }
+      synchronized (this) {
+        events += read;
+        notifyAll();
+      }
+      return read;
+    }
+  }
+
+  private void apply(final ChangeEvent change) {
+    final String id = change.getObjectId();
+    if (change.getChangeType() == ChangeType.DELETED) {
+      remove(id);
+    } else if (change.getChangeType() == ChangeType.CREATED
+      || change.getChangeType() == ChangeType.UPDATED) {
+      final Map<String, List<?>> properties = change.getProperties();
+      if (eventProperties && properties != null
+        && properties.containsKey(PropertyIds.OBJECT_TYPE_ID)) {
+        put(id, properties);
+      } else {
+        fetch(id);
+      }
+    }
+    if (change.getChangeTime() != null) {
+      lag.record(Math.max(0, TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()
+        - change.getChangeTime().getTimeInMillis())));
+    }
+  }
+
+  private void fetch(final String id) {
+    final CmisObject object = CmisEvents.time(CmisEvents.GET_OBJECT,
+      new CmisEvents.Call<CmisObject>() {
+        public CmisObject call() {
+          try {
+            return session.getObject(id, context);
+          } catch (final CmisObjectNotFoundException deletedSince) {
+            return null;
+          }
+        }
+
+        @Override
+        public long resultCount(final CmisObject result) {
+          return result == null ? 0 : 1;
+        }
+      });
+    if (object == null) {
+      remove(id);
+    } else {
+      final Map<String, List<?>> properties = new HashMap<String, List<?>>();
+      for (final Property<?> property: object.getProperties()) {
+        properties.put(property.getId(), property.getValues());
+      }
+      put(id, properties);
+    }
+    synchronized (this) {
+      fetches++;
+    }
+  }
+
+  private synchronized void put(final String id, final Map<String, List<?>> properties) {
+    final List<?> type = properties.get(PropertyIds.OBJECT_TYPE_ID);
+    if (type == null || type.isEmpty() || !typeIds.contains(type.get(0))) {
+      return;
+    }
+    final Map<String, List<?>> mirrored = new HashMap<String, List<?>>();
+    for (final Map.Entry<String, List<?>> property: properties.entrySet()) {
+      if (property.getKey().startsWith(propertyPrefix)) {
+        mirrored.put(property.getKey(), property.getValue() == null ? Collections.emptyList()
+          : Collections.unmodifiableList(new ArrayList<Object>(property.getValue())));
+      }
+    }
+    objects.put(id, Collections.unmodifiableMap(mirrored));
+  }
+
+  private synchronized void remove(final String id) {
+    objects.remove(id);
+  }
+
+  /**
+   * @return The mirrored properties of an object, each as a list of values, or null if it is not mirrored
+   */
+  public synchronized Map<String, List<?>> get(final String id) {
+    return objects.get(id);
+  }
+
+  public synchronized int size() {
+    return objects.size();
+  }
+
+  /**
+   * Wait for an object's property to have a value, a single value or for a multi-valued property a list
+   *
+   * @return false if it did not within the timeout
+   */
+  public synchronized boolean await(final String id, final String property, final Object value,
+    final long timeoutMillis) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    while (!hasValue(id, property, value)) {
+      if (!waitUntil(deadline)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Wait for an object to be deleted
+   *
+   * @return false if it was still mirrored after the timeout
+   */
+  public synchronized boolean awaitDeleted(final String id, final long timeoutMillis)
+    throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    while (objects.containsKey(id)) {
+      if (!waitUntil(deadline)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean waitUntil(final long deadline) throws InterruptedException {
+    if (failure != null) {
+      throw new IllegalStateException("Change log polling failed", failure);
+    }
+    final long remaining = deadline - System.nanoTime();
+    if (remaining <= 0) {
+      return false;
+    }
+    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    return true;
+  }
+
+  private boolean hasValue(final String id, final String property, final Object value) {
+    final Map<String, List<?>> properties = objects.get(id);
+    if (properties == null) {
+      return false;
+    }
+    final List<?> values = properties.get(property);
+    final List<?> expected = value instanceof List ? (List<?>)value
+      : value == null ? Collections.emptyList() : Collections.singletonList(value);
+    if (values == null || values.size() != expected.size()) {
+      return values == null && expected.isEmpty();
+    }
+    for (int i = 0; i < values.size(); i++) {
+      if (compare(values.get(i), expected.get(i)) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The ids of the mirrored objects a query with this predicate on a property would return. Comparisons, IN, IS NULL and IS NOT NULL apply
+   * to a property's first value and ANY to all of them; LIKE and CONTAINS depend on the repository's text analysis and are not supported.
+   */
+  public synchronized Set<String> matching(final String property, final Predicate predicate,
+    final Object... values) {
+    final Set<String> ids = new TreeSet<String>();
+    for (final Map.Entry<String, Map<String, List<?>>> object: objects.entrySet()) {
+      final List<?> actual = object.getValue().get(property);
+      if (matches(actual == null ? Collections.emptyList() : actual, predicate, values)) {
+        ids.add(object.getKey());
+      }
+    }
+    return ids;
+  }
+
+  private static boolean matches(final List<?> actual, final Predicate predicate,
+    final Object[] values) {
+    final Object first = actual.isEmpty() ? null : actual.get(0);
+    switch (predicate) {
+      case IS_NULL:
+        return first == null;
+      case IS_NOT_NULL:
+        return first != null;
+      case IN:
+        return first != null && contains(values, first);
+      case ANY:
+        for (final Object value: actual) {
+          if (contains(values, value)) {
+            return true;
+          }
+        }
+        return false;
+      case QUANTIFIED_COMPARISION:
+        return contains(actual.toArray(), values[0]);
+      case LIKE:
+      case CONTAINS:
+        throw new IllegalArgumentException(predicate + " cannot be evaluated locally");
+      default:
+        if (first == null) {
+          return false;
+        }
+        final int comparison = compare(first, values[0]);
+        switch (predicate) {
+          case EQUALS:
+            return comparison == 0;
+          case NOT_EQUALS:
+            return comparison != 0;
+          case GREATER_THAN:
+            return comparison > 0;
+          case GREATER_THAN_EQUAL_TO:
+            return comparison >= 0;
+          case LESS_THAN:
+            return comparison < 0;
+          default:
+            return comparison <= 0;
+        }
+    }
+  }
+
+  private static boolean contains(final Object[] values, final Object value) {
+    for (final Object candidate: values) {
+      if (candidate != null && compare(value, candidate) == 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Numbers by value whatever their type, as the repository returns BigInteger and BigDecimal for values set as int or double
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  static int compare(final Object a, final Object b) {
+    if (a instanceof Number && b instanceof Number) {
+      return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+    }
+    if (a instanceof Calendar && b instanceof Calendar) {
+      return Long.signum(((Calendar)a).getTimeInMillis() - ((Calendar)b).getTimeInMillis());
+    }
+    if (a instanceof Comparable && a.getClass() == b.getClass()) {
+      return ((Comparable)a).compareTo(b);
+    }
+    throw new IllegalArgumentException("Cannot compare " + a + " and " + b);
+  }
+
+  /**
+   * @return Events read, objects fetched, throughput and lag so far
+   */
+  public synchronized ChangeLogStats getStats() {
+    return new ChangeLogStats(events, fetches, objects.size(), System.nanoTime() - startNanos,
+      lag.snapshot());
+  }
+}
@@ -0,0 +1,265 @@
+package com.springyweb.alfresco.tests.cmis.changes;
+
+import static com.springyweb.alfresco.tests.cmis.Stubs.stub;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.chemistry.opencmis.client.api.ChangeEvent;
+import org.apache.chemistry.opencmis.client.api.ChangeEvents;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Property;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.RepositoryCapabilities;
+import org.apache.chemistry.opencmis.commons.data.RepositoryInfo;
+import org.apache.chemistry.opencmis.commons.enums.CapabilityChanges;
+import org.apache.chemistry.opencmis.commons.enums.ChangeType;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.apache.chemistry.opencmis.commons.spi.CmisBinding;
+import org.apache.chemistry.opencmis.commons.spi.RepositoryService;
+import org.junit.After;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.Predicate;
+
+/**
+ * Runs against a stub session with an in-memory change log which, like Alfresco's, starts each read with the change at the token. No
+ * repository is required.
+ */
+public class ChangeLogMirrorTest {
+
+  private static final String DOCUMENT = "D:swct:document";
+  private static final String INT = "swct:propSingleInt";
+
+  private final Map<String, Map<String, List<?>>> repository = new ConcurrentHashMap<String, Map<String, List<?>>>();
+  private final List<ChangeEvent> log = Collections.synchronizedList(new ArrayList<ChangeEvent>());
+  private CapabilityChanges capability = CapabilityChanges.OBJECTIDSONLY;
+  private ChangeLogMirror mirror;
+
+  @After
+  public void tearDown() {
+    if (mirror != null) {
+      mirror.close();
+    }
+  }
+
+  private static <T> T returning(final Class<T> type, final Object value) {
+    return stub(type, new InvocationHandler() {
+      public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        return value;
+      }
+    });
+  }
+
+  private ChangeLogMirror mirror() {
+    final RepositoryInfo info = stub(RepositoryInfo.class, new InvocationHandler() {
+      public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        if (method.getName().equals("getCapabilities")) {
+          return returning(RepositoryCapabilities.class, capability);
+        }
+        return method.getName().equals("getId") ? "repo" : Integer.toString(log.size());
+      }
+    });
+    mirror = new ChangeLogMirror(stub(Session.class, new InvocationHandler() {
+      public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        final String name = method.getName();
+        if (name.equals("getBinding")) {
+          return returning(CmisBinding.class, returning(RepositoryService.class, info));
+        }
+        if (name.equals("getRepositoryInfo")) {
+          return info;
+        }
+        if (name.equals("createOperationContext")) {
+          return new OperationContextImpl();
+        }
+        if (name.equals("getContentChanges")) {
+          return changes((String)args[0], (Long)args[2]);
+        }
+        assertEquals("getObject", name);
+        return object((String)args[0]);
+      }
+    }), new TreeSet<String>(Arrays.asList(DOCUMENT)), "swct:");
+    return mirror;
+  }
+
+  /**
+   * The changes from the one at the token, which is the position in the log of the last change read
+   */
+  private ChangeEvents changes(final String token, final long max) {
+    final List<ChangeEvent> page = new ArrayList<ChangeEvent>();
+    final int from = Math.max(Integer.parseInt(token), 1) - 1;
+    final int to;
+    synchronized (log) {
+      to = (int)Math.min(log.size(), from + max);
+      if (from < to) {
+        page.addAll(log.subList(from, to));
+      }
+    }
+    final String latest = page.isEmpty() ? token : Integer.toString(to);
+    return stub(ChangeEvents.class, new InvocationHandler() {
+      public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        final String name = method.getName();
+        if (name.equals("getChangeEvents")) {
+          return page;
+        }
+        if (name.equals("getLatestChangeLogToken")) {
+          return latest;
+        }
+        return name.equals("getHasMoreItems") ? false : null;
+      }
+    });
+  }
+
+  private CmisObject object(final String id) {
+    final Map<String, List<?>> properties = repository.get(id);
+    if (properties == null) {
+      throw new CmisObjectNotFoundException(id);
+    }
+    final List<Property<?>> list = new ArrayList<Property<?>>();
+    for (final Map.Entry<String, List<?>> property: properties.entrySet()) {
+      list.add(stub(Property.class, new InvocationHandler() {
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+          return method.getName().equals("getId") ? property.getKey() : property.getValue();
+        }
+      }));
+    }
+    return returning(CmisObject.class, list);
+  }
+
+  private void write(final String id, final String type, final Object value) {
+    final Map<String, List<?>> properties = new HashMap<String, List<?>>();
+    properties.put(PropertyIds.OBJECT_TYPE_ID, Arrays.asList(type));
+    properties.put(PropertyIds.NAME, Arrays.asList(id));
+    if (value != null) {
+      properties.put(INT, Arrays.asList(BigInteger.valueOf(((Number)value).longValue())));
+    }
+    final ChangeType change = repository.containsKey(id) ? ChangeType.UPDATED : ChangeType.CREATED;
+    repository.put(id, properties);
+    log.add(event(id, change, properties));
+  }
+
+  private void delete(final String id) {
+    repository.remove(id);
+    log.add(event(id, ChangeType.DELETED, null));
+  }
+
+  private ChangeEvent event(final String id, final ChangeType type,
+    final Map<String, List<?>> properties) {
+    final GregorianCalendar time = new GregorianCalendar();
+    time.setTimeInMillis(System.currentTimeMillis() - log.size());
+    return stub(ChangeEvent.class, new InvocationHandler() {
+      public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        final String name = method.getName();
+        if (name.equals("getObjectId")) {
+          return id;
+        }
+        if (name.equals("getChangeType")) {
+          return type;
+        }
+        if (name.equals("getChangeTime")) {
+          return time;
+        }
+        return name.equals("getProperties") ? properties : null;
+      }
+    });
+  }
+
+  @Test
+  public void mirrorsCreatedAndUpdatedObjectsOfItsTypes() throws InterruptedException {
+    write("before", DOCUMENT, 0);
+    write("atToken", DOCUMENT, 0);
+    mirror();
+    write("d1", DOCUMENT, 1);
+    write("f1", "F:swct:folder", null);
+    // The first read starts with the change at the token
+    assertEquals(3, mirror.poll());
+    assertEquals(Collections.singleton(INT), mirror.get("d1").keySet());
+    assertNull(mirror.get("f1"));
+    assertNull(mirror.get("before"));
+
+    write("d1", DOCUMENT, 2);
+    assertEquals(1, mirror.poll());
+    assertEquals(0, mirror.poll());
+    assertTrue(mirror.await("d1", INT, 2, 0));
+    assertEquals(4, mirror.getStats().getEvents());
+    assertEquals(4, mirror.getStats().getFetches());
+  }
+
+  @Test
+  public void deletedObjectsAreRemoved() throws InterruptedException {
+    mirror();
+    write("d1", DOCUMENT, 1);
+    write("d2", DOCUMENT, 2);
+    mirror.poll();
+    delete("d1");
+    write("d3", DOCUMENT, 3);
+    delete("d3");
+    mirror.poll();
+    assertTrue(mirror.awaitDeleted("d1", 0));
+    assertNull(mirror.get("d3"));
+    assertEquals(1, mirror.size());
+  }
+
+  @Test
+  public void propertiesAreTakenFromEventsThatCarryThem() {
+    capability = CapabilityChanges.PROPERTIES;
+    mirror();
+    write("d1", DOCUMENT, 5);
+    mirror.poll();
+    assertEquals(Arrays.asList(BigInteger.valueOf(5)), mirror.get("d1").get(INT));
+    assertEquals(0, mirror.getStats().getFetches());
+  }
+
+  @Test
+  public void expectedQueryResults() {
+    mirror();
+    for (int i = 0; i < 10; i++) {
+      write("d" + i, DOCUMENT, i);
+    }
+    write("empty", DOCUMENT, null);
+    mirror.poll();
+    assertEquals(new TreeSet<String>(Arrays.asList("d7", "d8", "d9")), mirror.matching(INT,
+      Predicate.GREATER_THAN_EQUAL_TO, 7));
+    assertEquals(new TreeSet<String>(Arrays.asList("d1", "d3")), mirror.matching(INT,
+      Predicate.IN, 1, 3L));
+    assertEquals(Collections.singleton("empty"), mirror.matching(INT, Predicate.IS_NULL));
+    assertEquals(9, mirror.matching(INT, Predicate.NOT_EQUALS, 4).size());
+    try {
+      mirror.matching(INT, Predicate.LIKE, "1%");
+      fail();
+    } catch (final IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void backgroundPollingWakesWaiters() throws InterruptedException {
+    mirror().start(5);
+    write("d1", DOCUMENT, 1);
+    assertTrue(mirror.await("d1", INT, 1, 5000));
+    assertFalse(mirror.await("d1", INT, 2, 50));
+    assertTrue(mirror.getStats().getLag().getCount() > 0);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void repositoriesWithoutAChangeLogAreRejected() {
+    capability = CapabilityChanges.NONE;
+    mirror();
+  }
+}
@@ -0,0 +1,66 @@
+package com.springyweb.alfresco.tests.cmis.changes;
+
+import java.util.concurrent.TimeUnit;
+
+import com.springyweb.alfresco.tests.cmis.perf.LatencyRecorder.LatencySnapshot;
+
+/**
+ * What a {@link ChangeLogMirror} has read so far
+ */
+public class ChangeLogStats {
+
+  private final long events;
+  private final long fetches;
+  private final int objects;
+  private final long elapsedNanos;
+  private final LatencySnapshot lag;
+
+  ChangeLogStats(final long events, final long fetches, final int objects,
+    final long elapsedNanos, final LatencySnapshot lag) {
+    this.events = events;
+    this.fetches = fetches;
+    this.objects = objects;
+    this.elapsedNanos = elapsedNanos;
+    this.lag = lag;
+  }
+
+  /**
+   * @return The change events read
+   */
+  public long getEvents() {
+    return events;
+  }
+
+  /**
+   * @return The objects fetched because their change events did not carry properties
+   */
+  public long getFetches() {
+    return fetches;
+  }
+
+  /**
+   * @return The objects mirrored
+   */
+  public int getObjects() {
+    return objects;
+  }
+
+  public double getEventsPerSecond() {
+    return events / (elapsedNanos / (double)TimeUnit.SECONDS.toNanos(1));
+  }
+
+  /**
+   * @return The time from each change to it being applied
+   */
+  public LatencySnapshot getLag() {
+    return lag;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+      "%d events (%.1f/s), %d fetches, %d objects mirrored, lag p50=%.1fms p95=%.1fms max=%.1fms",
+      events, getEventsPerSecond(), fetches, objects, lag.getPercentileMillis(50), lag
+        .getPercentileMillis(95), lag.getMaxMillis());
+  }
+}
@@ -0,0 +1,194 @@
+package com.springyweb.alfresco.tests.cmis.corpus;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.springyweb.alfresco.tests.cmis.query.LiteralEncoder;
+
+/**
+ * The folders and documents of a read-only corpus shared by the tests that only query it, e.g
+ *
+ * <pre>
+ * new CorpusDefinition(&quot;cmis_test_corpus&quot;).document(&quot;comparisonPredicatesInteger&quot;, &quot;test1&quot;, props)
+ * </pre>
+ *
+ * Values must not depend on when the definition is built, e.g dates must be fixed rather than now, as {@link #getHash()} identifies the corpus
+ * across runs.
+ */
+public class CorpusDefinition {
+
+  private static final int HASH_LENGTH = 16;
+
+  private final String name;
+  private final Map<String, Map<String, Document>> folders = new LinkedHashMap<String, Map<String, Document>>();
+
+  /**
+   * A document of the corpus
+   */
+  public static class Document {
+    private final String name;
+    private final Map<String, Object> properties;
+    private final String content;
+
+    Document(final String name, final Map<String, ?> properties, final String content) {
+      this.name = name;
+      final Map<String, Object> copy = new TreeMap<String, Object>();
+      if (properties != null) {
+        for (final Map.Entry<String, ?> property: properties.entrySet()) {
+          copy.put(property.getKey(), copy(property.getValue()));
+        }
+      }
+      this.properties = Collections.unmodifiableMap(copy);
+      this.content = content;
+    }
+
+    private static Object copy(final Object value) {
+      if (value instanceof Calendar) {
+        return ((Calendar)value).clone();
+      }
+      if (value instanceof Collection) {
+        final List<Object> values = new ArrayList<Object>();
+        for (final Object element: (Collection<?>)value) {
+          values.add(copy(element));
+        }
+        return Collections.unmodifiableList(values);
+      }
+      return value;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return The properties by id, calendars shared with the definition so not to be changed
+     */
+    public Map<String, Object> getProperties() {
+      return properties;
+    }
+
+    /**
+     * @return The text content, or null for none
+     */
+    public String getContent() {
+      return content;
+    }
+  }
+
+  /**
+   * @param name
+   *          - The name of the corpus, e.g cmis_test_corpus. Its folder beneath the repository root is this followed by the hash.
+   */
+  public CorpusDefinition(final String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public CorpusDefinition document(final String folder, final String name,
+    final Map<String, ?> properties) {
+    return document(folder, name, properties, null);
+  }
+
+  /**
+   * Add a document to a folder of the corpus, adding the folder if it is new
+   *
+   * @param properties
+   *          - By property id, may be null. Multi-valued properties as lists. The object type defaults to the test document type.
+   * @param content
+   *          - The text content, or null for none
+   */
+  public CorpusDefinition document(final String folder, final String name,
+    final Map<String, ?> properties, final String content) {
+    Map<String, Document> documents = folders.get(folder);
+    if (documents == null) {
+      documents = new LinkedHashMap<String, Document>();
+      folders.put(folder, documents);
+    }
+    if (documents.containsKey(name)) {
+      throw new IllegalArgumentException(folder + " already has a document named " + name);
+    }
+    documents.put(name, new Document(name, properties, content));
+    return this;
+  }
+
+  public Set<String> getFolderNames() {
+    return Collections.unmodifiableSet(folders.keySet());
+  }
+
+  public Collection<Document> getDocuments(final String folder) {
+    final Map<String, Document> documents = folders.get(folder);
+    if (documents == null) {
+      throw new IllegalArgumentException("No corpus folder " + folder);
+    }
+    return Collections.unmodifiableCollection(documents.values());
+  }
+
+  /**
+   * @return The name of the corpus folder, the name and hash
+   */
+  public String getFolderName() {
+    return name + "_" + getHash();
+  }
+
+  /**
+   * @return A hash of every folder, document, property value and content, which changes whenever any of them do
+   */
+  public String getHash() {
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical().getBytes(
+        StandardCharsets.UTF_8));
+      final StringBuilder hex = new StringBuilder();
+      for (int i = 0; i < HASH_LENGTH / 2; i++) {
+        hex.append(String.format("%02x", digest[i]));
+      }
+      return hex.toString();
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * One line per folder, document and property in the order added, properties by id, with values as CMIS literals
+   */
+  String canonical() {
+    final StringBuilder text = new StringBuilder();
+    final LiteralEncoder encoder = new LiteralEncoder();
+    for (final Map.Entry<String, Map<String, Document>> folder: folders.entrySet()) {
+      text.append("folder ").append(encoder.reset().string(folder.getKey())).append('\n');
+      for (final Document document: folder.getValue().values()) {
+        text.append("document ").append(encoder.reset().string(document.getName())).append('\n');
+        for (final Map.Entry<String, Object> property: document.getProperties().entrySet()) {
+          encoder.reset();
+          if (property.getValue() instanceof List) {
+            encoder.beginList();
+            for (final Object value: (List<?>)property.getValue()) {
+              encoder.literal(value);
+            }
+            encoder.endList();
+          } else {
+            encoder.literal(property.getValue());
+          }
+          text.append(property.getKey()).append('=').append(encoder).append('\n');
+        }
+        if (document.getContent() != null) {
+          text.append("content ").append(encoder.reset().string(document.getContent())).append(
+            '\n');
+        }
+      }
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,90 @@
+package com.springyweb.alfresco.tests.cmis.corpus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class CorpusDefinitionTest {
+
+  private static final long BASE_MILLIS = 1325376000000L; // 2012-01-01T00:00:00.000Z
+
+  private static Calendar calendar(final String zone, final long millis) {
+    final Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone(zone));
+    calendar.setTimeInMillis(millis);
+    return calendar;
+  }
+
+  private static CorpusDefinition definition(final Object value, final String content) {
+    final Map<String, Object> props = new HashMap<String, Object>();
+    props.put("swct:propSingleInt", 1);
+    props.put("swct:propSingleDateTime", calendar("UTC", BASE_MILLIS));
+    props.put("swct:propMultiString", Arrays.asList("a", "b"));
+    props.put("swct:propSingleDecimal", value);
+    return new CorpusDefinition("corpus").document("numbers", "test1", props).document("text",
+      "test", null, content);
+  }
+
+  @Test
+  public void equalDefinitionsHaveTheSameHash() {
+    final CorpusDefinition definition = definition(new BigDecimal("1.1"), "test");
+    assertEquals(definition.getHash(), definition(new BigDecimal("1.1"), "test").getHash());
+    assertEquals(16, definition.getHash().length());
+    assertEquals("corpus_" + definition.getHash(), definition.getFolderName());
+  }
+
+  @Test
+  public void anyChangeChangesTheHash() {
+    final String hash = definition(new BigDecimal("1.1"), "test").getHash();
+    assertFalse(hash.equals(definition(new BigDecimal("1.2"), "test").getHash()));
+    assertFalse(hash.equals(definition(new BigDecimal("1.1"), "tube").getHash()));
+    assertFalse(hash.equals(definition(new BigDecimal("1.1"), null).getHash()));
+    assertFalse(hash.equals(definition(new BigDecimal("1.1"), "test").document("text", "tube",
+      null).getHash()));
+    assertFalse(new CorpusDefinition("a").document("f", "x", null).document("f", "y", null)
+      .getHash().equals(
+        new CorpusDefinition("a").document("f", "y", null).document("f", "x", null).getHash()));
+  }
+
+  @Test
+  public void canonicalFormUsesLiterals() {
+    final Map<String, Object> props = new HashMap<String, Object>();
+    props.put("b", calendar("America/New_York", BASE_MILLIS + 1));
+    props.put("a", Arrays.asList("it's", true));
+    assertEquals("folder 'f'\ndocument 'd'\na=('it\\'s',TRUE)\n"
+      + "b=TIMESTAMP '2012-01-01T00:00:00.001Z'\ncontent 'c'\n", new CorpusDefinition("a")
+      .document("f", "d", props, "c").canonical());
+  }
+
+  @Test
+  public void valuesAreCopied() {
+    final Calendar date = calendar("UTC", BASE_MILLIS);
+    final CorpusDefinition definition = new CorpusDefinition("a").document("f", "d", Collections
+      .singletonMap("swct:propSingleDateTime", date));
+    final String hash = definition.getHash();
+    date.add(Calendar.YEAR, 1);
+    assertEquals(hash, definition.getHash());
+  }
+
+  @Test
+  public void documentNamesAreUniqueWithinAFolder() {
+    final CorpusDefinition definition = new CorpusDefinition("a").document("f", "d", null)
+      .document("g", "d", null);
+    try {
+      definition.document("f", "d", null);
+      fail();
+    } catch (final IllegalArgumentException expected) {
+    }
+    assertEquals(Arrays.asList("f", "g"), Arrays.asList(definition.getFolderNames().toArray()));
+  }
+}
@@ -0,0 +1,429 @@
+package com.springyweb.alfresco.tests.cmis.corpus;
+
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_DOCUMENT_TYPE;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_FOLDER_TYPE;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.documentPrefix;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.folderPrefix;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisBaseException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConstraintException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisContentAlreadyExistsException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisNameConstraintViolationException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ContentStreamImpl;
+
+import com.springyweb.alfresco.tests.cmis.delete.TreeDeleter;
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+import com.springyweb.alfresco.tests.cmis.jfr.QueryDescription;
+
+/**
+ * A read-only corpus built from a {@link CorpusDefinition} in a folder beneath the repository root named by the definition's hash, and shared
+ * by every test of the JVM and by later runs against the same repository.
+ *
+ * The first use in a JVM looks for the folder. It is reused if it is marked complete and holds exactly the defined folders and documents, each
+ * document with the defined property values and content length; the content itself is not read back. Anything else is deleted and built
+ * again, as is every run's with -Dcmis.corpus.rebuild=true. Nothing stops a test or another client changing the corpus, so tests must only
+ * read it; those that write need folders of their own.
+ *
+ * Runs against the same repository at once share the build too: a folder that is not yet marked complete and was created less than
+ * -Dcmis.corpus.buildMinutes (default 10) ago is taken to be another run's build in progress, and is waited for rather than deleted. Folders
+ * of the same corpus name with another hash, left by earlier definitions, are deleted once they are older than that too. The age is from the
+ * repository's creation date, so assumes the clocks agree.
+ */
+public final class SharedCorpus {
+
+  private static final String COMPLETE_MARKER = "corpus_complete";
+  private static final boolean REBUILD = Boolean.getBoolean("cmis.corpus.rebuild");
+  private static final long BUILD_MILLIS = TimeUnit.MINUTES.toMillis(Long.getLong(
+    "cmis.corpus.buildMinutes", 10));
+  private static final long POLL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+  private static final String STALE_QUERY = "SELECT cmis:objectId, cmis:name, cmis:creationDate FROM cmis:folder WHERE in_folder('%s') AND cmis:name LIKE '%s'";
+
+  private static final Map<String, SharedCorpus> CORPORA = new HashMap<String, SharedCorpus>();
+
+  private final String folderId;
+  private final Map<String, CorpusFolder> folders;
+  private final boolean built;
+
+  /**
+   * A folder of the corpus and the ids of its documents
+   */
+  public static class CorpusFolder {
+    private final String name;
+    private final String id;
+    private final Map<String, String> documentIds;
+
+    CorpusFolder(final String name, final String id, final Map<String, String> documentIds) {
+      this.name = name;
+      this.id = id;
+      this.documentIds = Collections.unmodifiableMap(documentIds);
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    /**
+     * @return The id of the document with this name
+     */
+    public String id(final String documentName) {
+      final String documentId = documentIds.get(documentName);
+      if (documentId == null) {
+        throw new IllegalArgumentException("No document " + documentName + " in " + name);
+      }
+      return documentId;
+    }
+  }
+
+  private SharedCorpus(final String folderId, final Map<String, CorpusFolder> folders,
+    final boolean built) {
+    this.folderId = folderId;
+    this.folders = folders;
+    this.built = built;
+  }
+
+  /**
+   * @return The corpus, found or built by the first call for the repository and definition in this JVM
+   */
+  public static SharedCorpus get(final Session session, final CorpusDefinition definition) {
+    final String key = session.getRepositoryInfo().getId() + "/" + definition.getFolderName();
+    synchronized (CORPORA) {
+      SharedCorpus corpus = CORPORA.get(key);
+      if (corpus == null) {
+        corpus = open(session, definition);
+        System.out.println((corpus.built ? "Built" : "Reusing") + " corpus "
+          + definition.getFolderName());
+        CORPORA.put(key, corpus);
+      }
+      return corpus;
+    }
+  }
+
+  public String getFolderId() {
+    return folderId;
+  }
+
+  public CorpusFolder folder(final String name) {
+    final CorpusFolder folder = folders.get(name);
+    if (folder == null) {
+      throw new IllegalArgumentException("No corpus folder " + name);
+    }
+    return folder;
+  }
+
+  /**
+   * @return Whether this JVM built the corpus rather than finding it
+   */
+  public boolean wasBuilt() {
+    return built;
+  }
+
+  private static SharedCorpus open(final Session session, final CorpusDefinition definition) {
+    final Folder root = session.getRootFolder();
+    deleteStale(session, root, definition);
+    final String path = root.getPath() + definition.getFolderName();
+    final OperationContext context = childrenContext(session);
+    boolean rebuild = REBUILD;
+    while (true) {
+      Folder existing = null;
+      try {
+        existing = (Folder)session.getObjectByPath(path, context);
+      } catch (final CmisObjectNotFoundException ignored) {
+      }
+      if (existing == null) {
+        final Folder corpusFolder = createCorpusFolder(session, root, definition.getFolderName(),
+          path);
+        if (corpusFolder != null) {
+          return build(session, corpusFolder, definition);
+        }
+        // Another run created it first
+        continue;
+      }
+      try {
+        if (!rebuild) {
+          final Map<String, CmisObject> children = children(existing, context);
+          if (children.containsKey(COMPLETE_MARKER)) {
+            final SharedCorpus found = find(session, existing, children, definition);
+            if (found != null) {
+              return found;
+            }
+          } else if (building(existing.getCreationDate())) {
+            System.out.println("Waiting for another run to build corpus "
+              + definition.getFolderName());
+            pause();
+            continue;
+          }
+        }
+        deleteTree(existing);
+      } catch (final CmisObjectNotFoundException e) {
+        // Another run deleted it first
+      }
+      rebuild = false;
+    }
+  }
+
+  /**
+   * @param children
+   *          - The folder's children by name, including the complete marker
+   * @return The corpus in the folder, or null if it differs from the definition
+   */
+  private static SharedCorpus find(final Session session, final Folder corpusFolder,
+    final Map<String, CmisObject> children, final CorpusDefinition definition) {
+    if (children.size() != definition.getFolderNames().size() + 1) {
+      return rebuilding(definition, children.size() - 1 + " folders rather than "
+        + definition.getFolderNames().size());
+    }
+    final OperationContext context = documentsContext(session);
+    final Map<String, CorpusFolder> folders = new LinkedHashMap<String, CorpusFolder>();
+    for (final String name: definition.getFolderNames()) {
+      final CmisObject folder = children.get(name);
+      if (folder == null) {
+        return rebuilding(definition, "no folder " + name);
+      }
+      final Map<String, CmisObject> documents = children((Folder)folder, context);
+      if (documents.size() != definition.getDocuments(name).size()) {
+        return rebuilding(definition, name + " has " + documents.size() + " documents rather than "
+          + definition.getDocuments(name).size());
+      }
+      final Map<String, String> documentIds = new HashMap<String, String>();
+      for (final CorpusDefinition.Document document: definition.getDocuments(name)) {
+        final CmisObject found = documents.get(document.getName());
+        if (found == null) {
+          return rebuilding(definition, "no document " + document.getName() + " in " + name);
+        }
+        final String difference = difference(document, found);
+        if (difference != null) {
+          return rebuilding(definition, name + "/" + document.getName() + " " + difference);
+        }
+        documentIds.put(document.getName(), found.getId());
+      }
+      folders.put(name, new CorpusFolder(name, folder.getId(), documentIds));
+    }
+    return new SharedCorpus(corpusFolder.getId(), folders, false);
+  }
+
+  private static SharedCorpus rebuilding(final CorpusDefinition definition, final String reason) {
+    System.out.println("Rebuilding corpus " + definition.getFolderName() + ": " + reason);
+    return null;
+  }
+
+  /**
+   * Compare a document with its definition. Values are compared by what they hold rather than their Java type, so the BigInteger and
+   * BigDecimal values OpenCMIS returns match the definition's Integers and Doubles, and calendars match in any time zone.
+   *
+   * @return How the object differs from the definition, or null if it has every defined property value and the content's length
+   */
+  static String difference(final CorpusDefinition.Document expected, final CmisObject actual) {
+    for (final Map.Entry<String, Object> property: expected.getProperties().entrySet()) {
+      final Object value = actual.getPropertyValue(property.getKey());
+      if (!values(property.getValue()).equals(values(value))) {
+        return property.getKey() + " is " + value + " rather than " + property.getValue();
+      }
+    }
+    final long length = expected.getContent() == null ? 0 : expected.getContent().getBytes(
+      StandardCharsets.UTF_8).length;
+    final Number actualLength = actual.getPropertyValue(PropertyIds.CONTENT_STREAM_LENGTH);
+    if ((actualLength == null ? 0 : actualLength.longValue()) != length) {
+      return "has " + actualLength + " bytes of content rather than " + length;
+    }
+    return null;
+  }
+
+  /**
+   * @return The values of a single or multi-valued property in a form that compares equal whatever their Java type, none for null
+   */
+  private static List<String> values(final Object value) {
+    final List<String> values = new ArrayList<String>();
+    if (value instanceof Collection) {
+      for (final Object element: (Collection<?>)value) {
+        values.add(comparable(element));
+      }
+    } else if (value != null) {
+      values.add(comparable(value));
+    }
+    return values;
+  }
+
+  private static String comparable(final Object value) {
+    if (value instanceof Number) {
+      return new BigDecimal(value.toString()).stripTrailingZeros().toPlainString();
+    }
+    if (value instanceof Calendar) {
+      return String.valueOf(((Calendar)value).getTimeInMillis());
+    }
+    return String.valueOf(value);
+  }
+
+  private static SharedCorpus build(final Session session, final Folder corpusFolder,
+    final CorpusDefinition definition) {
+    final Map<String, CorpusFolder> folders = new LinkedHashMap<String, CorpusFolder>();
+    for (final String name: definition.getFolderNames()) {
+      final Folder folder = createFolder(corpusFolder, name);
+      final Map<String, String> documentIds = new HashMap<String, String>();
+      for (final CorpusDefinition.Document document: definition.getDocuments(name)) {
+        documentIds.put(document.getName(), createDocument(folder, document));
+      }
+      folders.put(name, new CorpusFolder(name, folder.getId(), documentIds));
+    }
+    // Last, so that a build that does not finish is not reused
+    createFolder(corpusFolder, COMPLETE_MARKER);
+    return new SharedCorpus(corpusFolder.getId(), folders, true);
+  }
+
+  /**
+   * @return The new corpus folder, or null if another run created one first
+   */
+  private static Folder createCorpusFolder(final Session session, final Folder root,
+    final String name, final String path) {
+    try {
+      return createFolder(root, name);
+    } catch (final CmisBaseException e) {
+      if (!(e instanceof CmisContentAlreadyExistsException
+        || e instanceof CmisNameConstraintViolationException
+        || e instanceof CmisConstraintException)) {
+        throw e;
+      }
+      try {
+        session.getObjectByPath(path, childrenContext(session));
+      } catch (final CmisObjectNotFoundException notFound) {
+        // Not a name conflict
+        throw e;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * @return Whether a corpus folder not marked complete is recent enough to be another run's build in progress
+   */
+  private static boolean building(final Calendar created) {
+    return created != null && System.currentTimeMillis() - created.getTimeInMillis() < BUILD_MILLIS;
+  }
+
+  private static void pause() {
+    try {
+      Thread.sleep(POLL_MILLIS);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for the corpus to be built", e);
+    }
+  }
+
+  private static void deleteStale(final Session session, final Folder root,
+    final CorpusDefinition definition) {
+    final String query = String.format(STALE_QUERY, root.getId(), definition.getName().replace(
+      "_", "\\_").replace("%", "\\%").replace("'", "\\'")
+      + "\\_%");
+    for (final QueryResult result: CmisEvents.profile(session.query(query, false),
+      QueryDescription.of(query), session.getDefaultContext().getMaxItemsPerPage())) {
+      final String name = result.getPropertyValueById(PropertyIds.NAME);
+      final Calendar created = result.getPropertyValueById(PropertyIds.CREATION_DATE);
+      if (!name.equals(definition.getFolderName()) && !building(created)) {
+        System.out.println("Deleting stale corpus " + name);
+        try {
+          deleteTree((Folder)session.getObject((String)result
+            .getPropertyValueById(PropertyIds.OBJECT_ID)));
+        } catch (final CmisObjectNotFoundException e) {
+          // Another run deleted it first
+        }
+      }
+    }
+  }
+
+  private static OperationContext childrenContext(final Session session) {
+    final OperationContext context = session.createOperationContext();
+    context.setFilterString(PropertyIds.OBJECT_ID + "," + PropertyIds.BASE_TYPE_ID + ","
+      + PropertyIds.NAME + "," + PropertyIds.CREATION_DATE);
+    context.setIncludeAllowableActions(false);
+    context.setRenditionFilterString("cmis:none");
+    context.setCacheEnabled(false);
+    return context;
+  }
+
+  /**
+   * Every property, for comparing documents with their definitions
+   */
+  private static OperationContext documentsContext(final Session session) {
+    final OperationContext context = childrenContext(session);
+    context.setFilterString("*");
+    return context;
+  }
+
+  private static Map<String, CmisObject> children(final Folder folder,
+    final OperationContext context) {
+    return CmisEvents.time(CmisEvents.GET_CHILDREN,
+      new CmisEvents.Call<Map<String, CmisObject>>() {
+        public Map<String, CmisObject> call() {
+          final Map<String, CmisObject> children = new HashMap<String, CmisObject>();
+          for (final CmisObject child: folder.getChildren(context)) {
+            children.put(child.getName(), child);
+          }
+          return children;
+        }
+
+        @Override
+        public long resultCount(final Map<String, CmisObject> children) {
+          return children.size();
+        }
+      });
+  }
+
+  private static Folder createFolder(final Folder parent, final String name) {
+    final Map<String, String> props = new HashMap<String, String>();
+    props.put(PropertyIds.NAME, name);
+    props.put(PropertyIds.OBJECT_TYPE_ID, folderPrefix(TEST_CMIS_FOLDER_TYPE));
+    return CmisEvents.time(CmisEvents.CREATE_FOLDER, new CmisEvents.Call<Folder>() {
+      public Folder call() {
+        return parent.createFolder(props);
+      }
+    });
+  }
+
+  private static String createDocument(final Folder parent,
+    final CorpusDefinition.Document document) {
+    final Map<String, Object> properties = new HashMap<String, Object>(document.getProperties());
+    properties.put(PropertyIds.NAME, document.getName());
+    if (!properties.containsKey(PropertyIds.OBJECT_TYPE_ID)) {
+      properties.put(PropertyIds.OBJECT_TYPE_ID, documentPrefix(TEST_CMIS_DOCUMENT_TYPE));
+    }
+    final ContentStream contentStream = document.getContent() == null ? null
+      : new ContentStreamImpl(document.getName(), "text/plain", document.getContent());
+    return CmisEvents.time(CmisEvents.CREATE_DOCUMENT, new CmisEvents.Call<String>() {
+      public String call() {
+        return parent.createDocument(properties, contentStream, null).getId();
+      }
+
+      @Override
+      public long bytes(final String id) {
+        return contentStream == null ? 0 : contentStream.getLength();
+      }
+    });
+  }
+
+  private static void deleteTree(final Folder folder) {
+    final List<String> failed = TreeDeleter.deleteTree(folder);
+    if (!failed.isEmpty()) {
+      throw new IllegalStateException("Could not delete " + failed + " beneath corpus folder "
+        + folder.getName() + ", which must be deleted by hand");
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package com.springyweb.alfresco.tests.cmis.corpus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.junit.Test;
+
+/**
+ * Runs against stub objects. No repository is required.
+ */
+public class SharedCorpusTest {
+
+  private static final long BASE_MILLIS = 1325376000000L; // 2012-01-01T00:00:00.000Z
+
+  private static Calendar calendar(final String zone, final long millis) {
+    final Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone(zone));
+    calendar.setTimeInMillis(millis);
+    return calendar;
+  }
+
+  private static CorpusDefinition.Document document(final String content) {
+    final Map<String, Object> props = new HashMap<String, Object>();
+    props.put("swct:propSingleInt", 1);
+    props.put("swct:propSingleDecimal", 1.1);
+    props.put("swct:propSingleDateTime", calendar("UTC", BASE_MILLIS));
+    props.put("swct:propSingleBoolean", true);
+    props.put("swct:propMultiString", Arrays.asList("a", "b"));
+    return new CorpusDefinition.Document("test1", props, content);
+  }
+
+  /**
+   * The properties as OpenCMIS returns them
+   */
+  private static Map<String, Object> repositoryProperties(final Long contentLength) {
+    final Map<String, Object> props = new HashMap<String, Object>();
+    props.put("swct:propSingleInt", BigInteger.ONE);
+    props.put("swct:propSingleDecimal", new BigDecimal("1.10"));
+    props.put("swct:propSingleDateTime", calendar("GMT+01:00", BASE_MILLIS));
+    props.put("swct:propSingleBoolean", Boolean.TRUE);
+    props.put("swct:propMultiString", Arrays.asList("a", "b"));
+    props.put(PropertyIds.CONTENT_STREAM_LENGTH, contentLength == null ? null : BigInteger
+      .valueOf(contentLength));
+    return props;
+  }
+
+  private static CmisObject object(final Map<String, Object> props) {
+    return (CmisObject)Proxy.newProxyInstance(SharedCorpusTest.class.getClassLoader(),
+      new Class<?>[] { CmisObject.class }, new InvocationHandler() {
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+          if (method.getName().equals("getPropertyValue")) {
+            return props.get(args[0]);
+          }
+          throw new UnsupportedOperationException(method.getName());
+        }
+      });
+  }
+
+  @Test
+  public void valuesMatchWhateverTheirJavaType() {
+    assertNull(SharedCorpus.difference(document("t\u00e9st"), object(repositoryProperties(5L))));
+    assertNull(SharedCorpus.difference(document(null), object(repositoryProperties(null))));
+    assertNull(SharedCorpus.difference(document(null), object(repositoryProperties(0L))));
+  }
+
+  @Test
+  public void changedValuesDiffer() {
+    Map<String, Object> props = repositoryProperties(null);
+    props.put("swct:propSingleDecimal", new BigDecimal("1.2"));
+    assertEquals("swct:propSingleDecimal is 1.2 rather than 1.1", SharedCorpus.difference(
+      document(null), object(props)));
+
+    props = repositoryProperties(null);
+    props.put("swct:propSingleDateTime", calendar("UTC", BASE_MILLIS + 1));
+    assertTrue(SharedCorpus.difference(document(null), object(props)).startsWith(
+      "swct:propSingleDateTime is "));
+
+    props = repositoryProperties(null);
+    props.put("swct:propMultiString", Arrays.asList("b", "a"));
+    assertEquals("swct:propMultiString is [b, a] rather than [a, b]", SharedCorpus.difference(
+      document(null), object(props)));
+
+    props = repositoryProperties(null);
+    props.remove("swct:propSingleBoolean");
+    assertEquals("swct:propSingleBoolean is null rather than true", SharedCorpus.difference(
+      document(null), object(props)));
+  }
+
+  @Test
+  public void changedContentLengthDiffers() {
+    assertEquals("has 4 bytes of content rather than 5", SharedCorpus.difference(
+      document("t\u00e9st"), object(repositoryProperties(4L))));
+    assertEquals("has null bytes of content rather than 4", SharedCorpus.difference(
+      document("test"), object(repositoryProperties(null))));
+  }
+}
@@ -0,0 +1,59 @@
+package com.springyweb.alfresco.tests.cmis.delete;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of one {@link TreeDeleter#delete(org.apache.chemistry.opencmis.client.api.Folder, DeleteStrategy)}
+ */
+public class DeleteResult {
+
+  private final DeleteStrategy strategy;
+  private final long requests;
+  private final List<String> failedIds;
+  private final long elapsedNanos;
+
+  DeleteResult(final DeleteStrategy strategy, final long requests, final List<String> failedIds,
+    final long elapsedNanos) {
+    this.strategy = strategy;
+    this.requests = requests;
+    this.failedIds = failedIds;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  public DeleteStrategy getStrategy() {
+    return strategy;
+  }
+
+  /**
+   * @return The listing and delete requests sent to the repository
+   */
+  public long getRequests() {
+    return requests;
+  }
+
+  /**
+   * @return The ids of the objects that could not be deleted
+   */
+  public List<String> getFailedIds() {
+    return failedIds;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * @param objects
+   *          - The number of objects in the tree. Only the repository knows how many a deleteTree removed.
+   */
+  public double getObjectsPerSecond(final long objects) {
+    return objects / (elapsedNanos / (double)TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %.1fms, %d requests, %d failed", strategy, elapsedNanos / 1e6,
+      requests, failedIds.size());
+  }
+}
@@ -0,0 +1,17 @@
+package com.springyweb.alfresco.tests.cmis.delete;
+
+/**
+ * How {@link TreeDeleter} removes a folder and everything beneath it
+ */
+public enum DeleteStrategy {
+
+  /** One recursive deleteTree request for the whole tree; the repository does all the work in one call */
+  DELETE_TREE,
+  /** List the whole tree, delete every document in parallel, then the folders level by level from the bottom */
+  PARALLEL_OBJECTS,
+  /**
+   * List the tree only down to the first level with enough folders to keep every request slot busy, deleteTree those subtrees in parallel, then
+   * delete the documents and folders above them
+   */
+  SUBTREE_FAN_OUT
+}
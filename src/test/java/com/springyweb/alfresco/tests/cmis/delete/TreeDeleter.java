@@ -0,0 +1,220 @@
+package com.springyweb.alfresco.tests.cmis.delete;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.enums.BaseTypeId;
+import org.apache.chemistry.opencmis.commons.enums.UnfileObject;
+
+import com.springyweb.alfresco.tests.cmis.async.AsyncCmisClient;
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+
+/**
+ * Deletes a folder and everything beneath it using one of the {@link DeleteStrategy}s, with at most concurrency requests in flight. A child
+ * that cannot be deleted is reported in the result and does not stop the rest; its folders are then left behind too.
+ */
+public class TreeDeleter implements Closeable {
+
+  private static final int PAGE_SIZE = 1000;
+
+  private final AsyncCmisClient client;
+  private final int concurrency;
+  private final OperationContext childrenContext;
+
+  /**
+   * @param concurrency
+   *          - The most requests to have in flight at once
+   */
+  public TreeDeleter(final Session session, final int concurrency) {
+    this.client = new AsyncCmisClient(session, concurrency);
+    this.concurrency = concurrency;
+    childrenContext = new OperationContextImpl(session.getDefaultContext());
+    childrenContext.setFilterString(PropertyIds.OBJECT_ID + "," + PropertyIds.BASE_TYPE_ID + ","
+      + PropertyIds.OBJECT_TYPE_ID + "," + PropertyIds.NAME);
+    childrenContext.setIncludeAllowableActions(false);
+    childrenContext.setRenditionFilterString("cmis:none");
+    childrenContext.setCacheEnabled(false);
+    childrenContext.setMaxItemsPerPage(PAGE_SIZE);
+  }
+
+  /**
+   * A tree listed down to some depth
+   */
+  private static class Listing {
+    /** Folders by depth from the root, all of whose children have been listed */
+    private final List<List<Folder>> listedLevels = new ArrayList<List<Folder>>();
+    /** The documents in the listed folders */
+    private final List<CmisObject> documents = new ArrayList<CmisObject>();
+    /** Folders whose children have not been listed */
+    private List<Folder> frontier = new ArrayList<Folder>();
+  }
+
+  public DeleteResult delete(final Folder folder, final DeleteStrategy strategy)
+    throws InterruptedException {
+    final AtomicLong requests = new AtomicLong();
+    final List<String> failedIds = Collections.synchronizedList(new ArrayList<String>());
+    final long start = System.nanoTime();
+    switch (strategy) {
+      case DELETE_TREE:
+        failedIds.addAll(deleteTree(folder, requests));
+        break;
+      case PARALLEL_OBJECTS:
+        deleteListed(list(folder, Integer.MAX_VALUE, requests), requests, failedIds);
+        break;
+      case SUBTREE_FAN_OUT:
+        deleteListed(list(folder, concurrency, requests), requests, failedIds);
+        break;
+    }
+    return new DeleteResult(strategy, requests.get(), new ArrayList<String>(failedIds),
+      System.nanoTime() - start);
+  }
+
+  /**
+   * Stop an in-progress delete's requests
+   */
+  public void close() {
+    client.close();
+  }
+
+  /**
+   * List folders level by level until a level has at least width folders or the tree has been listed
+   */
+  private Listing list(final Folder root, final int width, final AtomicLong requests) {
+    final Listing listing = new Listing();
+    listing.frontier.add(root);
+    while (!listing.frontier.isEmpty() && listing.frontier.size() < width) {
+      final List<Folder> next = new ArrayList<Folder>();
+      for (final Folder folder: listing.frontier) {
+        final long children = CmisEvents.time(CmisEvents.GET_CHILDREN, new CmisEvents.Call<Long>() {
+          public Long call() {
+            long count = 0;
+            for (final CmisObject child: folder.getChildren(childrenContext)) {
+              if (child.getBaseTypeId() == BaseTypeId.CMIS_FOLDER) {
+                next.add((Folder)child);
+              } else {
+                listing.documents.add(child);
+              }
+              count++;
+            }
+            return count;
+          }
+
+          @Override
+          public long resultCount(final Long count) {
+            return count;
+          }
+        });
+        requests.addAndGet(1 + children / PAGE_SIZE);
+      }
+      listing.listedLevels.add(listing.frontier);
+      listing.frontier = next;
+    }
+    return listing;
+  }
+
+  /**
+   * Delete the unlisted subtrees and the documents, then the listed folders from the bottom up
+   */
+  private void deleteListed(final Listing listing, final AtomicLong requests,
+    final List<String> failedIds) throws InterruptedException {
+    final List<CompletableFuture<?>> deletes = new ArrayList<CompletableFuture<?>>();
+    for (final Folder subtree: listing.frontier) {
+      deletes.add(client.submit(new Callable<Void>() {
+        public Void call() {
+          try {
+            failedIds.addAll(deleteTree(subtree, requests));
+          } catch (final RuntimeException e) {
+            failedIds.add(subtree.getId());
+          }
+          return null;
+        }
+      }));
+    }
+    for (final CmisObject document: listing.documents) {
+      deletes.add(delete(document, requests, failedIds));
+    }
+    await(deletes);
+
+    for (int depth = listing.listedLevels.size() - 1; depth >= 0; depth--) {
+      deletes.clear();
+      for (final Folder folder: listing.listedLevels.get(depth)) {
+        deletes.add(delete(folder, requests, failedIds));
+      }
+      await(deletes);
+    }
+  }
+
+  private CompletableFuture<Void> delete(final CmisObject object, final AtomicLong requests,
+    final List<String> failedIds) {
+    return client.submit(new Callable<Void>() {
+      public Void call() {
+        requests.incrementAndGet();
+        try {
+          CmisEvents.time(CmisEvents.DELETE, new CmisEvents.Call<Void>() {
+            public Void call() {
+              object.delete(true);
+              return null;
+            }
+          });
+        } catch (final RuntimeException e) {
+          failedIds.add(object.getId());
+        }
+        return null;
+      }
+    });
+  }
+
+  private static List<String> deleteTree(final Folder folder, final AtomicLong requests) {
+    requests.incrementAndGet();
+    return deleteTree(folder);
+  }
+
+  /**
+   * Delete a folder and everything beneath it with one deleteTree request, as {@link DeleteStrategy#DELETE_TREE} does. Every other tree
+   * delete goes through here so that a partial delete is never mistaken for a whole one.
+   *
+   * @return The ids of the objects that could not be deleted, empty if the whole tree was
+   */
+  public static List<String> deleteTree(final Folder folder) {
+    final List<String> failed = CmisEvents.time(CmisEvents.DELETE_TREE,
+      new CmisEvents.Call<List<String>>() {
+        public List<String> call() {
+          return folder.deleteTree(true, UnfileObject.DELETE, true);
+        }
+
+        @Override
+        public long resultCount(final List<String> result) {
+          return 0;
+        }
+
+        @Override
+        public String error(final List<String> result) {
+          return result == null || result.isEmpty() ? null : result.size()
+            + " objects not deleted";
+        }
+      });
+    return failed == null ? Collections.<String> emptyList() : failed;
+  }
+
+  private static void await(final List<CompletableFuture<?>> futures)
+    throws InterruptedException {
+    try {
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+    } catch (final ExecutionException e) {
+      // Delete failures are collected, anything else is unexpected
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+}
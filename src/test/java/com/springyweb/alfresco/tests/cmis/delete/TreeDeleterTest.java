@@ -0,0 +1,207 @@
+package com.springyweb.alfresco.tests.cmis.delete;
+
+import static com.springyweb.alfresco.tests.cmis.Stubs.stub;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+import org.apache.chemistry.opencmis.commons.enums.BaseTypeId;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConstraintException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisPermissionDeniedException;
+import org.junit.After;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.cache.ListItemIterable;
+
+/**
+ * Runs against an in-memory tree. No repository is required.
+ */
+public class TreeDeleterTest {
+
+  private static final int CONCURRENCY = 3;
+
+  private final Set<String> existing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger peakRunning = new AtomicInteger();
+  private final AtomicInteger deleteTrees = new AtomicInteger();
+  private final Set<String> undeletable = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final TreeDeleter deleter = new TreeDeleter(stub(Session.class, new InvocationHandler() {
+    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+      return new OperationContextImpl();
+    }
+  }), CONCURRENCY);
+
+  @After
+  public void tearDown() {
+    deleter.close();
+  }
+
+  private class Node implements InvocationHandler {
+    private final String id;
+    private final boolean folder;
+    private final List<CmisObject> children = Collections.synchronizedList(new ArrayList<CmisObject>());
+    private final Node parent;
+    private final CmisObject proxy;
+
+    Node(final Node parent, final String id, final boolean folder) {
+      this.parent = parent;
+      this.id = id;
+      this.folder = folder;
+      proxy = folder ? stub(Folder.class, this) : stub(Document.class, this);
+      existing.add(id);
+      if (parent != null) {
+        parent.children.add(proxy);
+      }
+    }
+
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+      throws InterruptedException {
+      final String name = method.getName();
+      if (name.equals("equals")) {
+        return proxy == args[0];
+      }
+      if (name.equals("hashCode")) {
+        return System.identityHashCode(proxy);
+      }
+      if (name.equals("getId")) {
+        return id;
+      }
+      if (name.equals("getBaseTypeId")) {
+        return folder ? BaseTypeId.CMIS_FOLDER : BaseTypeId.CMIS_DOCUMENT;
+      }
+      if (name.equals("getChildren")) {
+        synchronized (children) {
+          return new ListItemIterable<CmisObject>(new ArrayList<CmisObject>(children), 0,
+            children.size());
+        }
+      }
+      if (name.equals("delete") || name.equals("deleteTree")) {
+        final int now = running.incrementAndGet();
+        synchronized (peakRunning) {
+          peakRunning.set(Math.max(peakRunning.get(), now));
+        }
+        try {
+          Thread.sleep(2);
+          if (name.equals("deleteTree")) {
+            deleteTrees.incrementAndGet();
+            if (!undeletable.isEmpty()) {
+              // Report the undeletable objects and leave the tree as it is
+              return new ArrayList<String>(undeletable);
+            }
+            removeSubtree();
+            return Collections.emptyList();
+          }
+          if (undeletable.contains(id)) {
+            throw new CmisPermissionDeniedException(id);
+          }
+          if (!children.isEmpty()) {
+            throw new CmisConstraintException(id + " is not empty");
+          }
+          remove();
+          return null;
+        } finally {
+          running.decrementAndGet();
+        }
+      }
+      throw new UnsupportedOperationException(name);
+    }
+
+    private void removeSubtree() {
+      synchronized (children) {
+        for (final CmisObject child: new ArrayList<CmisObject>(children)) {
+          ((Node)Proxy.getInvocationHandler(child)).removeSubtree();
+        }
+      }
+      remove();
+    }
+
+    private void remove() {
+      existing.remove(id);
+      if (parent != null) {
+        parent.children.remove(proxy);
+      }
+    }
+  }
+
+  /**
+   * @return A root with branches folders each holding documents documents and a subfolder of documents more
+   */
+  private Folder tree(final int branches, final int documents) {
+    final Node root = new Node(null, "root", true);
+    for (int b = 0; b < branches; b++) {
+      final Node branch = new Node(root, "b" + b, true);
+      final Node leaf = new Node(branch, "b" + b + "/leaf", true);
+      for (int d = 0; d < documents; d++) {
+        new Node(branch, "b" + b + "/d" + d, false);
+        new Node(leaf, "b" + b + "/leaf/d" + d, false);
+      }
+    }
+    new Node(root, "d", false);
+    return (Folder)root.proxy;
+  }
+
+  private DeleteResult deleteAll(final DeleteStrategy strategy) throws InterruptedException {
+    final DeleteResult result = deleter.delete(tree(4, 5), strategy);
+    assertEquals(Collections.emptyList(), result.getFailedIds());
+    assertTrue("Left behind " + existing, existing.isEmpty());
+    assertTrue(peakRunning.get() <= CONCURRENCY);
+    return result;
+  }
+
+  @Test
+  public void deleteTreeIsOneRequest() throws InterruptedException {
+    assertEquals(1, deleteAll(DeleteStrategy.DELETE_TREE).getRequests());
+  }
+
+  @Test
+  public void parallelObjectsDeletesChildrenFirst() throws InterruptedException {
+    final DeleteResult result = deleteAll(DeleteStrategy.PARALLEL_OBJECTS);
+    // 9 folders listed, 41 documents and 9 folders deleted
+    assertEquals(59, result.getRequests());
+    assertEquals(0, deleteTrees.get());
+    assertEquals(CONCURRENCY, peakRunning.get());
+  }
+
+  @Test
+  public void subtreesAreFannedOutOnceThereAreEnough() throws InterruptedException {
+    final DeleteResult result = deleteAll(DeleteStrategy.SUBTREE_FAN_OUT);
+    // The root is listed, its 4 branches tree deleted, its document and then itself deleted
+    assertEquals(4, deleteTrees.get());
+    assertEquals(7, result.getRequests());
+  }
+
+  @Test
+  public void failuresAreReportedAndTheRestDeleted() throws InterruptedException {
+    undeletable.add("b1/leaf/d2");
+    final DeleteResult result = deleter.delete(tree(2, 3), DeleteStrategy.PARALLEL_OBJECTS);
+    assertEquals(4, result.getFailedIds().size());
+    assertTrue(result.getFailedIds().containsAll(Arrays.asList("b1/leaf/d2", "b1/leaf", "b1", "root")));
+    assertEquals(4, existing.size());
+    assertFalse(existing.contains("b0"));
+  }
+
+  @Test
+  public void deleteTreeReportsWhatItCouldNotDelete() throws InterruptedException {
+    undeletable.add("b0/leaf/d1");
+    assertEquals(Arrays.asList("b0/leaf/d1"), TreeDeleter.deleteTree(tree(1, 2)));
+    assertEquals(Arrays.asList("b0/leaf/d1"), deleter.delete(tree(1, 2),
+      DeleteStrategy.DELETE_TREE).getFailedIds());
+  }
+}
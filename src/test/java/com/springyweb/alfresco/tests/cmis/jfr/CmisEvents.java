@@ -0,0 +1,186 @@
+package com.springyweb.alfresco.tests.cmis.jfr;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+
+import com.springyweb.alfresco.tests.cmis.report.EventLog;
+
+/**
+ * Creates the {@link CmisOperationEvent}s emitted around CMIS calls, and passes them on to the {@link EventLog} when one is running, e.g
+ *
+ * <pre>
+ * final Folder folder = CmisEvents.time(CmisEvents.CREATE_FOLDER, new CmisEvents.Call&lt;Folder&gt;() {
+ *   public Folder call() {
+ *     return parent.createFolder(properties);
+ *   }
+ * });
+ * </pre>
+ */
+public final class CmisEvents {
+
+  public static final String CREATE_DOCUMENT = "createDocument";
+  public static final String CREATE_FOLDER = "createFolder";
+  public static final String QUERY = "query";
+  public static final String QUERY_PAGE = "queryPage";
+  public static final String ADD_ASPECT = "addAspect";
+  public static final String REMOVE_ASPECT = "removeAspect";
+  public static final String DELETE_TREE = "deleteTree";
+  public static final String CHECK_OUT = "checkOut";
+  public static final String CHECK_IN = "checkIn";
+  public static final String GET_ALL_VERSIONS = "getAllVersions";
+  public static final String DELETE = "delete";
+  public static final String GET_CHILDREN = "getChildren";
+  public static final String GET_OBJECT = "getObject";
+  public static final String GET_OBJECT_BY_PATH = "getObjectByPath";
+  public static final String UPDATE_PROPERTIES = "updateProperties";
+  public static final String GET_CONTENT_CHANGES = "getContentChanges";
+
+  /**
+   * A CMIS call timed by {@link CmisEvents#time(String, Call)}. Override the other methods to describe what a result did.
+   */
+  public abstract static class Call<T> {
+
+    public abstract T call();
+
+    /**
+     * @return The number of objects created, returned or deleted, 1 by default
+     */
+    public long resultCount(final T result) {
+      return 1;
+    }
+
+    /**
+     * @return The content bytes sent, none by default
+     */
+    public long bytes(final T result) {
+      return 0;
+    }
+
+    /**
+     * @return What the call returned without doing, e.g 3 objects not deleted, or null by default when it did everything
+     */
+    public String error(final T result) {
+      return null;
+    }
+  }
+
+  private CmisEvents() {
+  }
+
+  /**
+   * Time a call, committing its event when it returns, or failing it when it throws or its result has an error
+   *
+   * @return The result of the call
+   */
+  public static <T> T time(final String operation, final Call<T> call) {
+    final CmisOperationEvent event = begin(operation);
+    final T result;
+    try {
+      result = call.call();
+    } catch (final RuntimeException e) {
+      fail(event, e);
+      throw e;
+    }
+    final String error = call.error(result);
+    if (error == null) {
+      commit(event, call.resultCount(result), call.bytes(result));
+    } else {
+      fail(event, error);
+    }
+    return result;
+  }
+
+  /**
+   * Start timing an operation
+   */
+  public static CmisOperationEvent begin(final String operation) {
+    final CmisOperationEvent event = new CmisOperationEvent();
+    event.operation = operation;
+    event.startNanos = System.nanoTime();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * Start timing a query or one of its pages
+   */
+  public static CmisOperationEvent begin(final String operation, final QueryDescription query) {
+    final CmisOperationEvent event = begin(operation);
+    event.queryTemplate = query.getTemplate();
+    event.predicate = query.getPredicate();
+    event.propertyName = query.getPropertyName();
+    event.query = query.getQuery();
+    return event;
+  }
+
+  /**
+   * Stop timing an operation and commit it if it is being recorded
+   *
+   * @param resultCount
+   *          - The number of objects created, returned or deleted
+   * @param bytes
+   *          - The content bytes sent
+   */
+  public static void commit(final CmisOperationEvent event, final long resultCount,
+    final long bytes) {
+    end(event);
+    complete(event, resultCount, bytes);
+  }
+
+  /**
+   * Stop timing an operation that failed and commit it if it is being recorded
+   */
+  public static void fail(final CmisOperationEvent event, final Throwable failure) {
+    fail(event, String.valueOf(failure));
+  }
+
+  /**
+   * Stop timing an operation that returned without doing all of its work, e.g a deleteTree that could not delete some objects, and commit it
+   * if it is being recorded
+   *
+   * @param error
+   *          - What was not done e.g 3 objects not deleted
+   */
+  public static void fail(final CmisOperationEvent event, final String error) {
+    end(event);
+    event.error = error;
+    complete(event, 0, 0);
+  }
+
+  /**
+   * Stop timing an operation without committing it
+   */
+  static void end(final CmisOperationEvent event) {
+    event.endNanos = System.nanoTime();
+    event.end();
+  }
+
+  /**
+   * Commit an operation that has already been ended, if it is being recorded
+   */
+  static void complete(final CmisOperationEvent event, final long resultCount, final long bytes) {
+    if (event.shouldCommit()) {
+      event.resultCount = resultCount;
+      event.bytes = bytes;
+      event.commit();
+    }
+    if (EventLog.isEnabled()) {
+      EventLog.record(event.operation, event.queryTemplate, event.predicate, event.propertyName,
+        event.query, event.endNanos - event.startNanos, resultCount, bytes, event.error);
+    }
+  }
+
+  /**
+   * Wrap lazily fetched query results so that a query event spans the query until its results have been read, with a queryPage event for each
+   * page fetched from the repository
+   *
+   * @param pageSize
+   *          - The maximum number of items per page of the operation context the query was run with
+   */
+  public static <T> ItemIterable<T> profile(final ItemIterable<T> results,
+    final QueryDescription query, final int pageSize) {
+    if (!new CmisOperationEvent().isEnabled() && !EventLog.isEnabled()) {
+      return results;
+    }
+    return new ProfiledItemIterable<T>(results, query, pageSize);
+  }
+}
@@ -0,0 +1,200 @@
+package com.springyweb.alfresco.tests.cmis.jfr;
+
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUANTIFIED_QUERY_TEMPLATE_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_MULTIPLE_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_STRING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.Predicate;
+import com.springyweb.alfresco.tests.cmis.cache.ListItemIterable;
+
+/**
+ * Records real flight recordings of stand-in operations.
+ */
+public class CmisEventsTest {
+
+  private static final String FOLDER_ID = "workspace://SpacesStore/c22f856c-6cec-4e16-9c1c-60df621bba16";
+
+  private Recording recording;
+  private File file;
+
+  @Before
+  public void startRecording() throws IOException {
+    file = File.createTempFile("cmis", ".jfr");
+    recording = new Recording();
+    recording.enable(CmisOperationEvent.class);
+    recording.start();
+  }
+
+  @After
+  public void closeRecording() {
+    recording.close();
+    file.delete();
+  }
+
+  private List<RecordedEvent> stopRecording() throws IOException {
+    recording.stop();
+    recording.dump(file.toPath());
+    final List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+    for (final RecordedEvent event: RecordingFile.readAllEvents(file.toPath())) {
+      if (event.getEventType().getName().equals(CmisOperationEvent.NAME)) {
+        events.add(event);
+      }
+    }
+    return events;
+  }
+
+  @Test
+  public void describesTemplatePredicateAndProperty() {
+    final QueryDescription query = QueryDescription.of(PREDICATE_QUERY_TEMPLATE_STRING, FOLDER_ID,
+      TEST_CMIS_PROPERY_SINGLE_STRING, Predicate.LESS_THAN.getSymbol(), "b");
+    assertEquals("PREDICATE_QUERY_TEMPLATE_STRING", query.getTemplate());
+    assertEquals("LESS_THAN", query.getPredicate());
+    assertEquals(TEST_CMIS_PROPERY_SINGLE_STRING, query.getPropertyName());
+    assertEquals(String.format(PREDICATE_QUERY_TEMPLATE_STRING, FOLDER_ID,
+      TEST_CMIS_PROPERY_SINGLE_STRING, "<", "b"), query.getQuery());
+
+    // The property follows the predicate in quantified comparisons
+    final QueryDescription quantified = QueryDescription.of(
+      PREDICATE_QUANTIFIED_QUERY_TEMPLATE_STRING, FOLDER_ID, "a",
+      Predicate.QUANTIFIED_COMPARISION.getSymbol(), TEST_CMIS_PROPERY_MULTIPLE_STRING);
+    assertEquals("QUANTIFIED_COMPARISION", quantified.getPredicate());
+    assertEquals(TEST_CMIS_PROPERY_MULTIPLE_STRING, quantified.getPropertyName());
+
+    final QueryDescription adhoc = QueryDescription.of("select * from cmis:folder");
+    assertEquals("select * from cmis:folder", adhoc.getTemplate());
+    assertNull(adhoc.getPredicate());
+  }
+
+  @Test
+  public void operationCarriesResultCountAndBytes() throws IOException {
+    final CmisOperationEvent event = CmisEvents.begin(CmisEvents.CREATE_DOCUMENT);
+    CmisEvents.commit(event, 1, 1234);
+
+    final List<RecordedEvent> events = stopRecording();
+    assertEquals(1, events.size());
+    assertEquals(CmisEvents.CREATE_DOCUMENT, events.get(0).getString("operation"));
+    assertEquals(1, events.get(0).getLong("resultCount"));
+    assertEquals(1234, events.get(0).getLong("bytes"));
+  }
+
+  @Test
+  public void failuresCarryTheirError() throws IOException {
+    CmisEvents.fail(CmisEvents.begin(CmisEvents.CREATE_FOLDER), new IllegalStateException("full"));
+    CmisEvents.fail(CmisEvents.begin(CmisEvents.DELETE_TREE), "2 objects not deleted");
+
+    final List<RecordedEvent> events = stopRecording();
+    assertEquals(2, events.size());
+    assertEquals("java.lang.IllegalStateException: full", events.get(0).getString("error"));
+    assertEquals("2 objects not deleted", events.get(1).getString("error"));
+    assertEquals(0, events.get(1).getLong("resultCount"));
+  }
+
+  @Test
+  public void timedCallsCommitOrFail() throws IOException {
+    assertEquals("doc", CmisEvents.time(CmisEvents.CREATE_DOCUMENT, new CmisEvents.Call<String>() {
+      public String call() {
+        return "doc";
+      }
+
+      @Override
+      public long bytes(final String result) {
+        return 12;
+      }
+    }));
+    try {
+      CmisEvents.time(CmisEvents.CREATE_FOLDER, new CmisEvents.Call<String>() {
+        public String call() {
+          throw new IllegalStateException("full");
+        }
+      });
+      fail();
+    } catch (final IllegalStateException expected) {
+    }
+    CmisEvents.time(CmisEvents.DELETE_TREE, new CmisEvents.Call<List<String>>() {
+      public List<String> call() {
+        return Arrays.asList("a", "b");
+      }
+
+      @Override
+      public String error(final List<String> failed) {
+        return failed.size() + " objects not deleted";
+      }
+    });
+
+    final List<RecordedEvent> events = stopRecording();
+    assertEquals(3, events.size());
+    assertEquals(1, events.get(0).getLong("resultCount"));
+    assertEquals(12, events.get(0).getLong("bytes"));
+    assertNull(events.get(0).getString("error"));
+    assertEquals("java.lang.IllegalStateException: full", events.get(1).getString("error"));
+    assertEquals("2 objects not deleted", events.get(2).getString("error"));
+  }
+
+  @Test
+  public void queryEmitsAnEventPerPage() throws IOException {
+    final ItemIterable<String> results = CmisEvents.profile(new ListItemIterable<String>(Arrays
+      .asList("a", "b", "c", "d", "e"), 0, 5), QueryDescription.of(
+      PREDICATE_QUERY_TEMPLATE_STRING, FOLDER_ID, TEST_CMIS_PROPERY_SINGLE_STRING,
+      Predicate.EQUALS.getSymbol(), "a"), 2);
+    assertEquals(5, results.getTotalNumItems());
+    int read = 0;
+    for (@SuppressWarnings("unused")
+    final String result: results) {
+      read++;
+    }
+    assertEquals(5, read);
+
+    final List<Long> pageCounts = new ArrayList<Long>();
+    long queryResults = -1;
+    for (final RecordedEvent event: stopRecording()) {
+      if (event.getString("operation").equals(CmisEvents.QUERY_PAGE)) {
+        pageCounts.add(event.getLong("resultCount"));
+      } else {
+        assertEquals(CmisEvents.QUERY, event.getString("operation"));
+        assertEquals("PREDICATE_QUERY_TEMPLATE_STRING", event.getString("queryTemplate"));
+        assertEquals("EQUALS", event.getString("predicate"));
+        assertEquals(TEST_CMIS_PROPERY_SINGLE_STRING, event.getString("propertyName"));
+        queryResults = event.getLong("resultCount");
+      }
+    }
+    assertEquals(5, queryResults);
+    // getTotalNumItems fetches the first page, then the iterator reads three pages of at most two
+    assertEquals(Arrays.asList(5L, 2L, 2L, 1L), pageCounts);
+  }
+
+  @Test
+  public void summaryGroupsByOperation() throws IOException {
+    for (int i = 0; i < 3; i++) {
+      final CmisOperationEvent event = CmisEvents.begin(CmisEvents.CREATE_FOLDER);
+      CmisEvents.commit(event, 1, 0);
+    }
+    final CmisOperationEvent event = CmisEvents.begin(CmisEvents.DELETE_TREE);
+    CmisEvents.commit(event, 0, 0);
+    stopRecording();
+
+    final ProfileSummary summary = ProfileSummary.read(file.toPath());
+    assertEquals(3, summary.get(CmisEvents.CREATE_FOLDER).getCount());
+    assertEquals(3, summary.get(CmisEvents.CREATE_FOLDER).getResults());
+    assertEquals(1, summary.get(CmisEvents.DELETE_TREE).getCount());
+    assertNull(summary.get(CmisEvents.QUERY));
+  }
+}
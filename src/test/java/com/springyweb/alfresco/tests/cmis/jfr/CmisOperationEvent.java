@@ -0,0 +1,56 @@
+package com.springyweb.alfresco.tests.cmis.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event spanning one CMIS call made by the tests. Created and committed through {@link CmisEvents}; costs next to nothing
+ * when no recording is running.
+ *
+ * Stack traces are off: CPU and allocation are attributed to operations by {@link ProfileSummary} from the thread and time span instead.
+ */
+@Name(CmisOperationEvent.NAME)
+@Label("CMIS Operation")
+@Category("CMIS")
+@Description("A CMIS call made by the test client")
+@StackTrace(false)
+public class CmisOperationEvent extends Event {
+
+  public static final String NAME = "com.springyweb.alfresco.cmis.Operation";
+
+  @Label("Operation")
+  @Description("e.g createDocument, query, queryPage")
+  String operation;
+
+  @Label("Query Template")
+  @Description("The CmisTestModel template the query was built from, or the query itself")
+  String queryTemplate;
+
+  @Label("Predicate")
+  String predicate;
+
+  @Label("Property")
+  String propertyName;
+
+  @Label("Result Count")
+  long resultCount;
+
+  @Label("Bytes")
+  @Description("Content bytes sent with the call")
+  @DataAmount
+  long bytes;
+
+  @Label("Error")
+  @Description("Why the call failed, if it did")
+  String error;
+
+  // Not recorded by the flight recorder, only passed on to the EventLog
+  transient long startNanos;
+  transient long endNanos;
+  transient String query;
+}
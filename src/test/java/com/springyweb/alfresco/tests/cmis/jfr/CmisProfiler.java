@@ -0,0 +1,66 @@
+package com.springyweb.alfresco.tests.cmis.jfr;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.time.Duration;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Runs a flight recording over a test class when -Dcmis.profile=&lt;directory&gt; is set, e.g by the jfr build profile, then writes
+ * &lt;directory&gt;/&lt;name&gt;.jfr and prints a {@link ProfileSummary} of it.
+ *
+ * The recording uses the JDK's "profile" settings plus every socket read and write, so network bytes can be attributed to CMIS operations.
+ */
+public final class CmisProfiler {
+
+  public static final String PROFILE_DIRECTORY_PROPERTY = "cmis.profile";
+
+  private final Recording recording;
+  private final File file;
+
+  private CmisProfiler(final Recording recording, final File file) {
+    this.recording = recording;
+    this.file = file;
+  }
+
+  /**
+   * @param name
+   *          - Names the recording file e.g the test class
+   * @return null unless profiling has been asked for
+   */
+  public static CmisProfiler start(final String name) throws IOException, ParseException {
+    final String directory = System.getProperty(PROFILE_DIRECTORY_PROPERTY);
+    if (directory == null) {
+      return null;
+    }
+    final File file = new File(directory, name + ".jfr");
+    file.getParentFile().mkdirs();
+
+    final Recording recording = new Recording(Configuration.getConfiguration("profile"));
+    recording.setName(name);
+    recording.enable(CmisOperationEvent.class);
+    recording.enable("jdk.SocketRead").withThreshold(Duration.ZERO);
+    recording.enable("jdk.SocketWrite").withThreshold(Duration.ZERO);
+    recording.setToDisk(true);
+    recording.start();
+    System.out.println("Profiling to " + file);
+    return new CmisProfiler(recording, file);
+  }
+
+  /**
+   * Stop recording, write the recording file and print the summary
+   */
+  public void stop() throws IOException {
+    try {
+      recording.stop();
+      recording.dump(file.toPath());
+    } finally {
+      recording.close();
+    }
+    System.out.println("CMIS profile " + file);
+    ProfileSummary.read(file.toPath()).print(System.out);
+  }
+}
@@ -0,0 +1,306 @@
+package com.springyweb.alfresco.tests.cmis.jfr;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Summarises a flight recording by CMIS operation.
+ *
+ * CPU samples, allocation, socket traffic and GC pauses are attributed to the innermost {@link CmisOperationEvent} running on the same thread
+ * at the time, so a queryPage claims what happens while its page is fetched and the enclosing query what happens between pages. Anything
+ * outside a CMIS call is reported against "(other)".
+ */
+public class ProfileSummary {
+
+  public static final String OTHER = "(other)";
+
+  private static final int TOP_FRAMES = 3;
+
+  /**
+   * What was recorded while one kind of operation was running
+   */
+  public static class OperationProfile {
+    private long count;
+    private long durationNanos;
+    private long results;
+    private long contentBytes;
+    private long cpuSamples;
+    private long allocatedBytes;
+    private long sampledAllocatedBytes;
+    private long networkBytes;
+    private long gcPauseNanos;
+    private final Map<String, Integer> topFrames = new HashMap<String, Integer>();
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getDurationNanos() {
+      return durationNanos;
+    }
+
+    public long getResults() {
+      return results;
+    }
+
+    public long getContentBytes() {
+      return contentBytes;
+    }
+
+    public long getCpuSamples() {
+      return cpuSamples;
+    }
+
+    /**
+     * @return Estimated from allocation samples when the recording has them (JDK 16+), otherwise from TLAB events
+     */
+    public long getAllocatedBytes() {
+      return sampledAllocatedBytes > 0 ? sampledAllocatedBytes : allocatedBytes;
+    }
+
+    public long getNetworkBytes() {
+      return networkBytes;
+    }
+
+    public long getGcPauseNanos() {
+      return gcPauseNanos;
+    }
+
+    /**
+     * @return The methods most often on top of the stack in CPU samples, hottest first
+     */
+    public List<String> getHotspots() {
+      final List<Map.Entry<String, Integer>> entries = new ArrayList<Map.Entry<String, Integer>>(
+        topFrames.entrySet());
+      Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>() {
+        public int compare(final Map.Entry<String, Integer> a, final Map.Entry<String, Integer> b) {
+          return b.getValue().compareTo(a.getValue());
+        }
+      });
+      final List<String> hotspots = new ArrayList<String>();
+      for (final Map.Entry<String, Integer> entry: entries) {
+        if (hotspots.size() == TOP_FRAMES) {
+          break;
+        }
+        hotspots.add(entry.getKey() + " (" + entry.getValue() + ")");
+      }
+      return hotspots;
+    }
+  }
+
+  private static class Interval {
+    private final long start;
+    private final long end;
+    private final OperationProfile profile;
+
+    private Interval(final long start, final long end, final OperationProfile profile) {
+      this.start = start;
+      this.end = end;
+      this.profile = profile;
+    }
+  }
+
+  private final Map<String, OperationProfile> operations = new TreeMap<String, OperationProfile>();
+  private final Map<String, OperationProfile> queryTemplates = new TreeMap<String, OperationProfile>();
+
+  /**
+   * @param recording
+   *          - A .jfr file
+   */
+  public static ProfileSummary read(final Path recording) throws IOException {
+    final List<RecordedEvent> events = RecordingFile.readAllEvents(recording);
+    final ProfileSummary summary = new ProfileSummary();
+
+    // Operation spans per thread, ordered by start time
+    final Map<Long, List<Interval>> intervals = new HashMap<Long, List<Interval>>();
+    for (final RecordedEvent event: events) {
+      if (!event.getEventType().getName().equals(CmisOperationEvent.NAME)) {
+        continue;
+      }
+      final OperationProfile profile = summary.operation(event.getString("operation"));
+      profile.count++;
+      profile.durationNanos += event.getDuration().toNanos();
+      profile.results += event.getLong("resultCount");
+      profile.contentBytes += event.getLong("bytes");
+      if (CmisEvents.QUERY.equals(event.getString("operation"))
+        && event.getString("queryTemplate") != null) {
+        final OperationProfile template = profile(summary.queryTemplates,
+          event.getString("queryTemplate"));
+        template.count++;
+        template.durationNanos += event.getDuration().toNanos();
+        template.results += event.getLong("resultCount");
+      }
+      final RecordedThread thread = event.getThread();
+      if (thread != null) {
+        List<Interval> threadIntervals = intervals.get(thread.getId());
+        if (threadIntervals == null) {
+          threadIntervals = new ArrayList<Interval>();
+          intervals.put(thread.getId(), threadIntervals);
+        }
+        threadIntervals.add(new Interval(nanos(event.getStartTime()), nanos(event.getEndTime()),
+          profile));
+      }
+    }
+    for (final List<Interval> threadIntervals: intervals.values()) {
+      Collections.sort(threadIntervals, new Comparator<Interval>() {
+        public int compare(final Interval a, final Interval b) {
+          return a.start < b.start ? -1 : a.start == b.start ? 0 : 1;
+        }
+      });
+    }
+
+    for (final RecordedEvent event: events) {
+      final String type = event.getEventType().getName();
+      if (type.equals("jdk.GarbageCollection")) {
+        // Stop the world pauses hold up whatever every thread was doing
+        for (final List<Interval> threadIntervals: intervals.values()) {
+          final Interval interval = innermost(threadIntervals, nanos(event.getStartTime()));
+          if (interval != null) {
+            interval.profile.gcPauseNanos += event.getDuration("sumOfPauses").toNanos();
+          }
+        }
+        continue;
+      }
+      if (type.equals("jdk.ExecutionSample")) {
+        final OperationProfile profile = summary.attribute(intervals, event.getThread("sampledThread"), event);
+        profile.cpuSamples++;
+        final String frame = topFrame(event.getStackTrace());
+        if (frame != null) {
+          final Integer count = profile.topFrames.get(frame);
+          profile.topFrames.put(frame, count == null ? 1 : count + 1);
+        }
+      } else if (type.equals("jdk.ObjectAllocationSample")) {
+        summary.attribute(intervals, event.getThread(), event).sampledAllocatedBytes += event
+          .getLong("weight");
+      } else if (type.equals("jdk.ObjectAllocationInNewTLAB")) {
+        summary.attribute(intervals, event.getThread(), event).allocatedBytes += event
+          .getLong("tlabSize");
+      } else if (type.equals("jdk.ObjectAllocationOutsideTLAB")) {
+        summary.attribute(intervals, event.getThread(), event).allocatedBytes += event
+          .getLong("allocationSize");
+      } else if (type.equals("jdk.SocketRead")) {
+        summary.attribute(intervals, event.getThread(), event).networkBytes += event
+          .getLong("bytesRead");
+      } else if (type.equals("jdk.SocketWrite")) {
+        summary.attribute(intervals, event.getThread(), event).networkBytes += event
+          .getLong("bytesWritten");
+      }
+    }
+    return summary;
+  }
+
+  /**
+   * @param operation
+   *          - e.g createDocument or {@link #OTHER}
+   * @return null if nothing was recorded for the operation
+   */
+  public OperationProfile get(final String operation) {
+    return operations.get(operation);
+  }
+
+  /**
+   * @return Query events grouped by the template they were built from
+   */
+  public Map<String, OperationProfile> getQueryTemplates() {
+    return Collections.unmodifiableMap(queryTemplates);
+  }
+
+  public void print(final PrintStream out) {
+    out.println(String.format("%-14s %7s %10s %8s %8s %8s %11s %11s %8s  %s", "operation",
+      "count", "total ms", "mean ms", "results", "samples", "alloc KB", "network KB", "gc ms",
+      "hotspots"));
+    for (final Map.Entry<String, OperationProfile> entry: operations.entrySet()) {
+      final OperationProfile p = entry.getValue();
+      out.println(String.format("%-14s %7d %10.1f %8.2f %8d %8d %11d %11d %8.1f  %s",
+        entry.getKey(), p.count, p.durationNanos / 1e6, p.count == 0 ? 0 : p.durationNanos / 1e6
+          / p.count, p.results, p.cpuSamples, p.getAllocatedBytes() / 1024,
+        p.networkBytes / 1024, p.gcPauseNanos / 1e6, p.getHotspots()));
+    }
+    if (!queryTemplates.isEmpty()) {
+      out.println();
+      out.println(String.format("%7s %8s %8s  %s", "queries", "mean ms", "results", "template"));
+      for (final Map.Entry<String, OperationProfile> entry: queryTemplates.entrySet()) {
+        final OperationProfile p = entry.getValue();
+        out.println(String.format("%7d %8.2f %8d  %s", p.count, p.durationNanos / 1e6 / p.count,
+          p.results, entry.getKey()));
+      }
+    }
+  }
+
+  private OperationProfile operation(final String operation) {
+    return profile(operations, operation);
+  }
+
+  private static OperationProfile profile(final Map<String, OperationProfile> profiles,
+    final String key) {
+    OperationProfile profile = profiles.get(key);
+    if (profile == null) {
+      profile = new OperationProfile();
+      profiles.put(key, profile);
+    }
+    return profile;
+  }
+
+  private OperationProfile attribute(final Map<Long, List<Interval>> intervals,
+    final RecordedThread thread, final RecordedEvent event) {
+    if (thread != null) {
+      final List<Interval> threadIntervals = intervals.get(thread.getId());
+      if (threadIntervals != null) {
+        final Interval interval = innermost(threadIntervals, nanos(event.getStartTime()));
+        if (interval != null) {
+          return interval.profile;
+        }
+      }
+    }
+    return operation(OTHER);
+  }
+
+  /**
+   * @return The latest starting interval that contains time, null if none
+   */
+  private static Interval innermost(final List<Interval> intervals, final long time) {
+    int low = 0;
+    int high = intervals.size() - 1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      if (intervals.get(middle).start <= time) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    for (int i = high; i >= 0; i--) {
+      if (intervals.get(i).end >= time) {
+        return intervals.get(i);
+      }
+    }
+    return null;
+  }
+
+  private static String topFrame(final RecordedStackTrace stackTrace) {
+    if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+      return null;
+    }
+    final RecordedFrame frame = stackTrace.getFrames().get(0);
+    return frame.getMethod().getType().getName() + "." + frame.getMethod().getName();
+  }
+
+  private static long nanos(final Instant instant) {
+    return instant.getEpochSecond() * 1000000000L + instant.getNano();
+  }
+}
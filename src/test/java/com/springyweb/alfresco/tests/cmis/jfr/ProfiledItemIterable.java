@@ -0,0 +1,184 @@
+package com.springyweb.alfresco.tests.cmis.jfr;
+
+import java.util.Iterator;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+
+/**
+ * Emits {@link CmisOperationEvent}s while lazily fetched query results are read.
+ *
+ * OpenCMIS fetches the next page when the iterator moves past the end of the current one, so the call to hasNext at each page boundary is timed
+ * as a queryPage event; the event is committed once the page has been read so that it carries the number of items. The query event runs from
+ * creation until an iterator has been exhausted, so results that are never read to the end are not reported as a query. A page that cannot be
+ * fetched is reported as a failed page of a failed query.
+ *
+ * @param <T>
+ *          The item type
+ */
+class ProfiledItemIterable<T> implements ItemIterable<T> {
+
+  private final ItemIterable<T> delegate;
+  private final QueryDescription query;
+  private final int pageSize;
+  private final CmisOperationEvent queryEvent;
+  private boolean queryCommitted = false;
+  private boolean firstPageFetched = false;
+
+  ProfiledItemIterable(final ItemIterable<T> delegate, final QueryDescription query,
+    final int pageSize) {
+    this.delegate = delegate;
+    this.query = query;
+    this.pageSize = Math.max(pageSize, 1);
+    queryEvent = CmisEvents.begin(CmisEvents.QUERY, query);
+  }
+
+  public ItemIterable<T> skipTo(final long position) {
+    return new ProfiledItemIterable<T>(delegate.skipTo(position), query, pageSize);
+  }
+
+  public ItemIterable<T> getPage() {
+    return new ProfiledItemIterable<T>(delegate.getPage(), query, pageSize);
+  }
+
+  public ItemIterable<T> getPage(final int maxNumItems) {
+    return new ProfiledItemIterable<T>(delegate.getPage(maxNumItems), query, pageSize);
+  }
+
+  public long getPageNumItems() {
+    if (firstPageFetched) {
+      return delegate.getPageNumItems();
+    }
+    final CmisOperationEvent page = CmisEvents.begin(CmisEvents.QUERY_PAGE, query);
+    final long items;
+    try {
+      items = delegate.getPageNumItems();
+    } catch (final RuntimeException e) {
+      firstPageFailed(page, e);
+      throw e;
+    }
+    firstPageFetched(page, items);
+    return items;
+  }
+
+  public boolean getHasMoreItems() {
+    if (firstPageFetched) {
+      return delegate.getHasMoreItems();
+    }
+    final CmisOperationEvent page = CmisEvents.begin(CmisEvents.QUERY_PAGE, query);
+    final boolean hasMoreItems;
+    try {
+      hasMoreItems = delegate.getHasMoreItems();
+    } catch (final RuntimeException e) {
+      firstPageFailed(page, e);
+      throw e;
+    }
+    firstPageFetched(page, delegate.getPageNumItems());
+    return hasMoreItems;
+  }
+
+  public long getTotalNumItems() {
+    if (firstPageFetched) {
+      return delegate.getTotalNumItems();
+    }
+    final CmisOperationEvent page = CmisEvents.begin(CmisEvents.QUERY_PAGE, query);
+    final long totalNumItems;
+    try {
+      totalNumItems = delegate.getTotalNumItems();
+    } catch (final RuntimeException e) {
+      firstPageFailed(page, e);
+      throw e;
+    }
+    firstPageFetched(page, delegate.getPageNumItems());
+    return totalNumItems;
+  }
+
+  private void firstPageFetched(final CmisOperationEvent page, final long items) {
+    CmisEvents.commit(page, items, 0);
+    firstPageFetched = true;
+  }
+
+  /**
+   * The query fails with its first page
+   */
+  private void firstPageFailed(final CmisOperationEvent page, final RuntimeException e) {
+    CmisEvents.fail(page, e);
+    if (!queryCommitted) {
+      queryCommitted = true;
+      CmisEvents.fail(queryEvent, e);
+    }
+  }
+
+  public Iterator<T> iterator() {
+    final Iterator<T> iterator = delegate.iterator();
+    return new Iterator<T>() {
+      private long index = 0;
+      private long lastBoundary = -1;
+      private CmisOperationEvent page;
+      private long pageItems;
+
+      public boolean hasNext() {
+        if (index % pageSize != 0 || index == lastBoundary) {
+          final boolean hasNext = iterator.hasNext();
+          if (!hasNext) {
+            exhausted();
+          }
+          return hasNext;
+        }
+        completePage();
+        lastBoundary = index;
+        page = CmisEvents.begin(CmisEvents.QUERY_PAGE, query);
+        final boolean hasNext;
+        try {
+          hasNext = iterator.hasNext();
+        } catch (final RuntimeException e) {
+          failed(e);
+          throw e;
+        }
+        CmisEvents.end(page);
+        if (!hasNext) {
+          exhausted();
+        }
+        return hasNext;
+      }
+
+      public T next() {
+        final T next = iterator.next();
+        index++;
+        pageItems++;
+        return next;
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+
+      private void completePage() {
+        if (page != null) {
+          // The check after a full last page usually finds there are no more and fetches nothing
+          if (pageItems > 0 || index == 0) {
+            CmisEvents.complete(page, pageItems, 0);
+          }
+          page = null;
+          pageItems = 0;
+        }
+      }
+
+      private void failed(final RuntimeException e) {
+        CmisEvents.fail(page, e);
+        page = null;
+        if (!queryCommitted) {
+          queryCommitted = true;
+          CmisEvents.fail(queryEvent, e);
+        }
+      }
+
+      private void exhausted() {
+        completePage();
+        if (!queryCommitted) {
+          queryCommitted = true;
+          CmisEvents.commit(queryEvent, index, 0);
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,118 @@
+package com.springyweb.alfresco.tests.cmis.jfr;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.springyweb.alfresco.tests.cmis.CmisTestModel;
+import com.springyweb.alfresco.tests.cmis.Predicate;
+
+/**
+ * A query together with what it was built from, so that query events can be grouped by template, predicate and property rather than by their
+ * ever changing folder ids and values.
+ */
+public class QueryDescription {
+
+  // e.g swct:propSingleString or cmis:name, but not workspace://SpacesStore/...
+  private static final Pattern PROPERTY_ID = Pattern.compile("[A-Za-z]+:[A-Za-z][\\w.]*");
+
+  private static final Map<String, String> TEMPLATE_NAMES = templateNames();
+
+  private final String query;
+  private final String template;
+  private final String predicate;
+  private final String propertyName;
+
+  private QueryDescription(final String query, final String template, final String predicate,
+    final String propertyName) {
+    this.query = query;
+    this.template = template;
+    this.predicate = predicate;
+    this.propertyName = propertyName;
+  }
+
+  /**
+   * @param queryTemplate
+   *          - A query template, ideally one of the CmisTestModel constants
+   * @param values
+   *          - The values to replace in the template. The predicate and property are picked out of these.
+   */
+  public static QueryDescription of(final String queryTemplate, final Object... values) {
+    String predicate = null;
+    String propertyName = null;
+    for (final Object value: values) {
+      if (!(value instanceof String)) {
+        continue;
+      }
+      final String s = (String)value;
+      if (predicate == null) {
+        for (final Predicate p: Predicate.values()) {
+          if (p.getSymbol().equals(s)) {
+            predicate = p.name();
+          }
+        }
+      }
+      if (propertyName == null && PROPERTY_ID.matcher(s).matches()) {
+        propertyName = s;
+      }
+    }
+    final String name = TEMPLATE_NAMES.get(queryTemplate);
+    return new QueryDescription(String.format(queryTemplate, values), name == null ? queryTemplate
+      : name, predicate, propertyName);
+  }
+
+  /**
+   * Describe a query that was not built from a template
+   */
+  public static QueryDescription of(final String query) {
+    return new QueryDescription(query, query, null, null);
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  /**
+   * @return The name of the CmisTestModel constant the query was built from e.g PREDICATE_QUERY_TEMPLATE_STRING, otherwise the template
+   *         itself
+   */
+  public String getTemplate() {
+    return template;
+  }
+
+  /**
+   * @return The name of the {@link Predicate} used, null if not known
+   */
+  public String getPredicate() {
+    return predicate;
+  }
+
+  /**
+   * @return The property the predicate is applied to, null if not known
+   */
+  public String getPropertyName() {
+    return propertyName;
+  }
+
+  @Override
+  public String toString() {
+    return query;
+  }
+
+  private static Map<String, String> templateNames() {
+    final Map<String, String> names = new HashMap<String, String>();
+    for (final Field field: CmisTestModel.class.getFields()) {
+      if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class
+        && field.getName().contains("TEMPLATE")) {
+        try {
+          names.put((String)field.get(null), field.getName());
+        } catch (final IllegalAccessException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+    return names;
+  }
+}
@@ -0,0 +1,175 @@
+package com.springyweb.alfresco.tests.cmis.load;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.springyweb.alfresco.tests.cmis.perf.LatencyRecorder;
+
+/**
+ * Runs many {@link SimulatedUser}s at once, either a virtual thread per user or on a fixed pool of platform threads, measuring step latency,
+ * throughput, peak heap and platform thread count so the two can be compared.
+ *
+ * A blocked virtual thread gives up its carrier, so with {@link ThreadMode#VIRTUAL} tens of thousands of users can each wait on their own
+ * request at once on one load generator. Things that stop that working show up as a throughput ceiling; run with -Djdk.tracePinnedThreads=short
+ * to find synchronized blocks that pin carriers, and raise -Dhttp.maxConnections (default 5 per host) so that finished requests can reuse
+ * their connections.
+ */
+public class ConcurrentDriver {
+
+  /**
+   * Creates the users of a run
+   */
+  public interface UserFactory {
+    /**
+     * Called on the user's own thread
+     *
+     * @param user
+     *          - Counts from 0
+     */
+    SimulatedUser newUser(int user);
+  }
+
+  private static final long SAMPLE_INTERVAL_MILLIS = 50;
+  private static final long GRACE_MINUTES = 1;
+
+  private final ThreadMode mode;
+  private final int platformThreads;
+
+  /**
+   * @param mode
+   * @param platformThreads
+   *          - The pool size when mode is {@link ThreadMode#PLATFORM}
+   */
+  public ConcurrentDriver(final ThreadMode mode, final int platformThreads) {
+    this.mode = mode;
+    this.platformThreads = platformThreads;
+  }
+
+  /**
+   * Start every user at once and wait until each has taken its steps or the run has lasted maxDuration. A user finishes the step it is in when
+   * the time is up; users still running a minute later are interrupted.
+   *
+   * @param latencies
+   *          - Records the latency of every step
+   */
+  public LoadResult run(final UserFactory users, final int userCount, final int stepsPerUser,
+    final long maxDuration, final TimeUnit unit, final LatencyRecorder latencies)
+    throws InterruptedException {
+
+    final ExecutorService executor = newExecutor();
+    final CountDownLatch go = new CountDownLatch(1);
+    final CountDownLatch finished = new CountDownLatch(userCount);
+    final AtomicLong deadline = new AtomicLong();
+    final AtomicLong failedStarts = new AtomicLong();
+    final AtomicInteger concurrentUsers = new AtomicInteger();
+    final AtomicInteger peakConcurrentUsers = new AtomicInteger();
+
+    for (int i = 0; i < userCount; i++) {
+      final int user = i;
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            go.await();
+            final int concurrent = concurrentUsers.incrementAndGet();
+            try {
+              int peak = peakConcurrentUsers.get();
+              while (concurrent > peak && !peakConcurrentUsers.compareAndSet(peak, concurrent)) {
+                peak = peakConcurrentUsers.get();
+              }
+              runUser(users.newUser(user), stepsPerUser, deadline.get(), latencies, failedStarts);
+            } finally {
+              concurrentUsers.decrementAndGet();
+            }
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            finished.countDown();
+          }
+        }
+      });
+    }
+
+    // Start from a collected heap so that peak heap reflects the run
+    System.gc();
+    final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    threads.resetPeakThreadCount();
+    final AtomicLong peakHeap = new AtomicLong(memory.getHeapMemoryUsage().getUsed());
+    final ScheduledExecutorService sampler = Executors
+      .newSingleThreadScheduledExecutor(daemonThreads("load-sampler"));
+    sampler.scheduleAtFixedRate(new Runnable() {
+      public void run() {
+        final long used = memory.getHeapMemoryUsage().getUsed();
+        if (used > peakHeap.get()) {
+          peakHeap.set(used);
+        }
+      }
+    }, 0, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+    final long start = System.nanoTime();
+    deadline.set(start + unit.toNanos(maxDuration));
+    go.countDown();
+    try {
+      finished.await(unit.toNanos(maxDuration) + TimeUnit.MINUTES.toNanos(GRACE_MINUTES),
+        TimeUnit.NANOSECONDS);
+    } finally {
+      executor.shutdownNow();
+      sampler.shutdownNow();
+    }
+    final long elapsed = System.nanoTime() - start;
+
+    return new LoadResult(mode, userCount, failedStarts.get(), latencies.snapshot(), elapsed,
+      peakHeap.get(), threads.getPeakThreadCount(), peakConcurrentUsers.get());
+  }
+
+  private static void runUser(final SimulatedUser user, final int steps, final long deadline,
+    final LatencyRecorder latencies, final AtomicLong failedStarts) throws InterruptedException {
+    try {
+      user.start();
+    } catch (final InterruptedException e) {
+      throw e;
+    } catch (final Exception e) {
+      failedStarts.incrementAndGet();
+      return;
+    }
+    for (int step = 0; step < steps && System.nanoTime() - deadline < 0; step++) {
+      final long begin = System.nanoTime();
+      try {
+        user.step(step);
+        latencies.record(System.nanoTime() - begin);
+      } catch (final InterruptedException e) {
+        throw e;
+      } catch (final Exception e) {
+        latencies.recordError();
+      }
+    }
+  }
+
+  private ExecutorService newExecutor() {
+    if (mode == ThreadMode.VIRTUAL) {
+      return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("cmis-user-", 0)
+        .factory());
+    }
+    return Executors.newFixedThreadPool(platformThreads, daemonThreads("cmis-user"));
+  }
+
+  private static ThreadFactory daemonThreads(final String prefix) {
+    final AtomicInteger count = new AtomicInteger();
+    return new ThreadFactory() {
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, prefix + "-" + count.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+}
@@ -0,0 +1,91 @@
+package com.springyweb.alfresco.tests.cmis.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.perf.LatencyRecorder;
+
+/**
+ * Drives stand-in users whose steps sleep, as a blocking CMIS call would.
+ */
+public class ConcurrentDriverTest {
+
+  private static final long STEP_MILLIS = 20;
+
+  private static class SleepingUsers implements ConcurrentDriver.UserFactory {
+    private final int failEvery;
+
+    private SleepingUsers(final int failEvery) {
+      this.failEvery = failEvery;
+    }
+
+    public SimulatedUser newUser(final int user) {
+      return new SimulatedUser() {
+        public void start() throws Exception {
+          if (failEvery > 0 && user % failEvery == 0) {
+            throw new IllegalStateException("Login failed");
+          }
+        }
+
+        public void step(final int step) throws Exception {
+          Thread.sleep(STEP_MILLIS);
+          if (failEvery > 0 && step % failEvery == 1) {
+            throw new IllegalStateException("Step failed");
+          }
+        }
+      };
+    }
+  }
+
+  private static LoadResult run(final ThreadMode mode, final int platformThreads,
+    final int users, final int steps, final int failEvery, final long maxSeconds)
+    throws InterruptedException {
+    return new ConcurrentDriver(mode, platformThreads).run(new SleepingUsers(failEvery), users,
+      steps, maxSeconds, TimeUnit.SECONDS, new LatencyRecorder(mode.name()));
+  }
+
+  @Test
+  public void virtualThreadsRunEveryUserAtOnce() throws InterruptedException {
+    final LoadResult result = run(ThreadMode.VIRTUAL, 0, 10000, 3, 0, 60);
+
+    assertEquals(30000, result.getSteps().getCount());
+    assertEquals(0, result.getSteps().getErrors());
+    assertTrue(result.toString(), result.getPeakConcurrentUsers() > 1000);
+    // Ten thousand users waiting at once without a platform thread each
+    assertTrue(result.toString(), result.getPeakPlatformThreads() < 1000);
+    assertTrue(result.toString(), result.getElapsedNanos() < TimeUnit.SECONDS.toNanos(30));
+  }
+
+  @Test
+  public void platformPoolLimitsConcurrentUsers() throws InterruptedException {
+    final LoadResult result = run(ThreadMode.PLATFORM, 20, 200, 2, 0, 60);
+
+    assertEquals(400, result.getSteps().getCount());
+    assertTrue(result.toString(), result.getPeakConcurrentUsers() <= 20);
+    // 200 users of 2 steps, 20 at a time
+    assertTrue(result.toString(),
+      result.getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(200 / 20 * 2 * STEP_MILLIS));
+  }
+
+  @Test
+  public void failuresAreCounted() throws InterruptedException {
+    final LoadResult result = run(ThreadMode.VIRTUAL, 0, 100, 4, 10, 60);
+
+    // Users 0, 10, ... 90 fail to start; the rest fail step 1
+    assertEquals(10, result.getFailedStarts());
+    assertEquals(90, result.getSteps().getErrors());
+    assertEquals(270, result.getSteps().getCount());
+  }
+
+  @Test
+  public void usersStopAtTheDeadline() throws InterruptedException {
+    final LoadResult result = run(ThreadMode.VIRTUAL, 0, 10, 1000000, 0, 1);
+
+    assertTrue(result.toString(), result.getElapsedNanos() < TimeUnit.SECONDS.toNanos(10));
+    assertTrue(result.toString(), result.getSteps().getCount() < 10 * 1000 / STEP_MILLIS + 10);
+  }
+}
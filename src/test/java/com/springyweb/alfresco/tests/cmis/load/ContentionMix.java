@@ -0,0 +1,66 @@
+package com.springyweb.alfresco.tests.cmis.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The relative frequency of the operations a user runs, e.g update=3,aspect=1,create=1
+ */
+public class ContentionMix {
+
+  private final Map<ContentionOperation, Integer> weights;
+  private final int total;
+
+  private ContentionMix(final Map<ContentionOperation, Integer> weights) {
+    this.weights = weights;
+    int sum = 0;
+    for (final int weight: weights.values()) {
+      sum += weight;
+    }
+    if (sum == 0) {
+      throw new IllegalArgumentException("A mix needs at least one operation");
+    }
+    this.total = sum;
+  }
+
+  /**
+   * @param mix
+   *          - Comma separated operation=weight pairs, operations named as {@link ContentionOperation} in any case
+   */
+  public static ContentionMix parse(final String mix) {
+    final Map<ContentionOperation, Integer> weights = new EnumMap<ContentionOperation, Integer>(
+      ContentionOperation.class);
+    for (final String pair: mix.trim().split("\\s*,\\s*")) {
+      final String[] parts = pair.split("\\s*=\\s*");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Expected operation=weight but got " + pair);
+      }
+      final int weight = Integer.parseInt(parts[1]);
+      if (weight < 0) {
+        throw new IllegalArgumentException("Negative weight in " + pair);
+      }
+      weights.put(ContentionOperation.valueOf(parts[0].toUpperCase()), weight);
+    }
+    return new ContentionMix(weights);
+  }
+
+  /**
+   * @return An operation chosen in proportion to its weight
+   */
+  public ContentionOperation pick(final Random random) {
+    int remaining = random.nextInt(total);
+    for (final Map.Entry<ContentionOperation, Integer> entry: weights.entrySet()) {
+      remaining -= entry.getValue();
+      if (remaining < 0) {
+        return entry.getKey();
+      }
+    }
+    throw new IllegalStateException("Weights changed");
+  }
+
+  @Override
+  public String toString() {
+    return weights.toString();
+  }
+}
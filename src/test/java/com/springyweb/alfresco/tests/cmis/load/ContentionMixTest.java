@@ -0,0 +1,54 @@
+package com.springyweb.alfresco.tests.cmis.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.chemistry.opencmis.commons.exceptions.CmisContentAlreadyExistsException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisRuntimeException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisUpdateConflictException;
+import org.junit.Test;
+
+public class ContentionMixTest {
+
+  @Test
+  public void operationsArePickedInProportion() {
+    final ContentionMix mix = ContentionMix.parse("update=3, ASPECT=1,create=0");
+    final Map<ContentionOperation, Integer> counts = new EnumMap<ContentionOperation, Integer>(
+      ContentionOperation.class);
+    final Random random = new Random(1);
+    for (int i = 0; i < 4000; i++) {
+      final ContentionOperation operation = mix.pick(random);
+      counts.put(operation, counts.containsKey(operation) ? counts.get(operation) + 1 : 1);
+    }
+    assertEquals(2, counts.size());
+    assertEquals(3000, counts.get(ContentionOperation.UPDATE), 100);
+    assertEquals(1000, counts.get(ContentionOperation.ASPECT), 100);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownOperationIsRejected() {
+    ContentionMix.parse("delete=1");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void emptyMixIsRejected() {
+    ContentionMix.parse("update=0");
+  }
+
+  @Test
+  public void conflictsAreClassified() {
+    assertEquals(WriteConflict.UPDATE_CONFLICT, WriteConflict.of(new CmisUpdateConflictException(
+      "Change token mismatch")));
+    assertEquals(WriteConflict.NAME_CONFLICT, WriteConflict.of(new CmisContentAlreadyExistsException(
+      "Duplicate child name")));
+    assertEquals(WriteConflict.OPTIMISTIC_LOCK, WriteConflict.of(new CmisRuntimeException(
+      "Failed", new RuntimeException(
+        "org.springframework.dao.ConcurrencyFailureException: Failed to update node"))));
+    assertNull(WriteConflict.of(new CmisObjectNotFoundException("Gone")));
+  }
+}
@@ -0,0 +1,28 @@
+package com.springyweb.alfresco.tests.cmis.load;
+
+/**
+ * The operations of the contention workload, all on the same folder and its shared documents
+ */
+public enum ContentionOperation {
+
+  /** updateProperties on a shared document */
+  UPDATE(true),
+  /** Add or remove an aspect on a shared document */
+  ASPECT(true),
+  /** createDocument into the shared folder */
+  CREATE(true),
+  /** Query the shared documents */
+  QUERY(false),
+  /** getObject on a shared document */
+  GET(false);
+
+  private final boolean write;
+
+  private ContentionOperation(final boolean write) {
+    this.write = write;
+  }
+
+  public boolean isWrite() {
+    return write;
+  }
+}
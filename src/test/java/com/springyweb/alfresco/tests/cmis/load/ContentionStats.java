@@ -0,0 +1,106 @@
+package com.springyweb.alfresco.tests.cmis.load;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.springyweb.alfresco.tests.cmis.perf.BenchmarkRecorder;
+import com.springyweb.alfresco.tests.cmis.perf.LatencyRecorder;
+import com.springyweb.alfresco.tests.cmis.perf.LatencyRecorder.LatencySnapshot;
+
+/**
+ * Latency, conflicts and failures of each operation of the contention workload. Latencies are recorded as contention.&lt;operation&gt; so that
+ * they are compared with the baseline like any other benchmark operation.
+ */
+public class ContentionStats {
+
+  private final Map<ContentionOperation, LatencyRecorder> latencies = new EnumMap<ContentionOperation, LatencyRecorder>(
+    ContentionOperation.class);
+  private final Map<ContentionOperation, Map<WriteConflict, AtomicLong>> conflicts = new EnumMap<ContentionOperation, Map<WriteConflict, AtomicLong>>(
+    ContentionOperation.class);
+
+  private final BenchmarkRecorder recorder;
+
+  public ContentionStats(final BenchmarkRecorder recorder) {
+    this.recorder = recorder;
+    for (final ContentionOperation operation: ContentionOperation.values()) {
+      final Map<WriteConflict, AtomicLong> counts = new EnumMap<WriteConflict, AtomicLong>(
+        WriteConflict.class);
+      for (final WriteConflict conflict: WriteConflict.values()) {
+        counts.put(conflict, new AtomicLong());
+      }
+      conflicts.put(operation, counts);
+    }
+  }
+
+  public void succeeded(final ContentionOperation operation, final long nanos) {
+    latencies(operation).record(nanos);
+  }
+
+  /**
+   * Count a failed operation as a conflict or, if it was not one, an error
+   */
+  public void failed(final ContentionOperation operation, final Throwable failure) {
+    final LatencyRecorder latency = latencies(operation);
+    final WriteConflict conflict = WriteConflict.of(failure);
+    if (conflict == null) {
+      latency.recordError();
+    } else {
+      conflicts.get(operation).get(conflict).incrementAndGet();
+    }
+  }
+
+  /**
+   * Created on first use, so that operations left out of the mix are not recorded
+   */
+  private synchronized LatencyRecorder latencies(final ContentionOperation operation) {
+    LatencyRecorder latency = latencies.get(operation);
+    if (latency == null) {
+      latency = recorder.latencies("contention." + operation.name().toLowerCase());
+      latencies.put(operation, latency);
+    }
+    return latency;
+  }
+
+  public long getConflicts(final ContentionOperation operation, final WriteConflict conflict) {
+    return conflicts.get(operation).get(conflict).get();
+  }
+
+  /**
+   * Print throughput, latency and conflict and error rates per operation
+   *
+   * @param elapsedNanos
+   *          - How long the workload ran
+   */
+  public void print(final long elapsedNanos, final PrintStream out) {
+    final double seconds = elapsedNanos / (double)TimeUnit.SECONDS.toNanos(1);
+    for (final ContentionOperation operation: ContentionOperation.values()) {
+      final LatencySnapshot snapshot;
+      synchronized (this) {
+        if (!latencies.containsKey(operation)) {
+          continue;
+        }
+        snapshot = latencies.get(operation).snapshot();
+      }
+      long conflicted = 0;
+      final StringBuilder byKind = new StringBuilder();
+      for (final Map.Entry<WriteConflict, AtomicLong> entry: conflicts.get(operation).entrySet()) {
+        conflicted += entry.getValue().get();
+        if (entry.getValue().get() > 0) {
+          byKind.append(' ').append(entry.getKey()).append('=').append(entry.getValue().get());
+        }
+      }
+      final long attempts = snapshot.getCount() + snapshot.getErrors() + conflicted;
+      if (attempts == 0) {
+        continue;
+      }
+      out.println(String.format(
+        "%-6s %8d ok %8.1f/s p50=%.1fms p95=%.1fms conflicts=%.2f%%%s errors=%.2f%%",
+        operation, snapshot.getCount(), snapshot.getCount() / seconds,
+        snapshot.getPercentileMillis(50), snapshot.getPercentileMillis(95), 100.0 * conflicted
+          / attempts, byKind, 100.0 * snapshot.getErrors() / attempts));
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.springyweb.alfresco.tests.cmis.load;
+
+import com.springyweb.alfresco.tests.cmis.perf.LatencyRecorder.LatencySnapshot;
+
+/**
+ * The outcome of one {@link ConcurrentDriver} run
+ */
+public class LoadResult {
+
+  private final ThreadMode mode;
+  private final int users;
+  private final long failedStarts;
+  private final LatencySnapshot steps;
+  private final long elapsedNanos;
+  private final long peakHeapBytes;
+  private final int peakPlatformThreads;
+  private final int peakConcurrentUsers;
+
+  LoadResult(final ThreadMode mode, final int users, final long failedStarts,
+    final LatencySnapshot steps, final long elapsedNanos, final long peakHeapBytes,
+    final int peakPlatformThreads, final int peakConcurrentUsers) {
+    this.mode = mode;
+    this.users = users;
+    this.failedStarts = failedStarts;
+    this.steps = steps;
+    this.elapsedNanos = elapsedNanos;
+    this.peakHeapBytes = peakHeapBytes;
+    this.peakPlatformThreads = peakPlatformThreads;
+    this.peakConcurrentUsers = peakConcurrentUsers;
+  }
+
+  public ThreadMode getMode() {
+    return mode;
+  }
+
+  public int getUsers() {
+    return users;
+  }
+
+  /**
+   * @return The number of users whose {@link SimulatedUser#start()} failed
+   */
+  public long getFailedStarts() {
+    return failedStarts;
+  }
+
+  /**
+   * @return The latencies of every completed step, errors counted separately
+   */
+  public LatencySnapshot getSteps() {
+    return steps;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * @return Completed steps per second of wall clock time
+   */
+  public double getThroughputPerSecond() {
+    return elapsedNanos == 0 ? 0 : steps.getCount() * 1e9 / elapsedNanos;
+  }
+
+  /**
+   * @return The most heap in use at any of the samples taken during the run
+   */
+  public long getPeakHeapBytes() {
+    return peakHeapBytes;
+  }
+
+  /**
+   * @return The most live platform threads in the JVM during the run. Virtual threads are not counted.
+   */
+  public int getPeakPlatformThreads() {
+    return peakPlatformThreads;
+  }
+
+  /**
+   * @return The most users that were between starting and finishing at the same time
+   */
+  public int getPeakConcurrentUsers() {
+    return peakConcurrentUsers;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s users=%d concurrent=%d steps=%d errors=%d failedStarts=%d elapsed=%.1fs "
+      + "throughput=%.1f/s p50=%.2fms p99=%.2fms peakHeap=%.1fMB platformThreads=%d", mode,
+      users, peakConcurrentUsers, steps.getCount(), steps.getErrors(), failedStarts,
+      elapsedNanos / 1e9, getThroughputPerSecond(), steps.getPercentileMillis(50),
+      steps.getPercentileMillis(99), peakHeapBytes / (1024.0 * 1024), peakPlatformThreads);
+  }
+}
@@ -0,0 +1,20 @@
+package com.springyweb.alfresco.tests.cmis.load;
+
+/**
+ * One user of the repository driven by {@link ConcurrentDriver}. Each user is only ever called from its own thread.
+ */
+public interface SimulatedUser {
+
+  /**
+   * Called before the first step e.g to open the user's session. Not timed; a failure here abandons the user and counts as a failed start.
+   */
+  void start() throws Exception;
+
+  /**
+   * One timed unit of work e.g a query and reading its results. A failure is counted as an error and the user carries on.
+   *
+   * @param step
+   *          - Counts from 0
+   */
+  void step(int step) throws Exception;
+}
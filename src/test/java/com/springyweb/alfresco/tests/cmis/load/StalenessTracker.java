@@ -0,0 +1,95 @@
+package com.springyweb.alfresco.tests.cmis.load;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides whether a read of a shared document returned a value that had already been overwritten when the read started.
+ *
+ * Writes to the same document can overlap, and either may win, so a value is only stale once a write that started after it had completed has
+ * itself completed. Each write therefore remembers how many writes to its document had completed when it started; when it completes, every
+ * value from those writes is superseded. Values whose writes have not completed, or failed, are never stale.
+ */
+public class StalenessTracker {
+
+  private final int[] completedWrites;
+  private final int[] supersededBelow;
+  private final List<Map<Long, Integer>> completionOrder;
+
+  private long reads;
+  private long staleReads;
+  private int maxLag;
+
+  /**
+   * @param documents
+   *          - The number of shared documents, numbered from 0
+   */
+  public StalenessTracker(final int documents) {
+    completedWrites = new int[documents];
+    supersededBelow = new int[documents];
+    completionOrder = new ArrayList<Map<Long, Integer>>(documents);
+    for (int i = 0; i < documents; i++) {
+      completionOrder.add(new HashMap<Long, Integer>());
+    }
+  }
+
+  /**
+   * @return A token to pass to {@link #writeCompleted(int, long, int)}
+   */
+  public synchronized int writeStarted(final int document) {
+    return completedWrites[document];
+  }
+
+  /**
+   * @param value
+   *          - The value written, unique per document
+   */
+  public synchronized void writeCompleted(final int document, final long value, final int token) {
+    completionOrder.get(document).put(value, completedWrites[document]++);
+    supersededBelow[document] = Math.max(supersededBelow[document], token);
+  }
+
+  /**
+   * @return A token to pass to {@link #observed(int[], int, long)} for each value the read returns
+   */
+  public synchronized int[] readStarted() {
+    return supersededBelow.clone();
+  }
+
+  /**
+   * @return true if the value was stale
+   */
+  public synchronized boolean observed(final int[] token, final int document, final long value) {
+    reads++;
+    final Integer order = completionOrder.get(document).get(value);
+    if (order == null || order >= token[document]) {
+      return false;
+    }
+    staleReads++;
+    maxLag = Math.max(maxLag, token[document] - order);
+    return true;
+  }
+
+  public synchronized long getReads() {
+    return reads;
+  }
+
+  public synchronized long getStaleReads() {
+    return staleReads;
+  }
+
+  /**
+   * @return The most completed writes a stale read was behind by
+   */
+  public synchronized int getMaxLag() {
+    return maxLag;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("Reads: %d, stale: %d (%.2f%%), max lag: %d writes", reads, staleReads,
+      reads == 0 ? 0 : 100.0 * staleReads / reads, maxLag);
+  }
+}
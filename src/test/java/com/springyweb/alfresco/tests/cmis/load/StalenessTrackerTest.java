@@ -0,0 +1,57 @@
+package com.springyweb.alfresco.tests.cmis.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StalenessTrackerTest {
+
+  private final StalenessTracker tracker = new StalenessTracker(2);
+
+  private void write(final int document, final long value) {
+    tracker.writeCompleted(document, value, tracker.writeStarted(document));
+  }
+
+  @Test
+  public void overwrittenValueIsStale() {
+    write(0, 1);
+    write(0, 2);
+    final int[] read = tracker.readStarted();
+    assertTrue(tracker.observed(read, 0, 1));
+    assertFalse(tracker.observed(read, 0, 2));
+    assertEquals(2, tracker.getReads());
+    assertEquals(1, tracker.getStaleReads());
+    assertEquals(1, tracker.getMaxLag());
+  }
+
+  @Test
+  public void eitherOfOverlappingWritesMayWin() {
+    final int first = tracker.writeStarted(0);
+    final int second = tracker.writeStarted(0);
+    tracker.writeCompleted(0, 2, second);
+    tracker.writeCompleted(0, 1, first);
+    final int[] read = tracker.readStarted();
+    assertFalse(tracker.observed(read, 0, 1));
+    assertFalse(tracker.observed(read, 0, 2));
+  }
+
+  @Test
+  public void writesCompletedAfterTheReadStartedAreNotExpected() {
+    write(0, 1);
+    final int[] read = tracker.readStarted();
+    write(0, 2);
+    assertFalse(tracker.observed(read, 0, 1));
+  }
+
+  @Test
+  public void documentsAreTrackedSeparately() {
+    write(0, 1);
+    write(0, 2);
+    write(1, 1);
+    final int[] read = tracker.readStarted();
+    assertFalse(tracker.observed(read, 1, 1));
+    assertFalse("Values of unfinished writes are never stale", tracker.observed(read, 0, 3));
+  }
+}
@@ -0,0 +1,17 @@
+package com.springyweb.alfresco.tests.cmis.load;
+
+/**
+ * How {@link ConcurrentDriver} runs its simulated users
+ */
+public enum ThreadMode {
+
+  /**
+   * A virtual thread per user, so every user is in flight at once
+   */
+  VIRTUAL,
+
+  /**
+   * A fixed pool of platform threads, so at most pool size users are in flight and the rest queue
+   */
+  PLATFORM
+}
@@ -0,0 +1,50 @@
+package com.springyweb.alfresco.tests.cmis.load;
+
+import org.apache.chemistry.opencmis.commons.exceptions.CmisContentAlreadyExistsException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisNameConstraintViolationException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisUpdateConflictException;
+
+/**
+ * Why a write lost to a concurrent one
+ */
+public enum WriteConflict {
+
+  /** The repository rejected a stale change token */
+  UPDATE_CONFLICT,
+  /** Another object took the name first */
+  NAME_CONFLICT,
+  /**
+   * The repository's own optimistic locking or deadlock detection failed the transaction. Alfresco reports these as runtime exceptions, so they
+   * are recognised by message.
+   */
+  OPTIMISTIC_LOCK;
+
+  private static final String[] LOCK_FAILURES = { "concurrencyfailure", "optimistic", "deadlock",
+      "cannotacquirelock", "staleobjectstate" };
+
+  /**
+   * @return The kind of conflict, or null if the failure was not caused by a concurrent write
+   */
+  public static WriteConflict of(final Throwable failure) {
+    for (Throwable cause = failure; cause != null; cause = cause.getCause() == cause ? null : cause
+      .getCause()) {
+      if (cause instanceof CmisUpdateConflictException) {
+        return UPDATE_CONFLICT;
+      }
+      if (cause instanceof CmisContentAlreadyExistsException
+        || cause instanceof CmisNameConstraintViolationException) {
+        return NAME_CONFLICT;
+      }
+      final String message = cause.getMessage();
+      if (message != null) {
+        final String lower = message.toLowerCase();
+        for (final String lockFailure: LOCK_FAILURES) {
+          if (lower.contains(lockFailure)) {
+            return OPTIMISTIC_LOCK;
+          }
+        }
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,220 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_DOCUMENT_TYPE;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_FOLDER_TYPE;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.documentPrefix;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.folderPrefix;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ContentStreamImpl;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.TestRule;
+
+import com.springyweb.alfresco.tests.cmis.CmisSessions;
+import com.springyweb.alfresco.tests.cmis.delete.TreeDeleter;
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+import com.springyweb.alfresco.tests.cmis.jfr.CmisProfiler;
+import com.springyweb.alfresco.tests.cmis.jfr.QueryDescription;
+import com.springyweb.alfresco.tests.cmis.report.EventLog;
+import com.springyweb.alfresco.tests.cmis.routing.ClusterSession;
+
+/**
+ * Base class for the benchmarks run by the benchmark profile (classes named *Benchmark).
+ *
+ * Each test gets a fresh folder beneath the repository root to build its corpus in. Operation latencies recorded through {@link #recorder()} are
+ * written to -Dbenchmark.results (default target/benchmark-results) when the class finishes, for {@link BaselineGate} to compare. With
+ * -Dcmis.profile set each class is also flight recorded, and with -Dcmis.events each CMIS call is logged.
+ */
+public abstract class AbstractCmisBenchmark {
+
+  protected static final int WARMUP_ITERATIONS = Integer.getInteger("benchmark.warmup", 20);
+  protected static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 200);
+
+  private static final String RESULTS_DIRECTORY = System.getProperty("benchmark.results",
+    "target/benchmark-results");
+
+  private static final Map<String, BenchmarkRecorder> RECORDERS = new LinkedHashMap<String, BenchmarkRecorder>();
+
+  private static CmisProfiler profiler;
+  private static EventLog eventLog;
+
+  @Rule
+  public final TestRule events = EventLog.watcher();
+
+  protected Session session;
+  protected Folder root;
+  protected Folder benchmarkFolder;
+
+  @Before
+  public void setup() throws IOException, ParseException {
+    synchronized (RECORDERS) {
+      if (profiler == null) {
+        profiler = CmisProfiler.start(getClass().getSimpleName());
+      }
+      if (eventLog == null) {
+        eventLog = EventLog.start(getClass().getSimpleName());
+      }
+    }
+    session = CmisSessions.create(CmisSessions.DEFAULT_USERNAME, CmisSessions.DEFAULT_PASSWORD);
+    root = session.getRootFolder();
+
+    final String folderName = "benchmark_" + getClass().getSimpleName();
+    try {
+      final CmisObject existing = session.getObjectByPath(root.getPath() + folderName);
+      deleteTree((Folder)existing);
+    } catch (final CmisObjectNotFoundException ignored) {
+    }
+    benchmarkFolder = createFolder(root, folderName);
+  }
+
+  @After
+  public void tearDown() {
+    if (benchmarkFolder != null) {
+      try {
+        deleteTree(benchmarkFolder);
+      } catch (final Exception e) {
+        e.printStackTrace();
+      }
+    }
+    final ClusterSession cluster = ClusterSession.of(session);
+    if (cluster != null) {
+      System.out.print(cluster.report());
+    }
+  }
+
+  @AfterClass
+  public static void writeResults() throws IOException {
+    synchronized (RECORDERS) {
+      for (final BenchmarkRecorder recorder: RECORDERS.values()) {
+        final BenchmarkResults results = recorder.toResults();
+        for (final OperationResult result: results.getAll()) {
+          System.out.println(result);
+        }
+        results.write(new File(RESULTS_DIRECTORY, recorder.getBenchmarkName()
+          + BenchmarkResults.RESULT_FILE_SUFFIX), recorder.getBenchmarkName());
+      }
+      RECORDERS.clear();
+      if (profiler != null) {
+        profiler.stop();
+        profiler = null;
+      }
+      if (eventLog != null) {
+        eventLog.close();
+        eventLog = null;
+      }
+    }
+  }
+
+  /**
+   * @return The recorder for this benchmark class
+   */
+  protected BenchmarkRecorder recorder() {
+    synchronized (RECORDERS) {
+      final String name = getClass().getSimpleName();
+      BenchmarkRecorder recorder = RECORDERS.get(name);
+      if (recorder == null) {
+        recorder = new BenchmarkRecorder(name);
+        RECORDERS.put(name, recorder);
+      }
+      return recorder;
+    }
+  }
+
+  /**
+   * Record the latency of reading every result of a query
+   */
+  protected void measureQuery(final String operation, final String query) {
+    measureQuery(operation, query, false);
+  }
+
+  protected void measureQuery(final String operation, final String query,
+    final boolean searchAllVersions) {
+    recorder().measure(operation, WARMUP_ITERATIONS, ITERATIONS, new Runnable() {
+      public void run() {
+        countResults(query, searchAllVersions);
+      }
+    });
+  }
+
+  protected long countResults(final String query) {
+    return countResults(query, false);
+  }
+
+  protected long countResults(final String query, final boolean searchAllVersions) {
+    long count = 0;
+    for (@SuppressWarnings("unused")
+    final QueryResult result: CmisEvents.profile(session.query(query, searchAllVersions),
+      QueryDescription.of(query), session.getDefaultContext().getMaxItemsPerPage())) {
+      count++;
+    }
+    return count;
+  }
+
+  protected Folder createFolder(final Folder parent, final String name) {
+    final Map<String, String> props = new HashMap<String, String>();
+    props.put(PropertyIds.NAME, name);
+    props.put(PropertyIds.OBJECT_TYPE_ID, folderPrefix(TEST_CMIS_FOLDER_TYPE));
+    return CmisEvents.time(CmisEvents.CREATE_FOLDER, new CmisEvents.Call<Folder>() {
+      public Folder call() {
+        return parent.createFolder(props);
+      }
+    });
+  }
+
+  /**
+   * @throws IllegalStateException
+   *           If some of the tree could not be deleted, listing the ids left behind
+   */
+  protected void deleteTree(final Folder folder) {
+    final List<String> failed = TreeDeleter.deleteTree(folder);
+    if (!failed.isEmpty()) {
+      throw new IllegalStateException("Could not delete " + failed + " beneath "
+        + folder.getName());
+    }
+  }
+
+  protected Document createDocument(final Folder parent, final String name,
+    final Map<String, Object> props) {
+    return createDocument(parent, name, props, null);
+  }
+
+  protected Document createDocument(final Folder parent, final String name,
+    final Map<String, Object> props, final String content) {
+
+    final Map<String, Object> properties = new HashMap<String, Object>(props);
+    properties.put(PropertyIds.NAME, name);
+    if (!properties.containsKey(PropertyIds.OBJECT_TYPE_ID)) {
+      properties.put(PropertyIds.OBJECT_TYPE_ID, documentPrefix(TEST_CMIS_DOCUMENT_TYPE));
+    }
+    final ContentStream contentStream = content == null ? null : new ContentStreamImpl(name,
+      "text/plain", content);
+    return CmisEvents.time(CmisEvents.CREATE_DOCUMENT, new CmisEvents.Call<Document>() {
+      public Document call() {
+        return parent.createDocument(properties, contentStream, null);
+      }
+
+      @Override
+      public long bytes(final Document result) {
+        return contentStream == null ? 0 : contentStream.getLength();
+      }
+    });
+  }
+}
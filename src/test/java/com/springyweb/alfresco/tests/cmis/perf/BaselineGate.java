@@ -0,0 +1,146 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the results of a benchmark run with the checked-in baseline and fails if any operation has regressed.
+ *
+ * An operation has regressed when its median or 95th percentile latency has grown by more than the configured percentage AND a one sided
+ * Mann-Whitney test on the latency samples says the slowdown is significant. Requiring both keeps noise from failing the build while still
+ * catching small but real shifts on large samples. Throughput is a single figure per run, so has no test of significance: it has regressed
+ * whenever it has fallen by more than its own percentage. An operation in the baseline that this run did not measure fails too, so dropping or
+ * renaming a benchmark cannot quietly weaken the gate.
+ *
+ * Run by the benchmark profile in the verify phase, failing if there is no baseline to compare with or no results to compare. Configured
+ * with system properties:
+ * <ul>
+ * <li>benchmark.maxLatencyRegression - percent, default 10</li>
+ * <li>benchmark.maxThroughputRegression - percent, default 10</li>
+ * <li>benchmark.significance - p-value below which a latency difference is significant, default 0.01</li>
+ * <li>benchmark.allowMissing - true to only compare the operations that were run, e.g when running a single benchmark</li>
+ * <li>benchmark.updateBaseline - true to replace the baseline with this run's results instead of comparing</li>
+ * </ul>
+ */
+public class BaselineGate {
+
+  private final double maxLatencyRegressionPercent;
+  private final double maxThroughputRegressionPercent;
+  private final double significance;
+  private final boolean allowMissing;
+
+  public BaselineGate(final double maxLatencyRegressionPercent,
+    final double maxThroughputRegressionPercent, final double significance) {
+    this(maxLatencyRegressionPercent, maxThroughputRegressionPercent, significance, false);
+  }
+
+  /**
+   * @param allowMissing
+   *          - Whether an operation in the baseline but not in the run passes
+   */
+  public BaselineGate(final double maxLatencyRegressionPercent,
+    final double maxThroughputRegressionPercent, final double significance,
+    final boolean allowMissing) {
+    this.maxLatencyRegressionPercent = maxLatencyRegressionPercent;
+    this.maxThroughputRegressionPercent = maxThroughputRegressionPercent;
+    this.significance = significance;
+    this.allowMissing = allowMissing;
+  }
+
+  /**
+   * @param args
+   *          - The directory holding this run's result files and the baseline file
+   */
+  public static void main(final String[] args) throws IOException {
+    if (args.length != 2) {
+      throw new IllegalArgumentException("Usage: BaselineGate <results directory> <baseline file>");
+    }
+    final File resultsDirectory = new File(args[0]);
+    final File baselineFile = new File(args[1]);
+
+    final BenchmarkResults current = BenchmarkResults.readDirectory(resultsDirectory);
+    if (current.isEmpty()) {
+      // Every benchmark failing to run, or none being run, must not pass as no regressions
+      throw new IllegalStateException("No benchmark results in " + resultsDirectory);
+    }
+    if (Boolean.getBoolean("benchmark.updateBaseline")) {
+      current.write(baselineFile, "baseline");
+      System.out.println("Wrote " + current.getAll().size() + " operations to baseline "
+        + baselineFile);
+      return;
+    }
+    if (!baselineFile.exists()) {
+      // Passing without a baseline would let any regression through unnoticed
+      throw new IllegalStateException("No baseline at " + baselineFile
+        + ", run with -Dbenchmark.updateBaseline=true to create one and commit it");
+    }
+
+    final BaselineGate gate = new BaselineGate(
+      Double.parseDouble(System.getProperty("benchmark.maxLatencyRegression", "10")),
+      Double.parseDouble(System.getProperty("benchmark.maxThroughputRegression", "10")),
+      Double.parseDouble(System.getProperty("benchmark.significance", "0.01")),
+      Boolean.getBoolean("benchmark.allowMissing"));
+    final List<String> regressions = gate.compare(BenchmarkResults.read(baselineFile), current,
+      System.out);
+    if (!regressions.isEmpty()) {
+      throw new IllegalStateException(regressions.size()
+        + " performance regression(s) or missing operation(s) against "
+        + baselineFile + ": " + regressions);
+    }
+  }
+
+  /**
+   * @param baseline
+   * @param current
+   * @param report
+   *          - Where to print one line per operation
+   * @return The names of the operations that have regressed, and unless allowed those in the baseline that were not run
+   */
+  public List<String> compare(final BenchmarkResults baseline, final BenchmarkResults current,
+    final PrintStream report) {
+
+    final List<String> regressions = new ArrayList<String>();
+    for (final OperationResult now: current.getAll()) {
+      final OperationResult before = baseline.get(now.getName());
+      if (before == null) {
+        report.println("NEW        " + now);
+        continue;
+      }
+      final double medianChange = percentChange(before.getPercentileMillis(50),
+        now.getPercentileMillis(50));
+      final double p95Change = percentChange(before.getPercentileMillis(95),
+        now.getPercentileMillis(95));
+      final double throughputChange = percentChange(before.getThroughputPerSecond(),
+        now.getThroughputPerSecond());
+      final double pValue = MannWhitney.pValueGreater(before.getSortedSamples(),
+        now.getSortedSamples());
+
+      final boolean latencyRegressed = (medianChange > maxLatencyRegressionPercent
+        || p95Change > maxLatencyRegressionPercent) && pValue < significance;
+      final boolean throughputRegressed = -throughputChange > maxThroughputRegressionPercent;
+      final boolean regressed = latencyRegressed || throughputRegressed;
+      if (regressed) {
+        regressions.add(now.getName());
+      }
+      report.println(String.format("%-10s %s: p50 %+.1f%% p95 %+.1f%% throughput %+.1f%% (p=%.4f)",
+        regressed ? "REGRESSED" : "ok", now.getName(), medianChange, p95Change, throughputChange,
+        pValue));
+    }
+    for (final OperationResult before: baseline.getAll()) {
+      if (current.get(before.getName()) == null) {
+        report.println("MISSING    " + before.getName() + " is in the baseline but was not run");
+        if (!allowMissing) {
+          regressions.add(before.getName());
+        }
+      }
+    }
+    return regressions;
+  }
+
+  private static double percentChange(final double before, final double now) {
+    return before == 0 ? 0 : (now - before) / before * 100;
+  }
+}
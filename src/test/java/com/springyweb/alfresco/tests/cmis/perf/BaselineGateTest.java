@@ -0,0 +1,174 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares synthetic latency distributions rather than real benchmark runs.
+ */
+public class BaselineGateTest {
+
+  private static final long MILLISECOND = 1000000L;
+
+  private final BaselineGate gate = new BaselineGate(10, 10, 0.01);
+  private final PrintStream report = new PrintStream(new ByteArrayOutputStream());
+
+  /**
+   * @return count samples of roughly meanMillis with +/- 5% jitter
+   */
+  private static long[] latencies(final long seed, final int count, final double meanMillis) {
+    final Random random = new Random(seed);
+    final long[] samples = new long[count];
+    for (int i = 0; i < count; i++) {
+      samples[i] = (long)(meanMillis * MILLISECOND * (0.95 + random.nextDouble() * 0.1));
+    }
+    return samples;
+  }
+
+  private static BenchmarkResults results(final String name, final long[] samples) {
+    long total = 0;
+    for (final long sample: samples) {
+      total += sample;
+    }
+    final BenchmarkResults results = new BenchmarkResults();
+    results.add(OperationResult.sorted(name, samples.length, 0, total, samples));
+    return results;
+  }
+
+  @Test
+  public void identicalDistributionsAreNotSignificant() {
+    final double p = MannWhitney.pValueGreater(latencies(1, 200, 10), latencies(2, 200, 10));
+    assertTrue("p=" + p, p > 0.01);
+  }
+
+  @Test
+  public void slowerDistributionIsSignificant() {
+    assertTrue(MannWhitney.pValueGreater(latencies(1, 200, 10), latencies(2, 200, 12)) < 0.001);
+    // One sided, a faster run is never a regression
+    assertTrue(MannWhitney.pValueGreater(latencies(1, 200, 12), latencies(2, 200, 10)) > 0.99);
+  }
+
+  @Test
+  public void allTiesAreNotSignificant() {
+    final long[] same = new long[50];
+    Arrays.fill(same, 5 * MILLISECOND);
+    assertEquals(1, MannWhitney.pValueGreater(same, same.clone()), 0);
+  }
+
+  @Test
+  public void gatePassesUnchangedAndFasterRuns() {
+    final BenchmarkResults baseline = results("query", latencies(1, 200, 10));
+    assertEquals(Collections.emptyList(),
+      gate.compare(baseline, results("query", latencies(2, 200, 10)), report));
+    assertEquals(Collections.emptyList(),
+      gate.compare(baseline, results("query", latencies(2, 200, 8)), report));
+  }
+
+  @Test
+  public void gateFailsSignificantRegression() {
+    final BenchmarkResults baseline = results("query", latencies(1, 200, 10));
+    assertEquals(Arrays.asList("query"),
+      gate.compare(baseline, results("query", latencies(2, 200, 12)), report));
+  }
+
+  @Test
+  public void gateIgnoresLargeButInsignificantChange() {
+    // Too few samples for a 20% shift to be significant. The runs took as long, so throughput is unchanged.
+    final BenchmarkResults baseline = new BenchmarkResults();
+    baseline.add(OperationResult.sorted("query", 2, 0, 48 * MILLISECOND, new long[] {
+      10 * MILLISECOND, 30 * MILLISECOND }));
+    final BenchmarkResults current = new BenchmarkResults();
+    current.add(OperationResult.sorted("query", 2, 0, 48 * MILLISECOND, new long[] {
+      12 * MILLISECOND, 36 * MILLISECOND }));
+    final List<String> regressions = gate.compare(baseline, current, report);
+    assertEquals(Collections.emptyList(), regressions);
+  }
+
+  @Test
+  public void gateFailsThroughputDropWithoutALatencyChange() {
+    final long[] samples = latencies(1, 200, 10);
+    final OperationResult before = results("query", samples).get("query");
+    final BenchmarkResults baseline = new BenchmarkResults();
+    baseline.add(before);
+    final BenchmarkResults current = new BenchmarkResults();
+    current.add(OperationResult.sorted("query", before.getCount(), 0,
+      before.getDurationNanos() * 2, samples));
+    assertEquals(Arrays.asList("query"), gate.compare(baseline, current, report));
+  }
+
+  @Test
+  public void gateFailsOperationsThatWereNotRun() {
+    final BenchmarkResults baseline = results("query", latencies(1, 200, 10));
+    baseline.add(results("dropped", latencies(2, 200, 10)).get("dropped"));
+    final BenchmarkResults current = results("query", latencies(3, 200, 10));
+    assertEquals(Arrays.asList("dropped"), gate.compare(baseline, current, report));
+    assertEquals(Collections.emptyList(), new BaselineGate(10, 10, 0.01, true).compare(baseline,
+      current, report));
+  }
+
+  @Test
+  public void gateFailsWithoutResults() throws IOException {
+    final File directory = File.createTempFile("results", "");
+    directory.delete();
+    directory.mkdir();
+    try {
+      BaselineGate.main(new String[] { directory.getPath(),
+        new File(directory, "baseline.tsv").getPath() });
+      fail();
+    } catch (final IllegalStateException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().contains("No benchmark results"));
+    } finally {
+      directory.delete();
+    }
+  }
+
+  @Test
+  public void gateFailsWithoutABaseline() throws IOException {
+    final File directory = File.createTempFile("results", "");
+    directory.delete();
+    directory.mkdir();
+    final File resultFile = new File(directory, "QueryBenchmark"
+      + BenchmarkResults.RESULT_FILE_SUFFIX);
+    try {
+      results("query.string.equals", latencies(1, 100, 10)).write(resultFile, "test");
+      BaselineGate.main(new String[] { directory.getPath(),
+        new File(directory, "baseline.tsv").getPath() });
+      fail();
+    } catch (final IllegalStateException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().contains("No baseline"));
+    } finally {
+      resultFile.delete();
+      directory.delete();
+    }
+  }
+
+  @Test
+  public void resultsSurviveWriteAndRead() throws IOException {
+    final File file = File.createTempFile("baseline", BenchmarkResults.RESULT_FILE_SUFFIX);
+    try {
+      final long[] samples = latencies(1, 5000, 10);
+      results("query.string.equals", samples).write(file, "test");
+
+      final OperationResult read = BenchmarkResults.read(file).get("query.string.equals");
+      assertEquals(5000, read.getCount());
+      assertEquals(BenchmarkResults.MAX_STORED_SAMPLES, read.getSortedSamples().length);
+      final OperationResult original = results("x", samples).get("x");
+      assertEquals(original.getPercentileMillis(50), read.getPercentileMillis(50), 0.1);
+      assertEquals(original.getThroughputPerSecond(), read.getThroughputPerSecond(), 0.001);
+    } finally {
+      file.delete();
+    }
+  }
+}
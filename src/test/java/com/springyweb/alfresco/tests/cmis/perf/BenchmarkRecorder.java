@@ -0,0 +1,76 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the latencies and wall clock durations of the operations of one benchmark class.
+ */
+public class BenchmarkRecorder {
+
+  private final String benchmarkName;
+  private final Map<String, LatencyRecorder> latencies = new LinkedHashMap<String, LatencyRecorder>();
+  private final Map<String, Long> durations = new LinkedHashMap<String, Long>();
+
+  /**
+   * @param benchmarkName
+   *          - Prefixed to every operation name e.g QueryBenchmark
+   */
+  public BenchmarkRecorder(final String benchmarkName) {
+    this.benchmarkName = benchmarkName;
+  }
+
+  public String getBenchmarkName() {
+    return benchmarkName;
+  }
+
+  public synchronized LatencyRecorder latencies(final String operation) {
+    LatencyRecorder recorder = latencies.get(operation);
+    if (recorder == null) {
+      recorder = new LatencyRecorder(benchmarkName + "." + operation);
+      latencies.put(operation, recorder);
+    }
+    return recorder;
+  }
+
+  /**
+   * Add to the wall clock time over which an operation ran, used for throughput. Operations without any recorded duration use the sum of their
+   * latencies.
+   */
+  public synchronized void addDuration(final String operation, final long nanos) {
+    final Long previous = durations.get(operation);
+    durations.put(operation, previous == null ? nanos : previous + nanos);
+  }
+
+  /**
+   * Run the action warmup times unrecorded then iterations times, recording each latency and the total duration
+   */
+  public void measure(final String operation, final int warmup, final int iterations,
+    final Runnable action) {
+
+    for (int i = 0; i < warmup; i++) {
+      action.run();
+    }
+    final LatencyRecorder recorder = latencies(operation);
+    final long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      final long begin = System.nanoTime();
+      action.run();
+      recorder.record(System.nanoTime() - begin);
+    }
+    addDuration(operation, System.nanoTime() - start);
+  }
+
+  public synchronized BenchmarkResults toResults() {
+    final BenchmarkResults results = new BenchmarkResults();
+    for (final Map.Entry<String, LatencyRecorder> entry: latencies.entrySet()) {
+      final LatencyRecorder.LatencySnapshot snapshot = entry.getValue().snapshot();
+      final Long duration = durations.get(entry.getKey());
+      results.add(new OperationResult(snapshot.getName(), snapshot.getCount(),
+        snapshot.getErrors(), duration == null ? snapshot.getTotal(TimeUnit.NANOSECONDS)
+          : duration, snapshot.getSortedSamples()));
+    }
+    return results;
+  }
+}
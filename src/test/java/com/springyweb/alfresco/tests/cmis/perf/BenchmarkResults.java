@@ -0,0 +1,140 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A set of {@link OperationResult}s keyed by operation name, stored as a tab separated text file. Both the per run result files and the
+ * checked-in baseline use this format:
+ *
+ * <pre>
+ * # cmis-benchmark v1
+ * # any comment
+ * name	count	errors	durationNanos	sample,sample,...
+ * </pre>
+ */
+public class BenchmarkResults {
+
+  public static final String RESULT_FILE_SUFFIX = ".bench";
+
+  // Per operation samples kept on disk
+  public static final int MAX_STORED_SAMPLES = 1000;
+
+  private static final String HEADER = "# cmis-benchmark v1";
+  private static final String UTF_8 = "UTF-8";
+
+  private final Map<String, OperationResult> results = new LinkedHashMap<String, OperationResult>();
+
+  public void add(final OperationResult result) {
+    results.put(result.getName(), result);
+  }
+
+  public void addAll(final BenchmarkResults other) {
+    results.putAll(other.results);
+  }
+
+  public OperationResult get(final String name) {
+    return results.get(name);
+  }
+
+  public Collection<OperationResult> getAll() {
+    return Collections.unmodifiableCollection(results.values());
+  }
+
+  public boolean isEmpty() {
+    return results.isEmpty();
+  }
+
+  public void write(final File file, final String comment) throws IOException {
+    if (file.getParentFile() != null) {
+      file.getParentFile().mkdirs();
+    }
+    final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file),
+      UTF_8));
+    try {
+      out.println(HEADER);
+      out.println("# " + comment + " " + new Date() + " java " + System.getProperty("java.version"));
+      for (final OperationResult result: results.values()) {
+        final OperationResult stored = result.downsample(MAX_STORED_SAMPLES);
+        out.print(stored.getName());
+        out.print('\t');
+        out.print(stored.getCount());
+        out.print('\t');
+        out.print(stored.getErrors());
+        out.print('\t');
+        out.print(stored.getDurationNanos());
+        out.print('\t');
+        final long[] samples = stored.getSortedSamples();
+        for (int i = 0; i < samples.length; i++) {
+          if (i > 0) {
+            out.print(',');
+          }
+          out.print(samples[i]);
+        }
+        out.println();
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  public static BenchmarkResults read(final File file) throws IOException {
+    final BenchmarkResults results = new BenchmarkResults();
+    final BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+      UTF_8));
+    try {
+      final String header = in.readLine();
+      if (!HEADER.equals(header)) {
+        throw new IOException(file + " is not a benchmark result file (expected '" + HEADER + "')");
+      }
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.startsWith("#") || line.trim().length() == 0) {
+          continue;
+        }
+        final String[] fields = line.split("\t");
+        final String[] sampleFields = fields.length > 4 && fields[4].length() > 0 ? fields[4]
+          .split(",") : new String[0];
+        final long[] samples = new long[sampleFields.length];
+        for (int i = 0; i < samples.length; i++) {
+          samples[i] = Long.parseLong(sampleFields[i]);
+        }
+        results.add(OperationResult.sorted(fields[0], Long.parseLong(fields[1]),
+          Long.parseLong(fields[2]), Long.parseLong(fields[3]), samples));
+      }
+    } finally {
+      in.close();
+    }
+    return results;
+  }
+
+  /**
+   * @return The merged contents of every result file in the directory
+   */
+  public static BenchmarkResults readDirectory(final File directory) throws IOException {
+    final BenchmarkResults results = new BenchmarkResults();
+    final File[] files = directory.listFiles(new FilenameFilter() {
+      public boolean accept(final File dir, final String name) {
+        return name.endsWith(RESULT_FILE_SUFFIX);
+      }
+    });
+    if (files != null) {
+      for (final File file: files) {
+        results.addAll(read(file));
+      }
+    }
+    return results;
+  }
+}
@@ -0,0 +1,98 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_INTEGER;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_DOCUMENT_TYPE;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_INT;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.documentPrefix;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.Predicate;
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+import com.springyweb.alfresco.tests.cmis.update.BulkPropertyUpdater;
+import com.springyweb.alfresco.tests.cmis.update.UpdateResult;
+
+/**
+ * Re-classifies -Dupdate.objects (default 500) documents by setting swct:propSingleString and swct:propSingleInt on all of them:
+ * <ul>
+ * <li>update.fetch - fetching each object and calling its updateProperties, one at a time</li>
+ * <li>update.cN - {@link BulkPropertyUpdater} with N requests in flight, for each of -Dupdate.concurrency (default 1,8,32)</li>
+ * </ul>
+ * Each pass is recorded as one sample, repeated -Dupdate.repetitions (default 3) times, and objects per second and any failures are printed.
+ * The last pass's values are then queried back.
+ */
+public class BulkUpdateBenchmark extends AbstractCmisBenchmark {
+
+  private static final int OBJECTS = Integer.getInteger("update.objects", 500);
+  private static final String CONCURRENCY = System.getProperty("update.concurrency", "1,8,32");
+  private static final int REPETITIONS = Integer.getInteger("update.repetitions", 3);
+
+  @Test
+  public void bulkUpdates() throws InterruptedException {
+    final List<String> ids = new ArrayList<String>();
+    final Map<String, Object> props = Collections.emptyMap();
+    for (int i = 0; i < OBJECTS; i++) {
+      ids.add(createDocument(benchmarkFolder, "doc" + i, props).getId());
+    }
+
+    int pass = 0;
+    for (int i = 0; i < REPETITIONS; i++) {
+      final Map<String, Object> values = values(pass++);
+      final long start = System.nanoTime();
+      for (final String id: ids) {
+        final CmisObject object = CmisEvents.time(CmisEvents.GET_OBJECT,
+          new CmisEvents.Call<CmisObject>() {
+            public CmisObject call() {
+              return session.getObject(id);
+            }
+          });
+        CmisEvents.time(CmisEvents.UPDATE_PROPERTIES, new CmisEvents.Call<CmisObject>() {
+          public CmisObject call() {
+            return object.updateProperties(values);
+          }
+        });
+      }
+      final long elapsed = System.nanoTime() - start;
+      recorder().latencies("update.fetch").record(elapsed);
+      System.out.println(String.format("update.fetch: %.1f objects/s", OBJECTS / (elapsed / 1e9)));
+    }
+
+    for (final String concurrency: CONCURRENCY.split("\\s*,\\s*")) {
+      final BulkPropertyUpdater updater = new BulkPropertyUpdater(session, Integer
+        .parseInt(concurrency));
+      try {
+        for (int i = 0; i < REPETITIONS; i++) {
+          final UpdateResult result = updater.update(ids,
+            documentPrefix(TEST_CMIS_DOCUMENT_TYPE), values(pass++));
+          recorder().latencies("update.c" + concurrency).record(result.getElapsedNanos());
+          System.out.println("update.c" + concurrency + ": " + result);
+          for (final Map.Entry<String, String> failure: result.getFailures().entrySet()) {
+            System.out.println("  " + failure.getKey() + ": " + failure.getValue());
+          }
+        }
+      } finally {
+        updater.close();
+      }
+    }
+
+    assertEquals(OBJECTS, countResults(String.format(PREDICATE_QUERY_TEMPLATE_INTEGER,
+      benchmarkFolder.getId(), TEST_CMIS_PROPERY_SINGLE_INT, Predicate.EQUALS.getSymbol(),
+      pass - 1)));
+  }
+
+  private static Map<String, Object> values(final int pass) {
+    final Map<String, Object> values = new HashMap<String, Object>();
+    values.put(TEST_CMIS_PROPERY_SINGLE_STRING, "class" + pass);
+    values.put(TEST_CMIS_PROPERY_SINGLE_INT, pass);
+    return values;
+  }
+}
@@ -0,0 +1,63 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_INTEGER;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_DOCUMENT_TYPE;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_INT;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.documentPrefix;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.Predicate;
+import com.springyweb.alfresco.tests.cmis.changes.ChangeLogMirror;
+
+/**
+ * How long a write takes to reach a {@link ChangeLogMirror} polling every -Dchanges.pollMillis (default 100), against confirming it with a
+ * query. Each of -Dchanges.objects (default 200) documents is created and then has swct:propSingleInt updated:
+ * <ul>
+ * <li>changes.visible - from the update returning to the mirror having the new value</li>
+ * <li>changes.query - a query for the documents with the new value</li>
+ * </ul>
+ * The mirror's event throughput and change log lag are printed, and its expected results checked against the query.
+ */
+public class ChangeLogBenchmark extends AbstractCmisBenchmark {
+
+  private static final int OBJECTS = Integer.getInteger("changes.objects", 200);
+  private static final long POLL_MILLIS = Long.getLong("changes.pollMillis", 100);
+  private static final long TIMEOUT_MILLIS = 60000;
+
+  @Test
+  public void writeVisibility() throws InterruptedException {
+    final ChangeLogMirror mirror = new ChangeLogMirror(session, Collections.singleton(
+      documentPrefix(TEST_CMIS_DOCUMENT_TYPE)), "swct:");
+    mirror.start(POLL_MILLIS);
+    try {
+      final Map<String, Object> props = new HashMap<String, Object>();
+      for (int i = 0; i < OBJECTS; i++) {
+        props.put(TEST_CMIS_PROPERY_SINGLE_INT, i);
+        final String id = createDocument(benchmarkFolder, "doc" + i, props).getId();
+        final long start = System.nanoTime();
+        session.getObject(id).updateProperties(Collections.singletonMap(
+          TEST_CMIS_PROPERY_SINGLE_INT, OBJECTS + i));
+        assertTrue(id, mirror.await(id, TEST_CMIS_PROPERY_SINGLE_INT, OBJECTS + i,
+          TIMEOUT_MILLIS));
+        recorder().latencies("changes.visible").record(System.nanoTime() - start);
+      }
+      System.out.println("changes: " + mirror.getStats());
+
+      final String query = String.format(PREDICATE_QUERY_TEMPLATE_INTEGER, benchmarkFolder
+        .getId(), TEST_CMIS_PROPERY_SINGLE_INT, Predicate.GREATER_THAN_EQUAL_TO.getSymbol(),
+        OBJECTS);
+      measureQuery("changes.query", query);
+      assertEquals(mirror.matching(TEST_CMIS_PROPERY_SINGLE_INT,
+        Predicate.GREATER_THAN_EQUAL_TO, OBJECTS).size(), countResults(query));
+    } finally {
+      mirror.close();
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_STRING;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.CmisSessions;
+import com.springyweb.alfresco.tests.cmis.Predicate;
+import com.springyweb.alfresco.tests.cmis.load.ConcurrentDriver;
+import com.springyweb.alfresco.tests.cmis.load.LoadResult;
+import com.springyweb.alfresco.tests.cmis.load.SimulatedUser;
+import com.springyweb.alfresco.tests.cmis.load.ThreadMode;
+
+/**
+ * Many concurrent users alternately querying and fetching documents, first on a pool of platform threads and then a virtual thread per user.
+ *
+ * Configured with -Dload.users (default 1000), -Dload.steps per user (default 10), -Dload.platformThreads (default 200),
+ * -Dload.durationSeconds (default 300) and -Dload.sessionPerUser (default false: users share the benchmark's session, which is thread safe,
+ * rather than each fetching repository info and types for a session of their own).
+ */
+public class ConcurrentUsersBenchmark extends AbstractCmisBenchmark {
+
+  private static final int USERS = Integer.getInteger("load.users", 1000);
+  private static final int STEPS = Integer.getInteger("load.steps", 10);
+  private static final int PLATFORM_THREADS = Integer.getInteger("load.platformThreads", 200);
+  private static final long DURATION_SECONDS = Long.getLong("load.durationSeconds", 300);
+  private static final boolean SESSION_PER_USER = Boolean.getBoolean("load.sessionPerUser");
+
+  private static final int CORPUS_SIZE = 20;
+
+  @Test
+  public void platformVersusVirtualThreads() throws InterruptedException {
+    final List<String> documentIds = new ArrayList<String>();
+    for (int i = 0; i < CORPUS_SIZE; i++) {
+      final Map<String, Object> props = Collections.<String, Object> singletonMap(
+        TEST_CMIS_PROPERY_SINGLE_STRING, i % 2 == 0 ? "even" : "odd");
+      documentIds.add(createDocument(benchmarkFolder, "doc" + i, props).getId());
+    }
+    final String query = String.format(PREDICATE_QUERY_TEMPLATE_STRING, benchmarkFolder.getId(),
+      TEST_CMIS_PROPERY_SINGLE_STRING, Predicate.EQUALS.getSymbol(), "even");
+
+    final LoadResult platform = runUsers(ThreadMode.PLATFORM, documentIds, query);
+    final LoadResult virtual = runUsers(ThreadMode.VIRTUAL, documentIds, query);
+    System.out.println(String.format(
+      "Virtual threads: %.2fx the throughput using %.2fx the peak heap and %d platform threads (pool: %d)",
+      virtual.getThroughputPerSecond() / platform.getThroughputPerSecond(),
+      (double)virtual.getPeakHeapBytes() / platform.getPeakHeapBytes(),
+      virtual.getPeakPlatformThreads(), platform.getPeakPlatformThreads()));
+  }
+
+  private LoadResult runUsers(final ThreadMode mode, final List<String> documentIds,
+    final String query) throws InterruptedException {
+
+    final String operation = "users." + mode.name().toLowerCase();
+    final ConcurrentDriver.UserFactory users = new ConcurrentDriver.UserFactory() {
+      public SimulatedUser newUser(final int user) {
+        return new SimulatedUser() {
+          private Session userSession;
+
+          public void start() {
+            userSession = SESSION_PER_USER ? CmisSessions.create(
+              CmisSessions.DEFAULT_USERNAME, CmisSessions.DEFAULT_PASSWORD) : session;
+          }
+
+          public void step(final int step) {
+            if (step % 2 == 0) {
+              for (@SuppressWarnings("unused")
+              final QueryResult result: userSession.query(query, false)) {
+              }
+            } else {
+              userSession.getObject(documentIds.get((user + step) % documentIds.size()));
+            }
+          }
+        };
+      }
+    };
+    final LoadResult result = new ConcurrentDriver(mode, PLATFORM_THREADS).run(users, USERS,
+      STEPS, DURATION_SECONDS, TimeUnit.SECONDS, recorder().latencies(operation));
+    recorder().addDuration(operation, result.getElapsedNanos());
+    System.out.println(result);
+    return result;
+  }
+}
@@ -0,0 +1,155 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.ASPECT_TITLED;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PROPERTY_DESCRIPTION;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_INT;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.aspectPrefix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.cmis.client.AlfrescoDocument;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.Predicate;
+import com.springyweb.alfresco.tests.cmis.load.ConcurrentDriver;
+import com.springyweb.alfresco.tests.cmis.load.ContentionMix;
+import com.springyweb.alfresco.tests.cmis.load.ContentionOperation;
+import com.springyweb.alfresco.tests.cmis.load.ContentionStats;
+import com.springyweb.alfresco.tests.cmis.load.LoadResult;
+import com.springyweb.alfresco.tests.cmis.load.SimulatedUser;
+import com.springyweb.alfresco.tests.cmis.load.StalenessTracker;
+import com.springyweb.alfresco.tests.cmis.load.ThreadMode;
+
+/**
+ * Writers and readers working on the same few documents in the same folder at once, as in a month end write burst. Writers update an integer
+ * property, toggle cm:titled and create documents in the folder; readers query the shared documents and fetch them, checking each value read
+ * against the writes that had completed when the read started. Reports throughput, latency, conflict and error rates per operation, and the
+ * proportion of stale reads.
+ *
+ * Configured with -Dcontention.writers (default 8), -Dcontention.readers (default 24), -Dcontention.documents shared (default 5),
+ * -Dcontention.writeMix (default update=3,aspect=1,create=1), -Dcontention.readMix (default query=1,get=1), -Dcontention.steps per user (default
+ * 200) and -Dcontention.durationSeconds (default 300).
+ */
+public class ContentionBenchmark extends AbstractCmisBenchmark {
+
+  private static final int WRITERS = Integer.getInteger("contention.writers", 8);
+  private static final int READERS = Integer.getInteger("contention.readers", 24);
+  private static final int DOCUMENTS = Integer.getInteger("contention.documents", 5);
+  private static final ContentionMix WRITE_MIX = ContentionMix.parse(System.getProperty(
+    "contention.writeMix", "update=3,aspect=1,create=1"));
+  private static final ContentionMix READ_MIX = ContentionMix.parse(System.getProperty(
+    "contention.readMix", "query=1,get=1"));
+  private static final int STEPS = Integer.getInteger("contention.steps", 200);
+  private static final long DURATION_SECONDS = Long.getLong("contention.durationSeconds", 300);
+
+  private static final String SHARED = "shared";
+
+  private final List<String> documentIds = new ArrayList<String>();
+  private final Map<String, Integer> documentNumbers = new HashMap<String, Integer>();
+  private final AtomicLong nextValue = new AtomicLong();
+  private StalenessTracker staleness;
+  private ContentionStats stats;
+  private String query;
+
+  @Test
+  public void readersAndWritersOnSharedDocuments() throws InterruptedException {
+    staleness = new StalenessTracker(DOCUMENTS);
+    stats = new ContentionStats(recorder());
+    for (int i = 0; i < DOCUMENTS; i++) {
+      final Map<String, Object> props = new HashMap<String, Object>();
+      props.put(TEST_CMIS_PROPERY_SINGLE_STRING, SHARED);
+      props.put(TEST_CMIS_PROPERY_SINGLE_INT, 0);
+      final String id = createDocument(benchmarkFolder, SHARED + i, props).getId();
+      documentIds.add(id);
+      documentNumbers.put(id, i);
+      staleness.writeCompleted(i, 0, staleness.writeStarted(i));
+    }
+    query = String.format(PREDICATE_QUERY_TEMPLATE_STRING, benchmarkFolder.getId(),
+      TEST_CMIS_PROPERY_SINGLE_STRING, Predicate.EQUALS.getSymbol(), SHARED);
+
+    final ConcurrentDriver.UserFactory users = new ConcurrentDriver.UserFactory() {
+      public SimulatedUser newUser(final int user) {
+        final boolean writer = user < WRITERS;
+        final Random random = new Random(user);
+        return new SimulatedUser() {
+          public void start() {
+          }
+
+          public void step(final int step) {
+            final ContentionOperation operation = (writer ? WRITE_MIX : READ_MIX).pick(random);
+            final long begin = System.nanoTime();
+            try {
+              run(operation, random.nextInt(DOCUMENTS), "created-" + user + "-" + step);
+              stats.succeeded(operation, System.nanoTime() - begin);
+            } catch (final RuntimeException e) {
+              stats.failed(operation, e);
+            }
+          }
+        };
+      }
+    };
+    System.out.println(String.format("%d writers %s and %d readers %s on %d documents", WRITERS,
+      WRITE_MIX, READERS, READ_MIX, DOCUMENTS));
+    final LoadResult result = new ConcurrentDriver(ThreadMode.VIRTUAL, 0).run(users, WRITERS
+      + READERS, STEPS, DURATION_SECONDS, TimeUnit.SECONDS, new LatencyRecorder("contention"));
+    for (final ContentionOperation operation: ContentionOperation.values()) {
+      recorder().addDuration("contention." + operation.name().toLowerCase(),
+        result.getElapsedNanos());
+    }
+    stats.print(result.getElapsedNanos(), System.out);
+    System.out.println(staleness);
+  }
+
+  private void run(final ContentionOperation operation, final int document, final String name) {
+    final String id = documentIds.get(document);
+    switch (operation) {
+      case UPDATE:
+        final int token = staleness.writeStarted(document);
+        final long value = nextValue.incrementAndGet();
+        session.getObject(id).updateProperties(
+          Collections.<String, Object> singletonMap(TEST_CMIS_PROPERY_SINGLE_INT, value));
+        staleness.writeCompleted(document, value, token);
+        break;
+      case ASPECT:
+        final AlfrescoDocument shared = (AlfrescoDocument)session.getObject(id);
+        final String aspect = aspectPrefix(ASPECT_TITLED);
+        if (shared.hasAspect(aspect)) {
+          shared.removeAspect(aspect);
+        } else {
+          shared.addAspect(aspect, Collections.<String, Object> singletonMap(PROPERTY_DESCRIPTION,
+            name));
+        }
+        break;
+      case CREATE:
+        createDocument(benchmarkFolder, name, Collections.<String, Object> emptyMap());
+        break;
+      case QUERY:
+        final int[] queryToken = staleness.readStarted();
+        for (final QueryResult result: session.query(query, false)) {
+          final Integer number = documentNumbers.get(result
+            .getPropertyValueById(PropertyIds.OBJECT_ID));
+          if (number != null) {
+            staleness.observed(queryToken, number, ((Number)result
+              .getPropertyValueById(TEST_CMIS_PROPERY_SINGLE_INT)).longValue());
+          }
+        }
+        break;
+      case GET:
+        final int[] getToken = staleness.readStarted();
+        staleness.observed(getToken, document, ((Number)session.getObject(id).getPropertyValue(
+          TEST_CMIS_PROPERY_SINGLE_INT)).longValue());
+        break;
+    }
+  }
+}
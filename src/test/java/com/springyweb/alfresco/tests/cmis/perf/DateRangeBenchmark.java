@@ -0,0 +1,145 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_UNQUOTED_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.RANGE_QUERY_TEMPLATE;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_DATE;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_DATE_TIME;
+
+import java.io.File;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.Predicate;
+import com.springyweb.alfresco.tests.cmis.query.LiteralEncoder;
+
+/**
+ * TIMESTAMP range predicates on swct:propSingleDate and swct:propSingleDateTime, which every document sets to the same instant, over
+ * -Dbenchmark.corpusSize (default 1000) documents spaced a millisecond, a second, an hour or a day apart:
+ * <ul>
+ * <li>range.&lt;type&gt;.&lt;spacing&gt;.greaterThan - after the middle document</li>
+ * <li>range.&lt;type&gt;.&lt;spacing&gt;.lessThanEqualTo - up to the middle document</li>
+ * <li>range.&lt;type&gt;.&lt;spacing&gt;.between.wN - a &gt;= and &lt;= pair around the middle spanning N percent of the documents, for
+ * each of -Dbenchmark.rangeWidths (default 1,10,50)</li>
+ * </ul>
+ * Each query's result count is printed beside the count the same range finds on the date time property, showing where the date resolution
+ * widens a range. Index size is not visible through CMIS; when the benchmark runs on the repository's host -Dbenchmark.indexDirectory can name
+ * the Lucene index (e.g alf_data/lucene-indexes/workspace/SpacesStore), whose growth while each corpus is created is printed.
+ */
+public class DateRangeBenchmark extends AbstractCmisBenchmark {
+
+  private static final int CORPUS_SIZE = Integer.getInteger("benchmark.corpusSize", 1000);
+  private static final String WIDTHS = System.getProperty("benchmark.rangeWidths", "1,10,50");
+  private static final String INDEX_DIRECTORY = System.getProperty("benchmark.indexDirectory");
+
+  private static final Map<String, Long> SPACINGS = new LinkedHashMap<String, Long>();
+  private static final Map<String, String> PROPERTIES = new LinkedHashMap<String, String>();
+
+  static {
+    SPACINGS.put("millis", 1L);
+    SPACINGS.put("seconds", 1000L);
+    SPACINGS.put("hours", 60 * 60 * 1000L);
+    SPACINGS.put("days", 24 * 60 * 60 * 1000L);
+    PROPERTIES.put("datetime", TEST_CMIS_PROPERY_SINGLE_DATE_TIME);
+    PROPERTIES.put("date", TEST_CMIS_PROPERY_SINGLE_DATE);
+  }
+
+  @Test
+  public void rangeQueries() {
+    final GregorianCalendar start = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+    start.clear();
+    start.set(2010, 0, 1, 12, 0, 0);
+    final long first = start.getTimeInMillis();
+    for (final Map.Entry<String, Long> spacing: SPACINGS.entrySet()) {
+      final Folder folder = createFolder(benchmarkFolder, spacing.getKey());
+      final long indexBefore = indexBytes();
+      final Map<String, Object> props = new HashMap<String, Object>();
+      for (int i = 0; i < CORPUS_SIZE; i++) {
+        final GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(first + i * spacing.getValue());
+        props.put(TEST_CMIS_PROPERY_SINGLE_DATE_TIME, calendar);
+        props.put(TEST_CMIS_PROPERY_SINGLE_DATE, calendar);
+        createDocument(folder, "doc" + i, props);
+      }
+      if (INDEX_DIRECTORY != null) {
+        System.out.println("index." + spacing.getKey() + ": " + (indexBytes() - indexBefore)
+          + " bytes for " + CORPUS_SIZE + " documents");
+      }
+
+      final long middle = first + CORPUS_SIZE / 2 * spacing.getValue();
+      measureRange(folder, spacing.getKey() + ".greaterThan", Predicate.GREATER_THAN, middle);
+      measureRange(folder, spacing.getKey() + ".lessThanEqualTo",
+        Predicate.LESS_THAN_EQUAL_TO, middle);
+      for (final String width: WIDTHS.split("\\s*,\\s*")) {
+        final long documents = Math.max(1, CORPUS_SIZE * Long.parseLong(width) / 100);
+        final long lower = middle - documents / 2 * spacing.getValue();
+        final long upper = lower + (documents - 1) * spacing.getValue();
+        measureBetween(folder, spacing.getKey() + ".between.w" + width, lower, upper);
+      }
+    }
+  }
+
+  private void measureRange(final Folder folder, final String name, final Predicate predicate,
+    final long bound) {
+    final Map<String, String> queries = new LinkedHashMap<String, String>();
+    for (final Map.Entry<String, String> property: PROPERTIES.entrySet()) {
+      queries.put(property.getKey(), String.format(PREDICATE_QUERY_TEMPLATE_UNQUOTED_STRING, folder
+        .getId(), property.getValue(), predicate.getSymbol(), timestamp(bound)));
+    }
+    measure(name, queries);
+  }
+
+  private void measureBetween(final Folder folder, final String name, final long lower,
+    final long upper) {
+    final Map<String, String> queries = new LinkedHashMap<String, String>();
+    for (final Map.Entry<String, String> property: PROPERTIES.entrySet()) {
+      queries.put(property.getKey(), String.format(RANGE_QUERY_TEMPLATE, folder.getId(),
+        property.getValue(), timestamp(lower), property.getValue(), timestamp(upper)));
+    }
+    measure(name, queries);
+  }
+
+  /**
+   * Time the query on each property and print its result count against the date time query's
+   */
+  private void measure(final String name, final Map<String, String> queries) {
+    long dateTimeCount = -1;
+    for (final Map.Entry<String, String> query: queries.entrySet()) {
+      final String operation = "range." + query.getKey() + "." + name;
+      measureQuery(operation, query.getValue());
+      final long count = countResults(query.getValue());
+      if (dateTimeCount < 0) {
+        dateTimeCount = count;
+      }
+      System.out.println(operation + ": " + count + " results (datetime " + dateTimeCount + ")");
+    }
+  }
+
+  /**
+   * @return e.g TIMESTAMP '2010-01-01T12:00:00.000Z'
+   */
+  private static String timestamp(final long epochMillis) {
+    return new LiteralEncoder().timestamp(epochMillis).toString();
+  }
+
+  private static long indexBytes() {
+    return INDEX_DIRECTORY == null ? 0 : bytes(new File(INDEX_DIRECTORY));
+  }
+
+  private static long bytes(final File file) {
+    final File[] children = file.listFiles();
+    if (children == null) {
+      return file.length();
+    }
+    long total = 0;
+    for (final File child: children) {
+      total += bytes(child);
+    }
+    return total;
+  }
+}
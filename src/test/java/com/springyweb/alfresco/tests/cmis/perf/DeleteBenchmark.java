@@ -0,0 +1,155 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.delete.DeleteResult;
+import com.springyweb.alfresco.tests.cmis.delete.DeleteStrategy;
+import com.springyweb.alfresco.tests.cmis.delete.TreeDeleter;
+
+/**
+ * Compares the {@link DeleteStrategy}s on trees of about -Ddelete.objects (default 300) objects of three shapes: one wide folder, a deep chain
+ * of folders and a bushy tree. Each strategy deletes each shape -Ddelete.repetitions (default 3) times with -Ddelete.concurrency (default 8)
+ * requests in flight, recording delete.&lt;shape&gt;.&lt;strategy&gt; and printing objects per second.
+ *
+ * Server impact is measured by a probe fetching an unrelated folder while the delete runs: delete.&lt;shape&gt;.&lt;strategy&gt;.probe is its
+ * latency, to compare with delete.probe.idle.
+ */
+public class DeleteBenchmark extends AbstractCmisBenchmark {
+
+  private static final int OBJECTS = Integer.getInteger("delete.objects", 300);
+  private static final int REPETITIONS = Integer.getInteger("delete.repetitions", 3);
+  private static final int CONCURRENCY = Integer.getInteger("delete.concurrency", 8);
+
+  private static final long PROBE_INTERVAL_MILLIS = 20;
+  private static final int DEEP_DEPTH = 20;
+  private static final int BUSHY_BRANCHING = 4;
+  private static final int BUSHY_DEPTH = 3;
+
+  private enum Shape {
+    /** One folder of documents */
+    WIDE,
+    /** A chain of folders with documents at every level */
+    DEEP,
+    /** Folders branching at every level with documents in each */
+    BUSHY
+  }
+
+  @Test
+  public void deleteStrategies() throws InterruptedException {
+    final Folder probed = createFolder(benchmarkFolder, "probed");
+    final LatencyRecorder idle = recorder().latencies("delete.probe.idle");
+    for (int i = 0; i < ITERATIONS; i++) {
+      probe(probed, idle);
+    }
+
+    final TreeDeleter deleter = new TreeDeleter(session, CONCURRENCY);
+    try {
+      for (final Shape shape: Shape.values()) {
+        for (final DeleteStrategy strategy: DeleteStrategy.values()) {
+          final String operation = "delete." + shape.name().toLowerCase() + "."
+            + strategy.name().toLowerCase();
+          double objectsPerSecond = 0;
+          for (int i = 0; i < REPETITIONS; i++) {
+            final Folder tree = createFolder(benchmarkFolder, operation + "." + i);
+            final int objects = build(shape, tree) + 1;
+            final DeleteResult result = deleteWhileProbing(deleter, tree, strategy, probed,
+              recorder().latencies(operation + ".probe"));
+            if (!result.getFailedIds().isEmpty()) {
+              System.out.println(operation + " failed to delete " + result.getFailedIds());
+            }
+            recorder().latencies(operation).record(result.getElapsedNanos());
+            objectsPerSecond += result.getObjectsPerSecond(objects) / REPETITIONS;
+          }
+          System.out.println(String.format("%s: %.1f objects/s", operation, objectsPerSecond));
+        }
+      }
+    } finally {
+      deleter.close();
+    }
+  }
+
+  private DeleteResult deleteWhileProbing(final TreeDeleter deleter, final Folder tree,
+    final DeleteStrategy strategy, final Folder probed, final LatencyRecorder probes)
+    throws InterruptedException {
+    final AtomicBoolean deleting = new AtomicBoolean(true);
+    final Thread prober = new Thread(new Runnable() {
+      public void run() {
+        while (deleting.get()) {
+          probe(probed, probes);
+          try {
+            Thread.sleep(PROBE_INTERVAL_MILLIS);
+          } catch (final InterruptedException e) {
+            return;
+          }
+        }
+      }
+    }, "delete-probe");
+    prober.start();
+    try {
+      return deleter.delete(tree, strategy);
+    } finally {
+      deleting.set(false);
+      prober.join(TimeUnit.MINUTES.toMillis(1));
+    }
+  }
+
+  private void probe(final Folder probed, final LatencyRecorder probes) {
+    final long begin = System.nanoTime();
+    try {
+      session.getObject(probed.getId());
+      probes.record(System.nanoTime() - begin);
+    } catch (final RuntimeException e) {
+      probes.recordError();
+    }
+  }
+
+  /**
+   * @return The number of objects created beneath root
+   */
+  private int build(final Shape shape, final Folder root) {
+    switch (shape) {
+      case WIDE:
+        return fill(root, OBJECTS);
+      case DEEP:
+        int created = 0;
+        Folder parent = root;
+        for (int depth = 0; depth < DEEP_DEPTH; depth++) {
+          created += fill(parent, OBJECTS / DEEP_DEPTH - 1);
+          parent = createFolder(parent, "level" + depth);
+          created++;
+        }
+        return created;
+      case BUSHY:
+        int folders = 0;
+        for (int depth = 1, width = BUSHY_BRANCHING; depth <= BUSHY_DEPTH; depth++, width *= BUSHY_BRANCHING) {
+          folders += width;
+        }
+        return branch(root, BUSHY_DEPTH, Math.max(0, (OBJECTS - folders) / (folders + 1)));
+    }
+    throw new IllegalArgumentException(shape.name());
+  }
+
+  private int branch(final Folder parent, final int depth, final int documentsPerFolder) {
+    int created = fill(parent, documentsPerFolder);
+    if (depth > 0) {
+      for (int i = 0; i < BUSHY_BRANCHING; i++) {
+        created += 1 + branch(createFolder(parent, "branch" + i), depth - 1, documentsPerFolder);
+      }
+    }
+    return created;
+  }
+
+  private int fill(final Folder folder, final int documents) {
+    final Map<String, Object> props = Collections.<String, Object> emptyMap();
+    for (int i = 0; i < documents; i++) {
+      createDocument(folder, "doc" + i, props);
+    }
+    return Math.max(0, documents);
+  }
+}
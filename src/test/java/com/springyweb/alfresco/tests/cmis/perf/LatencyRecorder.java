@@ -0,0 +1,152 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread safe recorder of operation latencies.
+ *
+ * Count, mean, min and max are exact. Percentiles are computed from the first maxSamples samples and, after that, from a uniform reservoir sample
+ * of all of them so that memory stays bounded during long runs.
+ */
+public class LatencyRecorder {
+
+  public static final int DEFAULT_MAX_SAMPLES = 100000;
+
+  private final String name;
+  private final long[] samples;
+  private final Random random = new Random(0);
+
+  private long count;
+  private long totalNanos;
+  private long minNanos = Long.MAX_VALUE;
+  private long maxNanos;
+  private long errors;
+
+  public LatencyRecorder(final String name) {
+    this(name, DEFAULT_MAX_SAMPLES);
+  }
+
+  public LatencyRecorder(final String name, final int maxSamples) {
+    this.name = name;
+    this.samples = new long[maxSamples];
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public synchronized void record(final long nanos) {
+    if (count < samples.length) {
+      samples[(int)count] = nanos;
+    } else {
+      final long slot = (long)(random.nextDouble() * (count + 1));
+      if (slot < samples.length) {
+        samples[(int)slot] = nanos;
+      }
+    }
+    count++;
+    totalNanos += nanos;
+    minNanos = Math.min(minNanos, nanos);
+    maxNanos = Math.max(maxNanos, nanos);
+  }
+
+  public synchronized void recordError() {
+    errors++;
+  }
+
+  public synchronized void reset() {
+    count = 0;
+    totalNanos = 0;
+    minNanos = Long.MAX_VALUE;
+    maxNanos = 0;
+    errors = 0;
+  }
+
+  public synchronized LatencySnapshot snapshot() {
+    final long[] sorted = Arrays.copyOf(samples, (int)Math.min(count, samples.length));
+    Arrays.sort(sorted);
+    return new LatencySnapshot(name, count, errors, totalNanos, count == 0 ? 0 : minNanos,
+      maxNanos, sorted);
+  }
+
+  /**
+   * An immutable view of a recorder at a point in time
+   */
+  public static class LatencySnapshot {
+    private final String name;
+    private final long count;
+    private final long errors;
+    private final long totalNanos;
+    private final long minNanos;
+    private final long maxNanos;
+    private final long[] sortedSamples;
+
+    LatencySnapshot(final String name, final long count, final long errors,
+      final long totalNanos, final long minNanos, final long maxNanos, final long[] sortedSamples) {
+      this.name = name;
+      this.count = count;
+      this.errors = errors;
+      this.totalNanos = totalNanos;
+      this.minNanos = minNanos;
+      this.maxNanos = maxNanos;
+      this.sortedSamples = sortedSamples;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getErrors() {
+      return errors;
+    }
+
+    public long getTotal(final TimeUnit unit) {
+      return unit.convert(totalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public double getMeanMillis() {
+      return count == 0 ? 0 : totalNanos / (count * 1e6);
+    }
+
+    public double getMinMillis() {
+      return minNanos / 1e6;
+    }
+
+    public double getMaxMillis() {
+      return maxNanos / 1e6;
+    }
+
+    /**
+     * @param percentile
+     *          e.g 99.9
+     * @return The latency in milliseconds at the given percentile (nearest rank)
+     */
+    public double getPercentileMillis(final double percentile) {
+      if (sortedSamples.length == 0) {
+        return 0;
+      }
+      final int rank = (int)Math.ceil(percentile / 100 * sortedSamples.length);
+      return sortedSamples[Math.min(Math.max(rank, 1), sortedSamples.length) - 1] / 1e6;
+    }
+
+    /**
+     * @return A copy of the (sampled) latencies in nanoseconds, in ascending order
+     */
+    public long[] getSortedSamples() {
+      return sortedSamples.clone();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s: count=%d errors=%d mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+        name, count, errors, getMeanMillis(), getPercentileMillis(50), getPercentileMillis(95),
+        getPercentileMillis(99), getMaxMillis());
+    }
+  }
+}
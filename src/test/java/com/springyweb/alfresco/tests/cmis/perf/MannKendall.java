@@ -0,0 +1,83 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import java.util.Arrays;
+
+/**
+ * The Mann-Kendall test for a monotonic trend in a series, e.g heap used after GC sampled over a soak run. Like {@link MannWhitney} it only
+ * uses the order of the values, so a few outliers or a non-linear leak do not hide the trend.
+ */
+public final class MannKendall {
+
+  private MannKendall() {
+  }
+
+  /**
+   * One sided test of whether the series tends to increase, using the normal approximation with tie and continuity corrections.
+   *
+   * @param series
+   *          - Values in the order they were sampled
+   * @return The p-value: the probability of pairs at least this much in favour of an increase if the values were in random order. 1 for fewer
+   *         than 3 values.
+   */
+  public static double pValueIncreasing(final double[] series) {
+    final int n = series.length;
+    if (n < 3) {
+      return 1;
+    }
+    long s = 0;
+    for (int i = 0; i < n - 1; i++) {
+      for (int j = i + 1; j < n; j++) {
+        if (series[j] > series[i]) {
+          s++;
+        } else if (series[j] < series[i]) {
+          s--;
+        }
+      }
+    }
+
+    final double[] sorted = series.clone();
+    Arrays.sort(sorted);
+    double tieCorrection = 0;
+    int i = 0;
+    while (i < n) {
+      int j = i;
+      while (j + 1 < n && sorted[j + 1] == sorted[i]) {
+        j++;
+      }
+      final double ties = j - i + 1;
+      tieCorrection += ties * (ties - 1) * (2 * ties + 5);
+      i = j + 1;
+    }
+
+    final double variance = (n * (n - 1.0) * (2 * n + 5) - tieCorrection) / 18;
+    if (variance <= 0) {
+      return 1;
+    }
+    final double z = s > 0 ? (s - 1) / Math.sqrt(variance) : s < 0 ? (s + 1) / Math.sqrt(variance)
+      : 0;
+    return 1 - MannWhitney.normalCdf(z);
+  }
+
+  /**
+   * @return The least squares slope of the series against x, e.g elapsed time
+   */
+  public static double slope(final double[] x, final double[] series) {
+    final int n = series.length;
+    if (n < 2) {
+      return 0;
+    }
+    double meanX = 0;
+    double meanY = 0;
+    for (int i = 0; i < n; i++) {
+      meanX += x[i] / n;
+      meanY += series[i] / n;
+    }
+    double covariance = 0;
+    double varianceX = 0;
+    for (int i = 0; i < n; i++) {
+      covariance += (x[i] - meanX) * (series[i] - meanY);
+      varianceX += (x[i] - meanX) * (x[i] - meanX);
+    }
+    return varianceX == 0 ? 0 : covariance / varianceX;
+  }
+}
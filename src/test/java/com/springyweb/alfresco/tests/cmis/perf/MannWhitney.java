@@ -0,0 +1,89 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The Mann-Whitney U (rank sum) test. Latency distributions are skewed and multi-modal so a rank test is used rather than a t-test.
+ */
+public final class MannWhitney {
+
+  private MannWhitney() {
+  }
+
+  /**
+   * One sided test of whether current tends to be larger (slower) than baseline, using the normal approximation with tie and continuity
+   * corrections.
+   *
+   * @param baseline
+   *          - The baseline latencies
+   * @param current
+   *          - The latencies of this run
+   * @return The p-value: the probability of ranks at least this much in favour of current being slower if both came from the same distribution.
+   *         1 if either sample is empty.
+   */
+  public static double pValueGreater(final long[] baseline, final long[] current) {
+    final int n1 = current.length;
+    final int n2 = baseline.length;
+    if (n1 == 0 || n2 == 0) {
+      return 1;
+    }
+    final int n = n1 + n2;
+
+    // Sort all values remembering which sample each came from (1 = current)
+    final long[][] pooled = new long[n][];
+    for (int i = 0; i < n1; i++) {
+      pooled[i] = new long[] { current[i], 1 };
+    }
+    for (int i = 0; i < n2; i++) {
+      pooled[n1 + i] = new long[] { baseline[i], 0 };
+    }
+    Arrays.sort(pooled, new Comparator<long[]>() {
+      public int compare(final long[] a, final long[] b) {
+        return a[0] < b[0] ? -1 : a[0] == b[0] ? 0 : 1;
+      }
+    });
+
+    double currentRankSum = 0;
+    double tieCorrection = 0;
+    int i = 0;
+    while (i < n) {
+      int j = i;
+      while (j + 1 < n && pooled[j + 1][0] == pooled[i][0]) {
+        j++;
+      }
+      // Ranks i+1..j+1 share their average
+      final double rank = (i + j + 2) / 2.0;
+      for (int k = i; k <= j; k++) {
+        if (pooled[k][1] == 1) {
+          currentRankSum += rank;
+        }
+      }
+      final double ties = j - i + 1;
+      tieCorrection += ties * ties * ties - ties;
+      i = j + 1;
+    }
+
+    final double u = currentRankSum - n1 * (n1 + 1) / 2.0;
+    final double mean = n1 * (double)n2 / 2;
+    final double variance = n1 * (double)n2 / 12 * ((n + 1) - tieCorrection / ((double)n * (n - 1)));
+    if (variance <= 0) {
+      return 1;
+    }
+    final double z = (u - mean - 0.5) / Math.sqrt(variance);
+    return 1 - normalCdf(z);
+  }
+
+  /**
+   * Abramowitz and Stegun 26.2.17, absolute error below 7.5e-8
+   */
+  static double normalCdf(final double z) {
+    final double x = Math.abs(z);
+    final double t = 1 / (1 + 0.2316419 * x);
+    final double density = Math.exp(-x * x / 2) / Math.sqrt(2 * Math.PI);
+    final double tail = density
+      * t
+      * (0.319381530 + t * (-0.356563782 + t * (1.781477937 + t * (-1.821255978 + t * 1.330274429))));
+    return z >= 0 ? 1 - tail : tail;
+  }
+}
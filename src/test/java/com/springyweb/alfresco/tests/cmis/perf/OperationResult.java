@@ -0,0 +1,96 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import java.util.Arrays;
+
+/**
+ * The measured latency distribution and throughput of one benchmark operation.
+ */
+public class OperationResult {
+
+  private final String name;
+  private final long count;
+  private final long errors;
+  private final long durationNanos;
+  private final long[] sortedSamples;
+
+  /**
+   * @param name
+   *          - e.g QueryBenchmark.query.string.equals
+   * @param count
+   *          - The number of successful operations
+   * @param errors
+   *          - The number of failed operations
+   * @param durationNanos
+   *          - The wall clock time over which count operations completed
+   * @param sortedSamples
+   *          - (A sample of) the operation latencies in nanoseconds, ascending
+   */
+  public OperationResult(final String name, final long count, final long errors,
+    final long durationNanos, final long[] sortedSamples) {
+    this.name = name;
+    this.count = count;
+    this.errors = errors;
+    this.durationNanos = durationNanos;
+    this.sortedSamples = sortedSamples;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getErrors() {
+    return errors;
+  }
+
+  public long getDurationNanos() {
+    return durationNanos;
+  }
+
+  public long[] getSortedSamples() {
+    return sortedSamples.clone();
+  }
+
+  public double getThroughputPerSecond() {
+    return durationNanos == 0 ? 0 : count * 1e9 / durationNanos;
+  }
+
+  public double getPercentileMillis(final double percentile) {
+    if (sortedSamples.length == 0) {
+      return 0;
+    }
+    final int rank = (int)Math.ceil(percentile / 100 * sortedSamples.length);
+    return sortedSamples[Math.min(Math.max(rank, 1), sortedSamples.length) - 1] / 1e6;
+  }
+
+  /**
+   * Keep at most maxSamples evenly spaced quantiles so that stored results stay small but keep the shape of the distribution
+   */
+  public OperationResult downsample(final int maxSamples) {
+    if (sortedSamples.length <= maxSamples) {
+      return this;
+    }
+    final long[] kept = new long[maxSamples];
+    for (int i = 0; i < maxSamples; i++) {
+      kept[i] = sortedSamples[(int)((long)i * (sortedSamples.length - 1) / (maxSamples - 1))];
+    }
+    return new OperationResult(name, count, errors, durationNanos, kept);
+  }
+
+  static OperationResult sorted(final String name, final long count, final long errors,
+    final long durationNanos, final long[] samples) {
+    final long[] sorted = samples.clone();
+    Arrays.sort(sorted);
+    return new OperationResult(name, count, errors, durationNanos, sorted);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: count=%d errors=%d throughput=%.1f/s p50=%.2fms p95=%.2fms p99=%.2fms",
+      name, count, errors, getThroughputPerSecond(), getPercentileMillis(50),
+      getPercentileMillis(95), getPercentileMillis(99));
+  }
+}
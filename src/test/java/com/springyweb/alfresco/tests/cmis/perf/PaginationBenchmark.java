@@ -0,0 +1,83 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TWO_VAL_PREDICATE_QUERY_TEMPLATE_STRING;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.Predicate;
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+import com.springyweb.alfresco.tests.cmis.jfr.QueryDescription;
+import com.springyweb.alfresco.tests.cmis.query.KeysetPager;
+
+/**
+ * The cost of reading one page of -Dbenchmark.pageSize (default 10) results deep into a query, at each of the pages -Dbenchmark.pages
+ * (default 1,1000,10000), over a corpus just large enough for the last of them:
+ * <ul>
+ * <li>page.offset.pN - skipTo the page's offset and read a page, as ItemIterable paging does</li>
+ * <li>page.keyset.pN - a {@link KeysetPager} page after the end of the page before, keyed on -Dbenchmark.pageKey (default
+ * cmis:creationDate)</li>
+ * </ul>
+ * The time to walk every page by key is recorded as page.keyset.walk.
+ */
+public class PaginationBenchmark extends AbstractCmisBenchmark {
+
+  private static final int PAGE_SIZE = Integer.getInteger("benchmark.pageSize", 10);
+  private static final String PAGES = System.getProperty("benchmark.pages", "1,1000,10000");
+  private static final String KEY = System.getProperty("benchmark.pageKey",
+    PropertyIds.CREATION_DATE);
+
+  @Test
+  public void offsetVersusKeyset() {
+    final String[] pageList = PAGES.split("\\s*,\\s*");
+    final int[] pages = new int[pageList.length];
+    int maxPage = 0;
+    for (int i = 0; i < pages.length; i++) {
+      pages[i] = Integer.parseInt(pageList[i]);
+      maxPage = Math.max(maxPage, pages[i]);
+    }
+    final Map<String, Object> props = Collections.emptyMap();
+    for (int i = 0; i < maxPage * PAGE_SIZE; i++) {
+      createDocument(benchmarkFolder, String.format("doc%08d", i), props);
+    }
+    final String query = String.format(TWO_VAL_PREDICATE_QUERY_TEMPLATE_STRING,
+      benchmarkFolder.getId(), PropertyIds.NAME, Predicate.IS_NOT_NULL.getSymbol());
+
+    // Walk every page once to find where each measured page starts
+    final KeysetPager pager = new KeysetPager(session, query, KEY, PAGE_SIZE);
+    final KeysetPager.Position[] starts = new KeysetPager.Position[maxPage + 1];
+    final long walkStart = System.nanoTime();
+    KeysetPager.Page page = pager.page(null);
+    for (int p = 2; p <= maxPage && !page.isLast(); p++) {
+      starts[p] = page.getEnd();
+      page = pager.page(starts[p]);
+    }
+    recorder().latencies("page.keyset.walk").record(System.nanoTime() - walkStart);
+
+    final OperationContext context = session.createOperationContext();
+    context.setMaxItemsPerPage(PAGE_SIZE);
+    context.setCacheEnabled(false);
+    for (final int p: pages) {
+      final long offset = (long)(p - 1) * PAGE_SIZE;
+      recorder().measure("page.offset.p" + p, WARMUP_ITERATIONS, ITERATIONS, new Runnable() {
+        public void run() {
+          for (@SuppressWarnings("unused")
+          final QueryResult result: CmisEvents.profile(session.query(query, false, context),
+            QueryDescription.of(query), PAGE_SIZE).skipTo(offset).getPage()) {
+          }
+        }
+      });
+      final KeysetPager.Position start = starts[p];
+      recorder().measure("page.keyset.p" + p, WARMUP_ITERATIONS, ITERATIONS, new Runnable() {
+        public void run() {
+          pager.page(start);
+        }
+      });
+    }
+  }
+}
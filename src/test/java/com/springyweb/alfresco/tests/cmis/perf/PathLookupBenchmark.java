@@ -0,0 +1,80 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.cache.PathCache;
+
+/**
+ * Cold and warm path lookups at each of the depths -Dbenchmark.pathDepths (default 1,4,8,16) below the benchmark folder, in a chain of
+ * folders built once to the deepest of them:
+ * <ul>
+ * <li>path.cold.dN - getObjectByPath, as made without a {@link PathCache}</li>
+ * <li>path.warm.dN - a {@link PathCache} lookup of a resolved path, which fetches the object by id</li>
+ * <li>path.warmId.dN - a {@link PathCache} lookup of the id alone, which needs no round trip</li>
+ * <li>path.missing.cold.dN and path.missing.warm.dN - the same for a path that does not exist beneath the folder</li>
+ * </ul>
+ */
+public class PathLookupBenchmark extends AbstractCmisBenchmark {
+
+  private static final String DEPTHS = System.getProperty("benchmark.pathDepths", "1,4,8,16");
+
+  @Test
+  public void pathLookups() {
+    final String[] depthList = DEPTHS.split("\\s*,\\s*");
+    int maxDepth = 0;
+    for (final String depth: depthList) {
+      maxDepth = Math.max(maxDepth, Integer.parseInt(depth));
+    }
+    final String[] paths = new String[maxDepth + 1];
+    Folder folder = benchmarkFolder;
+    for (int depth = 1; depth <= maxDepth; depth++) {
+      folder = createFolder(folder, "level" + depth);
+      paths[depth] = folder.getPath();
+    }
+
+    final PathCache cache = new PathCache(1024, 1, 1, TimeUnit.HOURS);
+    for (final String d: depthList) {
+      final int depth = Integer.parseInt(d);
+      final String path = paths[depth];
+      final String missing = path + "/missing";
+      cache.getObjectId(session, path);
+      cache.getObjectId(session, missing);
+
+      recorder().measure("path.cold.d" + depth, WARMUP_ITERATIONS, ITERATIONS, new Runnable() {
+        public void run() {
+          session.getObjectByPath(path);
+        }
+      });
+      recorder().measure("path.warm.d" + depth, WARMUP_ITERATIONS, ITERATIONS, new Runnable() {
+        public void run() {
+          cache.getObjectByPath(session, path);
+        }
+      });
+      recorder().measure("path.warmId.d" + depth, WARMUP_ITERATIONS, ITERATIONS, new Runnable() {
+        public void run() {
+          cache.getObjectId(session, path);
+        }
+      });
+      recorder().measure("path.missing.cold.d" + depth, WARMUP_ITERATIONS, ITERATIONS,
+        new Runnable() {
+          public void run() {
+            try {
+              session.getObjectByPath(missing);
+            } catch (final CmisObjectNotFoundException expected) {
+            }
+          }
+        });
+      recorder().measure("path.missing.warm.d" + depth, WARMUP_ITERATIONS, ITERATIONS,
+        new Runnable() {
+          public void run() {
+            cache.getObjectByPath(session, missing);
+          }
+        });
+    }
+    System.out.println(cache);
+  }
+}
@@ -0,0 +1,91 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_BOOLEAN;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_INTEGER;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_BOOLEAN;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_INT;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_STRING;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.CmisSessions;
+import com.springyweb.alfresco.tests.cmis.Predicate;
+import com.springyweb.alfresco.tests.cmis.acl.AclFixture;
+import com.springyweb.alfresco.tests.cmis.acl.AlfrescoAuthorities;
+import com.springyweb.alfresco.tests.cmis.acl.Authorities;
+import com.springyweb.alfresco.tests.cmis.acl.PermissionWorkload;
+
+/**
+ * The predicate queries run as admin and as -Dacl.users (default 4) users, for each ACL size in -Dacl.sizes (default 1,16,128) and
+ * inheritance depth in -Dacl.depths (default 1,8), over an {@link AclFixture} of -Dacl.documents (default 100) documents. User i is a member
+ * of i + 1 of as many groups as there are users and so reads a larger share of the documents. Latencies are recorded as
+ * acl.sN.dN.&lt;query&gt;.admin and acl.sN.dN.&lt;query&gt;.uN, and a table of each user's results and latency against admin's is printed.
+ * The benchmark fails if any user's results are not, by id, the documents the ACLs let them read.
+ *
+ * Users and groups are created and deleted through the Alfresco REST API beside -Dcmis.endpoint.
+ */
+public class PermissionQueryBenchmark extends AbstractCmisBenchmark {
+
+  private static final int USERS = Integer.getInteger("acl.users", 4);
+  private static final String SIZES = System.getProperty("acl.sizes", "1,16,128");
+  private static final String DEPTHS = System.getProperty("acl.depths", "1,8");
+  private static final int DOCUMENTS = Integer.getInteger("acl.documents", 100);
+
+  @Test
+  public void permissionFilteredQueries() {
+    final Authorities authorities = AlfrescoAuthorities.forEndpoint(CmisSessions.endpoint(),
+      CmisSessions.DEFAULT_USERNAME, CmisSessions.DEFAULT_PASSWORD);
+    final PermissionWorkload.UserSessions userSessions = new PermissionWorkload.UserSessions() {
+      public Session open(final String user, final String password) {
+        return CmisSessions.create(user, password);
+      }
+    };
+    final String run = "acl" + System.currentTimeMillis() + "_";
+    for (final String size: SIZES.split("\\s*,\\s*")) {
+      for (final String depth: DEPTHS.split("\\s*,\\s*")) {
+        final String name = "acl.s" + size + ".d" + depth;
+        final AclFixture fixture = new AclFixture(run + "s" + size + "d" + depth + "_", USERS,
+          USERS, Integer.parseInt(size), Integer.parseInt(depth), DOCUMENTS);
+        try {
+          fixture.create(session, benchmarkFolder, authorities);
+          measure(name, fixture, userSessions);
+        } finally {
+          fixture.delete(authorities);
+        }
+      }
+    }
+  }
+
+  private void measure(final String name, final AclFixture fixture,
+    final PermissionWorkload.UserSessions userSessions) {
+    final String folderId = fixture.getFolderId();
+    final PermissionWorkload workload = new PermissionWorkload(fixture, session, userSessions,
+      recorder(), WARMUP_ITERATIONS, ITERATIONS);
+    final List<PermissionWorkload.Result> results = new ArrayList<PermissionWorkload.Result>();
+    results.add(workload.run(name + ".string.equals", String.format(
+      PREDICATE_QUERY_TEMPLATE_STRING, folderId, TEST_CMIS_PROPERY_SINGLE_STRING,
+      Predicate.EQUALS.getSymbol(), AclFixture.stringValue(DOCUMENTS - 1))));
+    results.add(workload.run(name + ".integer.greaterThanEqualTo", String.format(
+      PREDICATE_QUERY_TEMPLATE_INTEGER, folderId, TEST_CMIS_PROPERY_SINGLE_INT,
+      Predicate.GREATER_THAN_EQUAL_TO.getSymbol(), DOCUMENTS / 2)));
+    results.add(workload.run(name + ".boolean.equals", String.format(
+      PREDICATE_QUERY_TEMPLATE_BOOLEAN, folderId, TEST_CMIS_PROPERY_SINGLE_BOOLEAN,
+      Predicate.EQUALS.getSymbol(), true)));
+
+    // Print every query's table before failing on the first that filtered wrongly
+    for (final PermissionWorkload.Result result: results) {
+      result.print(System.out);
+    }
+    for (final PermissionWorkload.Result result: results) {
+      assertEquals("Users whose results are not as the ACLs allow", Collections
+        .<String> emptyList(), result.getMismatches());
+    }
+  }
+}
@@ -0,0 +1,275 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.chemistry.opencmis.client.api.FileableCmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.api.Tree;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisBaseException;
+
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+import com.springyweb.alfresco.tests.cmis.jfr.QueryDescription;
+import com.springyweb.alfresco.tests.cmis.query.PredicateQuery;
+import com.springyweb.alfresco.tests.cmis.query.QueryForm;
+import com.springyweb.alfresco.tests.cmis.query.QueryForms;
+
+/**
+ * Measures the {@link QueryForms} of a query against the repository's current content and says which is fastest.
+ *
+ * Every form is run once and its results compared with those of the query as written; forms the repository rejects or that return different
+ * objects are reported but not timed. The rest are timed in turn, rotating which goes first each round so that caching and drift favour none
+ * of them. The fastest is the one with the lowest median latency, and a Mann-Whitney test says whether it is significantly faster than the
+ * query as written.
+ */
+public class QueryAdvisor {
+
+  // Beyond this the in-folder-chain form is not tried
+  private static final int MAX_SUBFOLDERS = 100;
+
+  private final Session session;
+  private final BenchmarkRecorder recorder;
+  private final int warmup;
+  private final int iterations;
+  private final double significance;
+
+  /**
+   * @param recorder
+   *          - Records each form's latencies as &lt;name&gt;.&lt;form&gt;, or null
+   * @param significance
+   *          - The p-value below which the fastest form is reported as faster than the query as written, e.g 0.01
+   */
+  public QueryAdvisor(final Session session, final BenchmarkRecorder recorder, final int warmup,
+    final int iterations, final double significance) {
+    this.session = session;
+    this.recorder = recorder;
+    this.warmup = warmup;
+    this.iterations = iterations;
+    this.significance = significance;
+  }
+
+  /**
+   * @param name
+   *          - Names the query in the advice and the recorded operations
+   */
+  public Advice advise(final String name, final PredicateQuery query) {
+    return advise(name, QueryForms.of(query, query.isTree() ? subfolderIds(query.getFolderId())
+      : null));
+  }
+
+  /**
+   * @param forms
+   *          - The query as written followed by its alternatives
+   */
+  public Advice advise(final String name, final List<QueryForm> forms) {
+    final Set<String> expected = objectIds(forms.get(0).getQuery());
+    final List<FormResult> results = new ArrayList<FormResult>();
+    final List<FormResult> timed = new ArrayList<FormResult>();
+    for (final QueryForm form: forms) {
+      final FormResult result;
+      if (results.isEmpty()) {
+        result = new FormResult(form, expected.size(), null);
+      } else {
+        Set<String> ids = null;
+        String problem;
+        try {
+          ids = objectIds(form.getQuery());
+          problem = ids.equals(expected) ? null : "different results";
+        } catch (final CmisBaseException e) {
+          problem = "failed: " + e.getMessage();
+        }
+        result = new FormResult(form, ids == null ? -1 : ids.size(), problem);
+      }
+      results.add(result);
+      if (result.problem == null) {
+        result.latencies = recorder != null ? recorder.latencies(name + "." + form.getName())
+          : new LatencyRecorder(form.getName());
+        timed.add(result);
+      }
+    }
+
+    for (int round = 0; round < warmup + iterations; round++) {
+      for (int i = 0; i < timed.size(); i++) {
+        final FormResult result = timed.get((round + i) % timed.size());
+        final long start = System.nanoTime();
+        countResults(result.form.getQuery());
+        if (round >= warmup) {
+          result.latencies.record(System.nanoTime() - start);
+        }
+      }
+    }
+    return new Advice(name, results, significance);
+  }
+
+  /**
+   * @return Every folder beneath the folder, or null if there are more than {@link #MAX_SUBFOLDERS}
+   */
+  private List<String> subfolderIds(final String folderId) {
+    final List<String> ids = new ArrayList<String>();
+    final Folder folder = (Folder)session.getObject(folderId);
+    addFolders(folder.getFolderTree(-1), ids);
+    return ids.size() > MAX_SUBFOLDERS ? null : ids;
+  }
+
+  private static void addFolders(final List<Tree<FileableCmisObject>> trees, final List<String> ids) {
+    if (trees == null) {
+      return;
+    }
+    for (final Tree<FileableCmisObject> tree: trees) {
+      ids.add(tree.getItem().getId());
+      addFolders(tree.getChildren(), ids);
+    }
+  }
+
+  private Set<String> objectIds(final String query) {
+    final Set<String> ids = new HashSet<String>();
+    for (final QueryResult result: CmisEvents.profile(session.query(query, false), QueryDescription
+      .of(query), session.getDefaultContext().getMaxItemsPerPage())) {
+      ids.add((String)result.getPropertyValueById(PropertyIds.OBJECT_ID));
+    }
+    return ids;
+  }
+
+  private long countResults(final String query) {
+    long count = 0;
+    for (@SuppressWarnings("unused")
+    final QueryResult result: CmisEvents.profile(session.query(query, false), QueryDescription
+      .of(query), session.getDefaultContext().getMaxItemsPerPage())) {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * How one form did
+   */
+  public static class FormResult {
+    private final QueryForm form;
+    private final int resultCount;
+    private final String problem;
+    private LatencyRecorder latencies;
+
+    FormResult(final QueryForm form, final int resultCount, final String problem) {
+      this.form = form;
+      this.resultCount = resultCount;
+      this.problem = problem;
+    }
+
+    public QueryForm getForm() {
+      return form;
+    }
+
+    /**
+     * @return The number of objects found, -1 if the form failed
+     */
+    public int getResultCount() {
+      return resultCount;
+    }
+
+    /**
+     * @return Why the form was not timed, null if it was
+     */
+    public String getProblem() {
+      return problem;
+    }
+
+    /**
+     * @return The form's latencies, null if it was not timed
+     */
+    public LatencyRecorder.LatencySnapshot getLatencies() {
+      return latencies == null ? null : latencies.snapshot();
+    }
+  }
+
+  /**
+   * The forms of one query, and which was fastest
+   */
+  public static class Advice {
+    private final String name;
+    private final List<FormResult> results;
+    private final FormResult fastest;
+    private final double pValue;
+    private final double significance;
+
+    Advice(final String name, final List<FormResult> results, final double significance) {
+      this.name = name;
+      this.results = results;
+      this.significance = significance;
+      FormResult best = null;
+      for (final FormResult result: results) {
+        if (result.latencies != null
+          && (best == null || median(result) < median(best))) {
+          best = result;
+        }
+      }
+      fastest = best;
+      final FormResult asWritten = results.get(0);
+      pValue = best == asWritten || best == null ? 1 : MannWhitney.pValueGreater(best
+        .getLatencies().getSortedSamples(), asWritten.getLatencies().getSortedSamples());
+    }
+
+    private static double median(final FormResult result) {
+      return result.getLatencies().getPercentileMillis(50);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public List<FormResult> getResults() {
+      return results;
+    }
+
+    /**
+     * @return The form with the lowest median latency
+     */
+    public FormResult getFastest() {
+      return fastest;
+    }
+
+    /**
+     * @return The probability of the query as written being at least this much slower than the fastest form by chance
+     */
+    public double getPValue() {
+      return pValue;
+    }
+
+    /**
+     * @return Whether a form other than the query as written is significantly faster
+     */
+    public boolean isImprovement() {
+      return fastest != results.get(0) && pValue < significance;
+    }
+
+    public void print(final PrintStream out) {
+      final FormResult asWritten = results.get(0);
+      if (isImprovement()) {
+        out.println(String.format("%s: %s is %.1fx faster than %s (p=%.4f)", name, fastest.form
+          .getName(), median(asWritten) / median(fastest), asWritten.form.getName(), pValue));
+      } else {
+        out.println(String.format("%s: no form is significantly faster than %s", name,
+          asWritten.form.getName()));
+      }
+      out.println(String.format("  %-16s %8s %8s %8s  %s", "form", "results", "p50 ms", "p95 ms",
+        "query"));
+      for (final FormResult result: results) {
+        if (result.latencies != null) {
+          final LatencyRecorder.LatencySnapshot snapshot = result.getLatencies();
+          out.println(String.format("  %-16s %8d %8.2f %8.2f  %s", result.form.getName(),
+            result.resultCount, snapshot.getPercentileMillis(50), snapshot
+              .getPercentileMillis(95), result.form.getQuery()));
+        } else {
+          out.println(String.format("  %-16s %8s %17s  %s", result.form.getName(),
+            result.resultCount < 0 ? "-" : String.valueOf(result.resultCount), result.problem,
+            result.form.getQuery()));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_BOOLEAN;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_DATETIME;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_DECIMAL;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_INTEGER;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_UNQUOTED_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_MULTIPLE_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_BOOLEAN;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_DATE_TIME;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_DOUBLE;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_INT;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TWO_VAL_PREDICATE_QUERY_TEMPLATE_STRING;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.Predicate;
+import com.springyweb.alfresco.tests.cmis.query.LiteralEncoder;
+
+/**
+ * Latency of the predicate queries exercised by CMISTest over a corpus of -Dbenchmark.corpusSize (default 100) documents, and of IN
+ * predicates with -Dbenchmark.inListSize (default 10000) literals.
+ */
+public class QueryBenchmark extends AbstractCmisBenchmark {
+
+  private static final int CORPUS_SIZE = Integer.getInteger("benchmark.corpusSize", 100);
+  private static final int IN_LIST_SIZE = Integer.getInteger("benchmark.inListSize", 10000);
+
+  @Test
+  public void predicateQueries() {
+    final GregorianCalendar start = new GregorianCalendar();
+    final GregorianCalendar calendar = (GregorianCalendar)start.clone();
+    final Map<String, Object> props = new HashMap<String, Object>();
+    for (int i = 0; i < CORPUS_SIZE; i++) {
+      props.put(TEST_CMIS_PROPERY_SINGLE_STRING, stringValue(i));
+      props.put(TEST_CMIS_PROPERY_SINGLE_INT, i);
+      props.put(TEST_CMIS_PROPERY_SINGLE_DOUBLE, i / 10.0);
+      props.put(TEST_CMIS_PROPERY_SINGLE_BOOLEAN, i % 2 == 0);
+      props.put(TEST_CMIS_PROPERY_SINGLE_DATE_TIME, calendar.clone());
+      createDocument(benchmarkFolder, "doc" + i, props);
+      calendar.add(Calendar.MILLISECOND, 1);
+    }
+    final String folderId = benchmarkFolder.getId();
+    final int middle = CORPUS_SIZE / 2;
+
+    measureQuery("query.string.equals", String.format(PREDICATE_QUERY_TEMPLATE_STRING, folderId,
+      TEST_CMIS_PROPERY_SINGLE_STRING, Predicate.EQUALS.getSymbol(), stringValue(middle)));
+    measureQuery("query.string.lessThan", String.format(PREDICATE_QUERY_TEMPLATE_STRING, folderId,
+      TEST_CMIS_PROPERY_SINGLE_STRING, Predicate.LESS_THAN.getSymbol(), stringValue(middle)));
+    measureQuery("query.integer.greaterThanEqualTo", String.format(
+      PREDICATE_QUERY_TEMPLATE_INTEGER, folderId, TEST_CMIS_PROPERY_SINGLE_INT,
+      Predicate.GREATER_THAN_EQUAL_TO.getSymbol(), middle));
+    measureQuery("query.decimal.lessThan", String.format(PREDICATE_QUERY_TEMPLATE_DECIMAL,
+      folderId, TEST_CMIS_PROPERY_SINGLE_DOUBLE, Predicate.LESS_THAN.getSymbol(), middle / 10.0));
+    measureQuery("query.boolean.equals", String.format(PREDICATE_QUERY_TEMPLATE_BOOLEAN, folderId,
+      TEST_CMIS_PROPERY_SINGLE_BOOLEAN, Predicate.EQUALS.getSymbol(), true));
+
+    final GregorianCalendar middleDate = (GregorianCalendar)start.clone();
+    middleDate.add(Calendar.MILLISECOND, middle);
+    measureQuery("query.datetime.greaterThan", String.format(PREDICATE_QUERY_TEMPLATE_DATETIME,
+      folderId, TEST_CMIS_PROPERY_SINGLE_DATE_TIME, Predicate.GREATER_THAN.getSymbol(),
+      new LiteralEncoder().dateTime(middleDate.getTimeInMillis()).toString()));
+
+    measureQuery("query.in.integer", String.format(PREDICATE_QUERY_TEMPLATE_UNQUOTED_STRING,
+      folderId, TEST_CMIS_PROPERY_SINGLE_INT, Predicate.IN.getSymbol(), "(1,2,3,5,8,13,21)"));
+
+    // Every other value matches, the rest are past the end of the corpus
+    final LiteralEncoder inList = new LiteralEncoder(IN_LIST_SIZE * 40).beginList();
+    for (int i = 0; i < IN_LIST_SIZE; i++) {
+      inList.integer(i * 2);
+    }
+    measureQuery("query.in.integer.large", String.format(PREDICATE_QUERY_TEMPLATE_UNQUOTED_STRING,
+      folderId, TEST_CMIS_PROPERY_SINGLE_INT, Predicate.IN.getSymbol(), inList.endList()));
+    inList.reset().beginList();
+    for (int i = 0; i < IN_LIST_SIZE; i++) {
+      inList.timestamp(start.getTimeInMillis() + i * 2);
+    }
+    measureQuery("query.in.datetime.large", String.format(
+      PREDICATE_QUERY_TEMPLATE_UNQUOTED_STRING, folderId, TEST_CMIS_PROPERY_SINGLE_DATE_TIME,
+      Predicate.IN.getSymbol(), inList.endList()));
+
+    measureQuery("query.like.prefix", String.format(PREDICATE_QUERY_TEMPLATE_STRING, folderId,
+      PropertyIds.NAME, Predicate.LIKE.getSymbol(), "doc1%"));
+    measureQuery("query.isNull", String.format(TWO_VAL_PREDICATE_QUERY_TEMPLATE_STRING, folderId,
+      TEST_CMIS_PROPERY_MULTIPLE_STRING, Predicate.IS_NULL.getSymbol()));
+  }
+
+  /**
+   * @return e.g a0, b1, ... z25, a26
+   */
+  private static String stringValue(final int i) {
+    return (char)('a' + i % 26) + Integer.toString(i);
+  }
+}
@@ -0,0 +1,87 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.ASPECT_TITLED;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PROPERTY_DESCRIPTION;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_DOCUMENT_TYPE;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_INT;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.aspectPrefix;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.documentPrefix;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.Predicate;
+import com.springyweb.alfresco.tests.cmis.query.PredicateQuery;
+import com.springyweb.alfresco.tests.cmis.query.QueryForms;
+
+/**
+ * Times the {@link QueryForms} of a few predicate queries with a {@link QueryAdvisor}, over -Dbenchmark.corpusSize (default 100) documents
+ * spread across the benchmark folder and a tree of -Dbenchmark.formSubfolders (default 4) folders beneath it, every third document having
+ * the cm:titled aspect:
+ * <ul>
+ * <li>forms.in.integer - an IN list of integers</li>
+ * <li>forms.like.prefix - a LIKE prefix match on a string</li>
+ * <li>forms.titled.equals - an equality match on cm:description through a join to cm:titled</li>
+ * <li>forms.tree.equals - an equality match over the whole tree</li>
+ * </ul>
+ * Each form's latencies are recorded as &lt;query&gt;.&lt;form&gt;, and the advice for each query is printed.
+ */
+public class QueryFormBenchmark extends AbstractCmisBenchmark {
+
+  private static final int CORPUS_SIZE = Integer.getInteger("benchmark.corpusSize", 100);
+  private static final int SUBFOLDERS = Integer.getInteger("benchmark.formSubfolders", 4);
+  private static final double SIGNIFICANCE = 0.01;
+
+  @Test
+  public void queryForms() {
+    final Folder[] folders = new Folder[SUBFOLDERS + 1];
+    folders[0] = benchmarkFolder;
+    for (int i = 1; i <= SUBFOLDERS; i++) {
+      // Two chains, so the tree is neither flat nor a single path
+      folders[i] = createFolder(folders[i <= 2 ? 0 : i - 2], "sub" + i);
+    }
+
+    final String document = documentPrefix(TEST_CMIS_DOCUMENT_TYPE);
+    final String titled = document + "," + aspectPrefix(ASPECT_TITLED);
+    final Map<String, Object> props = new HashMap<String, Object>();
+    for (int i = 0; i < CORPUS_SIZE; i++) {
+      props.clear();
+      props.put(TEST_CMIS_PROPERY_SINGLE_STRING, stringValue(i));
+      props.put(TEST_CMIS_PROPERY_SINGLE_INT, i);
+      if (i % 3 == 0) {
+        props.put(PropertyIds.OBJECT_TYPE_ID, titled);
+        props.put(PROPERTY_DESCRIPTION, "description" + i % 2);
+      }
+      createDocument(folders[i % folders.length], "doc" + i, props);
+    }
+
+    final String folderId = benchmarkFolder.getId();
+    final QueryAdvisor advisor = new QueryAdvisor(session, recorder(), WARMUP_ITERATIONS,
+      ITERATIONS, SIGNIFICANCE);
+    advisor.advise("forms.in.integer",
+      new PredicateQuery(TEST_CMIS_DOCUMENT_TYPE, folderId, false, null,
+        TEST_CMIS_PROPERY_SINGLE_INT, Predicate.IN, 0, 5, 10, 15, 20, 25, 30)).print(System.out);
+    advisor.advise("forms.like.prefix",
+      new PredicateQuery(TEST_CMIS_DOCUMENT_TYPE, folderId, false, null,
+        TEST_CMIS_PROPERY_SINGLE_STRING, Predicate.LIKE, "c%")).print(System.out);
+    advisor.advise("forms.titled.equals",
+      new PredicateQuery(TEST_CMIS_DOCUMENT_TYPE, folderId, false, ASPECT_TITLED,
+        PROPERTY_DESCRIPTION, Predicate.EQUALS, "description0")).print(System.out);
+    advisor.advise("forms.tree.equals",
+      new PredicateQuery(TEST_CMIS_DOCUMENT_TYPE, folderId, true, null,
+        TEST_CMIS_PROPERY_SINGLE_STRING, Predicate.EQUALS, stringValue(CORPUS_SIZE / 2)))
+      .print(System.out);
+  }
+
+  /**
+   * @return e.g a0, b1, ... z25, a26
+   */
+  private static String stringValue(final int i) {
+    return (char)('a' + i % 26) + Integer.toString(i);
+  }
+}
@@ -0,0 +1,161 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_BOOLEAN;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_DATE;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_DATE_TIME;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_DOUBLE;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_INT;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_STRING;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.async.ShardedQueryExecutor;
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+import com.springyweb.alfresco.tests.cmis.jfr.QueryDescription;
+
+/**
+ * Server side sort latency on each swct:propSingle* type as the corpus grows through -Dbenchmark.sortSizes (default 100,1000,10000)
+ * documents, spread over -Dbenchmark.shards (default 4) folders, reading the first -Dbenchmark.sortPageSize (default 100) results:
+ * <ul>
+ * <li>sort.unsorted.nN - the in_tree query over the shard folders without ORDER BY</li>
+ * <li>sort.&lt;type&gt;.nN - the in_tree query ordered by the property</li>
+ * <li>sort.sharded.&lt;type&gt;.nN - an in_folder query per shard ordered by the property, merged by a {@link ShardedQueryExecutor}</li>
+ * </ul>
+ * At each size every merged result set is read in full and checked against the unsharded one, failing the benchmark if they differ.
+ */
+public class SortBenchmark extends AbstractCmisBenchmark {
+
+  private static final String SIZES = System.getProperty("benchmark.sortSizes", "100,1000,10000");
+  private static final int SHARDS = Integer.getInteger("benchmark.shards", 4);
+  private static final int PAGE_SIZE = Integer.getInteger("benchmark.sortPageSize", 100);
+
+  private static final String TREE_QUERY = "SELECT * from swct:document where in_tree('%s')";
+  private static final String FOLDER_QUERY = "SELECT * from swct:document where in_folder('%s')";
+  private static final String ORDER_BY = " ORDER BY %s ASC";
+
+  // Spreads keys across the range so documents are not created in key order
+  private static final int STRIDE = 7919;
+
+  private static final Map<String, String> PROPERTIES = new LinkedHashMap<String, String>();
+
+  static {
+    PROPERTIES.put("string", TEST_CMIS_PROPERY_SINGLE_STRING);
+    PROPERTIES.put("integer", TEST_CMIS_PROPERY_SINGLE_INT);
+    PROPERTIES.put("decimal", TEST_CMIS_PROPERY_SINGLE_DOUBLE);
+    PROPERTIES.put("boolean", TEST_CMIS_PROPERY_SINGLE_BOOLEAN);
+    PROPERTIES.put("date", TEST_CMIS_PROPERY_SINGLE_DATE);
+    PROPERTIES.put("datetime", TEST_CMIS_PROPERY_SINGLE_DATE_TIME);
+  }
+
+  @Test
+  public void sortedQueries() {
+    final List<Folder> shards = new ArrayList<Folder>();
+    final List<String> shardIds = new ArrayList<String>();
+    for (int s = 0; s < SHARDS; s++) {
+      shards.add(createFolder(benchmarkFolder, "shard" + s));
+      shardIds.add(shards.get(s).getId());
+    }
+    final OperationContext context = session.createOperationContext();
+    context.setMaxItemsPerPage(PAGE_SIZE);
+    context.setCacheEnabled(false);
+    final ShardedQueryExecutor sharded = new ShardedQueryExecutor(session, PAGE_SIZE);
+    try {
+      int created = 0;
+      for (final String size: SIZES.split("\\s*,\\s*")) {
+        final int documents = Integer.parseInt(size);
+        for (; created < documents; created++) {
+          createDocument(shards.get(created % SHARDS), "doc" + created, properties(created));
+        }
+        final String tree = String.format(TREE_QUERY, benchmarkFolder.getId());
+        measureFirstPage("sort.unsorted.n" + size, tree, context);
+        for (final Map.Entry<String, String> property: PROPERTIES.entrySet()) {
+          final String orderBy = String.format(ORDER_BY, property.getValue());
+          final List<String> shardQueries = new ArrayList<String>();
+          for (final String shardId: shardIds) {
+            shardQueries.add(String.format(FOLDER_QUERY, shardId) + orderBy);
+          }
+          measureFirstPage("sort." + property.getKey() + ".n" + size, tree + orderBy, context);
+          measureMergedFirstPage("sort.sharded." + property.getKey() + ".n" + size, sharded,
+            shardQueries, property.getValue());
+
+          final List<QueryResult> merged = new ArrayList<QueryResult>();
+          for (final QueryResult result: sharded.query(shardQueries, property.getValue(), false)) {
+            merged.add(result);
+          }
+          final List<QueryResult> unsharded = new ArrayList<QueryResult>();
+          for (final QueryResult result: CmisEvents.profile(session.query(tree + orderBy, false,
+            context), QueryDescription.of(tree + orderBy), PAGE_SIZE)) {
+            unsharded.add(result);
+          }
+          assertNull(property.getKey() + " at " + size, ShardedQueryExecutor.difference(merged,
+            unsharded, property.getValue()));
+        }
+      }
+    } finally {
+      sharded.close();
+    }
+  }
+
+  private void measureFirstPage(final String operation, final String query,
+    final OperationContext context) {
+    recorder().measure(operation, WARMUP_ITERATIONS, ITERATIONS, new Runnable() {
+      public void run() {
+        final ItemIterable<QueryResult> page = CmisEvents.profile(session.query(query, false,
+          context), QueryDescription.of(query), PAGE_SIZE).getPage();
+        for (@SuppressWarnings("unused")
+        final QueryResult result: page) {
+        }
+      }
+    });
+  }
+
+  private void measureMergedFirstPage(final String operation,
+    final ShardedQueryExecutor sharded, final List<String> queries, final String key) {
+    recorder().measure(operation, WARMUP_ITERATIONS, ITERATIONS, new Runnable() {
+      public void run() {
+        final ShardedQueryExecutor.Merge merge = sharded.query(queries, key, false);
+        try {
+          final Iterator<QueryResult> results = merge.iterator();
+          for (int i = 0; i < PAGE_SIZE && results.hasNext(); i++) {
+            results.next();
+          }
+        } finally {
+          merge.close();
+        }
+      }
+    });
+  }
+
+  private static Map<String, Object> properties(final int i) {
+    final int key = (int)((long)i * STRIDE % 1000003);
+    final Map<String, Object> props = new HashMap<String, Object>();
+    props.put(TEST_CMIS_PROPERY_SINGLE_STRING, "v" + key);
+    props.put(TEST_CMIS_PROPERY_SINGLE_INT, key);
+    props.put(TEST_CMIS_PROPERY_SINGLE_DOUBLE, key / 10.0);
+    props.put(TEST_CMIS_PROPERY_SINGLE_BOOLEAN, key % 2 == 0);
+    final GregorianCalendar date = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+    date.clear();
+    date.set(2000, Calendar.JANUARY, 1);
+    date.add(Calendar.DAY_OF_YEAR, key % 3650);
+    props.put(TEST_CMIS_PROPERY_SINGLE_DATE, date);
+    final GregorianCalendar dateTime = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+    dateTime.setTimeInMillis(946684800000L + key * 1000L);
+    props.put(TEST_CMIS_PROPERY_SINGLE_DATE_TIME, dateTime);
+    return props;
+  }
+}
@@ -0,0 +1,132 @@
+package com.springyweb.alfresco.tests.cmis.perf;
+
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.PREDICATE_QUERY_TEMPLATE_STRING;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_DOCUMENT_TYPE;
+import static com.springyweb.alfresco.tests.cmis.CmisTestModel.TEST_CMIS_PROPERY_SINGLE_STRING;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.CmisVersions;
+import com.springyweb.alfresco.tests.cmis.Predicate;
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+
+/**
+ * How query and version history latency grow with the length of the version history, as in records management folders. Each of
+ * -Dbenchmark.versionedDocuments (default 10) documents is checked out and in with new content of -Dbenchmark.versionContentBytes (default
+ * 1024) until it has 1, 2, 4 ... -Dbenchmark.maxVersions (default 32) versions, measuring at each length:
+ * <ul>
+ * <li>query.latest.vN - a query for the documents, latest versions only</li>
+ * <li>query.allVersions.vN - the same query over all versions, if the repository supports it</li>
+ * <li>getAllVersions.vN - reading a document's version history</li>
+ * <li>checkIn.vN - checking out and in the versions that took the history to this length</li>
+ * </ul>
+ * The content bytes held in the version histories are printed at each length.
+ */
+public class VersionHistoryBenchmark extends AbstractCmisBenchmark {
+
+  private static final int DOCUMENTS = Integer.getInteger("benchmark.versionedDocuments", 10);
+  private static final int MAX_VERSIONS = Integer.getInteger("benchmark.maxVersions", 32);
+  private static final int CONTENT_BYTES = Integer.getInteger("benchmark.versionContentBytes",
+    1024);
+
+  @Test
+  public void versionHistoryGrowth() {
+    final boolean allVersionsSearchable = Boolean.TRUE.equals(session.getRepositoryInfo()
+      .getCapabilities().isAllVersionsSearchableSupported());
+    if (!allVersionsSearchable) {
+      System.out.println("The repository cannot search all versions, only measuring latest versions");
+    }
+
+    final String marker = "versioned" + System.currentTimeMillis();
+    final Map<String, Object> props = new HashMap<String, Object>();
+    props.put(TEST_CMIS_PROPERY_SINGLE_STRING, marker);
+    final List<Document> latest = new ArrayList<Document>();
+    for (int i = 0; i < DOCUMENTS; i++) {
+      latest.add(createDocument(benchmarkFolder, "doc" + i, props, content(i, 1)));
+    }
+
+    final String latestQuery = String.format(PREDICATE_QUERY_TEMPLATE_STRING,
+      benchmarkFolder.getId(), TEST_CMIS_PROPERY_SINGLE_STRING, Predicate.EQUALS.getSymbol(),
+      marker);
+    // Old versions are not filed, so the query cannot use in_folder
+    final String allVersionsQuery = String.format("SELECT * from %s where %s = '%s'",
+      TEST_CMIS_DOCUMENT_TYPE, TEST_CMIS_PROPERY_SINGLE_STRING, marker);
+
+    int versions = 1;
+    for (int length = 1; length <= MAX_VERSIONS; length *= 2) {
+      if (versions < length) {
+        final LatencyRecorder checkIns = recorder().latencies("checkIn.v" + length);
+        final long start = System.nanoTime();
+        for (; versions < length; versions++) {
+          for (int i = 0; i < DOCUMENTS; i++) {
+            final long begin = System.nanoTime();
+            latest.set(i, CmisVersions.checkInNewVersion(session, latest.get(i),
+              content(i, versions + 1)));
+            checkIns.record(System.nanoTime() - begin);
+          }
+        }
+        recorder().addDuration("checkIn.v" + length, System.nanoTime() - start);
+      }
+
+      measureQuery("query.latest.v" + length, latestQuery);
+      if (allVersionsSearchable) {
+        measureQuery("query.allVersions.v" + length, allVersionsQuery, true);
+      }
+      measureGetAllVersions("getAllVersions.v" + length, latest);
+      System.out.println(String.format("%d versions of %d documents hold %d content bytes",
+        length, DOCUMENTS, historyBytes(latest)));
+    }
+  }
+
+  private void measureGetAllVersions(final String operation, final List<Document> documents) {
+    recorder().measure(operation, WARMUP_ITERATIONS, ITERATIONS, new Runnable() {
+      private int next = 0;
+
+      public void run() {
+        final Document document = documents.get(next++ % documents.size());
+        CmisEvents.time(CmisEvents.GET_ALL_VERSIONS, new CmisEvents.Call<List<Document>>() {
+          public List<Document> call() {
+            return document.getAllVersions();
+          }
+
+          @Override
+          public long resultCount(final List<Document> versions) {
+            return versions.size();
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * @return The total content length of every version of the documents
+   */
+  private static long historyBytes(final List<Document> documents) {
+    long bytes = 0;
+    for (final Document document: documents) {
+      for (final Document version: document.getAllVersions()) {
+        bytes += Math.max(0, version.getContentStreamLength());
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * @return CONTENT_BYTES of text unique to the document and version
+   */
+  private static String content(final int document, final int version) {
+    final StringBuilder content = new StringBuilder(CONTENT_BYTES);
+    content.append("document ").append(document).append(" version ").append(version).append('\n');
+    while (content.length() < CONTENT_BYTES) {
+      content.append((char)('a' + (content.length() + version) % 26));
+    }
+    content.setLength(CONTENT_BYTES);
+    return content.toString();
+  }
+}
@@ -0,0 +1,284 @@
+package com.springyweb.alfresco.tests.cmis.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+import com.springyweb.alfresco.tests.cmis.jfr.QueryDescription;
+
+/**
+ * Walks a query's results a page at a time by key rather than by offset. Each page is the query ordered by the key and restricted to keys at
+ * or after the last one seen, e.g
+ *
+ * <pre>
+ * SELECT * from swct:document where (in_folder('...')) AND cmis:creationDate &gt;= TIMESTAMP '...' ORDER BY cmis:creationDate ASC
+ * </pre>
+ *
+ * so the repository does the same work for the last page as the first, where skipTo has it find and discard every result before the offset.
+ *
+ * The key need not be unique: the ids already read at the last key are fetched again and skipped, so each page asks for that many more
+ * results. It must be orderable, comparable with &gt;= and set on every object, as cmis:creationDate and cmis:name are; cmis:objectId only
+ * works on repositories that order and compare ids. Objects created or changed behind the walk are seen or missed according to their key, as
+ * they would be at an offset.
+ */
+public class KeysetPager implements Iterable<QueryResult> {
+
+  private static final String SELECT = "SELECT";
+  private static final String FROM = "FROM";
+  private static final String WHERE = "WHERE";
+  private static final String ORDER_BY = "ORDER BY";
+
+  private final Session session;
+  private final String select;
+  private final String condition;
+  private final String key;
+  private final String keyId;
+  private final int pageSize;
+
+  /**
+   * @param query
+   *          - Without an ORDER BY. The key is added to the select list if it is not already there.
+   * @param key
+   *          - e.g cmis:creationDate, or d.cmis:creationDate in a join
+   */
+  public KeysetPager(final Session session, final String query, final String key,
+    final int pageSize) {
+    if (pageSize < 1) {
+      throw new IllegalArgumentException("Page size " + pageSize);
+    }
+    if (indexOfKeyword(query, ORDER_BY, 0) >= 0) {
+      throw new IllegalArgumentException("Already ordered: " + query);
+    }
+    final int from = indexOfKeyword(query, FROM, 0);
+    if (!query.trim().regionMatches(true, 0, SELECT, 0, SELECT.length()) || from < 0) {
+      throw new IllegalArgumentException("Not a query: " + query);
+    }
+    this.session = session;
+    this.key = key;
+    keyId = key.substring(key.lastIndexOf('.') + 1);
+    this.pageSize = pageSize;
+
+    final String selectList = query.substring(0, from);
+    final String withKey = selectList.indexOf('*') >= 0
+      || selectList.toLowerCase().contains(key.toLowerCase()) ? selectList : selectList.trim()
+      + ", " + key + " ";
+    final int where = indexOfKeyword(query, WHERE, from);
+    if (where < 0) {
+      select = withKey + query.substring(from).trim();
+      condition = null;
+    } else {
+      select = withKey + query.substring(from, where).trim();
+      condition = query.substring(where + WHERE.length()).trim();
+    }
+  }
+
+  /**
+   * @return The results after the position, or from the start if it is null
+   */
+  public Iterable<QueryResult> from(final Position position) {
+    return new Iterable<QueryResult>() {
+      public Iterator<QueryResult> iterator() {
+        return new PageIterator(position);
+      }
+    };
+  }
+
+  public Iterator<QueryResult> iterator() {
+    return new PageIterator(null);
+  }
+
+  /**
+   * @param after
+   *          - The end of the previous page, or null for the first
+   */
+  public Page page(final Position after) {
+    final int fetch = pageSize + (after == null ? 0 : after.ids.size());
+    final String query = pageQuery(after);
+    final OperationContext context = session.createOperationContext();
+    context.setMaxItemsPerPage(fetch);
+    context.setCacheEnabled(false);
+    final ItemIterable<QueryResult> page = CmisEvents.profile(session.query(query, false, context),
+      QueryDescription.of(query), fetch).getPage();
+
+    final List<QueryResult> results = new ArrayList<QueryResult>(pageSize);
+    String lastKey = after == null ? null : after.key;
+    final Set<String> idsAtLastKey = new HashSet<String>();
+    if (after != null) {
+      idsAtLastKey.addAll(after.ids);
+    }
+    int fetched = 0;
+    boolean full = false;
+    for (final QueryResult result: page) {
+      fetched++;
+      if (full) {
+        continue;
+      }
+      final String resultKey = keyLiteral(result);
+      final String id = (String)result.getPropertyValueById(PropertyIds.OBJECT_ID);
+      if (after != null && resultKey.equals(after.key) && after.ids.contains(id)) {
+        continue;
+      }
+      if (!resultKey.equals(lastKey)) {
+        lastKey = resultKey;
+        idsAtLastKey.clear();
+      }
+      idsAtLastKey.add(id);
+      results.add(result);
+      full = results.size() == pageSize;
+    }
+    final boolean last = (fetched < fetch || !page.getHasMoreItems()) && !full;
+    return new Page(results, lastKey == null ? null : new Position(lastKey, idsAtLastKey), last);
+  }
+
+  /**
+   * @return The query for the page after the position
+   */
+  String pageQuery(final Position after) {
+    final LiteralEncoder encoder = new LiteralEncoder().append(select);
+    if (condition != null || after != null) {
+      encoder.append(' ').append(WHERE).append(' ');
+    }
+    if (condition != null) {
+      encoder.append('(').append(condition).append(')');
+    }
+    if (after != null) {
+      if (condition != null) {
+        encoder.append(" AND ");
+      }
+      encoder.append(key).append(" >= ").raw(after.key);
+    }
+    return encoder.append(' ').append(ORDER_BY).append(' ').append(key).append(" ASC").toString();
+  }
+
+  private String keyLiteral(final QueryResult result) {
+    final Object value = result.getPropertyValueById(keyId);
+    if (value == null) {
+      throw new IllegalStateException(keyId + " is not set on "
+        + result.getPropertyValueById(PropertyIds.OBJECT_ID));
+    }
+    return new LiteralEncoder().literal(value).toString();
+  }
+
+  /**
+   * @return The start of the keyword outside quoted literals, or -1
+   */
+  static int indexOfKeyword(final String query, final String keyword, final int fromIndex) {
+    boolean quoted = false;
+    for (int i = fromIndex; i < query.length(); i++) {
+      final char c = query.charAt(i);
+      if (quoted) {
+        if (c == '\\') {
+          i++;
+        } else if (c == '\'') {
+          quoted = false;
+        }
+      } else if (c == '\'') {
+        quoted = true;
+      } else if (query.regionMatches(true, i, keyword, 0, keyword.length())
+        && (i == 0 || Character.isWhitespace(query.charAt(i - 1)))
+        && (i + keyword.length() == query.length() || Character.isWhitespace(query.charAt(i
+          + keyword.length())))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Where a walk has got to: the last key read and the ids read at it
+   */
+  public static class Position {
+    private final String key;
+    private final Set<String> ids;
+
+    Position(final String key, final Set<String> ids) {
+      this.key = key;
+      this.ids = Collections.unmodifiableSet(new HashSet<String>(ids));
+    }
+
+    /**
+     * @return The key as a CMIS literal
+     */
+    public String getKey() {
+      return key;
+    }
+
+    public Set<String> getIds() {
+      return ids;
+    }
+
+    @Override
+    public String toString() {
+      return key + " " + ids;
+    }
+  }
+
+  /**
+   * One page of results and where it ended
+   */
+  public static class Page {
+    private final List<QueryResult> results;
+    private final Position end;
+    private final boolean last;
+
+    Page(final List<QueryResult> results, final Position end, final boolean last) {
+      this.results = results;
+      this.end = end;
+      this.last = last;
+    }
+
+    public List<QueryResult> getResults() {
+      return results;
+    }
+
+    /**
+     * @return Where the next page starts from, null if no results have been read
+     */
+    public Position getEnd() {
+      return end;
+    }
+
+    public boolean isLast() {
+      return last;
+    }
+  }
+
+  private class PageIterator implements Iterator<QueryResult> {
+    private Page page;
+    private int next;
+
+    PageIterator(final Position after) {
+      page = page(after);
+    }
+
+    public boolean hasNext() {
+      while (next == page.results.size() && !page.last) {
+        page = page(page.end);
+        next = 0;
+      }
+      return next < page.results.size();
+    }
+
+    public QueryResult next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return page.results.get(next++);
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package com.springyweb.alfresco.tests.cmis.query;
+
+import static com.springyweb.alfresco.tests.cmis.Stubs.queryResult;
+import static com.springyweb.alfresco.tests.cmis.Stubs.stub;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.cache.ListItemIterable;
+
+/**
+ * Runs against an in-memory repository that orders by cmis:name, with ties in random order. No repository is required.
+ */
+public class KeysetPagerTest {
+
+  private static final String QUERY = "SELECT * from swct:document where in_folder('f')";
+  private static final Pattern AFTER = Pattern.compile("cmis:name >= '([^']*)'");
+
+  private final Random random = new Random(42);
+  private final List<String> queries = new ArrayList<String>();
+  private final List<String[]> documents = new ArrayList<String[]>();
+
+  private final Session session = stub(Session.class, new InvocationHandler() {
+    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+      if (method.getName().equals("createOperationContext")) {
+        return new OperationContextImpl();
+      }
+      if (method.getName().equals("query")) {
+        return query((String)args[0], ((OperationContext)args[2]).getMaxItemsPerPage());
+      }
+      throw new UnsupportedOperationException(method.getName());
+    }
+  });
+
+  private Object query(final String query, final int maxItems) {
+    queries.add(query);
+    assertTrue(query, query.endsWith(" ORDER BY cmis:name ASC"));
+    final Matcher after = AFTER.matcher(query);
+    final String from = after.find() ? after.group(1) : "";
+    final List<String[]> matches = new ArrayList<String[]>();
+    for (final String[] document: documents) {
+      if (document[1].compareTo(from) >= 0) {
+        matches.add(document);
+      }
+    }
+    Collections.shuffle(matches, random);
+    Collections.sort(matches, new Comparator<String[]>() {
+      public int compare(final String[] a, final String[] b) {
+        return a[1].compareTo(b[1]);
+      }
+    });
+    final List<QueryResult> results = new ArrayList<QueryResult>();
+    for (final String[] document: matches.subList(0, Math.min(maxItems, matches.size()))) {
+      results.add(queryResult(document[0], document[1]));
+    }
+    return new ListItemIterable<QueryResult>(results, 0, matches.size());
+  }
+
+  /**
+   * @param names
+   *          - The number of distinct names, each given to perName documents
+   */
+  private void documents(final int names, final int perName) {
+    for (int n = 0; n < names; n++) {
+      for (int i = 0; i < perName; i++) {
+        documents.add(new String[] { "id" + documents.size(), "name" + n });
+      }
+    }
+  }
+
+  private static Set<String> ids(final Iterable<QueryResult> results) {
+    final Set<String> ids = new HashSet<String>();
+    for (final QueryResult result: results) {
+      assertTrue(ids.add((String)result.getPropertyValueById(PropertyIds.OBJECT_ID)));
+    }
+    return ids;
+  }
+
+  @Test
+  public void everyResultOnceDespiteTiesLargerThanAPage() {
+    documents(5, 4);
+    final Set<String> ids = ids(new KeysetPager(session, QUERY, PropertyIds.NAME, 3));
+    assertEquals(20, ids.size());
+    // 20 results 3 to a page, the last page only finding there are no more
+    assertEquals(7, queries.size());
+  }
+
+  @Test
+  public void uniqueKeys() {
+    documents(10, 1);
+    assertEquals(10, ids(new KeysetPager(session, QUERY, PropertyIds.NAME, 5)).size());
+    final String scoped = "SELECT * from swct:document WHERE (in_folder('f'))";
+    assertEquals(scoped + " ORDER BY cmis:name ASC", queries.get(0));
+    assertEquals(scoped + " AND cmis:name >= 'name4' ORDER BY cmis:name ASC", queries.get(1));
+  }
+
+  @Test
+  public void resumesFromAPosition() {
+    documents(4, 3);
+    final KeysetPager pager = new KeysetPager(session, QUERY, PropertyIds.NAME, 4);
+    final KeysetPager.Page first = pager.page(null);
+    assertFalse(first.isLast());
+    assertEquals("'name1'", first.getEnd().getKey());
+    assertEquals(1, first.getEnd().getIds().size());
+
+    final Set<String> ids = ids(first.getResults());
+    ids.addAll(ids(pager.from(first.getEnd())));
+    assertEquals(12, ids.size());
+  }
+
+  @Test
+  public void emptyResults() {
+    final KeysetPager.Page page = new KeysetPager(session, QUERY, PropertyIds.NAME, 3).page(null);
+    assertTrue(page.isLast());
+    assertEquals(null, page.getEnd());
+    assertFalse(new KeysetPager(session, QUERY, PropertyIds.NAME, 3).iterator().hasNext());
+  }
+
+  @Test
+  public void rewrites() {
+    assertEquals("SELECT cmis:objectId, cmis:name FROM swct:document ORDER BY cmis:name ASC",
+      new KeysetPager(session, "SELECT cmis:objectId FROM swct:document", PropertyIds.NAME, 1)
+        .pageQuery(null));
+    final KeysetPager.Position after = new KeysetPager.Position("'b'", new HashSet<String>());
+    assertEquals("SELECT d.*, t.* FROM swct:document AS d JOIN cm:titled AS t ON d.cmis:objectId "
+      + "= t.cmis:objectId WHERE (t.cm:description = 'order by where') AND d.cmis:name >= 'b' "
+      + "ORDER BY d.cmis:name ASC", new KeysetPager(session, "SELECT d.*, t.* FROM swct:document "
+      + "AS d JOIN cm:titled AS t ON d.cmis:objectId = t.cmis:objectId WHERE t.cm:description = "
+      + "'order by where'", "d.cmis:name", 1).pageQuery(after));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void orderedQueriesAreRejected() {
+    new KeysetPager(session, QUERY + " ORDER BY cmis:creationDate", PropertyIds.NAME, 1);
+  }
+}
@@ -0,0 +1,321 @@
+package com.springyweb.alfresco.tests.cmis.query;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Writes CMIS query text and literals into a reusable buffer without creating an object per value, so that queries carrying thousands of
+ * literals do not put the load generator's garbage collection into the latencies being measured.
+ *
+ * Values are written as the CMIS query grammar expects them: strings quoted with ' and \ escaped, TIMESTAMP literals in UTC from epoch
+ * milliseconds and booleans as TRUE and FALSE. Between {@link #beginList()} and {@link #endList()} literals are comma separated, e.g
+ * <code>IN ('a','b')</code>. Once the buffer has grown to the largest query, the only allocation left is the String handed to the session.
+ */
+public final class LiteralEncoder implements CharSequence {
+
+  private static final long MILLIS_PER_DAY = 86400000L;
+  private static final long[] POWERS_OF_TEN = new long[19];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private final StringBuilder buffer;
+  private char[] scratch;
+  private boolean inList;
+  private boolean firstInList;
+
+  public LiteralEncoder() {
+    this(256);
+  }
+
+  /**
+   * @param capacity
+   *          - The initial size of the buffer in chars
+   */
+  public LiteralEncoder(final int capacity) {
+    buffer = new StringBuilder(capacity);
+  }
+
+  /**
+   * Empty the buffer, keeping its capacity
+   */
+  public LiteralEncoder reset() {
+    buffer.setLength(0);
+    inList = false;
+    return this;
+  }
+
+  /**
+   * Append query text as is
+   */
+  public LiteralEncoder append(final CharSequence text) {
+    buffer.append(text);
+    return this;
+  }
+
+  public LiteralEncoder append(final char c) {
+    buffer.append(c);
+    return this;
+  }
+
+  /**
+   * Start a bracketed, comma separated list of literals
+   */
+  public LiteralEncoder beginList() {
+    if (inList) {
+      throw new IllegalStateException("Lists do not nest");
+    }
+    buffer.append('(');
+    inList = true;
+    firstInList = true;
+    return this;
+  }
+
+  public LiteralEncoder endList() {
+    if (!inList) {
+      throw new IllegalStateException("No list to end");
+    }
+    buffer.append(')');
+    inList = false;
+    return this;
+  }
+
+  /**
+   * Append a value as is, comma separated when in a list, e.g a property name or a value that is already a literal
+   */
+  public LiteralEncoder raw(final CharSequence value) {
+    separate();
+    buffer.append(value);
+    return this;
+  }
+
+  /**
+   * @return e.g 'it\'s' for it's
+   */
+  public LiteralEncoder string(final CharSequence value) {
+    separate();
+    buffer.append('\'');
+    final int length = value.length();
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      if (c == '\'' || c == '\\') {
+        buffer.append('\\');
+      }
+      buffer.append(c);
+    }
+    buffer.append('\'');
+    return this;
+  }
+
+  public LiteralEncoder integer(final long value) {
+    separate();
+    buffer.append(value);
+    return this;
+  }
+
+  /**
+   * Not NaN or infinite, which CMIS has no literal for
+   */
+  public LiteralEncoder decimal(final double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      throw new IllegalArgumentException("No CMIS literal for " + value);
+    }
+    separate();
+    buffer.append(value);
+    return this;
+  }
+
+  /**
+   * @param unscaled
+   *          - The digits of the value, e.g 314 for 3.14
+   * @param scale
+   *          - The number of those digits after the decimal point, 0 to 18
+   */
+  public LiteralEncoder decimal(final long unscaled, final int scale) {
+    if (scale < 0 || scale >= POWERS_OF_TEN.length) {
+      throw new IllegalArgumentException("Scale must be 0 to " + (POWERS_OF_TEN.length - 1));
+    }
+    separate();
+    if (scale == 0) {
+      buffer.append(unscaled);
+      return this;
+    }
+    final long power = POWERS_OF_TEN[scale];
+    // Remainders are negative for negative values, the sign is written once
+    final long whole = unscaled / power;
+    final long fraction = Math.abs(unscaled % power);
+    if (unscaled < 0) {
+      buffer.append('-');
+      appendDigits(-whole, 1);
+    } else {
+      appendDigits(whole, 1);
+    }
+    buffer.append('.');
+    appendDigits(fraction, scale);
+    return this;
+  }
+
+  public LiteralEncoder bool(final boolean value) {
+    separate();
+    buffer.append(value ? "TRUE" : "FALSE");
+    return this;
+  }
+
+  /**
+   * @return e.g TIMESTAMP '2012-03-04T05:06:07.089Z'
+   */
+  public LiteralEncoder timestamp(final long epochMillis) {
+    separate();
+    buffer.append("TIMESTAMP ");
+    quotedDateTime(epochMillis);
+    return this;
+  }
+
+  /**
+   * The calendar is read, not copied
+   */
+  public LiteralEncoder timestamp(final Calendar calendar) {
+    return timestamp(calendar.getTimeInMillis());
+  }
+
+  /**
+   * Append a value by its Java type: a string or character, an integer, a decimal, a boolean, or a {@link Calendar} or {@link Date} as a
+   * timestamp. The BigInteger and BigDecimal values OpenCMIS returns for integer and decimal properties are written exactly.
+   */
+  public LiteralEncoder literal(final Object value) {
+    if (value instanceof CharSequence || value instanceof Character) {
+      return string(value.toString());
+    }
+    if (value instanceof Long || value instanceof Integer || value instanceof Short
+      || value instanceof Byte) {
+      return integer(((Number)value).longValue());
+    }
+    if (value instanceof BigInteger) {
+      return raw(value.toString());
+    }
+    if (value instanceof BigDecimal) {
+      return raw(((BigDecimal)value).toPlainString());
+    }
+    if (value instanceof Number) {
+      return decimal(((Number)value).doubleValue());
+    }
+    if (value instanceof Boolean) {
+      return bool((Boolean)value);
+    }
+    if (value instanceof Calendar) {
+      return timestamp((Calendar)value);
+    }
+    if (value instanceof Date) {
+      return timestamp(((Date)value).getTime());
+    }
+    throw new IllegalArgumentException("No CMIS literal for " + value);
+  }
+
+  /**
+   * The quoted date time without the TIMESTAMP keyword, as used by the existing query templates
+   *
+   * @return e.g '2012-03-04T05:06:07.089Z'
+   */
+  public LiteralEncoder dateTime(final long epochMillis) {
+    separate();
+    quotedDateTime(epochMillis);
+    return this;
+  }
+
+  public int length() {
+    return buffer.length();
+  }
+
+  public char charAt(final int index) {
+    return buffer.charAt(index);
+  }
+
+  public CharSequence subSequence(final int start, final int end) {
+    return buffer.subSequence(start, end);
+  }
+
+  /**
+   * Copy the buffer to a writer through a reusable array, without creating a String
+   */
+  public void writeTo(final Writer out) throws IOException {
+    if (scratch == null) {
+      scratch = new char[8192];
+    }
+    final int length = buffer.length();
+    for (int start = 0; start < length; start += scratch.length) {
+      final int end = Math.min(length, start + scratch.length);
+      buffer.getChars(start, end, scratch, 0);
+      out.write(scratch, 0, end - start);
+    }
+  }
+
+  /**
+   * @return The query text written so far
+   */
+  @Override
+  public String toString() {
+    return buffer.toString();
+  }
+
+  private void separate() {
+    if (inList) {
+      if (firstInList) {
+        firstInList = false;
+      } else {
+        buffer.append(',');
+      }
+    }
+  }
+
+  private void quotedDateTime(final long epochMillis) {
+    // Civil date from days since the epoch, see http://howardhinnant.github.io/date_algorithms.html
+    final long days = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+    final int millisOfDay = (int)Math.floorMod(epochMillis, MILLIS_PER_DAY);
+    final long z = days + 719468;
+    final long era = Math.floorDiv(z, 146097);
+    final long dayOfEra = z - era * 146097;
+    final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    final long shiftedMonth = (5 * dayOfYear + 2) / 153;
+    final int day = (int)(dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+    final int month = (int)(shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+    final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+    buffer.append('\'');
+    if (year < 0) {
+      buffer.append('-');
+    }
+    appendDigits(Math.abs(year), 4);
+    buffer.append('-');
+    appendDigits(month, 2);
+    buffer.append('-');
+    appendDigits(day, 2);
+    buffer.append('T');
+    appendDigits(millisOfDay / 3600000, 2);
+    buffer.append(':');
+    appendDigits(millisOfDay / 60000 % 60, 2);
+    buffer.append(':');
+    appendDigits(millisOfDay / 1000 % 60, 2);
+    buffer.append('.');
+    appendDigits(millisOfDay % 1000, 3);
+    buffer.append("Z'");
+  }
+
+  /**
+   * Append a non-negative value zero padded to at least width digits
+   */
+  private void appendDigits(final long value, final int width) {
+    for (int digits = width - 1; digits > 0 && value < POWERS_OF_TEN[digits]; digits--) {
+      buffer.append('0');
+    }
+    buffer.append(value);
+  }
+}
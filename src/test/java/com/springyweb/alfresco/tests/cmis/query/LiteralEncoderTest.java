@@ -0,0 +1,119 @@
+package com.springyweb.alfresco.tests.cmis.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class LiteralEncoderTest {
+
+  private static final int LITERALS = 10000;
+
+  @Test
+  public void stringsAreQuotedAndEscaped() {
+    assertEquals("'it\\'s a \\\\ b'", new LiteralEncoder().string("it's a \\ b").toString());
+  }
+
+  @Test
+  public void numbersAndBooleans() {
+    final LiteralEncoder encoder = new LiteralEncoder();
+    encoder.integer(-42).append(' ').decimal(2.5).append(' ').bool(true).append(' ').bool(false);
+    assertEquals("-42 2.5 TRUE FALSE", encoder.toString());
+
+    assertEquals("3.14", encoder.reset().decimal(314, 2).toString());
+    assertEquals("-0.05", encoder.reset().decimal(-5, 2).toString());
+    assertEquals("7", encoder.reset().decimal(7, 0).toString());
+    assertEquals("10.000", encoder.reset().decimal(10000, 3).toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nanHasNoLiteral() {
+    new LiteralEncoder().decimal(Double.NaN);
+  }
+
+  @Test
+  public void timestampsMatchAFormatter() {
+    final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    format.setCalendar(new GregorianCalendar(TimeZone.getTimeZone("UTC")));
+    ((GregorianCalendar)format.getCalendar()).setGregorianChange(new Date(Long.MIN_VALUE));
+
+    final LiteralEncoder encoder = new LiteralEncoder();
+    final Random random = new Random(1);
+    final long[] millis = new long[1000];
+    millis[0] = 0;
+    millis[1] = -1;
+    millis[2] = 951782400000L; // 2000-02-29
+    for (int i = 3; i < millis.length; i++) {
+      // Years 1 to 9999
+      millis[i] = -62135596800000L + (long)(random.nextDouble() * 315537897599999L);
+    }
+    for (final long value: millis) {
+      assertEquals("TIMESTAMP '" + format.format(new Date(value)) + "'", encoder.reset()
+        .timestamp(value).toString());
+    }
+    assertEquals("'1970-01-01T00:00:00.000Z'", encoder.reset().dateTime(0).toString());
+  }
+
+  @Test
+  public void listsAreCommaSeparated() {
+    final LiteralEncoder encoder = new LiteralEncoder();
+    encoder.append("x IN ").beginList().string("a").string("b").endList().append(" AND y IN ")
+      .beginList().integer(1).endList();
+    assertEquals("x IN ('a','b') AND y IN (1)", encoder.toString());
+  }
+
+  @Test
+  public void literalsByType() {
+    final LiteralEncoder encoder = new LiteralEncoder().beginList();
+    encoder.literal("a").literal(3).literal(new BigInteger("12345678901234567890")).literal(
+      new BigDecimal("0.10")).literal(Boolean.TRUE).literal(new Date(0)).endList();
+    assertEquals("('a',3,12345678901234567890,0.10,TRUE,TIMESTAMP '1970-01-01T00:00:00.000Z')",
+      encoder.toString());
+  }
+
+  @Test
+  public void writesToAWriter() throws IOException {
+    final LiteralEncoder encoder = new LiteralEncoder().beginList();
+    for (int i = 0; i < LITERALS; i++) {
+      encoder.integer(i);
+    }
+    encoder.endList();
+    final StringWriter out = new StringWriter();
+    encoder.writeTo(out);
+    assertEquals(encoder.toString(), out.toString());
+  }
+
+  @Test
+  public void encodingDoesNotAllocateOnceTheBufferHasGrown() {
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory
+      .getThreadMXBean();
+    final long thread = Thread.currentThread().threadId();
+    final LiteralEncoder encoder = new LiteralEncoder();
+    encodeLargeList(encoder);
+
+    final long before = threads.getThreadAllocatedBytes(thread);
+    encodeLargeList(encoder);
+    final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+    assertTrue(allocated + " bytes allocated", allocated < 1024);
+  }
+
+  private static void encodeLargeList(final LiteralEncoder encoder) {
+    encoder.reset().append("SELECT * FROM cmis:document WHERE x IN ").beginList();
+    for (int i = 0; i < LITERALS; i++) {
+      encoder.timestamp(1330837567089L + i).integer(i).decimal(i, 2).string("value");
+    }
+    encoder.endList();
+  }
+}
@@ -0,0 +1,186 @@
+package com.springyweb.alfresco.tests.cmis.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+
+import com.springyweb.alfresco.tests.cmis.Predicate;
+
+/**
+ * A query for the ids of the objects of one type, in a folder or tree, that match a single {@link Predicate}, optionally on a property of an
+ * aspect joined to the type, e.g
+ *
+ * <pre>
+ * new PredicateQuery(&quot;swct:document&quot;, folderId, false, null, &quot;swct:propSingleInt&quot;, Predicate.IN, 1, 2, 3)
+ * </pre>
+ *
+ * is <code>SELECT cmis:objectId FROM swct:document WHERE IN_FOLDER('...') AND swct:propSingleInt IN (1,2,3)</code>. {@link QueryForms}
+ * writes it the other ways CMIS allows.
+ *
+ * Values are written with {@link LiteralEncoder#literal(Object)}. For CONTAINS the single value is the full text expression, and for ANY the
+ * values are matched against the multi-valued property with a quantified IN.
+ */
+public class PredicateQuery {
+
+  static final String IN_FOLDER = "IN_FOLDER";
+  static final String IN_TREE = "IN_TREE";
+  static final String TYPE_ALIAS = "d";
+  static final String ASPECT_ALIAS = "t";
+
+  private final String type;
+  private final String folderId;
+  private final boolean tree;
+  private final String aspect;
+  private final String propertyName;
+  private final Predicate predicate;
+  private final List<Object> values;
+
+  /**
+   * @param type
+   *          - e.g swct:document
+   * @param tree
+   *          - true for IN_TREE, false for IN_FOLDER
+   * @param aspect
+   *          - e.g cm:titled, whose property is queried through a join, or null for a property of the type
+   * @param values
+   *          - None for IS NULL and IS NOT NULL, one for comparisons, LIKE, CONTAINS and QUANTIFIED_COMPARISION, any number for IN and ANY
+   */
+  public PredicateQuery(final String type, final String folderId, final boolean tree,
+    final String aspect, final String propertyName, final Predicate predicate,
+    final Object... values) {
+    this.type = type;
+    this.folderId = folderId;
+    this.tree = tree;
+    this.aspect = aspect;
+    this.propertyName = propertyName;
+    this.predicate = predicate;
+    this.values = Collections.unmodifiableList(new ArrayList<Object>(Arrays.asList(values)));
+    final boolean list = predicate == Predicate.IN || predicate == Predicate.ANY;
+    final int expected = predicate == Predicate.IS_NULL || predicate == Predicate.IS_NOT_NULL ? 0
+      : 1;
+    if (list ? values.length == 0 : values.length != expected) {
+      throw new IllegalArgumentException(predicate + " does not take " + values.length + " values");
+    }
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getFolderId() {
+    return folderId;
+  }
+
+  public boolean isTree() {
+    return tree;
+  }
+
+  public String getAspect() {
+    return aspect;
+  }
+
+  public String getPropertyName() {
+    return propertyName;
+  }
+
+  public Predicate getPredicate() {
+    return predicate;
+  }
+
+  public List<Object> getValues() {
+    return values;
+  }
+
+  /**
+   * @return The query as written
+   */
+  public String toQuery() {
+    final boolean join = aspect != null;
+    return select(join, false) + scope(tree ? IN_TREE : IN_FOLDER, folderId, join) + " AND "
+      + condition(predicate, values, join);
+  }
+
+  @Override
+  public String toString() {
+    return toQuery();
+  }
+
+  /**
+   * @param join
+   *          - Join the aspect to the type
+   * @param aspectOnly
+   *          - Select from the aspect alone rather than the type
+   * @return e.g SELECT cmis:objectId FROM swct:document WHERE
+   */
+  String select(final boolean join, final boolean aspectOnly) {
+    final StringBuilder sb = new StringBuilder("SELECT ");
+    if (join) {
+      sb.append(TYPE_ALIAS).append('.').append(PropertyIds.OBJECT_ID).append(" FROM ").append(type)
+        .append(" AS ").append(TYPE_ALIAS).append(" JOIN ").append(aspect).append(" AS ").append(
+          ASPECT_ALIAS).append(" ON ").append(TYPE_ALIAS).append('.').append(PropertyIds.OBJECT_ID)
+        .append(" = ").append(ASPECT_ALIAS).append('.').append(PropertyIds.OBJECT_ID);
+    } else {
+      sb.append(PropertyIds.OBJECT_ID).append(" FROM ").append(aspectOnly ? aspect : type);
+    }
+    return sb.append(" WHERE ").toString();
+  }
+
+  /**
+   * @param function
+   *          - IN_FOLDER or IN_TREE
+   * @return e.g IN_FOLDER(d, 'workspace://SpacesStore/...')
+   */
+  static String scope(final String function, final String id, final boolean join) {
+    final LiteralEncoder encoder = new LiteralEncoder().append(function).append('(');
+    if (join) {
+      encoder.append(TYPE_ALIAS).append(", ");
+    }
+    return encoder.string(id).append(')').toString();
+  }
+
+  /**
+   * @return The property, qualified by the aspect's alias when it is joined
+   */
+  String property(final boolean join) {
+    return join ? ASPECT_ALIAS + "." + propertyName : propertyName;
+  }
+
+  /**
+   * @return e.g swct:propSingleInt IN (1,2,3)
+   */
+  String condition(final Predicate p, final List<Object> conditionValues, final boolean join) {
+    final String property = property(join);
+    final LiteralEncoder encoder = new LiteralEncoder();
+    switch (p) {
+      case IS_NULL:
+      case IS_NOT_NULL:
+        return encoder.append(property).append(' ').append(p.getSymbol()).toString();
+      case CONTAINS:
+        return encoder.append(p.getSymbol()).append('(').string(
+          conditionValues.get(0).toString()).append(')').toString();
+      case IN:
+        encoder.append(property).append(" IN ");
+        return list(encoder, conditionValues).toString();
+      case ANY:
+        encoder.append("ANY ").append(property).append(" IN ");
+        return list(encoder, conditionValues).toString();
+      case QUANTIFIED_COMPARISION:
+        return encoder.literal(conditionValues.get(0)).append(' ').append(p.getSymbol()).append(' ')
+          .append(property).toString();
+      default:
+        return encoder.append(property).append(' ').append(p.getSymbol()).append(' ').literal(
+          conditionValues.get(0)).toString();
+    }
+  }
+
+  private static LiteralEncoder list(final LiteralEncoder encoder, final List<Object> listValues) {
+    encoder.beginList();
+    for (final Object value: listValues) {
+      encoder.literal(value);
+    }
+    return encoder.endList();
+  }
+}
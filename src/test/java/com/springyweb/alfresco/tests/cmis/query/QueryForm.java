@@ -0,0 +1,29 @@
+package com.springyweb.alfresco.tests.cmis.query;
+
+/**
+ * One way of writing a {@link PredicateQuery}, named after the rewrite that produced it, e.g or-equals for an IN list written as an OR of
+ * comparisons.
+ */
+public class QueryForm {
+
+  private final String name;
+  private final String query;
+
+  public QueryForm(final String name, final String query) {
+    this.name = name;
+    this.query = query;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  @Override
+  public String toString() {
+    return name + ": " + query;
+  }
+}
@@ -0,0 +1,160 @@
+package com.springyweb.alfresco.tests.cmis.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.springyweb.alfresco.tests.cmis.Predicate;
+
+/**
+ * Writes a {@link PredicateQuery} each of the ways that should select the same objects, changing one thing at a time:
+ * <ul>
+ * <li>{@value #OR_EQUALS} / {@value #IN_LIST} - IN (a, b) as (p = a OR p = b), and a single = as IN (a)</li>
+ * <li>{@value #OR_ANY} / {@value #ANY_IN} - ANY p IN (a, b) as (a = ANY p OR b = ANY p), and a single = ANY as ANY p IN (a)</li>
+ * <li>{@value #RANGE} - LIKE 'ab%' as p &gt;= 'ab' AND p &lt; 'ac'</li>
+ * <li>{@value #CONTAINS_PREFIX} - LIKE 'ab%' as CONTAINS('p:ab*'), a full text search of the property</li>
+ * <li>{@value #ASPECT_ONLY} - a join of the type to an aspect as a query of the aspect alone</li>
+ * <li>{@value #IN_FOLDER_CHAIN} - IN_TREE as an OR of IN_FOLDER over every folder in the tree</li>
+ * <li>{@value #IN_TREE} - IN_FOLDER as IN_TREE</li>
+ * </ul>
+ * Some of these are only equivalent on some content: full text search tokenises and ignores case, an aspect may be applied to other types and
+ * IN_TREE also finds objects in subfolders. Each form's results must be compared with those of {@value #AS_WRITTEN} before it is used.
+ */
+public final class QueryForms {
+
+  public static final String AS_WRITTEN = "as-written";
+  public static final String OR_EQUALS = "or-equals";
+  public static final String IN_LIST = "in-list";
+  public static final String OR_ANY = "or-any";
+  public static final String ANY_IN = "any-in";
+  public static final String RANGE = "range";
+  public static final String CONTAINS_PREFIX = "contains-prefix";
+  public static final String ASPECT_ONLY = "aspect-only";
+  public static final String IN_FOLDER_CHAIN = "in-folder-chain";
+  public static final String IN_TREE = "in-tree";
+
+  private QueryForms() {
+  }
+
+  /**
+   * @param subfolderIds
+   *          - Every folder beneath the query's folder, at any depth, for {@value #IN_FOLDER_CHAIN}. Null if not known.
+   * @return {@value #AS_WRITTEN} followed by the other forms that apply
+   */
+  public static List<QueryForm> of(final PredicateQuery query, final List<String> subfolderIds) {
+    final List<QueryForm> forms = new ArrayList<QueryForm>();
+    forms.add(new QueryForm(AS_WRITTEN, query.toQuery()));
+
+    final boolean join = query.getAspect() != null;
+    final String select = query.select(join, false);
+    final String scope = PredicateQuery.scope(query.isTree() ? PredicateQuery.IN_TREE
+      : PredicateQuery.IN_FOLDER, query.getFolderId(), join);
+    final String condition = query.condition(query.getPredicate(), query.getValues(), join);
+    final String property = query.property(join);
+    final List<Object> values = query.getValues();
+
+    switch (query.getPredicate()) {
+      case IN:
+        forms.add(new QueryForm(OR_EQUALS, select + scope + " AND "
+          + or(query, Predicate.EQUALS, join)));
+        break;
+      case EQUALS:
+        forms.add(new QueryForm(IN_LIST, select + scope + " AND "
+          + query.condition(Predicate.IN, values, join)));
+        break;
+      case ANY:
+        forms.add(new QueryForm(OR_ANY, select + scope + " AND "
+          + or(query, Predicate.QUANTIFIED_COMPARISION, join)));
+        break;
+      case QUANTIFIED_COMPARISION:
+        forms.add(new QueryForm(ANY_IN, select + scope + " AND "
+          + query.condition(Predicate.ANY, values, join)));
+        break;
+      case LIKE:
+        final String prefix = prefixOf(values.get(0));
+        if (prefix == null || prefix.length() == 0) {
+          break;
+        }
+        final String successor = successor(prefix);
+        if (successor != null) {
+          forms.add(new QueryForm(RANGE, select + scope + " AND "
+            + new LiteralEncoder().append(property).append(" >= ").string(prefix).append(" AND ")
+              .append(property).append(" < ").string(successor)));
+        }
+        if (!join) {
+          // Full text query syntax, where the property is a field and * the wildcard
+          final Object fullText = query.getPropertyName() + ":" + prefix + "*";
+          forms.add(new QueryForm(CONTAINS_PREFIX, select + scope + " AND "
+            + query.condition(Predicate.CONTAINS, Collections.singletonList(fullText), join)));
+        }
+        break;
+      default:
+        break;
+    }
+
+    if (join) {
+      forms.add(new QueryForm(ASPECT_ONLY, query.select(false, true)
+        + PredicateQuery.scope(query.isTree() ? PredicateQuery.IN_TREE : PredicateQuery.IN_FOLDER,
+          query.getFolderId(), false) + " AND "
+        + query.condition(query.getPredicate(), values, false)));
+    }
+
+    if (query.isTree()) {
+      if (subfolderIds != null) {
+        final StringBuilder chain = new StringBuilder("(").append(PredicateQuery.scope(
+          PredicateQuery.IN_FOLDER, query.getFolderId(), join));
+        for (final String id: subfolderIds) {
+          chain.append(" OR ").append(PredicateQuery.scope(PredicateQuery.IN_FOLDER, id, join));
+        }
+        forms.add(new QueryForm(IN_FOLDER_CHAIN, select + chain.append(')') + " AND "
+          + condition));
+      }
+    } else {
+      forms.add(new QueryForm(IN_TREE, select
+        + PredicateQuery.scope(PredicateQuery.IN_TREE, query.getFolderId(), join) + " AND "
+        + condition));
+    }
+    return forms;
+  }
+
+  /**
+   * @return (p = a OR p = b) for each of the query's values
+   */
+  private static String or(final PredicateQuery query, final Predicate predicate,
+    final boolean join) {
+    final StringBuilder sb = new StringBuilder("(");
+    for (final Object value: query.getValues()) {
+      if (sb.length() > 1) {
+        sb.append(" OR ");
+      }
+      sb.append(query.condition(predicate, Collections.singletonList(value), join));
+    }
+    return sb.append(')').toString();
+  }
+
+  /**
+   * @return ab for 'ab%', or null if the pattern has any other wildcard or escape
+   */
+  static String prefixOf(final Object pattern) {
+    final String s = pattern.toString();
+    if (!s.endsWith("%")) {
+      return null;
+    }
+    final String prefix = s.substring(0, s.length() - 1);
+    if (prefix.indexOf('%') >= 0 || prefix.indexOf('_') >= 0 || prefix.indexOf('\\') >= 0) {
+      return null;
+    }
+    return prefix;
+  }
+
+  /**
+   * @return The smallest string greater than every string starting with prefix, e.g ac for ab, or null if there is none of the same length
+   */
+  static String successor(final String prefix) {
+    final char last = prefix.charAt(prefix.length() - 1);
+    if (last == Character.MAX_VALUE) {
+      return null;
+    }
+    return prefix.substring(0, prefix.length() - 1) + (char)(last + 1);
+  }
+}
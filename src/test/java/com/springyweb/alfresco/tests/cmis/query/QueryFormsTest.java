@@ -0,0 +1,129 @@
+package com.springyweb.alfresco.tests.cmis.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.Predicate;
+
+public class QueryFormsTest {
+
+  private static final String TYPE = "swct:document";
+  private static final String SELECT = "SELECT cmis:objectId FROM swct:document WHERE ";
+  private static final String JOIN = "SELECT d.cmis:objectId FROM swct:document AS d JOIN cm:titled AS t ON d.cmis:objectId = t.cmis:objectId WHERE ";
+
+  @Test
+  public void inListAsOrChain() {
+    final Map<String, String> forms = forms(new PredicateQuery(TYPE, "f1", false, null,
+      "swct:propSingleInt", Predicate.IN, 1, 2), null);
+    assertEquals(Arrays.asList(QueryForms.AS_WRITTEN, QueryForms.OR_EQUALS, QueryForms.IN_TREE),
+      Arrays.asList(forms.keySet().toArray()));
+    assertEquals(SELECT + "IN_FOLDER('f1') AND swct:propSingleInt IN (1,2)", forms
+      .get(QueryForms.AS_WRITTEN));
+    assertEquals(SELECT
+      + "IN_FOLDER('f1') AND (swct:propSingleInt = 1 OR swct:propSingleInt = 2)", forms
+      .get(QueryForms.OR_EQUALS));
+    assertEquals(SELECT + "IN_TREE('f1') AND swct:propSingleInt IN (1,2)", forms
+      .get(QueryForms.IN_TREE));
+  }
+
+  @Test
+  public void equalsAsInList() {
+    final Map<String, String> forms = forms(new PredicateQuery(TYPE, "f1", false, null,
+      "swct:propSingleString", Predicate.EQUALS, "it's"), null);
+    assertEquals(SELECT + "IN_FOLDER('f1') AND swct:propSingleString IN ('it\\'s')", forms
+      .get(QueryForms.IN_LIST));
+  }
+
+  @Test
+  public void quantifiedForms() {
+    Map<String, String> forms = forms(new PredicateQuery(TYPE, "f1", false, null,
+      "swct:propMultipleInt", Predicate.ANY, 1, 2), null);
+    assertEquals(SELECT + "IN_FOLDER('f1') AND ANY swct:propMultipleInt IN (1,2)", forms
+      .get(QueryForms.AS_WRITTEN));
+    assertEquals(SELECT
+      + "IN_FOLDER('f1') AND (1 = ANY swct:propMultipleInt OR 2 = ANY swct:propMultipleInt)",
+      forms.get(QueryForms.OR_ANY));
+
+    forms = forms(new PredicateQuery(TYPE, "f1", false, null, "swct:propMultipleInt",
+      Predicate.QUANTIFIED_COMPARISION, 3), null);
+    assertEquals(SELECT + "IN_FOLDER('f1') AND 3 = ANY swct:propMultipleInt", forms
+      .get(QueryForms.AS_WRITTEN));
+    assertEquals(SELECT + "IN_FOLDER('f1') AND ANY swct:propMultipleInt IN (3)", forms
+      .get(QueryForms.ANY_IN));
+  }
+
+  @Test
+  public void likePrefixAsRangeAndContains() {
+    final Map<String, String> forms = forms(new PredicateQuery(TYPE, "f1", false, null,
+      "swct:propSingleString", Predicate.LIKE, "ab%"), null);
+    assertEquals(SELECT + "IN_FOLDER('f1') AND swct:propSingleString LIKE 'ab%'", forms
+      .get(QueryForms.AS_WRITTEN));
+    assertEquals(SELECT
+      + "IN_FOLDER('f1') AND swct:propSingleString >= 'ab' AND swct:propSingleString < 'ac'",
+      forms.get(QueryForms.RANGE));
+    assertEquals(SELECT + "IN_FOLDER('f1') AND CONTAINS('swct:propSingleString:ab*')", forms
+      .get(QueryForms.CONTAINS_PREFIX));
+  }
+
+  @Test
+  public void likeWithInnerWildcardHasNoRewrite() {
+    final Map<String, String> forms = forms(new PredicateQuery(TYPE, "f1", false, null,
+      "swct:propSingleString", Predicate.LIKE, "a_b%"), null);
+    assertEquals(Arrays.asList(QueryForms.AS_WRITTEN, QueryForms.IN_TREE), Arrays.asList(forms
+      .keySet().toArray()));
+  }
+
+  @Test
+  public void joinAsAspectOnly() {
+    final Map<String, String> forms = forms(new PredicateQuery(TYPE, "f1", false, "cm:titled",
+      "cm:description", Predicate.EQUALS, "x"), null);
+    assertEquals(JOIN + "IN_FOLDER(d, 'f1') AND t.cm:description = 'x'", forms
+      .get(QueryForms.AS_WRITTEN));
+    assertEquals("SELECT cmis:objectId FROM cm:titled WHERE IN_FOLDER('f1') AND cm:description = 'x'",
+      forms.get(QueryForms.ASPECT_ONLY));
+    assertEquals(JOIN + "IN_TREE(d, 'f1') AND t.cm:description = 'x'", forms
+      .get(QueryForms.IN_TREE));
+  }
+
+  @Test
+  public void treeAsFolderChain() {
+    final PredicateQuery query = new PredicateQuery(TYPE, "f1", true, null, "swct:propSingleInt",
+      Predicate.GREATER_THAN, 5);
+    assertEquals(Arrays.asList(QueryForms.AS_WRITTEN), Arrays.asList(forms(query, null).keySet()
+      .toArray()));
+    assertEquals(SELECT
+      + "(IN_FOLDER('f1') OR IN_FOLDER('f2') OR IN_FOLDER('f3')) AND swct:propSingleInt > 5",
+      forms(query, Arrays.asList("f2", "f3")).get(QueryForms.IN_FOLDER_CHAIN));
+  }
+
+  @Test
+  public void prefixes() {
+    assertEquals("ab", QueryForms.prefixOf("ab%"));
+    assertNull(QueryForms.prefixOf("ab"));
+    assertNull(QueryForms.prefixOf("a%b%"));
+    assertNull(QueryForms.prefixOf("a\\%%"));
+    assertEquals("ac", QueryForms.successor("ab"));
+    assertNull(QueryForms.successor("a" + Character.MAX_VALUE));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void inNeedsValues() {
+    new PredicateQuery(TYPE, "f1", false, null, "swct:propSingleInt", Predicate.IN);
+  }
+
+  private static Map<String, String> forms(final PredicateQuery query,
+    final List<String> subfolderIds) {
+    final Map<String, String> forms = new LinkedHashMap<String, String>();
+    for (final QueryForm form: QueryForms.of(query, subfolderIds)) {
+      forms.put(form.getName(), form.getQuery());
+    }
+    return forms;
+  }
+}
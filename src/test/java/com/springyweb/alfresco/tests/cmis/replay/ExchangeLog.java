@@ -0,0 +1,68 @@
+package com.springyweb.alfresco.tests.cmis.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A gzipped, append-only file of {@link RecordedExchange}s in the order they happened.
+ *
+ * URLs pointing back at the server are stored as {@link #BASE_URL_PLACEHOLDER} so the log can be replayed from any address.
+ */
+public class ExchangeLog {
+
+  public static final String BASE_URL_PLACEHOLDER = "${cmis.base}";
+
+  private static final int MAGIC = 0x434d4c31; // CML1
+
+  private final DataOutputStream out;
+
+  private ExchangeLog(final DataOutputStream out) {
+    this.out = out;
+  }
+
+  public static ExchangeLog create(final File file) throws IOException {
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+      new GZIPOutputStream(new FileOutputStream(file))));
+    out.writeInt(MAGIC);
+    return new ExchangeLog(out);
+  }
+
+  public synchronized void append(final RecordedExchange exchange) throws IOException {
+    exchange.writeTo(out);
+  }
+
+  public synchronized void close() throws IOException {
+    out.close();
+  }
+
+  public static List<RecordedExchange> read(final File file) throws IOException {
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+      new FileInputStream(file))));
+    try {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(file + " is not a CMIS exchange log");
+      }
+      final List<RecordedExchange> exchanges = new ArrayList<RecordedExchange>();
+      while (true) {
+        try {
+          exchanges.add(RecordedExchange.readFrom(in));
+        } catch (final EOFException end) {
+          return exchanges;
+        }
+      }
+    } finally {
+      in.close();
+    }
+  }
+}
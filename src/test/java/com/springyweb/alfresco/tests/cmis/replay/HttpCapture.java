@@ -0,0 +1,73 @@
+package com.springyweb.alfresco.tests.cmis.replay;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Chooses between talking to the repository directly, recording through a {@link RecordingProxy} (-Dcmis.record=file) or replaying a recording
+ * with a {@link ReplayServer} (-Dcmis.replay=file, optionally -Dcmis.replay.latencyScale=0.5).
+ */
+public class HttpCapture {
+
+  private final String endpoint;
+  private final RecordingProxy proxy;
+  private final ReplayServer replayServer;
+
+  private HttpCapture(final String endpoint, final RecordingProxy proxy,
+    final ReplayServer replayServer) {
+    this.endpoint = endpoint;
+    this.proxy = proxy;
+    this.replayServer = replayServer;
+  }
+
+  /**
+   * @param repositoryEndpoint
+   *          - The AtomPub URL of the repository (or, when replaying, of the repository the recording was made against)
+   * @return The capture to use for this run
+   */
+  public static HttpCapture start(final String repositoryEndpoint) throws IOException {
+    final String recordTo = System.getProperty("cmis.record");
+    final String replayFrom = System.getProperty("cmis.replay");
+    if (recordTo != null && replayFrom != null) {
+      throw new IllegalStateException("cmis.record and cmis.replay can not be used together");
+    }
+    if (recordTo != null) {
+      final RecordingProxy proxy = new RecordingProxy(repositoryEndpoint, new File(recordTo));
+      return new HttpCapture(proxy.proxiedEndpoint(repositoryEndpoint), proxy, null);
+    }
+    if (replayFrom != null) {
+      final double latencyScale = Double.parseDouble(System.getProperty(
+        "cmis.replay.latencyScale", "1"));
+      final ReplayServer replayServer = new ReplayServer(new File(replayFrom), latencyScale);
+      return new HttpCapture(replayServer.replayEndpoint(repositoryEndpoint), null, replayServer);
+    }
+    return new HttpCapture(repositoryEndpoint, null, null);
+  }
+
+  /**
+   * @return Whether the run is being recorded or replayed rather than talking to the repository directly
+   */
+  public boolean isActive() {
+    return proxy != null || replayServer != null;
+  }
+
+  /**
+   * @return The AtomPub URL sessions should be created with
+   */
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  public void close() throws IOException {
+    if (proxy != null) {
+      proxy.close();
+      System.out.println("Recorded " + proxy.getRecordedCount() + " exchanges");
+    }
+    if (replayServer != null) {
+      replayServer.close();
+      System.out.println("Replayed " + replayServer.getServedCount() + " exchanges ("
+        + replayServer.getFallbackCount() + " matched by URI only, "
+        + replayServer.getMissCount() + " not recorded)");
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package com.springyweb.alfresco.tests.cmis.replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Helpers shared by the recording proxy and the replay server
+ */
+final class HttpSupport {
+
+  private static final String UTF_8 = "UTF-8";
+
+  private HttpSupport() {
+  }
+
+  /**
+   * Start a server on a free loopback port
+   */
+  static HttpServer start(final HttpHandler handler, final ExecutorService executor)
+    throws IOException {
+    final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", handler);
+    server.setExecutor(executor);
+    server.start();
+    return server;
+  }
+
+  static ExecutorService newExecutor() {
+    return Executors.newCachedThreadPool();
+  }
+
+  static String baseUrl(final HttpServer server) {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  /**
+   * @param url
+   *          e.g http://localhost:8080/alfresco/s/api/cmis
+   * @return http://localhost:8080
+   */
+  static String baseUrl(final String url) {
+    final URI parsed = URI.create(url);
+    return parsed.getScheme() + "://" + parsed.getRawAuthority();
+  }
+
+  static byte[] readFully(final InputStream in) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    if (in != null) {
+      try {
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+      } finally {
+        in.close();
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Hop-by-hop and framing headers are recomputed for each response so are never copied
+   */
+  static boolean isCopiedHeader(final String name) {
+    return name != null && !name.equalsIgnoreCase("Transfer-Encoding")
+      && !name.equalsIgnoreCase("Content-Length") && !name.equalsIgnoreCase("Connection")
+      && !name.equalsIgnoreCase("Keep-Alive") && !name.equalsIgnoreCase("Date");
+  }
+
+  /**
+   * AtomPub entries, feeds and service documents carry absolute links so are rewritten. Content streams are left alone.
+   */
+  static boolean isRewritable(final List<String[]> headers) {
+    for (final String[] header: headers) {
+      if (header[0].equalsIgnoreCase("Content-Type")) {
+        final String type = header[1].toLowerCase();
+        return type.contains("xml") || type.contains("json");
+      }
+    }
+    return false;
+  }
+
+  static byte[] replace(final byte[] body, final String from, final String to) {
+    try {
+      final String text = new String(body, UTF_8);
+      return text.indexOf(from) < 0 ? body : text.replace(from, to).getBytes(UTF_8);
+    } catch (final UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static void respond(final HttpExchange exchange, final int status,
+    final List<String[]> headers, final byte[] body) throws IOException {
+    for (final String[] header: headers) {
+      exchange.getResponseHeaders().add(header[0], header[1]);
+    }
+    final boolean noBody = body.length == 0 || status == 204 || status == 304
+      || exchange.getRequestMethod().equals("HEAD");
+    exchange.sendResponseHeaders(status, noBody ? -1 : body.length);
+    if (!noBody) {
+      final OutputStream out = exchange.getResponseBody();
+      out.write(body);
+      out.close();
+    }
+    exchange.close();
+  }
+}
@@ -0,0 +1,135 @@
+package com.springyweb.alfresco.tests.cmis.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Records traffic to a stand-in repository (a loopback server that answers with atom entries linking back to itself) and replays it.
+ */
+public class RecordReplayTest {
+
+  private ExecutorService executor;
+  private HttpServer repository;
+  private String repositoryBase;
+  private File logFile;
+  private int queryCount;
+
+  @Before
+  public void setup() throws IOException {
+    executor = HttpSupport.newExecutor();
+    repository = HttpSupport.start(new HttpHandler() {
+      public void handle(final HttpExchange exchange) throws IOException {
+        final String requestBody = new String(HttpSupport.readFully(exchange.getRequestBody()),
+          "UTF-8");
+        final List<String[]> headers = new ArrayList<String[]>();
+        headers.add(new String[] { "Content-Type", "application/atom+xml;type=entry" });
+        final String body = "<entry><link href=\"" + repositoryBase + "/cmis/children\"/>"
+          + "<count>" + (++queryCount) + "</count><echo>" + requestBody + "</echo></entry>";
+        HttpSupport.respond(exchange, 200, headers, body.getBytes("UTF-8"));
+      }
+    }, executor);
+    repositoryBase = HttpSupport.baseUrl(repository);
+    logFile = File.createTempFile("cmis-exchanges", ".log");
+  }
+
+  @After
+  public void tearDown() {
+    repository.stop(0);
+    executor.shutdown();
+    logFile.delete();
+  }
+
+  private String call(final String url, final String method, final String body)
+    throws IOException {
+    final HttpURLConnection connection = (HttpURLConnection)URI.create(url).toURL()
+      .openConnection();
+    connection.setRequestMethod(method);
+    if (body != null) {
+      connection.setDoOutput(true);
+      final OutputStream out = connection.getOutputStream();
+      out.write(body.getBytes("UTF-8"));
+      out.close();
+    }
+    return new String(HttpSupport.readFully(connection.getInputStream()), "UTF-8");
+  }
+
+  @Test
+  public void replaysRecordedResponsesInOrder() throws IOException {
+    final String endpoint = repositoryBase + "/cmis";
+
+    final RecordingProxy proxy = new RecordingProxy(endpoint, logFile);
+    final String proxied = proxy.proxiedEndpoint(endpoint);
+    final String first = call(proxied, "POST", "q1");
+    final String second = call(proxied, "POST", "q1");
+    final String third = call(proxied, "POST", "q2");
+    proxy.close();
+    assertEquals(3, proxy.getRecordedCount());
+
+    // Links are rewritten so the client keeps going through the proxy
+    assertTrue(first.contains(HttpSupport.baseUrl(proxied) + "/cmis/children"));
+    assertFalse(first.contains(repositoryBase));
+
+    repository.stop(0);
+    final ReplayServer replayServer = new ReplayServer(logFile, 0);
+    try {
+      final String replayed = replayServer.replayEndpoint(endpoint);
+      final String replayBase = HttpSupport.baseUrl(replayed);
+
+      // Same body: answered in recorded order regardless of request order
+      assertEquals(third.replace(HttpSupport.baseUrl(proxied), replayBase),
+        call(replayed, "POST", "q2"));
+      assertEquals(first.replace(HttpSupport.baseUrl(proxied), replayBase),
+        call(replayed, "POST", "q1"));
+
+      // Unknown body: falls back to the next unused exchange for the URI
+      assertEquals(second.replace(HttpSupport.baseUrl(proxied), replayBase),
+        call(replayed, "POST", "q3"));
+      assertEquals(1, replayServer.getFallbackCount());
+
+      // Everything used: the last matching exchange is repeated
+      assertTrue(call(replayed, "POST", "q1").contains("<count>2</count>"));
+      assertEquals(4, replayServer.getServedCount());
+      assertEquals(0, replayServer.getMissCount());
+    } finally {
+      replayServer.close();
+    }
+  }
+
+  @Test
+  public void replayHonoursScaledLatency() throws IOException {
+    final List<RecordedExchange> exchanges = new ArrayList<RecordedExchange>();
+    final List<String[]> headers = new ArrayList<String[]>();
+    headers.add(new String[] { "Content-Type", "text/plain" });
+    exchanges.add(new RecordedExchange("GET", "/cmis", RecordedExchange.digest(new byte[0]), 200,
+      headers, "ok".getBytes("UTF-8"), 200000000L));
+
+    final ReplayServer replayServer = new ReplayServer(exchanges, 0.5);
+    try {
+      final long start = System.nanoTime();
+      assertEquals("ok", call(replayServer.replayEndpoint("http://localhost:8080/cmis"), "GET",
+        null));
+      final long elapsedMillis = (System.nanoTime() - start) / 1000000;
+      assertTrue("took " + elapsedMillis + "ms", elapsedMillis >= 100 && elapsedMillis < 500);
+    } finally {
+      replayServer.close();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package com.springyweb.alfresco.tests.cmis.replay;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One HTTP request/response pair as stored in an {@link ExchangeLog}. The request body is kept only as a digest since it is only needed to match
+ * replayed requests.
+ */
+public class RecordedExchange {
+
+  private final String method;
+  private final String uri;
+  private final long requestDigest;
+  private final int status;
+  private final List<String[]> headers;
+  private final byte[] body;
+  private final long latencyNanos;
+
+  /**
+   * @param method
+   *          - e.g POST
+   * @param uri
+   *          - The path and query string of the request
+   * @param requestDigest
+   *          - See {@link #digest(byte[])}
+   * @param status
+   *          - The response status code
+   * @param headers
+   *          - The response headers as name/value pairs
+   * @param body
+   *          - The response body
+   * @param latencyNanos
+   *          - The time the repository took to respond
+   */
+  public RecordedExchange(final String method, final String uri, final long requestDigest,
+    final int status, final List<String[]> headers, final byte[] body, final long latencyNanos) {
+    this.method = method;
+    this.uri = uri;
+    this.requestDigest = requestDigest;
+    this.status = status;
+    this.headers = Collections.unmodifiableList(new ArrayList<String[]>(headers));
+    this.body = body;
+    this.latencyNanos = latencyNanos;
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public String getUri() {
+    return uri;
+  }
+
+  public long getRequestDigest() {
+    return requestDigest;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public List<String[]> getHeaders() {
+    return headers;
+  }
+
+  public byte[] getBody() {
+    return body;
+  }
+
+  public long getLatencyNanos() {
+    return latencyNanos;
+  }
+
+  /**
+   * @return The first 64 bits of the SHA-1 of the request body
+   */
+  public static long digest(final byte[] requestBody) {
+    try {
+      final byte[] sha = MessageDigest.getInstance("SHA-1").digest(requestBody);
+      long digest = 0;
+      for (int i = 0; i < 8; i++) {
+        digest = (digest << 8) | (sha[i] & 0xff);
+      }
+      return digest;
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  void writeTo(final DataOutputStream out) throws IOException {
+    out.writeUTF(method);
+    out.writeUTF(uri);
+    out.writeLong(requestDigest);
+    out.writeShort(status);
+    out.writeShort(headers.size());
+    for (final String[] header: headers) {
+      out.writeUTF(header[0]);
+      out.writeUTF(header[1]);
+    }
+    out.writeLong(latencyNanos);
+    out.writeInt(body.length);
+    out.write(body);
+  }
+
+  static RecordedExchange readFrom(final DataInputStream in) throws IOException {
+    final String method = in.readUTF();
+    final String uri = in.readUTF();
+    final long requestDigest = in.readLong();
+    final int status = in.readShort();
+    final int headerCount = in.readShort();
+    final List<String[]> headers = new ArrayList<String[]>(headerCount);
+    for (int i = 0; i < headerCount; i++) {
+      headers.add(new String[] { in.readUTF(), in.readUTF() });
+    }
+    final long latencyNanos = in.readLong();
+    final byte[] body = new byte[in.readInt()];
+    in.readFully(body);
+    return new RecordedExchange(method, uri, requestDigest, status, headers, body, latencyNanos);
+  }
+}
@@ -0,0 +1,129 @@
+package com.springyweb.alfresco.tests.cmis.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A loopback HTTP proxy that forwards every request to the repository and appends the exchange to an {@link ExchangeLog}.
+ *
+ * Links to the repository in responses are rewritten to point at the proxy so the client keeps talking through it, and are stored in the log as
+ * {@link ExchangeLog#BASE_URL_PLACEHOLDER}.
+ */
+public class RecordingProxy {
+
+  private final String upstreamBase;
+  private final ExchangeLog log;
+  private final ExecutorService executor;
+  private final HttpServer server;
+  private final String proxyBase;
+  private final AtomicLong recorded = new AtomicLong();
+
+  /**
+   * @param upstreamEndpoint
+   *          - The AtomPub URL of the repository e.g http://localhost:8080/alfresco/s/api/cmis
+   * @param logFile
+   *          - Where to write the exchanges. Any existing file is replaced.
+   */
+  public RecordingProxy(final String upstreamEndpoint, final File logFile) throws IOException {
+    this.upstreamBase = HttpSupport.baseUrl(upstreamEndpoint);
+    this.log = ExchangeLog.create(logFile);
+    this.executor = HttpSupport.newExecutor();
+    this.server = HttpSupport.start(new HttpHandler() {
+      public void handle(final HttpExchange exchange) throws IOException {
+        forward(exchange);
+      }
+    }, executor);
+    this.proxyBase = HttpSupport.baseUrl(server);
+  }
+
+  /**
+   * @param upstreamEndpoint
+   *          e.g http://localhost:8080/alfresco/s/api/cmis
+   * @return The same endpoint via the proxy e.g http://127.0.0.1:51234/alfresco/s/api/cmis
+   */
+  public String proxiedEndpoint(final String upstreamEndpoint) {
+    return upstreamEndpoint.replace(upstreamBase, proxyBase);
+  }
+
+  public long getRecordedCount() {
+    return recorded.get();
+  }
+
+  public void close() throws IOException {
+    server.stop(0);
+    executor.shutdown();
+    log.close();
+  }
+
+  private void forward(final HttpExchange exchange) throws IOException {
+    try {
+      final byte[] requestBody = HttpSupport.readFully(exchange.getRequestBody());
+      final String uri = exchange.getRequestURI().toString();
+
+      final long start = System.nanoTime();
+      final HttpURLConnection connection = (HttpURLConnection)URI.create(upstreamBase + uri)
+        .toURL().openConnection();
+      connection.setInstanceFollowRedirects(false);
+      connection.setRequestMethod(exchange.getRequestMethod());
+      for (final Map.Entry<String, List<String>> header: exchange.getRequestHeaders().entrySet()) {
+        // Ask for an uncompressed response so links can be rewritten
+        if (HttpSupport.isCopiedHeader(header.getKey())
+          && !header.getKey().equalsIgnoreCase("Host")
+          && !header.getKey().equalsIgnoreCase("Accept-Encoding")) {
+          for (final String value: header.getValue()) {
+            connection.addRequestProperty(header.getKey(), value);
+          }
+        }
+      }
+      if (requestBody.length > 0) {
+        connection.setDoOutput(true);
+        final OutputStream out = connection.getOutputStream();
+        out.write(requestBody);
+        out.close();
+      }
+      final int status = connection.getResponseCode();
+      byte[] body = HttpSupport.readFully(status >= 400 ? connection.getErrorStream()
+        : connection.getInputStream());
+      final long latency = System.nanoTime() - start;
+
+      final List<String[]> logHeaders = new ArrayList<String[]>();
+      final List<String[]> clientHeaders = new ArrayList<String[]>();
+      for (final Map.Entry<String, List<String>> header: connection.getHeaderFields().entrySet()) {
+        if (HttpSupport.isCopiedHeader(header.getKey())) {
+          for (final String value: header.getValue()) {
+            logHeaders.add(new String[] { header.getKey(),
+              value.replace(upstreamBase, ExchangeLog.BASE_URL_PLACEHOLDER) });
+            clientHeaders.add(new String[] { header.getKey(), value.replace(upstreamBase, proxyBase) });
+          }
+        }
+      }
+
+      byte[] logBody = body;
+      if (HttpSupport.isRewritable(logHeaders)) {
+        logBody = HttpSupport.replace(body, upstreamBase, ExchangeLog.BASE_URL_PLACEHOLDER);
+        body = HttpSupport.replace(body, upstreamBase, proxyBase);
+      }
+      log.append(new RecordedExchange(exchange.getRequestMethod(), uri,
+        RecordedExchange.digest(requestBody), status, logHeaders, logBody, latency));
+      recorded.incrementAndGet();
+
+      HttpSupport.respond(exchange, status, clientHeaders, body);
+    } catch (final IOException e) {
+      e.printStackTrace();
+      exchange.sendResponseHeaders(502, -1);
+      exchange.close();
+    }
+  }
+}
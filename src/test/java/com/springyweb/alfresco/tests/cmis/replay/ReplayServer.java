@@ -0,0 +1,188 @@
+package com.springyweb.alfresco.tests.cmis.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the responses in an {@link ExchangeLog} from a loopback port so that the client can be exercised without a repository.
+ *
+ * A request is answered with the next unused exchange that has the same method, URI and request body. Requests whose body has changed since the
+ * recording (e.g because it contains the current time) fall back to the next unused exchange with the same method and URI. Once every match has
+ * been used the last one is repeated. Each response is delayed by its recorded latency multiplied by latencyScale.
+ */
+public class ReplayServer {
+
+  private final Map<String, List<Slot>> byRequest = new HashMap<String, List<Slot>>();
+  private final Map<String, List<Slot>> byUri = new HashMap<String, List<Slot>>();
+  private final double latencyScale;
+  private final ExecutorService executor;
+  private final HttpServer server;
+  private final String base;
+
+  private final AtomicLong served = new AtomicLong();
+  private final AtomicLong fallbacks = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param logFile
+   *          - A log written by {@link RecordingProxy}
+   * @param latencyScale
+   *          - 1 to replay the recorded latencies, 0 to respond immediately
+   */
+  public ReplayServer(final File logFile, final double latencyScale) throws IOException {
+    this(ExchangeLog.read(logFile), latencyScale);
+  }
+
+  public ReplayServer(final List<RecordedExchange> exchanges, final double latencyScale)
+    throws IOException {
+    this.latencyScale = latencyScale;
+    for (final RecordedExchange exchange: exchanges) {
+      final Slot slot = new Slot(exchange);
+      slotsFor(byRequest, requestKey(exchange.getMethod(), exchange.getUri(),
+        exchange.getRequestDigest())).add(slot);
+      slotsFor(byUri, uriKey(exchange.getMethod(), exchange.getUri())).add(slot);
+    }
+    this.executor = HttpSupport.newExecutor();
+    this.server = HttpSupport.start(new HttpHandler() {
+      public void handle(final HttpExchange exchange) throws IOException {
+        replay(exchange);
+      }
+    }, executor);
+    this.base = HttpSupport.baseUrl(server);
+  }
+
+  /**
+   * @param recordedEndpoint
+   *          - The endpoint the log was recorded against e.g http://localhost:8080/alfresco/s/api/cmis
+   * @return The equivalent endpoint on this server
+   */
+  public String replayEndpoint(final String recordedEndpoint) {
+    return recordedEndpoint.replace(HttpSupport.baseUrl(recordedEndpoint), base);
+  }
+
+  public long getServedCount() {
+    return served.get();
+  }
+
+  /**
+   * @return The number of requests answered by method and URI alone because their body differed from the recording
+   */
+  public long getFallbackCount() {
+    return fallbacks.get();
+  }
+
+  /**
+   * @return The number of requests that had no recorded exchange and were answered with a 404
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public void close() {
+    server.stop(0);
+    executor.shutdown();
+  }
+
+  private void replay(final HttpExchange exchange) throws IOException {
+    final byte[] requestBody = HttpSupport.readFully(exchange.getRequestBody());
+    final String method = exchange.getRequestMethod();
+    final String uri = exchange.getRequestURI().toString();
+
+    final List<Slot> sameRequest = byRequest.get(requestKey(method, uri,
+      RecordedExchange.digest(requestBody)));
+    final List<Slot> sameUri = byUri.get(uriKey(method, uri));
+    RecordedExchange recorded = nextUnused(sameRequest);
+    if (recorded == null) {
+      recorded = nextUnused(sameUri);
+      if (recorded != null) {
+        fallbacks.incrementAndGet();
+      }
+    }
+    if (recorded == null) {
+      recorded = last(sameRequest != null ? sameRequest : sameUri);
+    }
+    if (recorded == null) {
+      misses.incrementAndGet();
+      HttpSupport.respond(exchange, 404, Collections.<String[]> emptyList(), new byte[0]);
+      return;
+    }
+
+    final long delay = (long)(recorded.getLatencyNanos() * latencyScale);
+    if (delay > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(delay);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    final List<String[]> headers = new ArrayList<String[]>();
+    for (final String[] header: recorded.getHeaders()) {
+      headers.add(new String[] { header[0],
+        header[1].replace(ExchangeLog.BASE_URL_PLACEHOLDER, base) });
+    }
+    byte[] body = recorded.getBody();
+    if (HttpSupport.isRewritable(headers)) {
+      body = HttpSupport.replace(body, ExchangeLog.BASE_URL_PLACEHOLDER, base);
+    }
+    served.incrementAndGet();
+    HttpSupport.respond(exchange, recorded.getStatus(), headers, body);
+  }
+
+  private synchronized RecordedExchange nextUnused(final List<Slot> slots) {
+    if (slots != null) {
+      for (final Slot slot: slots) {
+        if (!slot.used) {
+          slot.used = true;
+          return slot.exchange;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static RecordedExchange last(final List<Slot> slots) {
+    return slots == null ? null : slots.get(slots.size() - 1).exchange;
+  }
+
+  private static List<Slot> slotsFor(final Map<String, List<Slot>> index, final String key) {
+    List<Slot> slots = index.get(key);
+    if (slots == null) {
+      slots = new ArrayList<Slot>();
+      index.put(key, slots);
+    }
+    return slots;
+  }
+
+  private static String requestKey(final String method, final String uri, final long digest) {
+    return method + " " + uri + " " + Long.toHexString(digest);
+  }
+
+  private static String uriKey(final String method, final String uri) {
+    return method + " " + uri;
+  }
+
+  /**
+   * A recorded exchange shared between both indexes so that using it through one marks it used in the other
+   */
+  private static class Slot {
+    private final RecordedExchange exchange;
+    private boolean used;
+
+    Slot(final RecordedExchange exchange) {
+      this.exchange = exchange;
+    }
+  }
+}
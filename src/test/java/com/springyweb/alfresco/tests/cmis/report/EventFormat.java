@@ -0,0 +1,352 @@
+package com.springyweb.alfresco.tests.cmis.report;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How {@link RunEvent}s are written to and read back from the event log, one event per line.
+ */
+public enum EventFormat {
+
+  /**
+   * One JSON object per line, fields that are not known left out
+   */
+  JSON_LINES(".jsonl") {
+    @Override
+    public String header() {
+      return null;
+    }
+
+    @Override
+    public void write(final RunEvent event, final StringBuilder line) {
+      line.append('{');
+      line.append("\"time\":").append(event.getTimeMillis());
+      jsonField(line, "test", event.getTest());
+      jsonField(line, "operation", event.getOperation());
+      jsonField(line, "template", event.getTemplate());
+      jsonField(line, "predicate", event.getPredicate());
+      jsonField(line, "property", event.getPropertyName());
+      jsonField(line, "query", event.getQuery());
+      line.append(",\"durationNanos\":").append(event.getDurationNanos());
+      line.append(",\"resultCount\":").append(event.getResultCount());
+      line.append(",\"bytes\":").append(event.getBytes());
+      jsonField(line, "error", event.getError());
+      line.append('}');
+    }
+
+    @Override
+    public RunEvent read(final String line) {
+      final Map<String, String> fields = new JsonObjectParser(line).parse();
+      return new RunEvent(number(fields.get("time")), fields.get("test"),
+        fields.get("operation"), fields.get("template"), fields.get("predicate"),
+        fields.get("property"), fields.get("query"), number(fields.get("durationNanos")),
+        number(fields.get("resultCount")), number(fields.get("bytes")), fields.get("error"));
+    }
+  },
+
+  /**
+   * Comma separated values with a header line. Line breaks in values are replaced with spaces.
+   */
+  CSV(".csv") {
+    @Override
+    public String header() {
+      return "time,test,operation,template,predicate,property,query,durationNanos,resultCount,bytes,error";
+    }
+
+    @Override
+    public void write(final RunEvent event, final StringBuilder line) {
+      line.append(event.getTimeMillis());
+      csvField(line, event.getTest());
+      csvField(line, event.getOperation());
+      csvField(line, event.getTemplate());
+      csvField(line, event.getPredicate());
+      csvField(line, event.getPropertyName());
+      csvField(line, event.getQuery());
+      line.append(',').append(event.getDurationNanos());
+      line.append(',').append(event.getResultCount());
+      line.append(',').append(event.getBytes());
+      csvField(line, event.getError());
+    }
+
+    @Override
+    public RunEvent read(final String line) {
+      final List<String> fields = csvFields(line);
+      if (fields.size() != 11) {
+        throw new IllegalArgumentException("Expected 11 fields: " + line);
+      }
+      return new RunEvent(number(fields.get(0)), fields.get(1), fields.get(2), fields.get(3),
+        fields.get(4), fields.get(5), fields.get(6), number(fields.get(7)),
+        number(fields.get(8)), number(fields.get(9)), fields.get(10));
+    }
+  };
+
+  private final String extension;
+
+  private EventFormat(final String extension) {
+    this.extension = extension;
+  }
+
+  /**
+   * @return e.g .jsonl
+   */
+  public String getExtension() {
+    return extension;
+  }
+
+  /**
+   * @return The first line of a file, null if there is none
+   */
+  public abstract String header();
+
+  /**
+   * Append an event, without a line separator
+   */
+  public abstract void write(RunEvent event, StringBuilder line);
+
+  /**
+   * @throws IllegalArgumentException
+   *           If the line is not an event
+   */
+  public abstract RunEvent read(String line);
+
+  /**
+   * @return The format of a file, by its extension
+   */
+  public static EventFormat forFile(final File file) {
+    for (final EventFormat format: values()) {
+      if (file.getName().endsWith(format.extension)) {
+        return format;
+      }
+    }
+    throw new IllegalArgumentException("Not an event log: " + file);
+  }
+
+  /**
+   * @param name
+   *          - e.g jsonl or csv
+   */
+  public static EventFormat forName(final String name) {
+    for (final EventFormat format: values()) {
+      if (format.extension.equals("." + name)) {
+        return format;
+      }
+    }
+    throw new IllegalArgumentException("Unknown event log format " + name);
+  }
+
+  private static long number(final String value) {
+    return value == null || value.length() == 0 ? 0 : Long.parseLong(value);
+  }
+
+  private static void jsonField(final StringBuilder line, final String name, final String value) {
+    if (value == null) {
+      return;
+    }
+    line.append(",\"").append(name).append("\":\"");
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          line.append("\\\"");
+          break;
+        case '\\':
+          line.append("\\\\");
+          break;
+        case '\n':
+          line.append("\\n");
+          break;
+        case '\r':
+          line.append("\\r");
+          break;
+        case '\t':
+          line.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            line.append(String.format("\\u%04x", (int)c));
+          } else {
+            line.append(c);
+          }
+      }
+    }
+    line.append('"');
+  }
+
+  private static void csvField(final StringBuilder line, final String value) {
+    line.append(',');
+    if (value == null) {
+      return;
+    }
+    final boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+      || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+    if (quote) {
+      line.append('"');
+    }
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '"') {
+        line.append("\"\"");
+      } else if (c == '\n' || c == '\r') {
+        line.append(' ');
+      } else {
+        line.append(c);
+      }
+    }
+    if (quote) {
+      line.append('"');
+    }
+  }
+
+  /**
+   * Empty fields are read as null
+   */
+  private static List<String> csvFields(final String line) {
+    final List<String> fields = new ArrayList<String>();
+    final StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    boolean wasQuoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      final char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"') {
+          if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+            field.append('"');
+            i++;
+          } else {
+            quoted = false;
+          }
+        } else {
+          field.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+        wasQuoted = true;
+      } else if (c == ',') {
+        fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+        field.setLength(0);
+        wasQuoted = false;
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+    return fields;
+  }
+
+  /**
+   * Just enough JSON for the flat objects written by {@link EventFormat#JSON_LINES}: string, number and null values
+   */
+  private static class JsonObjectParser {
+    private final String json;
+    private int position = 0;
+
+    JsonObjectParser(final String json) {
+      this.json = json;
+    }
+
+    Map<String, String> parse() {
+      final Map<String, String> fields = new HashMap<String, String>();
+      expect('{');
+      if (peek() == '}') {
+        position++;
+        return fields;
+      }
+      while (true) {
+        final String name = string();
+        expect(':');
+        fields.put(name, value());
+        final char next = next();
+        if (next == '}') {
+          return fields;
+        }
+        if (next != ',') {
+          throw error("Expected , or }");
+        }
+      }
+    }
+
+    private String value() {
+      final char c = peek();
+      if (c == '"') {
+        return string();
+      }
+      final int start = position;
+      while (position < json.length() && ",}".indexOf(json.charAt(position)) < 0) {
+        position++;
+      }
+      final String literal = json.substring(start, position).trim();
+      return "null".equals(literal) ? null : literal;
+    }
+
+    private String string() {
+      expect('"');
+      final StringBuilder s = new StringBuilder();
+      while (true) {
+        if (position >= json.length()) {
+          throw error("Unterminated string");
+        }
+        final char c = json.charAt(position++);
+        if (c == '"') {
+          return s.toString();
+        }
+        if (c != '\\') {
+          s.append(c);
+          continue;
+        }
+        final char escaped = json.charAt(position++);
+        switch (escaped) {
+          case 'n':
+            s.append('\n');
+            break;
+          case 'r':
+            s.append('\r');
+            break;
+          case 't':
+            s.append('\t');
+            break;
+          case 'b':
+            s.append('\b');
+            break;
+          case 'f':
+            s.append('\f');
+            break;
+          case 'u':
+            s.append((char)Integer.parseInt(json.substring(position, position + 4), 16));
+            position += 4;
+            break;
+          default:
+            s.append(escaped);
+        }
+      }
+    }
+
+    private void expect(final char expected) {
+      if (next() != expected) {
+        throw error("Expected " + expected);
+      }
+    }
+
+    private char next() {
+      final char c = peek();
+      position++;
+      return c;
+    }
+
+    private char peek() {
+      while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+        position++;
+      }
+      if (position >= json.length()) {
+        throw error("Unexpected end");
+      }
+      return json.charAt(position);
+    }
+
+    private IllegalArgumentException error(final String message) {
+      return new IllegalArgumentException(message + " at " + position + ": " + json);
+    }
+  }
+}
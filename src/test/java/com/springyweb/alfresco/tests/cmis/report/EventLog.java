@@ -0,0 +1,217 @@
+package com.springyweb.alfresco.tests.cmis.report;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.internal.AssumptionViolatedException;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * Writes a {@link RunEvent} for each CMIS call and each test to &lt;directory&gt;/&lt;name&gt;.jsonl when -Dcmis.events=&lt;directory&gt; is set,
+ * e.g by the events build profile. -Dcmis.events.format=csv writes &lt;name&gt;.csv instead.
+ *
+ * Recording an event only puts it on an {@link EventRing}; a background thread formats and writes it, so no console or file I/O happens on
+ * the threads being measured. If the writer falls behind by -Dcmis.events.capacity (default 65536) events, further events are dropped and
+ * counted rather than waited for. A {@link EventSummary} of the log is printed when it is closed.
+ */
+public final class EventLog {
+
+  public static final String DIRECTORY_PROPERTY = "cmis.events";
+  public static final String FORMAT_PROPERTY = "cmis.events.format";
+  public static final String CAPACITY_PROPERTY = "cmis.events.capacity";
+
+  /**
+   * The operation of the event recorded for each test, spanning the test and its setup and tear down
+   */
+  public static final String TEST = "test";
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private static volatile EventLog current;
+  private static volatile String currentTest;
+
+  private final File file;
+  private final EventFormat format;
+  private final EventRing<RunEvent> ring;
+  private final Writer out;
+  private final Thread writer;
+  private volatile boolean closing = false;
+  private long written = 0;
+  private IOException writeFailure;
+
+  private EventLog(final File file, final EventFormat format, final int capacity)
+    throws IOException {
+    this.file = file;
+    this.format = format;
+    this.ring = new EventRing<RunEvent>(capacity);
+    this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    final String header = format.header();
+    if (header != null) {
+      out.write(header);
+      out.write('\n');
+    }
+    writer = new Thread(new Runnable() {
+      public void run() {
+        drain();
+      }
+    }, "cmis-event-log");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Start logging events, replacing any log already running
+   *
+   * @param name
+   *          - Names the log file e.g the test class
+   * @return null unless logging has been asked for
+   */
+  public static EventLog start(final String name) throws IOException {
+    final String directory = System.getProperty(DIRECTORY_PROPERTY);
+    if (directory == null) {
+      return null;
+    }
+    final EventFormat format = EventFormat.forName(System.getProperty(FORMAT_PROPERTY, "jsonl"));
+    final File file = new File(directory, name + format.getExtension());
+    file.getParentFile().mkdirs();
+    final EventLog log = new EventLog(file, format, Integer.getInteger(CAPACITY_PROPERTY, 65536));
+    final EventLog previous = current;
+    current = log;
+    if (previous != null) {
+      previous.close();
+    }
+    return log;
+  }
+
+  /**
+   * @return Whether events are being logged, so that callers can avoid the work of describing them
+   */
+  public static boolean isEnabled() {
+    return current != null;
+  }
+
+  /**
+   * Log a call to the running log, if there is one
+   *
+   * @param error
+   *          - Why the call failed, null if it did not
+   */
+  public static void record(final String operation, final String template,
+    final String predicate, final String propertyName, final String query,
+    final long durationNanos, final long resultCount, final long bytes, final String error) {
+    final EventLog log = current;
+    if (log != null) {
+      log.ring.offer(new RunEvent(System.currentTimeMillis(), currentTest, operation, template,
+        predicate, propertyName, query, durationNanos, resultCount, bytes, error));
+    }
+  }
+
+  /**
+   * @param test
+   *          - The test that the events recorded from now on belong to
+   */
+  public static void setTest(final String test) {
+    currentTest = test;
+  }
+
+  /**
+   * A rule that names the events recorded by each test and records a {@link #TEST} event for it, failed unless it passed. Tests skipped
+   * by an assumption are recorded with an error of "skipped". Not a TestWatcher, which passes assumption failures through unreported.
+   */
+  public static TestRule watcher() {
+    return new TestRule() {
+      public Statement apply(final Statement base, final Description description) {
+        return new Statement() {
+          @Override
+          public void evaluate() throws Throwable {
+            setTest(description.getMethodName());
+            final long startNanos = System.nanoTime();
+            try {
+              base.evaluate();
+              record(TEST, null, null, null, null, System.nanoTime() - startNanos, 0, 0, null);
+            } catch (final AssumptionViolatedException e) {
+              record(TEST, null, null, null, null, System.nanoTime() - startNanos, 0, 0,
+                "skipped");
+              throw e;
+            } catch (final Throwable t) {
+              record(TEST, null, null, null, null, System.nanoTime() - startNanos, 0, 0,
+                String.valueOf(t));
+              throw t;
+            } finally {
+              setTest(null);
+            }
+          }
+        };
+      }
+    };
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @return The number of events dropped because the writer fell behind
+   */
+  public long getDropped() {
+    return ring.getDropped();
+  }
+
+  /**
+   * Stop logging, write out the events still queued and print the summary
+   */
+  public void close() throws IOException {
+    if (current == this) {
+      current = null;
+    }
+    closing = true;
+    LockSupport.unpark(writer);
+    try {
+      writer.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (writeFailure != null) {
+      throw writeFailure;
+    }
+    System.out.println("CMIS events " + file + " (" + written + " written, " + getDropped()
+      + " dropped)");
+    EventSummary.read(file).print(System.out);
+  }
+
+  private void drain() {
+    final StringBuilder line = new StringBuilder(256);
+    try {
+      try {
+        while (true) {
+          final RunEvent event = ring.poll();
+          if (event != null) {
+            line.setLength(0);
+            format.write(event, line);
+            line.append('\n');
+            out.append(line);
+            written++;
+          } else if (closing && ring.size() == 0) {
+            break;
+          } else {
+            // Only flush when idle so that a busy writer batches its writes
+            out.flush();
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+          }
+        }
+      } finally {
+        out.close();
+      }
+    } catch (final IOException e) {
+      writeFailure = e;
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package com.springyweb.alfresco.tests.cmis.report;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.internal.AssumptionViolatedException;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import com.springyweb.alfresco.tests.cmis.cache.ListItemIterable;
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+import com.springyweb.alfresco.tests.cmis.jfr.CmisOperationEvent;
+import com.springyweb.alfresco.tests.cmis.jfr.QueryDescription;
+
+public class EventLogTest {
+
+  private File directory;
+
+  @Before
+  public void createDirectory() throws IOException {
+    directory = File.createTempFile("cmis-events", "");
+    directory.delete();
+    System.setProperty(EventLog.DIRECTORY_PROPERTY, directory.getPath());
+  }
+
+  @After
+  public void deleteDirectory() {
+    System.clearProperty(EventLog.DIRECTORY_PROPERTY);
+    System.clearProperty(EventLog.FORMAT_PROPERTY);
+    EventLog.setTest(null);
+    final File[] files = directory.listFiles();
+    if (files != null) {
+      for (final File file: files) {
+        file.delete();
+      }
+    }
+    directory.delete();
+  }
+
+  @Test
+  public void formatsReadBackWhatTheyWrite() {
+    final RunEvent event = new RunEvent(1234L, "test", CmisEvents.QUERY,
+      "PREDICATE_QUERY_TEMPLATE_STRING", "EQUALS", "swct:propSingleString",
+      "SELECT * FROM swct:doc WHERE swct:propSingleString = 'a,\"b\"\\c'", 5000, 3, 0,
+      "CmisRuntimeException: line\nbreak");
+    for (final EventFormat format: EventFormat.values()) {
+      final StringBuilder line = new StringBuilder();
+      format.write(event, line);
+      final RunEvent read = format.read(line.toString());
+      assertEquals(format.name(), event.getQuery(), read.getQuery());
+      assertEquals(event.getTimeMillis(), read.getTimeMillis());
+      assertEquals(event.getDurationNanos(), read.getDurationNanos());
+      assertEquals(event.getResultCount(), read.getResultCount());
+      assertEquals(event.getPropertyName(), read.getPropertyName());
+    }
+    final StringBuilder line = new StringBuilder();
+    EventFormat.JSON_LINES.write(event, line);
+    assertEquals(event.getError(), EventFormat.JSON_LINES.read(line.toString()).getError());
+
+    final RunEvent unknowns = new RunEvent(1, null, CmisEvents.CREATE_FOLDER, null, null, null,
+      null, 10, 1, 0, null);
+    line.setLength(0);
+    EventFormat.CSV.write(unknowns, line);
+    final RunEvent read = EventFormat.CSV.read(line.toString());
+    assertNull(read.getTest());
+    assertNull(read.getQuery());
+    assertFalse(read.isError());
+  }
+
+  @Test
+  public void isOffUnlessAskedFor() throws IOException {
+    System.clearProperty(EventLog.DIRECTORY_PROPERTY);
+    assertNull(EventLog.start("off"));
+    assertFalse(EventLog.isEnabled());
+  }
+
+  @Test
+  public void logsCallsAndSummarisesThemPerTestAndOperation() throws IOException {
+    logsCalls("jsonl");
+  }
+
+  @Test
+  public void logsCallsAsCsv() throws IOException {
+    logsCalls("csv");
+  }
+
+  private void logsCalls(final String format) throws IOException {
+    System.setProperty(EventLog.FORMAT_PROPERTY, format);
+    final EventLog log = EventLog.start("EventLogTest");
+    assertTrue(EventLog.isEnabled());
+
+    EventLog.setTest("first");
+    CmisEvents.commit(CmisEvents.begin(CmisEvents.CREATE_FOLDER), 1, 0);
+    final List<String> items = Arrays.asList("a", "b", "c");
+    final ItemIterable<String> results = CmisEvents.profile(new ListItemIterable<String>(items, 0,
+      items.size()), QueryDescription.of("SELECT * FROM cmis:document"), 2);
+    int read = 0;
+    for (@SuppressWarnings("unused")
+    final String item: results) {
+      read++;
+    }
+    assertEquals(3, read);
+    EventLog.record(EventLog.TEST, null, null, null, null, 1000000, 0, 0, null);
+
+    EventLog.setTest("second");
+    final CmisOperationEvent failed = CmisEvents.begin(CmisEvents.DELETE_TREE);
+    CmisEvents.fail(failed, new IllegalStateException("locked"));
+    EventLog.record(EventLog.TEST, null, null, null, null, 2000000, 0, 0,
+      "java.lang.AssertionError");
+
+    log.close();
+    assertFalse(EventLog.isEnabled());
+    assertEquals(0, log.getDropped());
+    assertTrue(log.getFile().getName().endsWith("." + format));
+
+    final EventSummary summary = EventSummary.read(log.getFile());
+    assertEquals(Arrays.asList("first", "second"), Arrays.asList(summary.getTests().keySet()
+      .toArray()));
+    final EventSummary.TestReport first = summary.getTests().get("first");
+    assertEquals("passed", first.getOutcome());
+    assertEquals(1000000, first.getElapsedNanos());
+    // createFolder, the query and its two pages
+    assertEquals(4, first.getCalls().getCount());
+    assertEquals("failed", summary.getTests().get("second").getOutcome());
+    assertEquals(1, summary.getTests().get("second").getCalls().getErrors());
+
+    assertEquals(3, summary.getOperations().get(CmisEvents.QUERY).getResults());
+    assertEquals(2, summary.getOperations().get(CmisEvents.QUERY_PAGE).getCount());
+    assertEquals(1, summary.getOperations().get(CmisEvents.DELETE_TREE).getErrors());
+    assertEquals(1, summary.getQueryTemplates().get("SELECT * FROM cmis:document").getCount());
+  }
+
+  @Test
+  public void watcherRecordsEachTestsOutcome() throws Throwable {
+    final EventLog log = EventLog.start("EventLogTest");
+    run("passes", null);
+    run("fails", new AssertionError("expected"));
+    run("assumes", new AssumptionViolatedException("no repository"));
+    log.close();
+
+    final EventSummary summary = EventSummary.read(log.getFile());
+    assertEquals("passed", summary.getTests().get("passes").getOutcome());
+    assertEquals("failed", summary.getTests().get("fails").getOutcome());
+    assertEquals("skipped", summary.getTests().get("assumes").getOutcome());
+  }
+
+  private static void run(final String test, final Throwable outcome) throws Throwable {
+    final Statement statement = EventLog.watcher().apply(new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        if (outcome != null) {
+          throw outcome;
+        }
+      }
+    }, Description.createTestDescription(EventLogTest.class, test));
+    try {
+      statement.evaluate();
+      assertNull(outcome);
+    } catch (final Throwable t) {
+      assertSame(outcome, t);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.springyweb.alfresco.tests.cmis.report;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue for many producers and a single consumer.
+ *
+ * Producers claim a slot by advancing the tail with a compare and set and then publish into it; the consumer clears a slot before moving the
+ * head past it, so a producer that finds fewer than capacity claimed slots always finds its slot empty. When the queue is full offers fail
+ * rather than wait, and are counted, so that a slow consumer never holds up the threads being measured.
+ *
+ * @param <T>
+ *          The element type
+ */
+public class EventRing<T> {
+
+  private final AtomicReferenceArray<T> slots;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+
+  /**
+   * @param capacity
+   *          - Rounded up to a power of two
+   */
+  public EventRing(final int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be at least 1");
+    }
+    final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer
+      .highestOneBit(capacity) << 1;
+    slots = new AtomicReferenceArray<T>(size);
+    mask = size - 1;
+  }
+
+  /**
+   * Add an element unless the queue is full. Safe to call from any thread.
+   *
+   * @return false if the element was dropped
+   */
+  public boolean offer(final T element) {
+    if (element == null) {
+      throw new NullPointerException();
+    }
+    while (true) {
+      final long t = tail.get();
+      if (t - head.get() >= slots.length()) {
+        dropped.incrementAndGet();
+        return false;
+      }
+      if (tail.compareAndSet(t, t + 1)) {
+        slots.lazySet((int)t & mask, element);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Only to be called from the single consuming thread
+   *
+   * @return The oldest element, or null if there is none or its producer has not yet published it
+   */
+  public T poll() {
+    final long h = head.get();
+    final int index = (int)h & mask;
+    final T element = slots.get(index);
+    if (element == null) {
+      return null;
+    }
+    slots.lazySet(index, null);
+    head.lazySet(h + 1);
+    return element;
+  }
+
+  /**
+   * @return The number of elements claimed and not yet polled
+   */
+  public int size() {
+    return (int)Math.max(tail.get() - head.get(), 0);
+  }
+
+  public int capacity() {
+    return slots.length();
+  }
+
+  /**
+   * @return The number of offers that failed because the queue was full
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+}
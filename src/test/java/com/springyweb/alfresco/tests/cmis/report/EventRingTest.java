@@ -0,0 +1,77 @@
+package com.springyweb.alfresco.tests.cmis.report;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class EventRingTest {
+
+  @Test
+  public void capacityIsRoundedUpToAPowerOfTwo() {
+    assertEquals(8, new EventRing<String>(5).capacity());
+    assertEquals(8, new EventRing<String>(8).capacity());
+  }
+
+  @Test
+  public void dropsWhenFullAndReusesPolledSlots() {
+    final EventRing<Integer> ring = new EventRing<Integer>(2);
+    assertTrue(ring.offer(1));
+    assertTrue(ring.offer(2));
+    assertFalse(ring.offer(3));
+    assertEquals(1, ring.getDropped());
+
+    assertEquals(Integer.valueOf(1), ring.poll());
+    assertTrue(ring.offer(4));
+    assertEquals(Integer.valueOf(2), ring.poll());
+    assertEquals(Integer.valueOf(4), ring.poll());
+    assertNull(ring.poll());
+    assertEquals(0, ring.size());
+  }
+
+  @Test
+  public void everyProducersElementsArriveInOrder() throws InterruptedException {
+    final int producers = 4;
+    final int perProducer = 100000;
+    final EventRing<long[]> ring = new EventRing<long[]>(64);
+    final CountDownLatch start = new CountDownLatch(1);
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      final Thread thread = new Thread(new Runnable() {
+        public void run() {
+          try {
+            start.await();
+          } catch (final InterruptedException e) {
+            return;
+          }
+          for (int i = 0; i < perProducer; i++) {
+            final long[] element = new long[] {producer, i };
+            // Spin rather than drop, to check that nothing is lost or reordered
+            while (!ring.offer(element)) {
+              Thread.yield();
+            }
+          }
+        }
+      });
+      thread.setDaemon(true);
+      thread.start();
+    }
+    start.countDown();
+
+    final long[] next = new long[producers];
+    for (int received = 0; received < producers * perProducer;) {
+      final long[] element = ring.poll();
+      if (element == null) {
+        Thread.yield();
+        continue;
+      }
+      assertEquals(next[(int)element[0]]++, element[1]);
+      received++;
+    }
+    assertNull(ring.poll());
+  }
+}
@@ -0,0 +1,220 @@
+package com.springyweb.alfresco.tests.cmis.report;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Summarises an event log written by {@link EventLog} per test and per operation, e.g
+ *
+ * <pre>
+ * java com.springyweb.alfresco.tests.cmis.report.EventSummary target/cmis-events/CMISTest.jsonl
+ * </pre>
+ */
+public class EventSummary {
+
+  // CmisEvents.QUERY, whose events span the query's pages
+  private static final String QUERY = "query";
+
+  /**
+   * The calls of one operation, or of one test
+   */
+  public static class Stats {
+    private int count;
+    private int errors;
+    private long results;
+    private long[] durations = new long[16];
+
+    void add(final RunEvent event) {
+      if (count == durations.length) {
+        durations = Arrays.copyOf(durations, count * 2);
+      }
+      durations[count++] = event.getDurationNanos();
+      results += event.getResultCount();
+      if (event.isError()) {
+        errors++;
+      }
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    public int getErrors() {
+      return errors;
+    }
+
+    public long getResults() {
+      return results;
+    }
+
+    public double getMeanMillis() {
+      long total = 0;
+      for (int i = 0; i < count; i++) {
+        total += durations[i];
+      }
+      return count == 0 ? 0 : total / 1e6 / count;
+    }
+
+    /**
+     * @param percentile
+     *          - e.g 95
+     * @return The nearest ranked duration, 0 if there are none
+     */
+    public double getPercentileMillis(final double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      final long[] sorted = Arrays.copyOf(durations, count);
+      Arrays.sort(sorted);
+      final int rank = (int)Math.ceil(percentile / 100 * count);
+      return sorted[Math.min(Math.max(rank, 1), count) - 1] / 1e6;
+    }
+  }
+
+  /**
+   * What one test did
+   */
+  public static class TestReport {
+    private final Stats calls = new Stats();
+    private String outcome = "unfinished";
+    private long elapsedNanos;
+
+    /**
+     * @return The CMIS calls made by the test
+     */
+    public Stats getCalls() {
+      return calls;
+    }
+
+    /**
+     * @return passed, failed, skipped or unfinished if no {@link EventLog#TEST} event was logged for it
+     */
+    public String getOutcome() {
+      return outcome;
+    }
+
+    public long getElapsedNanos() {
+      return elapsedNanos;
+    }
+  }
+
+  private final Map<String, TestReport> tests = new LinkedHashMap<String, TestReport>();
+  private final Map<String, Stats> operations = new TreeMap<String, Stats>();
+  private final Map<String, Stats> queryTemplates = new TreeMap<String, Stats>();
+
+  public static void main(final String... args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("Usage: EventSummary <event log>...");
+      System.exit(2);
+    }
+    for (final String arg: args) {
+      final File file = new File(arg);
+      System.out.println(file);
+      read(file).print(System.out);
+      System.out.println();
+    }
+  }
+
+  /**
+   * @param file
+   *          - A .jsonl or .csv log
+   */
+  public static EventSummary read(final File file) throws IOException {
+    final EventFormat format = EventFormat.forFile(file);
+    final EventSummary summary = new EventSummary();
+    final BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+      "UTF-8"));
+    try {
+      String line = in.readLine();
+      if (format.header() != null) {
+        line = in.readLine();
+      }
+      for (; line != null; line = in.readLine()) {
+        if (line.length() > 0) {
+          summary.add(format.read(line));
+        }
+      }
+    } finally {
+      in.close();
+    }
+    return summary;
+  }
+
+  public void add(final RunEvent event) {
+    final String test = event.getTest() == null ? "(none)" : event.getTest();
+    TestReport report = tests.get(test);
+    if (report == null) {
+      report = new TestReport();
+      tests.put(test, report);
+    }
+    if (EventLog.TEST.equals(event.getOperation())) {
+      report.elapsedNanos = event.getDurationNanos();
+      report.outcome = !event.isError() ? "passed" : "skipped".equals(event.getError()) ? "skipped"
+        : "failed";
+      return;
+    }
+    report.calls.add(event);
+    stats(operations, event.getOperation()).add(event);
+    if (event.getTemplate() != null && QUERY.equals(event.getOperation())) {
+      stats(queryTemplates, event.getTemplate()).add(event);
+    }
+  }
+
+  public Map<String, TestReport> getTests() {
+    return tests;
+  }
+
+  public Map<String, Stats> getOperations() {
+    return operations;
+  }
+
+  public Map<String, Stats> getQueryTemplates() {
+    return queryTemplates;
+  }
+
+  public void print(final PrintStream out) {
+    out.println(String.format("%-40s %-10s %10s %7s %7s", "test", "outcome", "elapsed ms", "calls",
+      "errors"));
+    for (final Map.Entry<String, TestReport> entry: tests.entrySet()) {
+      final TestReport report = entry.getValue();
+      out.println(String.format("%-40s %-10s %10.1f %7d %7d", entry.getKey(), report.outcome,
+        report.elapsedNanos / 1e6, report.calls.count, report.calls.errors));
+    }
+    out.println();
+    out.println(String.format("%-14s %7s %7s %8s %8s %8s %8s", "operation", "count", "errors",
+      "results", "mean ms", "p50 ms", "p95 ms"));
+    for (final Map.Entry<String, Stats> entry: operations.entrySet()) {
+      final Stats s = entry.getValue();
+      out.println(String.format("%-14s %7d %7d %8d %8.2f %8.2f %8.2f", entry.getKey(), s.count,
+        s.errors, s.results, s.getMeanMillis(), s.getPercentileMillis(50), s
+          .getPercentileMillis(95)));
+    }
+    if (!queryTemplates.isEmpty()) {
+      out.println();
+      out.println(String.format("%7s %8s %8s %8s  %s", "queries", "mean ms", "p95 ms", "results",
+        "template"));
+      for (final Map.Entry<String, Stats> entry: queryTemplates.entrySet()) {
+        final Stats s = entry.getValue();
+        out.println(String.format("%7d %8.2f %8.2f %8d  %s", s.count, s.getMeanMillis(), s
+          .getPercentileMillis(95), s.results, entry.getKey()));
+      }
+    }
+  }
+
+  private static Stats stats(final Map<String, Stats> stats, final String key) {
+    Stats s = stats.get(key);
+    if (s == null) {
+      s = new Stats();
+      stats.put(key, s);
+    }
+    return s;
+  }
+}
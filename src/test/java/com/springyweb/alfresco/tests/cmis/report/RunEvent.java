@@ -0,0 +1,100 @@
+package com.springyweb.alfresco.tests.cmis.report;
+
+/**
+ * One CMIS call, or one test, as written to the event log by {@link EventLog}.
+ */
+public class RunEvent {
+
+  private final long timeMillis;
+  private final String test;
+  private final String operation;
+  private final String template;
+  private final String predicate;
+  private final String propertyName;
+  private final String query;
+  private final long durationNanos;
+  private final long resultCount;
+  private final long bytes;
+  private final String error;
+
+  /**
+   * @param timeMillis
+   *          - When the call finished
+   * @param test
+   *          - The test it was made by, null if not known
+   * @param template
+   *          - The query template, predicate, property and query are null for calls other than queries
+   * @param error
+   *          - Why the call failed, null if it did not
+   */
+  public RunEvent(final long timeMillis, final String test, final String operation,
+    final String template, final String predicate, final String propertyName,
+    final String query, final long durationNanos, final long resultCount, final long bytes,
+    final String error) {
+    this.timeMillis = timeMillis;
+    this.test = test;
+    this.operation = operation;
+    this.template = template;
+    this.predicate = predicate;
+    this.propertyName = propertyName;
+    this.query = query;
+    this.durationNanos = durationNanos;
+    this.resultCount = resultCount;
+    this.bytes = bytes;
+    this.error = error;
+  }
+
+  public long getTimeMillis() {
+    return timeMillis;
+  }
+
+  public String getTest() {
+    return test;
+  }
+
+  public String getOperation() {
+    return operation;
+  }
+
+  public String getTemplate() {
+    return template;
+  }
+
+  public String getPredicate() {
+    return predicate;
+  }
+
+  public String getPropertyName() {
+    return propertyName;
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  public long getDurationNanos() {
+    return durationNanos;
+  }
+
+  public long getResultCount() {
+    return resultCount;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public boolean isError() {
+    return error != null;
+  }
+
+  @Override
+  public String toString() {
+    return operation + (query == null ? "" : " " + query) + " " + durationNanos / 1000 + "us "
+      + resultCount + " results" + (error == null ? "" : " failed: " + error);
+  }
+}
@@ -0,0 +1,478 @@
+package com.springyweb.alfresco.tests.cmis.routing;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.util.AbstractPageFetcher;
+import org.apache.chemistry.opencmis.client.runtime.util.CollectionIterable;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConnectionException;
+import org.apache.chemistry.opencmis.commons.spi.CmisBinding;
+
+import com.springyweb.alfresco.tests.cmis.CmisSessions;
+
+/**
+ * One CMIS session per node of a clustered repository with reads and writes routed between them.
+ *
+ * {@link #asSession()} gives code written against a single {@link Session} the whole cluster, which is how the tests and benchmarks use it when
+ * -Dcmis.endpoints lists more than one node, see {@link CmisSessions#create(String, String)}.
+ */
+public class ClusterSession {
+
+  // e.g http://node2:8080/alfresco/s/api/cmis;read
+  private static final String READ_ONLY_SUFFIX = ";read";
+  private static final String WRITE_ONLY_SUFFIX = ";write";
+
+  // Session methods routed to a node that accepts writes; every other call to a server is a read
+  private static final Set<String> WRITES = new HashSet<String>(Arrays.asList("createDocument",
+    "createDocumentFromSource", "createFolder", "createPolicy", "createRelationship", "applyAcl",
+    "applyPolicy", "removePolicy"));
+  // CmisObject, Folder, Document and Alfresco aspect methods routed to a node that accepts writes
+  private static final Set<String> OBJECT_WRITES = new HashSet<String>(Arrays.asList("delete",
+    "updateProperties", "applyAcl", "addAcl", "removeAcl", "applyPolicy", "removePolicy",
+    "addToFolder", "removeFromFolder", "move", "createDocument", "createDocumentFromSource",
+    "createFolder", "createPolicy", "deleteTree", "checkOut", "cancelCheckOut", "checkIn", "copy",
+    "deleteAllVersions", "setContentStream", "deleteContentStream", "addAspect", "removeAspect"));
+  // Binding methods that only change client side state
+  private static final Set<String> BINDING_EVERY_NODE = new HashSet<String>(Arrays.asList(
+    "clearAllCaches", "clearRepositoryCache", "close"));
+  // Session methods that only change client side state, which must be the same on every node
+  private static final Set<String> EVERY_NODE = new HashSet<String>(Arrays.asList("clear",
+    "setDefaultContext", "removeObjectFromCache"));
+  // Session methods answered without a request, by the first node and outside the router
+  private static final Set<String> LOCAL = new HashSet<String>(Arrays.asList(
+    "getDefaultContext", "createOperationContext", "createObjectId", "createQueryStatement",
+    "getLocale", "getObjectFactory"));
+
+  private final EndpointRouter<Session> router;
+
+  public ClusterSession(final EndpointRouter<Session> router) {
+    this.router = router;
+  }
+
+  /**
+   * Connect to every endpoint. An endpoint may be suffixed with ;read or ;write to only route that kind of operation to it.
+   *
+   * @param endpoints
+   *          - AtomPub URLs of the cluster nodes
+   * @param user
+   * @param password
+   * @param readStrategy
+   * @param writeStrategy
+   * @return The connected cluster
+   */
+  public static ClusterSession connect(final String[] endpoints, final String user,
+    final String password, final RoutingStrategy readStrategy,
+    final RoutingStrategy writeStrategy) {
+
+    final List<EndpointNode<Session>> nodes = new ArrayList<EndpointNode<Session>>();
+    for (final String endpoint: endpoints) {
+      String url = endpoint;
+      boolean reads = true;
+      boolean writes = true;
+      if (endpoint.endsWith(READ_ONLY_SUFFIX)) {
+        url = endpoint.substring(0, endpoint.length() - READ_ONLY_SUFFIX.length());
+        writes = false;
+      } else if (endpoint.endsWith(WRITE_ONLY_SUFFIX)) {
+        url = endpoint.substring(0, endpoint.length() - WRITE_ONLY_SUFFIX.length());
+        reads = false;
+      }
+      nodes.add(new EndpointNode<Session>(url, CmisSessions.create(url, user, password), reads,
+        writes));
+    }
+    return new ClusterSession(new EndpointRouter<Session>(nodes, readStrategy, writeStrategy,
+      CmisConnectionException.class, 3, 10, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Connect using -Dcmis.endpoints, -Dcmis.routing (read and write) and -Dcmis.routing.write (writes only)
+   */
+  public static ClusterSession connect(final String user, final String password) {
+    final RoutingStrategy readStrategy = RoutingStrategy.valueOf(System.getProperty(
+      "cmis.routing", RoutingStrategy.ROUND_ROBIN.name()));
+    final RoutingStrategy writeStrategy = RoutingStrategy.valueOf(System.getProperty(
+      "cmis.routing.write", readStrategy.name()));
+    return connect(CmisSessions.endpoints(), user, password, readStrategy, writeStrategy);
+  }
+
+  public <R> R read(final EndpointRouter.Operation<Session, R> operation) {
+    return router.read(operation);
+  }
+
+  public <R> R write(final EndpointRouter.Operation<Session, R> operation) {
+    return router.write(operation);
+  }
+
+  /**
+   * Run a query, reading each page from a node as it is needed
+   */
+  public ItemIterable<QueryResult> query(final String query, final boolean searchAllVersions) {
+    return query(query, searchAllVersions, null);
+  }
+
+  /**
+   * @param context
+   *          - The operation context, or null for the node's default. Its page size is the number of results read from a node at once.
+   */
+  public ItemIterable<QueryResult> query(final String query, final boolean searchAllVersions,
+    final OperationContext context) {
+    final int pageSize = (context == null ? getNodes().get(0).getTarget().getDefaultContext()
+      : context).getMaxItemsPerPage();
+    return new CollectionIterable<QueryResult>(new AbstractPageFetcher<QueryResult>(pageSize) {
+      @Override
+      protected AbstractPageFetcher.Page<QueryResult> fetchPage(final long skipCount) {
+        final int maxItems = (int)maxNumItems;
+        return read(new EndpointRouter.Operation<Session, AbstractPageFetcher.Page<QueryResult>>() {
+          public AbstractPageFetcher.Page<QueryResult> execute(final Session session) {
+            final ItemIterable<QueryResult> page = (context == null ? session.query(query,
+              searchAllVersions) : session.query(query, searchAllVersions, context)).skipTo(
+              skipCount).getPage(maxItems);
+            final List<QueryResult> items = new ArrayList<QueryResult>();
+            for (final QueryResult result: page) {
+              items.add(result);
+            }
+            return new AbstractPageFetcher.Page<QueryResult>(items, page.getTotalNumItems(), page
+              .getHasMoreItems());
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * A session that routes each call to a node: creates and ACL or policy changes as writes, query pages through
+   * {@link #query(String, boolean, OperationContext)} and other requests as reads. Calls that only change client side state, such as clear and
+   * setDefaultContext, are made on every node.
+   *
+   * Objects it returns, and those their methods return, route their own writes too: a write such as createDocument, updateProperties,
+   * deleteTree, checkIn or addAspect on an object loaded from another node first fetches the object by id from the node chosen for the write,
+   * and the object then stays bound to that node. Their other methods, such as getChildren, read from the node the object is bound to.
+   * getBinding gives a binding whose service calls are routed the same way, get and query calls as reads and the rest as writes.
+   */
+  public Session asSession() {
+    return (Session)Proxy.newProxyInstance(Session.class.getClassLoader(),
+      new Class<?>[] { Session.class }, new SessionHandler());
+  }
+
+  /**
+   * @return The cluster behind a session from {@link #asSession()}, or null for a single node session
+   */
+  public static ClusterSession of(final Session session) {
+    if (Proxy.isProxyClass(session.getClass())
+      && Proxy.getInvocationHandler(session) instanceof SessionHandler) {
+      return ((SessionHandler)Proxy.getInvocationHandler(session)).getCluster();
+    }
+    return null;
+  }
+
+  private class SessionHandler implements InvocationHandler {
+
+    ClusterSession getCluster() {
+      return ClusterSession.this;
+    }
+
+    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+      final String name = method.getName();
+      if (method.getDeclaringClass() == Object.class) {
+        if (name.equals("equals")) {
+          return proxy == args[0];
+        }
+        return name.equals("hashCode") ? System.identityHashCode(proxy) : "ClusterSession"
+          + getNodes();
+      }
+      if (name.equals("query")) {
+        return query((String)args[0], (Boolean)args[1], args.length > 2
+          ? (OperationContext)args[2] : null);
+      }
+      if (EVERY_NODE.contains(name)) {
+        Object result = null;
+        for (final EndpointNode<Session> node: getNodes()) {
+          result = call(node.getTarget(), method, args);
+        }
+        return result;
+      }
+      if (LOCAL.contains(name)) {
+        return call(getNodes().get(0).getTarget(), method, args);
+      }
+      if (name.equals("getBinding")) {
+        return Proxy.newProxyInstance(CmisBinding.class.getClassLoader(),
+          new Class<?>[] { CmisBinding.class }, new BindingHandler());
+      }
+      final Object[] targetArgs = unwrap(args);
+      final EndpointRouter.Operation<Session, Object> operation = new EndpointRouter.Operation<Session, Object>() {
+        public Object execute(final Session session) {
+          return bind(call(session, method, targetArgs), session);
+        }
+      };
+      return WRITES.contains(name) ? write(operation) : read(operation);
+    }
+  }
+
+  /**
+   * Routes the calls of a CmisObject loaded from a node, see {@link ClusterSession#asSession()}
+   */
+  private class ObjectHandler implements InvocationHandler {
+    private Session session;
+    private CmisObject target;
+
+    ObjectHandler(final Session session, final CmisObject target) {
+      this.session = session;
+      this.target = target;
+    }
+
+    synchronized CmisObject getTarget() {
+      return target;
+    }
+
+    /**
+     * @return The object loaded from the node, fetching it again if it was loaded from another
+     */
+    synchronized CmisObject on(final Session node) {
+      if (node != session) {
+        final OperationContext context = node.createOperationContext();
+        context.setCacheEnabled(false);
+        target = node.getObject(target.getId(), context);
+        session = node;
+      }
+      return target;
+    }
+
+    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+      final String name = method.getName();
+      final Object[] targetArgs = unwrap(args);
+      if (method.getDeclaringClass() == Object.class) {
+        return call(getTarget(), method, targetArgs);
+      }
+      if (OBJECT_WRITES.contains(name)) {
+        return write(new EndpointRouter.Operation<Session, Object>() {
+          public Object execute(final Session node) {
+            return bind(call(on(node), method, targetArgs), node);
+          }
+        });
+      }
+      final Session node;
+      final CmisObject object;
+      synchronized (this) {
+        node = session;
+        object = target;
+      }
+      return bind(call(object, method, targetArgs), node);
+    }
+  }
+
+  /**
+   * Routes each service call of a binding to a node, get and query calls as reads and the rest as writes
+   */
+  private class BindingHandler implements InvocationHandler {
+    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+      final String name = method.getName();
+      if (method.getDeclaringClass() == Object.class) {
+        if (name.equals("equals")) {
+          return proxy == args[0];
+        }
+        return name.equals("hashCode") ? System.identityHashCode(proxy) : "ClusterBinding"
+          + getNodes();
+      }
+      if (name.endsWith("Service")) {
+        return Proxy.newProxyInstance(method.getReturnType().getClassLoader(),
+          new Class<?>[] { method.getReturnType() }, new ServiceHandler(method));
+      }
+      if (BINDING_EVERY_NODE.contains(name)) {
+        Object result = null;
+        for (final EndpointNode<Session> node: getNodes()) {
+          result = call(node.getTarget().getBinding(), method, args);
+        }
+        return result;
+      }
+      return call(getNodes().get(0).getTarget().getBinding(), method, args);
+    }
+  }
+
+  private class ServiceHandler implements InvocationHandler {
+    private final Method getService;
+
+    ServiceHandler(final Method getService) {
+      this.getService = getService;
+    }
+
+    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+      final String name = method.getName();
+      if (method.getDeclaringClass() == Object.class) {
+        return name.equals("equals") ? proxy == args[0] : name.equals("hashCode") ? System
+          .identityHashCode(proxy) : getService.getName() + getNodes();
+      }
+      final EndpointRouter.Operation<Session, Object> operation = new EndpointRouter.Operation<Session, Object>() {
+        public Object execute(final Session session) {
+          return call(call(session.getBinding(), getService, null), method, args);
+        }
+      };
+      return name.startsWith("get") || name.startsWith("query") ? read(operation)
+        : write(operation);
+    }
+  }
+
+  /**
+   * Route the writes of the objects in a result, which may be an object, a list or lazily paged iterable of them or anything else
+   *
+   * @param session
+   *          - The node's session that returned the result
+   */
+  @SuppressWarnings("unchecked")
+  private Object bind(final Object result, final Session session) {
+    if (result instanceof CmisObject && !isBound(result)) {
+      final Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+      for (Class<?> type = result.getClass(); type != null; type = type.getSuperclass()) {
+        addInterfaces(type, interfaces);
+      }
+      return Proxy.newProxyInstance(result.getClass().getClassLoader(), interfaces
+        .toArray(new Class<?>[0]), new ObjectHandler(session, (CmisObject)result));
+    }
+    if (result instanceof ItemIterable) {
+      return new BoundItemIterable<Object>((ItemIterable<Object>)result, session);
+    }
+    if (result instanceof List) {
+      final List<Object> bound = new ArrayList<Object>();
+      for (final Object item: (List<?>)result) {
+        bound.add(bind(item, session));
+      }
+      return bound;
+    }
+    return result;
+  }
+
+  /**
+   * Add the public interfaces a type implements, which are all a proxy from another package can implement
+   */
+  private static void addInterfaces(final Class<?> type, final Set<Class<?>> interfaces) {
+    for (final Class<?> implemented: type.getInterfaces()) {
+      if (Modifier.isPublic(implemented.getModifiers()) && interfaces.add(implemented)) {
+        addInterfaces(implemented, interfaces);
+      }
+    }
+  }
+
+  private static boolean isBound(final Object object) {
+    return Proxy.isProxyClass(object.getClass())
+      && Proxy.getInvocationHandler(object) instanceof ObjectHandler;
+  }
+
+  /**
+   * @return The arguments with routed objects replaced by the objects they route
+   */
+  private static Object[] unwrap(final Object[] args) {
+    if (args == null) {
+      return null;
+    }
+    final Object[] unwrapped = args.clone();
+    for (int i = 0; i < unwrapped.length; i++) {
+      if (unwrapped[i] != null && isBound(unwrapped[i])) {
+        unwrapped[i] = ((ObjectHandler)Proxy.getInvocationHandler(unwrapped[i])).getTarget();
+      }
+    }
+    return unwrapped;
+  }
+
+  /**
+   * Binds the items of a lazily paged result as they are read
+   */
+  private class BoundItemIterable<T> implements ItemIterable<T> {
+    private final ItemIterable<T> items;
+    private final Session session;
+
+    BoundItemIterable(final ItemIterable<T> items, final Session session) {
+      this.items = items;
+      this.session = session;
+    }
+
+    public ItemIterable<T> skipTo(final long position) {
+      return new BoundItemIterable<T>(items.skipTo(position), session);
+    }
+
+    public ItemIterable<T> getPage() {
+      return new BoundItemIterable<T>(items.getPage(), session);
+    }
+
+    public ItemIterable<T> getPage(final int maxNumItems) {
+      return new BoundItemIterable<T>(items.getPage(maxNumItems), session);
+    }
+
+    public Iterator<T> iterator() {
+      final Iterator<T> iterator = items.iterator();
+      return new Iterator<T>() {
+        public boolean hasNext() {
+          return iterator.hasNext();
+        }
+
+        @SuppressWarnings("unchecked")
+        public T next() {
+          return (T)bind(iterator.next(), session);
+        }
+
+        public void remove() {
+          iterator.remove();
+        }
+      };
+    }
+
+    public long getPageNumItems() {
+      return items.getPageNumItems();
+    }
+
+    public boolean getHasMoreItems() {
+      return items.getHasMoreItems();
+    }
+
+    public long getTotalNumItems() {
+      return items.getTotalNumItems();
+    }
+  }
+
+  /**
+   * Call a method of a session, object or service, rethrowing what it throws so the router sees node faults
+   */
+  private static Object call(final Object target, final Method method, final Object[] args) {
+    try {
+      return method.invoke(target, args);
+    } catch (final InvocationTargetException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException)e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error)e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } catch (final IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public List<EndpointNode<Session>> getNodes() {
+    return router.getNodes();
+  }
+
+  /**
+   * @return One line per node with its health and latency distribution
+   */
+  public String report() {
+    final StringBuilder sb = new StringBuilder();
+    for (final EndpointNode<Session> node: router.getNodes()) {
+      sb.append(node).append(String.format("%n"));
+    }
+    return sb.toString();
+  }
+}
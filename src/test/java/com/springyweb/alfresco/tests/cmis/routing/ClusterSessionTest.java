@@ -0,0 +1,307 @@
+package com.springyweb.alfresco.tests.cmis.routing;
+
+import static com.springyweb.alfresco.tests.cmis.Stubs.stub;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.ObjectId;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+import org.apache.chemistry.opencmis.commons.enums.UnfileObject;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConnectionException;
+import org.apache.chemistry.opencmis.commons.spi.CmisBinding;
+import org.apache.chemistry.opencmis.commons.spi.Holder;
+import org.apache.chemistry.opencmis.commons.spi.ObjectService;
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.cache.ListItemIterable;
+import com.springyweb.alfresco.tests.cmis.update.BulkPropertyUpdater;
+import com.springyweb.alfresco.tests.cmis.update.UpdateResult;
+
+/**
+ * Drives a {@link ClusterSession} through {@link ClusterSession#asSession()} against local stand-in nodes: stub sessions that count the calls
+ * they receive and can be taken down. No repository is required.
+ */
+public class ClusterSessionTest {
+
+  private static final int QUERY_RESULTS = 5;
+
+  // e.g a.getObject -> 2
+  private final Map<String, Integer> calls = new HashMap<String, Integer>();
+  private final List<String> downNodes = new ArrayList<String>();
+
+  private void called(final String node, final Method method) {
+    final String key = node + "." + method.getName();
+    synchronized (calls) {
+      final Integer count = calls.get(key);
+      calls.put(key, count == null ? 1 : count + 1);
+    }
+    if (downNodes.contains(node)) {
+      throw new CmisConnectionException(node + " is down");
+    }
+  }
+
+  /**
+   * A folder loaded from the node, whose id is the node's name
+   */
+  private Folder folder(final String name) {
+    return stub(Folder.class, new InvocationHandler() {
+      public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        called(name, method);
+        if (method.getName().equals("createDocument")) {
+          return stub(Document.class, new InvocationHandler() {
+            public Object invoke(final Object document, final Method documentMethod,
+              final Object[] documentArgs) {
+              called(name, documentMethod);
+              return documentMethod.getReturnType() == String.class ? name : null;
+            }
+          });
+        }
+        if (method.getName().equals("deleteTree")) {
+          return Collections.emptyList();
+        }
+        if (method.getName().equals("updateProperties")) {
+          return proxy;
+        }
+        return method.getReturnType() == String.class ? name : null;
+      }
+    });
+  }
+
+  private Session node(final String name) {
+    return stub(Session.class, new InvocationHandler() {
+      public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        called(name, method);
+        if (method.getName().equals("query")) {
+          final List<QueryResult> results = new ArrayList<QueryResult>();
+          for (int i = 0; i < QUERY_RESULTS; i++) {
+            results.add(stub(QueryResult.class, new InvocationHandler() {
+              public Object invoke(final Object result, final Method resultMethod,
+                final Object[] resultArgs) {
+                return null;
+              }
+            }));
+          }
+          return new ListItemIterable<QueryResult>(results, 0, results.size());
+        }
+        if (method.getName().equals("getDefaultContext")
+          || method.getName().equals("createOperationContext")) {
+          return new OperationContextImpl();
+        }
+        if (method.getName().equals("getObjectFactory")
+          || method.getName().equals("getRepositoryInfo")) {
+          return stub(method.getReturnType(), new InvocationHandler() {
+            public Object invoke(final Object target, final Method targetMethod,
+              final Object[] targetArgs) {
+              return targetMethod.getReturnType() == String.class ? "repo" : null;
+            }
+          });
+        }
+        if (method.getName().equals("getBinding")) {
+          return stub(CmisBinding.class, new InvocationHandler() {
+            public Object invoke(final Object binding, final Method bindingMethod,
+              final Object[] bindingArgs) {
+              return stub(bindingMethod.getReturnType(), new InvocationHandler() {
+                public Object invoke(final Object service, final Method serviceMethod,
+                  final Object[] serviceArgs) {
+                  called(name, serviceMethod);
+                  return null;
+                }
+              });
+            }
+          });
+        }
+        if (method.getReturnType() == ObjectId.class) {
+          return stub(ObjectId.class, new InvocationHandler() {
+            public Object invoke(final Object id, final Method idMethod, final Object[] idArgs) {
+              return name;
+            }
+          });
+        }
+        if (method.getReturnType() == CmisObject.class || method.getReturnType() == Folder.class) {
+          return folder(name);
+        }
+        return null;
+      }
+    });
+  }
+
+  private int callsTo(final String node, final String method) {
+    final Integer count = calls.get(node + "." + method);
+    return count == null ? 0 : count;
+  }
+
+  /**
+   * Nodes a and b, with a read only when readOnlyA is set. A single connection failure takes a node out of rotation for a minute.
+   */
+  private ClusterSession cluster(final boolean readOnlyA) {
+    final List<EndpointNode<Session>> nodes = new ArrayList<EndpointNode<Session>>();
+    nodes.add(new EndpointNode<Session>("a", node("a"), true, !readOnlyA));
+    nodes.add(new EndpointNode<Session>("b", node("b")));
+    return new ClusterSession(new EndpointRouter<Session>(nodes, RoutingStrategy.ROUND_ROBIN,
+      RoutingStrategy.ROUND_ROBIN, CmisConnectionException.class, 1, 1, TimeUnit.MINUTES));
+  }
+
+  @Test
+  public void readsAreSpreadOverTheNodes() {
+    final Session session = cluster(false).asSession();
+    for (int i = 0; i < 4; i++) {
+      session.getObject("id" + i);
+    }
+    assertEquals(2, callsTo("a", "getObject"));
+    assertEquals(2, callsTo("b", "getObject"));
+  }
+
+  @Test
+  public void writesOnlyGoToNodesThatAcceptThem() {
+    final ClusterSession cluster = cluster(true);
+    final Session session = cluster.asSession();
+    final ObjectId parent = session.createObjectId("parent");
+    for (int i = 0; i < 3; i++) {
+      assertEquals("b", session.createFolder(Collections.singletonMap("cmis:name", "f" + i),
+        parent).getId());
+    }
+    assertEquals(0, callsTo("a", "createFolder"));
+    assertEquals(3, callsTo("b", "createFolder"));
+    assertEquals(3, cluster.getNodes().get(1).getLatencies().getCount());
+  }
+
+  @Test
+  public void queriesAreReadOnOneNode() {
+    final Session session = cluster(false).asSession();
+    final ItemIterable<QueryResult> results = session.query("SELECT * FROM cmis:document",
+      false);
+    assertEquals(QUERY_RESULTS, count(results));
+    assertEquals(QUERY_RESULTS, results.getTotalNumItems());
+    assertEquals(1, callsTo("a", "query") + callsTo("b", "query"));
+  }
+
+  @Test
+  public void queryPagesAreReadAsTheyAreNeeded() {
+    final Session session = cluster(false).asSession();
+    final OperationContext context = new OperationContextImpl();
+    context.setMaxItemsPerPage(2);
+    final ItemIterable<QueryResult> results = session.query("SELECT * FROM cmis:document",
+      false, context);
+    assertEquals(0, callsTo("a", "query") + callsTo("b", "query"));
+
+    assertEquals(1, count(results.skipTo(4).getPage()));
+    assertEquals(1, callsTo("a", "query") + callsTo("b", "query"));
+
+    assertEquals(QUERY_RESULTS, count(results));
+    assertEquals("Each page is read from the next node", 2, callsTo("a", "query"));
+    assertEquals(2, callsTo("b", "query"));
+  }
+
+  private static int count(final ItemIterable<QueryResult> results) {
+    int count = 0;
+    for (@SuppressWarnings("unused")
+    final QueryResult result: results) {
+      count++;
+    }
+    return count;
+  }
+
+  @Test
+  public void writesToObjectsReadFromAReadOnlyNodeGoToAWriteNode() {
+    final Session session = cluster(true).asSession();
+    // Round robin, so one is read from each node
+    final List<Folder> folders = Arrays.asList(session.getRootFolder(), session.getRootFolder());
+    assertEquals(1, callsTo("a", "getRootFolder"));
+    for (final Folder folder: folders) {
+      final Document document = folder.createDocument(Collections.singletonMap("cmis:name",
+        "d"), null, null);
+      assertEquals("b", document.getId());
+      document.delete(true);
+      folder.updateProperties(Collections.singletonMap("cmis:name", "renamed"));
+      assertEquals(Collections.emptyList(), folder.deleteTree(true, UnfileObject.DELETE, true));
+    }
+    assertEquals(0, callsTo("a", "createDocument") + callsTo("a", "delete")
+      + callsTo("a", "updateProperties") + callsTo("a", "deleteTree"));
+    assertEquals(2, callsTo("b", "createDocument"));
+    assertEquals(2, callsTo("b", "delete"));
+    assertEquals(2, callsTo("b", "updateProperties"));
+    assertEquals(2, callsTo("b", "deleteTree"));
+    assertEquals("The folder from a is fetched from b once", 1, callsTo("b", "getObject"));
+  }
+
+  @Test
+  public void bindingWritesGoToAWriteNode() {
+    final Session session = cluster(true).asSession();
+    final ObjectService objectService = session.getBinding().getObjectService();
+    for (int i = 0; i < 2; i++) {
+      objectService.getProperties("repo", "id", null, null);
+      objectService.updateProperties("repo", new Holder<String>("id"), null, null, null);
+    }
+    assertEquals(1, callsTo("a", "getProperties"));
+    assertEquals(1, callsTo("b", "getProperties"));
+    assertEquals(0, callsTo("a", "updateProperties"));
+    assertEquals(2, callsTo("b", "updateProperties"));
+  }
+
+  @Test
+  public void bulkUpdatesGoToAWriteNode() throws InterruptedException {
+    final BulkPropertyUpdater updater = new BulkPropertyUpdater(cluster(true).asSession(), 2);
+    final UpdateResult result;
+    try {
+      result = updater.update(Arrays.asList("id1", "id2", "id3", "id4"), "D:swct:document",
+        Collections.singletonMap("cmis:name", "renamed"));
+    } finally {
+      updater.close();
+    }
+    assertEquals(Collections.emptyMap(), result.getFailures());
+    assertEquals(0, callsTo("a", "updateProperties"));
+    assertEquals(4, callsTo("b", "updateProperties"));
+  }
+
+  @Test
+  public void failedNodesAreTakenOutOfRotation() {
+    final Session session = cluster(false).asSession();
+    downNodes.add("a");
+    try {
+      session.getObject("first");
+      fail();
+    } catch (final CmisConnectionException expected) {
+    }
+    for (int i = 0; i < 4; i++) {
+      assertEquals("b", session.getObject("id" + i).getId());
+    }
+    assertEquals(1, callsTo("a", "getObject"));
+  }
+
+  @Test
+  public void clientStateIsChangedOnEveryNode() {
+    final Session session = cluster(false).asSession();
+    session.setDefaultContext(new OperationContextImpl());
+    session.clear();
+    assertEquals(1, callsTo("a", "clear"));
+    assertEquals(1, callsTo("b", "clear"));
+    assertEquals(1, callsTo("a", "setDefaultContext"));
+    assertEquals(1, callsTo("b", "setDefaultContext"));
+  }
+
+  @Test
+  public void theClusterIsFoundFromItsSession() {
+    final ClusterSession cluster = cluster(false);
+    assertSame(cluster, ClusterSession.of(cluster.asSession()));
+    assertNull(ClusterSession.of(node("single")));
+  }
+}
@@ -0,0 +1,126 @@
+package com.springyweb.alfresco.tests.cmis.routing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.springyweb.alfresco.tests.cmis.perf.LatencyRecorder;
+
+/**
+ * One repository node behind an {@link EndpointRouter} together with its health and latency state.
+ *
+ * @param <T>
+ *          The client used to talk to the node, e.g a CMIS session
+ */
+public class EndpointNode<T> {
+
+  // Weight given to the newest sample in the latency moving average
+  private static final double EWMA_ALPHA = 0.2;
+
+  private final String name;
+  private final T target;
+  private final boolean acceptsReads;
+  private final boolean acceptsWrites;
+
+  private final AtomicInteger outstanding = new AtomicInteger();
+  private final LatencyRecorder latencies;
+
+  private double ewmaNanos = -1;
+  private int consecutiveFailures;
+  private long unavailableUntilNanos;
+
+  public EndpointNode(final String name, final T target) {
+    this(name, target, true, true);
+  }
+
+  /**
+   * @param name
+   *          - The name used in reports e.g the endpoint URL
+   * @param target
+   *          - The client for this node
+   * @param acceptsReads
+   *          - Whether reads may be routed here
+   * @param acceptsWrites
+   *          - Whether writes may be routed here
+   */
+  public EndpointNode(final String name, final T target, final boolean acceptsReads,
+    final boolean acceptsWrites) {
+    this.name = name;
+    this.target = target;
+    this.acceptsReads = acceptsReads;
+    this.acceptsWrites = acceptsWrites;
+    this.latencies = new LatencyRecorder(name);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public T getTarget() {
+    return target;
+  }
+
+  public boolean accepts(final boolean write) {
+    return write ? acceptsWrites : acceptsReads;
+  }
+
+  public int getOutstanding() {
+    return outstanding.get();
+  }
+
+  /**
+   * @return The moving average latency in nanoseconds or -1 if the node has not been used yet
+   */
+  public synchronized double getAverageLatencyNanos() {
+    return ewmaNanos;
+  }
+
+  public synchronized boolean isHealthy() {
+    return unavailableUntilNanos == 0;
+  }
+
+  public LatencyRecorder.LatencySnapshot getLatencies() {
+    return latencies.snapshot();
+  }
+
+  /**
+   * A node that has been marked down becomes available again, for a single probe, once its retry delay has elapsed
+   */
+  synchronized boolean isAvailable(final long nowNanos) {
+    return unavailableUntilNanos == 0 || nowNanos - unavailableUntilNanos >= 0;
+  }
+
+  synchronized void started(final long nowNanos, final long retryAfterNanos) {
+    outstanding.incrementAndGet();
+    if (unavailableUntilNanos != 0) {
+      // This is the probe: hold back everything else until it has finished or the delay passes again
+      unavailableUntilNanos = (nowNanos + retryAfterNanos) | 1;
+    }
+  }
+
+  synchronized void succeeded(final long nanos) {
+    outstanding.decrementAndGet();
+    latencies.record(nanos);
+    ewmaNanos = ewmaNanos < 0 ? nanos : EWMA_ALPHA * nanos + (1 - EWMA_ALPHA) * ewmaNanos;
+    consecutiveFailures = 0;
+    unavailableUntilNanos = 0;
+  }
+
+  /**
+   * @param nodeFault
+   *          - true if the failure says something about the node (e.g it could not be reached) rather than about the request
+   */
+  synchronized void failed(final boolean nodeFault, final int failureThreshold,
+    final long retryAfterNanos) {
+    outstanding.decrementAndGet();
+    latencies.recordError();
+    if (nodeFault && ++consecutiveFailures >= failureThreshold) {
+      // Avoid 0 which means healthy
+      unavailableUntilNanos = (System.nanoTime() + retryAfterNanos) | 1;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s healthy=%b outstanding=%d %s", name, isHealthy(), getOutstanding(),
+      getLatencies());
+  }
+}
@@ -0,0 +1,218 @@
+package com.springyweb.alfresco.tests.cmis.routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spreads operations over several repository nodes.
+ *
+ * Reads and writes are routed independently, each with its own {@link RoutingStrategy} and only to the nodes that accept them. A node that fails
+ * failureThreshold times in a row with a node fault is taken out of rotation and probed again after the retry delay. If every candidate node is
+ * down the router tries them anyway rather than failing the operation without a request.
+ *
+ * @param <T>
+ *          The client used to talk to each node, e.g a CMIS session
+ */
+public class EndpointRouter<T> {
+
+  /**
+   * An operation run against a single node
+   */
+  public interface Operation<T, R> {
+    R execute(T target);
+  }
+
+  private final List<EndpointNode<T>> nodes;
+  private final RoutingStrategy readStrategy;
+  private final RoutingStrategy writeStrategy;
+  private final Class<? extends Throwable> nodeFaultType;
+  private final int failureThreshold;
+  private final long retryAfterNanos;
+
+  // Separate so that interleaved reads and writes do not skew each other's rotation
+  private final AtomicLong nextReadIndex = new AtomicLong();
+  private final AtomicLong nextWriteIndex = new AtomicLong();
+  private final Random random = new Random();
+
+  public EndpointRouter(final List<EndpointNode<T>> nodes, final RoutingStrategy strategy,
+    final Class<? extends Throwable> nodeFaultType) {
+    this(nodes, strategy, strategy, nodeFaultType, 3, 10, TimeUnit.SECONDS);
+  }
+
+  /**
+   * @param nodes
+   *          - The nodes to route between
+   * @param readStrategy
+   *          - How to pick a node for reads
+   * @param writeStrategy
+   *          - How to pick a node for writes
+   * @param nodeFaultType
+   *          - Failures of this type count against the health of the node
+   * @param failureThreshold
+   *          - The number of consecutive node faults after which a node is taken out of rotation
+   * @param retryAfter
+   *          - How long to wait before probing a node that has been taken out of rotation
+   * @param unit
+   *          - The unit of retryAfter
+   */
+  public EndpointRouter(final List<EndpointNode<T>> nodes, final RoutingStrategy readStrategy,
+    final RoutingStrategy writeStrategy, final Class<? extends Throwable> nodeFaultType,
+    final int failureThreshold, final long retryAfter, final TimeUnit unit) {
+
+    if (nodes.isEmpty()) {
+      throw new IllegalArgumentException("At least one node is required");
+    }
+    this.nodes = Collections.unmodifiableList(new ArrayList<EndpointNode<T>>(nodes));
+    this.readStrategy = readStrategy;
+    this.writeStrategy = writeStrategy;
+    this.nodeFaultType = nodeFaultType;
+    this.failureThreshold = failureThreshold;
+    this.retryAfterNanos = unit.toNanos(retryAfter);
+  }
+
+  public List<EndpointNode<T>> getNodes() {
+    return nodes;
+  }
+
+  public <R> R read(final Operation<T, R> operation) {
+    return execute(false, operation);
+  }
+
+  public <R> R write(final Operation<T, R> operation) {
+    return execute(true, operation);
+  }
+
+  public <R> R execute(final boolean write, final Operation<T, R> operation) {
+    final Lease<T> lease = acquire(write);
+    final R result;
+    try {
+      result = operation.execute(lease.getTarget());
+    } catch (final RuntimeException e) {
+      lease.failed(e);
+      throw e;
+    } catch (final Error e) {
+      lease.failed(e);
+      throw e;
+    }
+    lease.succeeded();
+    return result;
+  }
+
+  /**
+   * Pick a node for an operation the caller will time itself. Every lease must be ended with {@link Lease#succeeded()} or
+   * {@link Lease#failed(Throwable)}.
+   */
+  public Lease<T> acquire(final boolean write) {
+    final long now = System.nanoTime();
+    final List<EndpointNode<T>> candidates = new ArrayList<EndpointNode<T>>(nodes.size());
+    for (final EndpointNode<T> node: nodes) {
+      if (node.accepts(write)) {
+        candidates.add(node);
+      }
+    }
+    if (candidates.isEmpty()) {
+      throw new IllegalStateException("No node accepts " + (write ? "writes" : "reads"));
+    }
+    final List<EndpointNode<T>> available = new ArrayList<EndpointNode<T>>(candidates.size());
+    for (final EndpointNode<T> node: candidates) {
+      if (node.isAvailable(now)) {
+        available.add(node);
+      }
+    }
+
+    final EndpointNode<T> node = select(write ? writeStrategy : readStrategy,
+      write ? nextWriteIndex : nextReadIndex, available.isEmpty() ? candidates : available);
+    node.started(now, retryAfterNanos);
+    return new Lease<T>(this, node, now);
+  }
+
+  private EndpointNode<T> select(final RoutingStrategy strategy, final AtomicLong nextIndex,
+    final List<EndpointNode<T>> candidates) {
+
+    final int start = (int)(nextIndex.getAndIncrement() % candidates.size());
+    switch (strategy) {
+    case LEAST_OUTSTANDING:
+      // Scan from a rotating start so that ties are shared out
+      EndpointNode<T> least = null;
+      for (int i = 0; i < candidates.size(); i++) {
+        final EndpointNode<T> node = candidates.get((start + i) % candidates.size());
+        if (least == null || node.getOutstanding() < least.getOutstanding()) {
+          least = node;
+        }
+      }
+      return least;
+    case LATENCY_WEIGHTED:
+      return selectByLatency(candidates, start);
+    default:
+      return candidates.get(start);
+    }
+  }
+
+  private EndpointNode<T> selectByLatency(final List<EndpointNode<T>> candidates,
+    final int start) {
+
+    // Nodes without samples yet are weighted as if they were the fastest seen so they get traffic
+    double fastest = Double.MAX_VALUE;
+    for (final EndpointNode<T> node: candidates) {
+      final double average = node.getAverageLatencyNanos();
+      if (average >= 0) {
+        fastest = Math.min(fastest, Math.max(average, 1));
+      }
+    }
+    if (fastest == Double.MAX_VALUE) {
+      return candidates.get(start);
+    }
+
+    final double[] weights = new double[candidates.size()];
+    double total = 0;
+    for (int i = 0; i < weights.length; i++) {
+      final double average = candidates.get(i).getAverageLatencyNanos();
+      weights[i] = 1 / (average < 0 ? fastest : Math.max(average, 1));
+      total += weights[i];
+    }
+    double pick = random.nextDouble() * total;
+    for (int i = 0; i < weights.length; i++) {
+      pick -= weights[i];
+      if (pick < 0) {
+        return candidates.get(i);
+      }
+    }
+    return candidates.get(weights.length - 1);
+  }
+
+  /**
+   * A node chosen for one operation
+   */
+  public static class Lease<T> {
+    private final EndpointRouter<T> router;
+    private final EndpointNode<T> node;
+    private final long startNanos;
+
+    Lease(final EndpointRouter<T> router, final EndpointNode<T> node, final long startNanos) {
+      this.router = router;
+      this.node = node;
+      this.startNanos = startNanos;
+    }
+
+    public T getTarget() {
+      return node.getTarget();
+    }
+
+    public EndpointNode<T> getNode() {
+      return node;
+    }
+
+    public void succeeded() {
+      node.succeeded(System.nanoTime() - startNanos);
+    }
+
+    public void failed(final Throwable cause) {
+      node.failed(router.nodeFaultType.isInstance(cause), router.failureThreshold,
+        router.retryAfterNanos);
+    }
+  }
+}
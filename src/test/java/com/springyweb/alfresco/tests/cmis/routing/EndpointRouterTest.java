@@ -0,0 +1,172 @@
+package com.springyweb.alfresco.tests.cmis.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Routes between local stand-in nodes: each node is just a name, and the operations decide how slow or broken it is.
+ */
+public class EndpointRouterTest {
+
+  private static class NodeDown extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+  }
+
+  private final Map<String, Integer> calls = new HashMap<String, Integer>();
+
+  private final EndpointRouter.Operation<String, String> countCalls = new EndpointRouter.Operation<String, String>() {
+    public String execute(final String node) {
+      final Integer count = calls.get(node);
+      calls.put(node, count == null ? 1 : count + 1);
+      return node;
+    }
+  };
+
+  private List<EndpointNode<String>> nodes(final String... names) {
+    final List<EndpointNode<String>> nodes = new ArrayList<EndpointNode<String>>();
+    for (final String name: names) {
+      nodes.add(new EndpointNode<String>(name, name));
+    }
+    return nodes;
+  }
+
+  private int callsTo(final String node) {
+    final Integer count = calls.get(node);
+    return count == null ? 0 : count;
+  }
+
+  @Test
+  public void roundRobinVisitsEveryNodeInTurn() {
+    final EndpointRouter<String> router = new EndpointRouter<String>(nodes("a", "b", "c"),
+      RoutingStrategy.ROUND_ROBIN, NodeDown.class);
+
+    final List<String> order = new ArrayList<String>();
+    for (int i = 0; i < 6; i++) {
+      order.add(router.read(countCalls));
+    }
+    assertEquals(Arrays.asList("a", "b", "c", "a", "b", "c"), order);
+  }
+
+  @Test
+  public void leastOutstandingAvoidsBusyNodes() {
+    final EndpointRouter<String> router = new EndpointRouter<String>(nodes("a", "b", "c"),
+      RoutingStrategy.LEAST_OUTSTANDING, NodeDown.class);
+
+    final EndpointRouter.Lease<String> first = router.acquire(false);
+    final EndpointRouter.Lease<String> second = router.acquire(false);
+    final EndpointRouter.Lease<String> third = router.acquire(false);
+    assertEquals(3, new HashSet<String>(Arrays.asList(first.getTarget(),
+      second.getTarget(), third.getTarget())).size());
+
+    // Free one node up; it must take the next request
+    second.succeeded();
+    assertEquals(second.getTarget(), router.acquire(false).getTarget());
+  }
+
+  @Test
+  public void latencyWeightedFavoursFastNodes() {
+    final EndpointRouter<String> router = new EndpointRouter<String>(nodes("fast", "slow"),
+      RoutingStrategy.LATENCY_WEIGHTED, NodeDown.class);
+
+    final EndpointRouter.Operation<String, String> slowNode = new EndpointRouter.Operation<String, String>() {
+      public String execute(final String node) {
+        if (node.equals("slow")) {
+          try {
+            Thread.sleep(5);
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return countCalls.execute(node);
+      }
+    };
+    for (int i = 0; i < 200; i++) {
+      router.read(slowNode);
+    }
+    assertTrue("slow node got " + callsTo("slow") + " calls", callsTo("slow") < 20);
+  }
+
+  @Test
+  public void readsAndWritesRouteSeparately() {
+    final List<EndpointNode<String>> nodes = new ArrayList<EndpointNode<String>>();
+    nodes.add(new EndpointNode<String>("primary", "primary", false, true));
+    nodes.add(new EndpointNode<String>("replica1", "replica1", true, false));
+    nodes.add(new EndpointNode<String>("replica2", "replica2", true, false));
+    final EndpointRouter<String> router = new EndpointRouter<String>(nodes,
+      RoutingStrategy.ROUND_ROBIN, NodeDown.class);
+
+    for (int i = 0; i < 4; i++) {
+      assertFalse(router.read(countCalls).equals("primary"));
+      assertEquals("primary", router.write(countCalls));
+    }
+    assertEquals(2, callsTo("replica1"));
+    assertEquals(2, callsTo("replica2"));
+  }
+
+  @Test
+  public void failingNodeIsTakenOutOfRotationAndProbedLater() throws InterruptedException {
+    final EndpointRouter<String> router = new EndpointRouter<String>(nodes("a", "b"),
+      RoutingStrategy.ROUND_ROBIN, RoutingStrategy.ROUND_ROBIN, NodeDown.class, 2, 50,
+      TimeUnit.MILLISECONDS);
+
+    final boolean[] bIsDown = { true };
+    final EndpointRouter.Operation<String, String> bMayBeDown = new EndpointRouter.Operation<String, String>() {
+      public String execute(final String node) {
+        if (node.equals("b") && bIsDown[0]) {
+          throw new NodeDown();
+        }
+        return countCalls.execute(node);
+      }
+    };
+
+    int failures = 0;
+    for (int i = 0; i < 10; i++) {
+      try {
+        router.read(bMayBeDown);
+      } catch (final NodeDown e) {
+        failures++;
+      }
+    }
+    assertEquals("b fails until it reaches the threshold", 2, failures);
+    assertFalse(router.getNodes().get(1).isHealthy());
+
+    // Once the retry delay has passed a probe goes to b and brings it back
+    bIsDown[0] = false;
+    Thread.sleep(60);
+    for (int i = 0; i < 4; i++) {
+      router.read(bMayBeDown);
+    }
+    assertTrue(router.getNodes().get(1).isHealthy());
+    assertTrue(callsTo("b") > 0);
+  }
+
+  @Test
+  public void requestFailuresDoNotAffectHealth() {
+    final EndpointRouter<String> router = new EndpointRouter<String>(nodes("a"),
+      RoutingStrategy.ROUND_ROBIN, RoutingStrategy.ROUND_ROBIN, NodeDown.class, 1, 1,
+      TimeUnit.HOURS);
+    try {
+      router.read(new EndpointRouter.Operation<String, String>() {
+        public String execute(final String node) {
+          throw new IllegalArgumentException("bad request");
+        }
+      });
+      fail();
+    } catch (final IllegalArgumentException expected) {
+    }
+    assertTrue(router.getNodes().get(0).isHealthy());
+    assertEquals(1, router.getNodes().get(0).getLatencies().getErrors());
+  }
+}
@@ -0,0 +1,22 @@
+package com.springyweb.alfresco.tests.cmis.routing;
+
+/**
+ * How an {@link EndpointRouter} chooses between the healthy nodes that accept an operation.
+ */
+public enum RoutingStrategy {
+
+  /**
+   * Each node in turn
+   */
+  ROUND_ROBIN,
+
+  /**
+   * The node with the fewest requests in flight
+   */
+  LEAST_OUTSTANDING,
+
+  /**
+   * A random node, weighted by the inverse of its recent (exponentially weighted) latency
+   */
+  LATENCY_WEIGHTED
+}
@@ -0,0 +1,75 @@
+package com.springyweb.alfresco.tests.cmis.snapshot;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.chemistry.opencmis.commons.data.RepositoryInfo;
+import org.apache.chemistry.opencmis.commons.definitions.TypeDefinition;
+
+/**
+ * What a client learns about a repository before it can do any work: its info and the definitions of the types and aspects it uses. Written
+ * to disk by {@link SnapshotStore}.
+ */
+class RepositorySnapshot implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String repositoryId;
+  private final String productVersion;
+  private final String cmisVersion;
+  private final String modelVersion;
+  private final long createdMillis;
+  // Declared as the concrete map so that the field is known to be serializable
+  private final ConcurrentHashMap<String, TypeDefinition> types =
+    new ConcurrentHashMap<String, TypeDefinition>();
+
+  /**
+   * @param info
+   *          - The live repository info
+   * @param modelVersion
+   *          - Identifies the deployed content model
+   */
+  RepositorySnapshot(final RepositoryInfo info, final String modelVersion, final long createdMillis) {
+    this.repositoryId = info.getId();
+    this.productVersion = info.getProductVersion();
+    this.cmisVersion = info.getCmisVersionSupported();
+    this.modelVersion = modelVersion;
+    this.createdMillis = createdMillis;
+  }
+
+  String getRepositoryId() {
+    return repositoryId;
+  }
+
+  /**
+   * The repository's change log token is not used: it moves with every content change, while type definitions only change when the server is
+   * upgraded or a new content model is deployed.
+   *
+   * @return Whether this snapshot still describes the repository
+   */
+  boolean isValidFor(final RepositoryInfo info, final String modelVersion, final long now,
+    final long ttlMillis) {
+    return equal(repositoryId, info.getId()) && equal(productVersion, info.getProductVersion())
+      && equal(cmisVersion, info.getCmisVersionSupported())
+      && equal(this.modelVersion, modelVersion) && now - createdMillis < ttlMillis;
+  }
+
+  TypeDefinition getType(final String typeId) {
+    return types.get(typeId);
+  }
+
+  /**
+   * @return true if the type was not already known
+   */
+  boolean putType(final TypeDefinition type) {
+    return types.put(type.getId(), type) == null;
+  }
+
+  int getTypeCount() {
+    return types.size();
+  }
+
+  private static boolean equal(final String a, final String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+}
@@ -0,0 +1,36 @@
+package com.springyweb.alfresco.tests.cmis.snapshot;
+
+import java.io.File;
+
+import org.apache.chemistry.opencmis.client.bindings.spi.BindingSession;
+import org.apache.chemistry.opencmis.client.bindings.spi.atompub.CmisAtomPubSpi;
+import org.apache.chemistry.opencmis.client.bindings.spi.atompub.RepositoryServiceImpl;
+import org.apache.chemistry.opencmis.commons.spi.RepositoryService;
+
+/**
+ * The AtomPub binding with its repository service backed by a {@link SnapshotStore}. Configured by the session parameters below.
+ */
+public class SnapshotAtomPubSpi extends CmisAtomPubSpi {
+
+  public static final String SNAPSHOT_FILE = "com.springyweb.cmis.snapshot.file";
+  public static final String MODEL_VERSION = "com.springyweb.cmis.snapshot.modelVersion";
+  public static final String TTL_MILLIS = "com.springyweb.cmis.snapshot.ttlMillis";
+
+  private final RepositoryService repositoryService;
+
+  public SnapshotAtomPubSpi(final BindingSession session) {
+    super(session);
+    final Object modelVersion = session.get(MODEL_VERSION);
+    final Object ttlMillis = session.get(TTL_MILLIS);
+    // The same service as super builds, without calling an overridable method from the constructor
+    repositoryService = new SnapshotRepositoryService(new RepositoryServiceImpl(session),
+      SnapshotStore.forFile(new File(String.valueOf(session.get(SNAPSHOT_FILE)))),
+      modelVersion == null ? "" : modelVersion.toString(),
+      ttlMillis == null ? Long.MAX_VALUE : Long.parseLong(ttlMillis.toString()));
+  }
+
+  @Override
+  public RepositoryService getRepositoryService() {
+    return repositoryService;
+  }
+}
@@ -0,0 +1,75 @@
+package com.springyweb.alfresco.tests.cmis.snapshot;
+
+import java.math.BigInteger;
+import java.util.List;
+
+import org.apache.chemistry.opencmis.commons.data.ExtensionsData;
+import org.apache.chemistry.opencmis.commons.data.RepositoryInfo;
+import org.apache.chemistry.opencmis.commons.definitions.TypeDefinition;
+import org.apache.chemistry.opencmis.commons.definitions.TypeDefinitionContainer;
+import org.apache.chemistry.opencmis.commons.definitions.TypeDefinitionList;
+import org.apache.chemistry.opencmis.commons.spi.RepositoryService;
+
+/**
+ * Serves type definitions from a {@link SnapshotStore}. Repository info is always fetched live, and each fetch validates the snapshot.
+ */
+public class SnapshotRepositoryService implements RepositoryService {
+
+  private final RepositoryService delegate;
+  private final SnapshotStore store;
+  private final String modelVersion;
+  private final long ttlMillis;
+
+  /**
+   * @param delegate
+   *          - Makes the requests to the repository
+   * @param modelVersion
+   *          - Identifies the deployed content model, a change invalidates the snapshot
+   * @param ttlMillis
+   *          - How long a snapshot is trusted for after it was created
+   */
+  public SnapshotRepositoryService(final RepositoryService delegate, final SnapshotStore store,
+    final String modelVersion, final long ttlMillis) {
+    this.delegate = delegate;
+    this.store = store;
+    this.modelVersion = modelVersion;
+    this.ttlMillis = ttlMillis;
+  }
+
+  public List<RepositoryInfo> getRepositoryInfos(final ExtensionsData extension) {
+    return delegate.getRepositoryInfos(extension);
+  }
+
+  public RepositoryInfo getRepositoryInfo(final String repositoryId,
+    final ExtensionsData extension) {
+    final RepositoryInfo info = delegate.getRepositoryInfo(repositoryId, extension);
+    store.validate(info, modelVersion, ttlMillis);
+    return info;
+  }
+
+  public TypeDefinition getTypeDefinition(final String repositoryId, final String typeId,
+    final ExtensionsData extension) {
+    TypeDefinition type = store.getType(typeId);
+    if (type == null) {
+      type = delegate.getTypeDefinition(repositoryId, typeId, extension);
+      if (type != null) {
+        store.putType(type);
+      }
+    }
+    return type;
+  }
+
+  public TypeDefinitionList getTypeChildren(final String repositoryId, final String typeId,
+    final Boolean includePropertyDefinitions, final BigInteger maxItems,
+    final BigInteger skipCount, final ExtensionsData extension) {
+    return delegate.getTypeChildren(repositoryId, typeId, includePropertyDefinitions, maxItems,
+      skipCount, extension);
+  }
+
+  public List<TypeDefinitionContainer> getTypeDescendants(final String repositoryId,
+    final String typeId, final BigInteger depth, final Boolean includePropertyDefinitions,
+    final ExtensionsData extension) {
+    return delegate.getTypeDescendants(repositoryId, typeId, depth, includePropertyDefinitions,
+      extension);
+  }
+}
@@ -0,0 +1,140 @@
+package com.springyweb.alfresco.tests.cmis.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.opencmis.commons.definitions.TypeDefinition;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.DocumentTypeDefinitionImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.RepositoryInfoImpl;
+import org.apache.chemistry.opencmis.commons.spi.RepositoryService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs against a stub repository service. No repository is required.
+ */
+public class SnapshotRepositoryServiceTest {
+
+  private static final String REPOSITORY_ID = "repo";
+  private static final long TTL = TimeUnit.HOURS.toMillis(1);
+
+  private final AtomicInteger typeRequests = new AtomicInteger();
+  private String productVersion = "3.4.0";
+  private File file;
+
+  @Before
+  public void setup() throws IOException {
+    file = File.createTempFile("snapshot", ".ser");
+    file.delete();
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  private RepositoryService delegate() {
+    return (RepositoryService)Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] { RepositoryService.class }, new InvocationHandler() {
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+          if (method.getName().equals("getRepositoryInfo")) {
+            final RepositoryInfoImpl info = new RepositoryInfoImpl();
+            info.setId(REPOSITORY_ID);
+            info.setProductVersion(productVersion);
+            info.setCmisVersionSupported("1.0");
+            info.setLatestChangeLogToken(String.valueOf(System.nanoTime()));
+            return info;
+          }
+          assertEquals("getTypeDefinition", method.getName());
+          typeRequests.incrementAndGet();
+          final DocumentTypeDefinitionImpl type = new DocumentTypeDefinitionImpl();
+          type.setId((String)args[1]);
+          return type;
+        }
+      });
+  }
+
+  /**
+   * A new store for each call, as a new process would have
+   */
+  private SnapshotRepositoryService connect(final String modelVersion, final long ttlMillis) {
+    final SnapshotRepositoryService service = new SnapshotRepositoryService(delegate(),
+      new SnapshotStore(file), modelVersion, ttlMillis);
+    service.getRepositoryInfo(REPOSITORY_ID, null);
+    return service;
+  }
+
+  private void fetchTypes(final SnapshotRepositoryService service) {
+    for (final String typeId: new String[] { "cmis:document", "D:sw:doc", "P:sw:aspect" }) {
+      final TypeDefinition type = service.getTypeDefinition(REPOSITORY_ID, typeId, null);
+      assertEquals(typeId, type.getId());
+    }
+  }
+
+  @Test
+  public void typesAreServedFromTheSnapshotInTheNextProcess() {
+    fetchTypes(connect("1", TTL));
+    assertEquals(3, typeRequests.get());
+    assertEquals(REPOSITORY_ID, new SnapshotStore(file).getRepositoryId());
+
+    fetchTypes(connect("1", TTL));
+    assertEquals("A changed change log token does not invalidate", 3, typeRequests.get());
+  }
+
+  @Test
+  public void anUpgradeInvalidatesTheSnapshot() {
+    fetchTypes(connect("1", TTL));
+    productVersion = "3.4.1";
+    fetchTypes(connect("1", TTL));
+    assertEquals(6, typeRequests.get());
+
+    fetchTypes(connect("1", TTL));
+    assertEquals("The rebuilt snapshot is used", 6, typeRequests.get());
+  }
+
+  @Test
+  public void aNewModelVersionInvalidatesTheSnapshot() {
+    fetchTypes(connect("1", TTL));
+    fetchTypes(connect("2", TTL));
+    assertEquals(6, typeRequests.get());
+  }
+
+  @Test
+  public void anExpiredSnapshotIsRebuilt() throws InterruptedException {
+    fetchTypes(connect("1", 1));
+    Thread.sleep(5);
+    fetchTypes(connect("1", 1));
+    assertEquals(6, typeRequests.get());
+  }
+
+  @Test
+  public void typesAreFetchedUntilTheSnapshotIsValidated() {
+    fetchTypes(connect("1", TTL));
+    fetchTypes(new SnapshotRepositoryService(delegate(), new SnapshotStore(file), "1", TTL));
+    assertEquals(6, typeRequests.get());
+  }
+
+  @Test
+  public void anUnreadableSnapshotIsIgnored() throws IOException {
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write("not a snapshot".getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    assertNull(new SnapshotStore(file).getRepositoryId());
+    fetchTypes(connect("1", TTL));
+    fetchTypes(connect("1", TTL));
+    assertEquals(3, typeRequests.get());
+  }
+}
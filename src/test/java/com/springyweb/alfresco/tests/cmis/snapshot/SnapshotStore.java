@@ -0,0 +1,154 @@
+package com.springyweb.alfresco.tests.cmis.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.chemistry.opencmis.commons.data.RepositoryInfo;
+import org.apache.chemistry.opencmis.commons.definitions.TypeDefinition;
+
+/**
+ * Keeps a {@link RepositorySnapshot} on disk and shares it between every session of the JVM using the same file.
+ *
+ * The snapshot is only used once it has been validated against live repository info, which each new session fetches anyway. Until then, and
+ * when it is stale, every type is fetched from the repository and the snapshot is rebuilt from what is fetched. The file is replaced
+ * atomically after each newly fetched type; a file that cannot be read, e.g after an OpenCMIS upgrade, is ignored.
+ */
+public class SnapshotStore {
+
+  private static final Map<String, SnapshotStore> STORES = new HashMap<String, SnapshotStore>();
+
+  private final File file;
+  private RepositorySnapshot snapshot;
+  private boolean validated = false;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  SnapshotStore(final File file) {
+    this.file = file;
+    this.snapshot = read(file);
+  }
+
+  /**
+   * @return The store for a file, loading it on first use
+   */
+  public static SnapshotStore forFile(final File file) {
+    synchronized (STORES) {
+      final String key = file.getAbsolutePath();
+      SnapshotStore store = STORES.get(key);
+      if (store == null) {
+        store = new SnapshotStore(file);
+        STORES.put(key, store);
+      }
+      return store;
+    }
+  }
+
+  /**
+   * @return The id of the repository in the snapshot, which saves looking it up, or null if there is no snapshot
+   */
+  public synchronized String getRepositoryId() {
+    return snapshot == null ? null : snapshot.getRepositoryId();
+  }
+
+  /**
+   * Check the snapshot against the repository, replacing it with an empty one if it no longer describes it
+   */
+  synchronized void validate(final RepositoryInfo info, final String modelVersion,
+    final long ttlMillis) {
+    final long now = System.currentTimeMillis();
+    if (snapshot == null || !snapshot.isValidFor(info, modelVersion, now, ttlMillis)) {
+      if (snapshot != null) {
+        System.out.println("Repository snapshot " + file + " is out of date, rebuilding it");
+      }
+      snapshot = new RepositorySnapshot(info, modelVersion, now);
+    }
+    validated = true;
+  }
+
+  /**
+   * @return The type from the snapshot, null if it has not been validated or does not have it
+   */
+  synchronized TypeDefinition getType(final String typeId) {
+    final TypeDefinition type = validated ? snapshot.getType(typeId) : null;
+    (type == null ? misses : hits).incrementAndGet();
+    return type;
+  }
+
+  /**
+   * Add a type fetched from the repository
+   */
+  synchronized void putType(final TypeDefinition type) {
+    if (validated && snapshot.putType(type)) {
+      write();
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "Repository snapshot " + file + ": types=" + (snapshot == null ? 0 : snapshot.getTypeCount())
+      + " hits=" + hits + " misses=" + misses;
+  }
+
+  private void write() {
+    final File parent = file.getAbsoluteFile().getParentFile();
+    try {
+      parent.mkdirs();
+      final File temp = File.createTempFile(file.getName(), ".tmp", parent);
+      final ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(
+        new BufferedOutputStream(new FileOutputStream(temp))));
+      try {
+        out.writeObject(snapshot);
+      } finally {
+        out.close();
+      }
+      if (!temp.renameTo(file)) {
+        file.delete();
+        if (!temp.renameTo(file)) {
+          temp.delete();
+          System.out.println("Could not replace repository snapshot " + file);
+        }
+      }
+    } catch (final IOException e) {
+      // The snapshot only saves time
+      System.out.println("Could not write repository snapshot " + file + ": " + e);
+    }
+  }
+
+  private static RepositorySnapshot read(final File file) {
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      final ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(
+        new BufferedInputStream(new FileInputStream(file))));
+      try {
+        return (RepositorySnapshot)in.readObject();
+      } finally {
+        in.close();
+      }
+    } catch (final Exception e) {
+      System.out.println("Ignoring unreadable repository snapshot " + file + ": " + e);
+      return null;
+    }
+  }
+}
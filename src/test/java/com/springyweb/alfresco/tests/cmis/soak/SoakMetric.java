@@ -0,0 +1,44 @@
+package com.springyweb.alfresco.tests.cmis.soak;
+
+/**
+ * The values of a {@link SoakSample} checked for growth over a soak run
+ */
+public enum SoakMetric {
+
+  HEAP_AFTER_GC("Heap after GC (MB)") {
+    @Override
+    double value(final SoakSample sample) {
+      return sample.getHeapAfterGcBytes() / (1024.0 * 1024.0);
+    }
+  },
+  THREADS("Live threads") {
+    @Override
+    double value(final SoakSample sample) {
+      return sample.getThreads();
+    }
+  },
+  OPEN_SOCKETS("Open sockets") {
+    @Override
+    double value(final SoakSample sample) {
+      return sample.getOpenSockets();
+    }
+  },
+  TEST_LATENCY("Median test latency (ms)") {
+    @Override
+    double value(final SoakSample sample) {
+      return sample.getMedianTestMillis();
+    }
+  };
+
+  private final String description;
+
+  private SoakMetric(final String description) {
+    this.description = description;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  abstract double value(SoakSample sample);
+}
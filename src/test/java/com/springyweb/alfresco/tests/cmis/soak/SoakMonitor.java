@@ -0,0 +1,49 @@
+package com.springyweb.alfresco.tests.cmis.soak;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+
+/**
+ * Samples the resources a leaking client holds on to
+ */
+public final class SoakMonitor {
+
+  private static final File FILE_DESCRIPTORS = new File("/proc/self/fd");
+
+  private SoakMonitor() {
+  }
+
+  /**
+   * Collect garbage then measure the heap, so that only live objects are counted
+   */
+  public static long heapAfterGc() {
+    System.gc();
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  public static int threads() {
+    return ManagementFactory.getThreadMXBean().getThreadCount();
+  }
+
+  /**
+   * @return The sockets this process has open, or -1 where /proc is not available
+   */
+  public static int openSockets() {
+    final File[] descriptors = FILE_DESCRIPTORS.listFiles();
+    if (descriptors == null) {
+      return -1;
+    }
+    int sockets = 0;
+    for (final File descriptor: descriptors) {
+      try {
+        if (Files.readSymbolicLink(descriptor.toPath()).toString().startsWith("socket:")) {
+          sockets++;
+        }
+      } catch (final IOException closedSinceListed) {
+      }
+    }
+    return sockets;
+  }
+}
@@ -0,0 +1,169 @@
+package com.springyweb.alfresco.tests.cmis.soak;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.springyweb.alfresco.tests.cmis.perf.MannKendall;
+
+/**
+ * Looks for steady growth in the client's heap, threads, sockets and test latency over a soak run. A metric is flagged when a Mann-Kendall test
+ * finds an increasing trend below the significance level and the least squares trend line grows by more than maxGrowthPercent over the run.
+ * Both are required: a slow leak is significant but small over a short run, and a noisy metric can drift a long way without a trend. A run
+ * also fails when its tests fail more than maxFailures times, or when it leaves fewer than two samples after warmup to find a trend in.
+ */
+public class SoakReport {
+
+  private final double significance;
+  private final double maxGrowthPercent;
+  private final int warmupSamples;
+  private final int maxFailures;
+
+  public SoakReport(final double significance, final double maxGrowthPercent,
+    final int warmupSamples) {
+    this(significance, maxGrowthPercent, warmupSamples, 0);
+  }
+
+  /**
+   * @param warmupSamples
+   *          - The number of samples at the start of the run to ignore, while caches and connection pools fill
+   * @param maxFailures
+   *          - The number of test failures allowed over the whole run, warmup included
+   */
+  public SoakReport(final double significance, final double maxGrowthPercent,
+    final int warmupSamples, final int maxFailures) {
+    this.significance = significance;
+    this.maxGrowthPercent = maxGrowthPercent;
+    this.warmupSamples = warmupSamples;
+    this.maxFailures = maxFailures;
+  }
+
+  public static class Trend {
+    private final SoakMetric metric;
+    private final double first;
+    private final double last;
+    private final double slopePerHour;
+    private final double growthPercent;
+    private final double pValue;
+    private final boolean flagged;
+
+    Trend(final SoakMetric metric, final double first, final double last,
+      final double slopePerHour, final double growthPercent, final double pValue,
+      final boolean flagged) {
+      this.metric = metric;
+      this.first = first;
+      this.last = last;
+      this.slopePerHour = slopePerHour;
+      this.growthPercent = growthPercent;
+      this.pValue = pValue;
+      this.flagged = flagged;
+    }
+
+    public SoakMetric getMetric() {
+      return metric;
+    }
+
+    public double getGrowthPercent() {
+      return growthPercent;
+    }
+
+    public double getPValue() {
+      return pValue;
+    }
+
+    public boolean isFlagged() {
+      return flagged;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-26s first=%.2f last=%.2f slope=%.3f/h growth=%.1f%% p=%.4f%s",
+        metric.getDescription(), first, last, slopePerHour, growthPercent, pValue,
+        flagged ? "  GROWING" : "");
+    }
+  }
+
+  /**
+   * @return A trend for each metric that was sampled
+   */
+  public List<Trend> analyze(final List<SoakSample> samples) {
+    final List<Trend> trends = new ArrayList<Trend>();
+    final List<SoakSample> measured = samples.subList(Math.min(warmupSamples, samples.size()),
+      samples.size());
+    if (measured.size() < 2) {
+      return trends;
+    }
+    final double[] hours = new double[measured.size()];
+    for (int i = 0; i < hours.length; i++) {
+      hours[i] = measured.get(i).getElapsedMillis() / (double)TimeUnit.HOURS.toMillis(1);
+    }
+    final double span = hours[hours.length - 1] - hours[0];
+
+    for (final SoakMetric metric: SoakMetric.values()) {
+      final double[] values = new double[measured.size()];
+      boolean sampled = true;
+      for (int i = 0; i < values.length; i++) {
+        values[i] = metric.value(measured.get(i));
+        sampled &= values[i] >= 0;
+      }
+      if (!sampled) {
+        continue;
+      }
+      final double slope = MannKendall.slope(hours, values);
+      final double pValue = MannKendall.pValueIncreasing(values);
+      final double start = fittedStart(hours, values, slope);
+      // Growth from nothing, e.g sockets, is unbounded
+      final double growthPercent = start > 0 ? slope * span / start * 100 : slope > 0
+        ? Double.POSITIVE_INFINITY : 0;
+      trends.add(new Trend(metric, values[0], values[values.length - 1], slope, growthPercent,
+        pValue, pValue < significance && growthPercent > maxGrowthPercent));
+    }
+    return trends;
+  }
+
+  /**
+   * Print the trends
+   *
+   * @return Why the run failed: too few samples, too many test failures or a growing metric. Empty if it passed.
+   */
+  public List<String> print(final List<SoakSample> samples, final PrintStream out) {
+    final List<String> problems = new ArrayList<String>();
+    int failures = 0;
+    for (final SoakSample sample: samples) {
+      failures += sample.getFailures();
+    }
+    final long elapsed = samples.isEmpty() ? 0 : samples.get(samples.size() - 1)
+      .getElapsedMillis();
+    out.println(String.format("Soak run: %d iterations in %.1f minutes, %d test failures",
+      samples.size(), elapsed / 60000.0, failures));
+    final int measured = samples.size() - Math.min(warmupSamples, samples.size());
+    if (measured < 2) {
+      problems.add(measured + " iteration(s) after the " + warmupSamples
+        + " warmup iterations, at least 2 are needed for a trend");
+    }
+    if (failures > maxFailures) {
+      problems.add(failures + " test failures, more than the " + maxFailures + " allowed");
+    }
+    for (final Trend trend: analyze(samples)) {
+      out.println(trend);
+      if (trend.isFlagged()) {
+        problems.add(trend.getMetric().getDescription() + " grew");
+      }
+    }
+    return problems;
+  }
+
+  /**
+   * @return The value of the trend line at the first sample
+   */
+  private static double fittedStart(final double[] x, final double[] values, final double slope) {
+    double meanX = 0;
+    double meanY = 0;
+    for (int i = 0; i < values.length; i++) {
+      meanX += x[i] / values.length;
+      meanY += values[i] / values.length;
+    }
+    return meanY - slope * (meanX - x[0]);
+  }
+}
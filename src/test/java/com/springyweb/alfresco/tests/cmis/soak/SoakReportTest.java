@@ -0,0 +1,135 @@
+package com.springyweb.alfresco.tests.cmis.soak;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.springyweb.alfresco.tests.cmis.soak.SoakReport.Trend;
+
+public class SoakReportTest {
+
+  private static final long MB = 1024 * 1024;
+  private static final int SAMPLES = 120;
+
+  private final Random random = new Random(1);
+  private final SoakReport report = new SoakReport(0.01, 10, 3);
+
+  /**
+   * A sample a minute with noisy heap and latency
+   *
+   * @param heapLeakPerSample
+   *          - Bytes leaked between samples
+   * @param socketLeakEvery
+   *          - Samples between leaked sockets, 0 for none
+   */
+  private List<SoakSample> run(final long heapLeakPerSample, final int socketLeakEvery) {
+    final List<SoakSample> samples = new ArrayList<SoakSample>();
+    for (int i = 0; i < SAMPLES; i++) {
+      final long heap = 50 * MB + (long)(random.nextGaussian() * 2 * MB) + i * heapLeakPerSample;
+      final int sockets = 4 + (socketLeakEvery == 0 ? 0 : i / socketLeakEvery);
+      samples.add(new SoakSample(i, TimeUnit.MINUTES.toMillis(i + 1), heap,
+        20 + random.nextInt(3), sockets, 100 + random.nextGaussian() * 10, 0));
+    }
+    return samples;
+  }
+
+  private static Trend trend(final List<Trend> trends, final SoakMetric metric) {
+    for (final Trend trend: trends) {
+      if (trend.getMetric() == metric) {
+        return trend;
+      }
+    }
+    throw new AssertionError(metric + " not analyzed");
+  }
+
+  private static PrintStream quiet() {
+    return new PrintStream(new ByteArrayOutputStream());
+  }
+
+  @Test
+  public void steadyClientIsNotFlagged() {
+    final List<Trend> trends = report.analyze(run(0, 0));
+    assertEquals(SoakMetric.values().length, trends.size());
+    for (final Trend trend: trends) {
+      assertFalse(trend.toString(), trend.isFlagged());
+    }
+  }
+
+  @Test
+  public void heapLeakIsFlagged() {
+    // 100KB a minute, 12MB over two hours
+    final List<Trend> trends = report.analyze(run(100 * 1024, 0));
+    final Trend heap = trend(trends, SoakMetric.HEAP_AFTER_GC);
+    assertTrue(heap.toString(), heap.isFlagged());
+    assertFalse(trend(trends, SoakMetric.TEST_LATENCY).isFlagged());
+  }
+
+  @Test
+  public void smallSignificantGrowthIsNotFlagged() {
+    // 30KB a minute is a trend but only 7% growth
+    final Trend heap = trend(report.analyze(run(30 * 1024, 0)), SoakMetric.HEAP_AFTER_GC);
+    assertTrue(heap.getPValue() < 0.01);
+    assertFalse(heap.toString(), heap.isFlagged());
+  }
+
+  @Test
+  public void socketLeakIsFlagged() {
+    final Trend sockets = trend(report.analyze(run(0, 10)), SoakMetric.OPEN_SOCKETS);
+    assertTrue(sockets.toString(), sockets.isFlagged());
+  }
+
+  @Test
+  public void unsampledSocketsAreSkipped() {
+    final List<SoakSample> samples = new ArrayList<SoakSample>();
+    for (int i = 0; i < 10; i++) {
+      samples.add(new SoakSample(i, i * 1000, MB, 1, -1, 1, 0));
+    }
+    for (final Trend trend: report.analyze(samples)) {
+      assertFalse(trend.getMetric() == SoakMetric.OPEN_SOCKETS);
+    }
+  }
+
+  @Test
+  public void steadyRunPasses() {
+    assertEquals(new ArrayList<String>(), report.print(run(0, 0), quiet()));
+  }
+
+  @Test
+  public void failingTestsFailTheRun() {
+    final List<SoakSample> samples = run(0, 0);
+    samples.set(50, new SoakSample(50, TimeUnit.MINUTES.toMillis(51), 50 * MB, 20, 4, 100, 2));
+    assertEquals(Arrays.asList("2 test failures, more than the 0 allowed"), report.print(samples,
+      quiet()));
+    assertEquals(new ArrayList<String>(), new SoakReport(0.01, 10, 3, 2).print(samples, quiet()));
+  }
+
+  @Test
+  public void runWithoutATrendFails() {
+    assertEquals(Arrays.asList(
+      "1 iteration(s) after the 3 warmup iterations, at least 2 are needed for a trend"), report
+      .print(run(0, 0).subList(0, 4), quiet()));
+  }
+
+  @Test
+  public void growingMetricFailsTheRun() {
+    assertEquals(Arrays.asList(SoakMetric.OPEN_SOCKETS.getDescription() + " grew"), report.print(
+      run(0, 10), quiet()));
+  }
+
+  @Test
+  public void monitorSamplesThisProcess() {
+    assertTrue(SoakMonitor.heapAfterGc() > 0);
+    assertTrue(SoakMonitor.threads() > 0);
+    assertTrue(SoakMonitor.openSockets() >= -1);
+  }
+}
@@ -0,0 +1,123 @@
+package com.springyweb.alfresco.tests.cmis.soak;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.RunListener;
+
+import com.springyweb.alfresco.tests.cmis.CMISTest;
+
+/**
+ * Runs a test workload, CMISTest by default, over and over in one JVM for hours, sampling the client after each iteration and reporting any
+ * steady growth, see {@link SoakReport}. Configured by system properties:
+ * <ul>
+ * <li>soak.minutes - how long to run for (default 240)</li>
+ * <li>soak.tests - comma separated test classes to run each iteration (default CMISTest)</li>
+ * <li>soak.pauseMillis - pause between iterations (default 0)</li>
+ * <li>soak.warmupIterations - iterations left out of the trends (default 3)</li>
+ * <li>soak.significance - Mann-Kendall significance level (default 0.01)</li>
+ * <li>soak.maxGrowth - percent a metric may grow over the run (default 10)</li>
+ * <li>soak.maxFailures - test failures allowed over the run (default 0)</li>
+ * </ul>
+ */
+public class SoakRunner {
+
+  /**
+   * Records the duration of each test of an iteration
+   */
+  private static class TestTimer extends RunListener {
+    private final List<Long> durations = new ArrayList<Long>();
+    private long started;
+
+    @Override
+    public void testStarted(final Description description) {
+      started = System.nanoTime();
+    }
+
+    @Override
+    public void testFinished(final Description description) {
+      durations.add(System.nanoTime() - started);
+    }
+
+    double medianMillis() {
+      if (durations.isEmpty()) {
+        return 0;
+      }
+      final long[] sorted = new long[durations.size()];
+      for (int i = 0; i < sorted.length; i++) {
+        sorted[i] = durations.get(i);
+      }
+      Arrays.sort(sorted);
+      return sorted[sorted.length / 2] / 1e6;
+    }
+  }
+
+  /**
+   * @param args
+   *          - The file to write the samples to, tab separated
+   */
+  public static void main(final String[] args) throws ClassNotFoundException,
+    FileNotFoundException, InterruptedException {
+    if (args.length != 1) {
+      throw new IllegalArgumentException("Usage: SoakRunner <samples file>");
+    }
+    final long duration = TimeUnit.MINUTES.toMillis(Long.getLong("soak.minutes", 240));
+    final long pause = Long.getLong("soak.pauseMillis", 0);
+    final Class<?>[] tests = testClasses(System.getProperty("soak.tests", CMISTest.class.getName()));
+
+    final File samplesFile = new File(args[0]);
+    samplesFile.getAbsoluteFile().getParentFile().mkdirs();
+    final PrintStream samplesOut = new PrintStream(samplesFile);
+    final List<SoakSample> samples = new ArrayList<SoakSample>();
+    try {
+      samplesOut.println(SoakSample.header());
+      final long start = System.currentTimeMillis();
+      int iteration = 0;
+      while (System.currentTimeMillis() - start < duration) {
+        final JUnitCore junit = new JUnitCore();
+        final TestTimer timer = new TestTimer();
+        junit.addListener(timer);
+        final Result result = junit.run(tests);
+
+        final SoakSample sample = new SoakSample(iteration++, System.currentTimeMillis() - start,
+          SoakMonitor.heapAfterGc(), SoakMonitor.threads(), SoakMonitor.openSockets(),
+          timer.medianMillis(), result.getFailureCount());
+        samples.add(sample);
+        samplesOut.println(sample);
+        samplesOut.flush();
+        System.out.println("Soak " + sample);
+        if (pause > 0) {
+          Thread.sleep(pause);
+        }
+      }
+    } finally {
+      samplesOut.close();
+    }
+
+    final SoakReport report = new SoakReport(Double.parseDouble(System.getProperty(
+      "soak.significance", "0.01")), Double.parseDouble(System.getProperty("soak.maxGrowth", "10")),
+      Integer.getInteger("soak.warmupIterations", 3), Integer.getInteger("soak.maxFailures", 0));
+    final List<String> problems = report.print(samples, System.out);
+    System.out.println("Samples written to " + samplesFile);
+    if (!problems.isEmpty()) {
+      throw new IllegalStateException("Soak run failed: " + problems);
+    }
+  }
+
+  private static Class<?>[] testClasses(final String names) throws ClassNotFoundException {
+    final String[] split = names.split("\\s*,\\s*");
+    final Class<?>[] classes = new Class<?>[split.length];
+    for (int i = 0; i < split.length; i++) {
+      classes[i] = Class.forName(split[i]);
+    }
+    return classes;
+  }
+}
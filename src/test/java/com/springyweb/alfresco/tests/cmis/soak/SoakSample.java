@@ -0,0 +1,71 @@
+package com.springyweb.alfresco.tests.cmis.soak;
+
+/**
+ * The state of the client after one iteration of the soak workload
+ */
+public class SoakSample {
+
+  private final int iteration;
+  private final long elapsedMillis;
+  private final long heapAfterGcBytes;
+  private final int threads;
+  private final int openSockets;
+  private final double medianTestMillis;
+  private final int failures;
+
+  /**
+   * @param openSockets
+   *          - -1 if they cannot be counted on this platform
+   */
+  public SoakSample(final int iteration, final long elapsedMillis, final long heapAfterGcBytes,
+    final int threads, final int openSockets, final double medianTestMillis, final int failures) {
+    this.iteration = iteration;
+    this.elapsedMillis = elapsedMillis;
+    this.heapAfterGcBytes = heapAfterGcBytes;
+    this.threads = threads;
+    this.openSockets = openSockets;
+    this.medianTestMillis = medianTestMillis;
+    this.failures = failures;
+  }
+
+  public int getIteration() {
+    return iteration;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  public long getHeapAfterGcBytes() {
+    return heapAfterGcBytes;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public int getOpenSockets() {
+    return openSockets;
+  }
+
+  public double getMedianTestMillis() {
+    return medianTestMillis;
+  }
+
+  public int getFailures() {
+    return failures;
+  }
+
+  public static String header() {
+    return "iteration\telapsedMillis\theapAfterGcBytes\tthreads\topenSockets\tmedianTestMillis\tfailures";
+  }
+
+  /**
+   * @return A tab separated line for {@link #header()}
+   */
+  @Override
+  public String toString() {
+    return iteration + "\t" + elapsedMillis + "\t" + heapAfterGcBytes + "\t" + threads + "\t"
+      + openSockets + "\t" + String.format("%.3f", medianTestMillis) + "\t" + failures;
+  }
+}
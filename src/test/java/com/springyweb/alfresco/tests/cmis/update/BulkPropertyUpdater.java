@@ -0,0 +1,96 @@
+package com.springyweb.alfresco.tests.cmis.update;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.data.Properties;
+import org.apache.chemistry.opencmis.commons.spi.Holder;
+import org.apache.chemistry.opencmis.commons.spi.ObjectService;
+
+import com.springyweb.alfresco.tests.cmis.async.AsyncCmisClient;
+import com.springyweb.alfresco.tests.cmis.jfr.CmisEvents;
+
+/**
+ * Sets the same property values on many objects of one type, with at most concurrency requests in flight. An object that cannot be updated
+ * is reported in the result and does not stop the rest.
+ *
+ * The values are converted to CMIS properties once and each object is updated by id through the object service, so an update is one request
+ * rather than the fetch and update of {@link org.apache.chemistry.opencmis.client.api.CmisObject#updateProperties(Map)}. CMIS 1.0, which this
+ * client and Alfresco speak, has no bulkUpdateProperties; a CMIS 1.1 client can send the ids in batches to it instead. Given a
+ * {@link com.springyweb.alfresco.tests.cmis.routing.ClusterSession}'s session, the updates go through its binding to the nodes that accept
+ * writes.
+ */
+public class BulkPropertyUpdater implements Closeable {
+
+  private final Session session;
+  private final AsyncCmisClient client;
+
+  /**
+   * @param concurrency
+   *          - The most requests to have in flight at once
+   */
+  public BulkPropertyUpdater(final Session session, final int concurrency) {
+    this.session = session;
+    this.client = new AsyncCmisClient(session, concurrency);
+  }
+
+  /**
+   * @param typeId
+   *          - The type of every object, e.g D:swct:document
+   * @param properties
+   *          - The values to set, by property id
+   */
+  public UpdateResult update(final Iterable<String> ids, final String typeId,
+    final Map<String, ?> properties) throws InterruptedException {
+    final Properties converted = session.getObjectFactory().convertProperties(properties,
+      session.getTypeDefinition(typeId), null);
+    final ObjectService objectService = session.getBinding().getObjectService();
+    final String repositoryId = session.getRepositoryInfo().getId();
+    final Map<String, String> failures = Collections.synchronizedMap(new LinkedHashMap<String, String>());
+    final List<CompletableFuture<?>> updates = new ArrayList<CompletableFuture<?>>();
+    final long start = System.nanoTime();
+    for (final String id: ids) {
+      updates.add(client.submit(new Callable<Void>() {
+        public Void call() {
+          try {
+            CmisEvents.time(CmisEvents.UPDATE_PROPERTIES, new CmisEvents.Call<Void>() {
+              public Void call() {
+                objectService.updateProperties(repositoryId, new Holder<String>(id), null,
+                  converted, null);
+                return null;
+              }
+            });
+          } catch (final RuntimeException e) {
+            failures.put(id, String.valueOf(e));
+          }
+          return null;
+        }
+      }));
+    }
+    try {
+      CompletableFuture.allOf(updates.toArray(new CompletableFuture<?>[0])).get();
+    } catch (final ExecutionException e) {
+      // Update failures are collected, anything else is unexpected
+      throw new IllegalStateException(e.getCause());
+    }
+    synchronized (failures) {
+      return new UpdateResult(updates.size(), new LinkedHashMap<String, String>(failures),
+        System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Stop an in-progress update's requests
+   */
+  public void close() {
+    client.close();
+  }
+}
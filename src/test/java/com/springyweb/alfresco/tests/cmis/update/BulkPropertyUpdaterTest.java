@@ -0,0 +1,143 @@
+package com.springyweb.alfresco.tests.cmis.update;
+
+import static com.springyweb.alfresco.tests.cmis.Stubs.stub;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.opencmis.client.api.ObjectFactory;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.data.Properties;
+import org.apache.chemistry.opencmis.commons.data.RepositoryInfo;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisUpdateConflictException;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertiesImpl;
+import org.apache.chemistry.opencmis.commons.spi.CmisBinding;
+import org.apache.chemistry.opencmis.commons.spi.Holder;
+import org.apache.chemistry.opencmis.commons.spi.ObjectService;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Runs against a stub object service. No repository is required.
+ */
+public class BulkPropertyUpdaterTest {
+
+  private static final int CONCURRENCY = 3;
+
+  private final Properties converted = new PropertiesImpl();
+  private final Set<String> updated = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final Set<String> conflicting = new HashSet<String>();
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger peakRunning = new AtomicInteger();
+
+  private final ObjectService objectService = stub(ObjectService.class, new InvocationHandler() {
+    @SuppressWarnings("unchecked")
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+      throws InterruptedException {
+      assertEquals("updateProperties", method.getName());
+      assertEquals("repo", args[0]);
+      assertSame(converted, args[3]);
+      final String id = ((Holder<String>)args[1]).getValue();
+      final int now = running.incrementAndGet();
+      synchronized (peakRunning) {
+        peakRunning.set(Math.max(peakRunning.get(), now));
+      }
+      try {
+        Thread.sleep(2);
+        if (conflicting.contains(id)) {
+          throw new CmisUpdateConflictException("Changed by someone else");
+        }
+        assertTrue(id + " updated twice", updated.add(id));
+        return null;
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+  });
+
+  private final BulkPropertyUpdater updater = new BulkPropertyUpdater(stub(Session.class,
+    new InvocationHandler() {
+      public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        final String name = method.getName();
+        if (name.equals("getObjectFactory")) {
+          return stub(ObjectFactory.class, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+              assertEquals("a", ((Map<?, ?>)args[0]).get("swct:propSingleString"));
+              return converted;
+            }
+          });
+        }
+        if (name.equals("getBinding")) {
+          return stub(CmisBinding.class, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+              return objectService;
+            }
+          });
+        }
+        if (name.equals("getRepositoryInfo")) {
+          return stub(RepositoryInfo.class, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+              return "repo";
+            }
+          });
+        }
+        return null;
+      }
+    }), CONCURRENCY);
+
+  @After
+  public void tearDown() {
+    updater.close();
+  }
+
+  private static List<String> ids(final int count) {
+    final List<String> ids = new ArrayList<String>();
+    for (int i = 0; i < count; i++) {
+      ids.add("doc" + i);
+    }
+    return ids;
+  }
+
+  private UpdateResult update(final List<String> ids) throws InterruptedException {
+    return updater.update(ids, "D:swct:document", Collections.singletonMap(
+      "swct:propSingleString", "a"));
+  }
+
+  @Test
+  public void updatesEveryObjectOnce() throws InterruptedException {
+    final UpdateResult result = update(ids(50));
+    assertEquals(50, updated.size());
+    assertEquals(50, result.getUpdated());
+    assertTrue(result.getFailures().isEmpty());
+    assertTrue(result.getObjectsPerSecond() > 0);
+  }
+
+  @Test
+  public void failuresAreReportedAndTheRestUpdated() throws InterruptedException {
+    conflicting.add("doc3");
+    conflicting.add("doc7");
+    final UpdateResult result = update(ids(10));
+    assertEquals(10, result.getObjects());
+    assertEquals(8, result.getUpdated());
+    assertEquals(conflicting, result.getFailures().keySet());
+    assertTrue(result.getFailures().get("doc3").contains("Changed by someone else"));
+  }
+
+  @Test
+  public void concurrencyIsBounded() throws InterruptedException {
+    update(ids(30));
+    assertTrue(peakRunning.get() > 1);
+    assertTrue(peakRunning.get() <= CONCURRENCY);
+  }
+}
@@ -0,0 +1,55 @@
+package com.springyweb.alfresco.tests.cmis.update;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of one {@link BulkPropertyUpdater#update(Iterable, String, Map)}
+ */
+public class UpdateResult {
+
+  private final long objects;
+  private final Map<String, String> failures;
+  private final long elapsedNanos;
+
+  UpdateResult(final long objects, final Map<String, String> failures, final long elapsedNanos) {
+    this.objects = objects;
+    this.failures = failures;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  /**
+   * @return The objects an update was sent for
+   */
+  public long getObjects() {
+    return objects;
+  }
+
+  /**
+   * @return The error for each object that could not be updated, by id, in the order they failed
+   */
+  public Map<String, String> getFailures() {
+    return failures;
+  }
+
+  public long getUpdated() {
+    return objects - failures.size();
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * @return Objects updated per second, leaving out failures
+   */
+  public double getObjectsPerSecond() {
+    return getUpdated() / (elapsedNanos / (double)TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d of %d updated in %.1fms, %.1f objects/s", getUpdated(), objects,
+      elapsedNanos / 1e6, getObjectsPerSecond());
+  }
+}